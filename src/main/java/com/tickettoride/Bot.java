@@ -0,0 +1,49 @@
+package com.tickettoride;
+
+/**
+ * Bot - a computer strategy that plays turns through the real rule engine (Player API).
+ * Implementations must be stateless: one instance is shared by every game of a tournament,
+ * which run concurrently. Use SimulatedGame.getRandom() for any randomness.
+ */
+public interface Bot {
+
+    /**
+     * Name used in tournament reports
+     */
+    String getName();
+
+    /**
+     * Chooses which of the initially dealt destination cards to keep
+     * @param game The game being played
+     * @param self The bot's player
+     * @param offered The cards dealt
+     * @return One flag per offered card, true to keep it (SimulatedGame enforces the minimum)
+     */
+    boolean[] chooseInitialTickets(SimulatedGame game, Player self, DestinationCard[] offered);
+
+    /**
+     * Plays one turn by calling Player methods (draw cards, draw tickets or build a route)
+     * @param game The game being played
+     * @param self The bot's player
+     */
+    void takeTurn(SimulatedGame game, Player self);
+
+    /**
+     * Picks the card color to pay for a route with: the route's own color, or for gray
+     * routes the color the player holds most of that still covers the cost
+     * @return The color to use, or null if the player cannot afford the route
+     */
+    default Color chooseColor(Player self, Color routeColor, int cost, int ferryCount) {
+        if (routeColor != null) {
+            return self.canAffordRoute(routeColor, cost, ferryCount) ? routeColor : null;
+        }
+        Color best = null;
+        for (Color color : Color.values()) {
+            if (color != Color.MULTICOLOR && self.canAffordRoute(color, cost, ferryCount)
+                    && (best == null || self.getCardCount(color) > self.getCardCount(best))) {
+                best = color;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,44 @@
+package com.tickettoride;
+
+/**
+ * Resolved handle to a city on a specific GameMap.
+ * Obtain one with GameMap.resolveCity() and reuse it; queries through a handle are
+ * int-indexed lookups with no name normalization.
+ */
+public final class CityRef {
+    private final GameMap map;
+    private final int id;
+    private final String name;
+
+    CityRef(GameMap map, int id, String name) {
+        this.map = map;
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Dense city id (index into CompactGraph)
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Normalized (lowercase) city name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Check if this handle was resolved on the given map
+     */
+    public boolean belongsTo(GameMap gameMap) {
+        return map == gameMap;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,15 +1,55 @@
 package com.tickettoride;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 
+/**
+ * ColorDeck - train car cards: draw pile, discard pile and the 5 face-up cards.
+ * Methods that move cards are synchronized so players acting at the same time can share the deck.
+ */
 public class ColorDeck extends Deck {
 
+    public static final String DEFAULT_CARD_FILE = "data/colors/europe.csv";
+
+    // Face-up rules, shared with GameState
+    static final int MAX_REDEALS = 5; // Stop redealing when the remaining cards can't break up 3 of a color
+    static final int RESHUFFLE_AT = 20; // Discards go back under the draw pile once it is this small
+
     protected Card[] visibleCards = new Card[5];
+    private GameDeltaStream deltaStream; // null until attached to a GameMap
+
+    // Publicly known composition of draw pile + discard pile, kept up to date as cards move
+    private final int[] poolCounts = new int[Color.values().length];
+    private int poolSize;
+    private int totalCards;
+    private TunnelRiskCalculator tunnelRisk;
 
     public ColorDeck() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a shuffled color deck using the given random source
+     * @param random Random source for all shuffles (seed it for reproducible games)
+     */
+    public ColorDeck(Random random) {
+        this(random, readCardLines(DEFAULT_CARD_FILE));
+    }
+
+    /**
+     * Creates a shuffled color deck from already read card lines (see MapBundle)
+     * @param random Random source for all shuffles (seed it for reproducible games)
+     * @param cardLines Data lines of a color card file
+     */
+    public ColorDeck(Random random, List<String> cardLines) {
         super();
-        this.loadCardsFromFile("data/colors/europe.csv");
+        setRandom(random);
+        this.loadCards(cardLines);
+        shuffleDrawPile();
         
         // Initialize visible cards
         refillVisible();
@@ -18,17 +58,34 @@ public class ColorDeck extends Deck {
         checkVisible();
     }
 
-    public void loadCardsFromFile(String filePath) {
-        super.loadCardsFromFile(filePath);
+    public void loadCards(List<String> fileLines) {
+        super.loadCards(fileLines);
+        recountPool();
+
+        // Room for every card, so building routes never has to grow the discard pile
+        List<Card> sizedDiscardPile = new ArrayList<>(totalCards);
+        sizedDiscardPile.addAll(discardPile);
+        discardPile = sizedDiscardPile;
     }
 
     
-    public void shuffle() {
+    public synchronized void shuffle() {
         super.shuffle();
     }
 
-    public void addCard(Card card) {
+    public synchronized void addCard(Card card) {
         super.addCard(card);
+        addToPool(card, 1);
+        totalCards++;
+    }
+
+    /**
+     * Puts a card on the discard pile (cards played for routes, discarded visible cards)
+     */
+    public synchronized void discard(Card card) {
+        card.setLocation("DISCARD");
+        discardPile.add(card);
+        addToPool(card, 1);
     }
 
     /**
@@ -51,11 +108,19 @@ public class ColorDeck extends Deck {
         }
     }
 
-    public ColorCard drawMystery(String playerId) {
+    /**
+     * Draws the top card of the draw pile for a player
+     * @return The card, or null if the draw and discard piles are both empty
+     */
+    public synchronized ColorCard drawMystery(String playerId) {
+        if (cards.isEmpty()) {
+            return null;
+        }
         ColorCard temp = (ColorCard) cards.removeFirst();
         temp.setLocation("HAND", playerId);
+        addToPool(temp, -1);
 
-        if (cards.size() <= 20) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
+        if (cards.size() <= RESHUFFLE_AT) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
             super.shuffle();
         }
 
@@ -64,23 +129,50 @@ public class ColorDeck extends Deck {
 
     /**
      * Draws a mystery card directly to discard pile (for tunnel draws)
-     * @return The drawn ColorCard (already in discard pile)
+     * @return The drawn ColorCard (already in discard pile), or null if the draw pile is empty
      */
-    public ColorCard drawMysteryToDiscard() {
+    public synchronized ColorCard drawMysteryToDiscard() {
+        if (cards.isEmpty()) {
+            return null;
+        }
         ColorCard temp = (ColorCard) cards.removeFirst();
         temp.setLocation("DISCARD");
         discardPile.add(temp);
 
-        if (cards.size() <= 20) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
+        if (cards.size() <= RESHUFFLE_AT) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
             super.shuffle();
         }
 
         return temp;
     }
 
-    public Card drawVisible(int index, String playerId) {
+    /**
+     * Reveals up to 3 cards to the discard pile and counts those matching the color or wild
+     * (same rule as Game.handleTunnelDraw)
+     * @param routeColor The color being paid with
+     * @return Number of extra cards needed (0-3)
+     */
+    public synchronized int drawTunnelCost(Color routeColor) {
+        int extraCost = 0;
+        for (int i = 0; i < TunnelRiskCalculator.TUNNEL_DRAWS && !cards.isEmpty(); i++) {
+            ColorCard drawn = drawMysteryToDiscard();
+            if (drawn.getColor() == routeColor || drawn.getColor() == Color.MULTICOLOR) {
+                extraCost++;
+            }
+        }
+        return extraCost;
+    }
+
+    /**
+     * Takes a face-up card for a player and refills the slot
+     * @return The card, or null if the slot is empty (the deck ran out)
+     */
+    public synchronized Card drawVisible(int index, String playerId) {
         Card returnCard = visibleCards[index];
-        visibleCards[index] = null;
+        if (returnCard == null) {
+            return null;
+        }
+        setVisible(index, null);
         returnCard.setLocation("HAND", playerId);
         
         // Refill the empty slot and check for 3+ of same color
@@ -92,13 +184,16 @@ public class ColorDeck extends Deck {
 
     /**
      * Check if any color appears 3+ times in visible cards.
-     * If so, discard only those cards and refill. Repeat until no color has 3+.
+     * If so, discard only those cards and refill. Repeat until no color has 3+
+     * (or MAX_REDEALS times, since a nearly empty deck may keep dealing the same color).
      */
-    public void checkVisible() {
+    public synchronized void checkVisible() {
         boolean needsCheck = true;
+        int redeals = 0;
         
-        while (needsCheck) {
+        while (needsCheck && redeals < MAX_REDEALS) {
             needsCheck = false;
+            redeals++;
             
             // Count each color using ordinal as index
             int[] counts = new int[Color.values().length];
@@ -110,12 +205,8 @@ public class ColorDeck extends Deck {
             }
             
             // Find if any color has 3+ cards
-            Color colorToDiscard = null;
-            for (Color color : Color.values()) {
-                if (counts[color.ordinal()] >= 3) {
-                    colorToDiscard = color;
-                }
-            }
+            int redeal = colorToRedeal(counts);
+            Color colorToDiscard = redeal >= 0 ? Color.values()[redeal] : null;
             
             // If found, discard only those cards
             if (colorToDiscard != null) {
@@ -126,9 +217,8 @@ public class ColorDeck extends Deck {
                         // If the card color is the same as the color to discard, 
                         // it is added to the discard pile and the slot is filled with the next card from the deck
                         if (cardColor == colorToDiscard) {
-                            visibleCards[i].setLocation("DISCARD");
-                            discardPile.add(visibleCards[i]);
-                            visibleCards[i] = null;
+                            discard(visibleCards[i]);
+                            setVisible(i, null);
                         }
                     }
                 }
@@ -142,27 +232,188 @@ public class ColorDeck extends Deck {
         }
     }
 
+    /**
+     * The color whose face-up cards are discarded: the last one (in Color order) shown 3+ times
+     * @param counts Face-up cards per Color ordinal
+     * @return The color's ordinal, or -1 if no color is shown 3+ times
+     */
+    static int colorToRedeal(int[] counts) {
+        int redeal = -1;
+        for (int color = 0; color < counts.length; color++) {
+            if (counts[color] >= 3) {
+                redeal = color;
+            }
+        }
+        return redeal;
+    }
+
     /**
      * Refill any empty visible card slots from the deck
      */
     private void refillVisible() {
         for (int i = 0; i < 5; i++) {
             if (visibleCards[i] == null && !cards.isEmpty()) {
-                visibleCards[i] = cards.removeFirst();
+                Card card = cards.removeFirst();
+                addToPool(card, -1);
+                setVisible(i, card);
             }
         }
 
-        if (cards.size() <= 20) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
+        if (cards.size() <= RESHUFFLE_AT) { // Boolean to make sure the deck is shuffled when it is less than 20 cards
             super.shuffle();
         }
 
     }
 
     /**
-     * Get the visible cards array (for UI display)
+     * Sets a visible slot and reports the change on the delta stream
+     */
+    private void setVisible(int index, Card card) {
+        visibleCards[index] = card;
+        if (deltaStream != null) {
+            int colorOrdinal = card != null ? ((ColorCard) card).getColor().ordinal() : -1;
+            deltaStream.emit(DeltaType.VISIBLE_SLOT, null, index, colorOrdinal, card != null ? card.getCardId() : null);
+        }
+    }
+
+    /**
+     * Replaces the deck contents with saved piles (used by GameSessionCodec)
+     * @param drawPile Draw pile in draw order
+     * @param discards Discard pile
+     * @param visible Face-up cards by slot (null for an empty slot)
+     */
+    synchronized void restore(List<Card> drawPile, List<Card> discards, Card[] visible) {
+        cards.clear();
+        discardPile.clear();
+        for (Card card : drawPile) {
+            card.setLocation("DECK");
+            cards.add(card);
+        }
+        for (Card card : discards) {
+            card.setLocation("DISCARD");
+            discardPile.add(card);
+        }
+        for (int i = 0; i < visibleCards.length; i++) {
+            visibleCards[i] = i < visible.length ? visible[i] : null; // Not setVisible: nothing changed in the game
+            if (visibleCards[i] != null) {
+                visibleCards[i].setLocation("DECK");
+            }
+        }
+        recountPool();
+    }
+
+    private void addToPool(Card card, int delta) {
+        poolCounts[((ColorCard) card).getColor().ordinal()] += delta;
+        poolSize += delta;
+    }
+
+    private void recountPool() {
+        Arrays.fill(poolCounts, 0);
+        poolSize = 0;
+        for (Card card : cards) {
+            addToPool(card, 1);
+        }
+        for (Card card : discardPile) {
+            addToPool(card, 1);
+        }
+        int inDeck = poolSize;
+        for (Card card : visibleCards) {
+            inDeck += card != null ? 1 : 0;
+        }
+        totalCards = Math.max(totalCards, inDeck); // Cards in hands still count after a restore
+    }
+
+    // ============ Tunnel Risk ============
+
+    /**
+     * Number of cards of a color in the draw and discard piles (not in hands or visible)
+     */
+    public synchronized int getPoolCount(Color color) {
+        return poolCounts[color.ordinal()];
+    }
+
+    /**
+     * Number of cards in the draw and discard piles
+     */
+    public synchronized int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Distribution of the extra cost of a tunnel paid with the given color
+     * @param color The color used for the route (MULTICOLOR if paying with wildcards only)
+     * @return P(extra = k) for k = 0..3 (shared cached array, do not modify)
+     */
+    public synchronized double[] getTunnelCostDistribution(Color color) {
+        return getTunnelRisk().distribution(poolSize, matchingInPool(color));
+    }
+
+    /**
+     * Probability that a tunnel paid with the given color costs at most maxExtra extra cards
+     */
+    public synchronized double getTunnelAffordProbability(Color color, int maxExtra) {
+        return getTunnelRisk().probabilityAtMost(poolSize, matchingInPool(color), maxExtra);
+    }
+
+    /**
+     * Expected extra cost of a tunnel paid with the given color
+     */
+    public synchronized double getExpectedTunnelCost(Color color) {
+        return getTunnelRisk().expectedExtra(poolSize, matchingInPool(color));
+    }
+
+    /**
+     * Expected extra cost of a tunnel for every paying color at once (one lock acquisition)
+     * @return Expected extra cards, indexed by Color ordinal
+     */
+    public synchronized double[] getExpectedTunnelCosts() {
+        Color[] colors = Color.values();
+        double[] expected = new double[colors.length];
+        for (Color color : colors) {
+            expected[color.ordinal()] = getExpectedTunnelCost(color);
+        }
+        return expected;
+    }
+
+    private int matchingInPool(Color color) {
+        int matching = poolCounts[Color.MULTICOLOR.ordinal()];
+        if (color != Color.MULTICOLOR) {
+            matching += poolCounts[color.ordinal()];
+        }
+        return matching;
+    }
+
+    private TunnelRiskCalculator getTunnelRisk() {
+        if (tunnelRisk == null || totalCards > tunnelRisk.getMaxPopulation()) {
+            tunnelRisk = new TunnelRiskCalculator(totalCards);
+        }
+        return tunnelRisk;
+    }
+
+    /**
+     * Attach the stream that visible slot changes are reported on (done by GameMap.setColorDeck)
+     */
+    public void setDeltaStream(GameDeltaStream deltaStream) {
+        this.deltaStream = deltaStream;
+    }
+
+    /**
+     * Get a copy of the visible cards (for UI display)
      * @return Array of 5 visible cards (may contain nulls)
      */
-    public Card[] getVisibleCards() {
-        return visibleCards;
+    public synchronized Card[] getVisibleCards() {
+        return visibleCards.clone();
+    }
+
+    /**
+     * Get the card in one visible slot without copying the others
+     * @return The card, or null if the slot is empty
+     */
+    public synchronized Card getVisibleCard(int slot) {
+        return visibleCards[slot];
+    }
+
+    public int getVisibleSlotCount() {
+        return visibleCards.length;
     }
 }
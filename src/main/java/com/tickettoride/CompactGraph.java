@@ -0,0 +1,142 @@
+package com.tickettoride;
+
+/**
+ * CompactGraph - immutable, int-indexed copy of a map's topology.
+ * Cities and routes are numbered densely (the ids used by CityRef and RouteRef), and
+ * each city's routes are stored in one flat array (compressed sparse rows), so graph
+ * searches run over plain int arrays without strings or per-step allocation.
+ * Claim state is not part of the graph; ask GameMap.getRouteOwner(edgeId) or GameMap.getNetwork(playerId) for that.
+ */
+public final class CompactGraph {
+
+    private final String[] cityNames;
+    private final int[] edgeCity1;
+    private final int[] edgeCity2;
+    private final int[] edgeWeight;
+    private final int[] edgeFerryCount;
+    private final boolean[] edgeTunnel;
+    private final Color[] edgeColor;      // null = multicolor/gray
+    private final int[] incidentOffsets;  // routes of city c are incidentEdges[incidentOffsets[c] .. incidentOffsets[c + 1])
+    private final int[] incidentEdges;
+    private volatile long[][] incidentMasks; // per city, bitset of its route ids (built on first use)
+
+    CompactGraph(String[] cityNames, int[] edgeCity1, int[] edgeCity2, int[] edgeWeight, int[] edgeFerryCount,
+                 boolean[] edgeTunnel, Color[] edgeColor) {
+        this.cityNames = cityNames;
+        this.edgeCity1 = edgeCity1;
+        this.edgeCity2 = edgeCity2;
+        this.edgeWeight = edgeWeight;
+        this.edgeFerryCount = edgeFerryCount;
+        this.edgeTunnel = edgeTunnel;
+        this.edgeColor = edgeColor;
+
+        // Count degrees, then fill each city's slice of the incidence array
+        incidentOffsets = new int[cityNames.length + 1];
+        for (int e = 0; e < edgeCity1.length; e++) {
+            incidentOffsets[edgeCity1[e] + 1]++;
+            incidentOffsets[edgeCity2[e] + 1]++;
+        }
+        for (int c = 0; c < cityNames.length; c++) {
+            incidentOffsets[c + 1] += incidentOffsets[c];
+        }
+        incidentEdges = new int[incidentOffsets[cityNames.length]];
+        int[] next = incidentOffsets.clone();
+        for (int e = 0; e < edgeCity1.length; e++) {
+            incidentEdges[next[edgeCity1[e]]++] = e;
+            incidentEdges[next[edgeCity2[e]]++] = e;
+        }
+    }
+
+    public int getCityCount() {
+        return cityNames.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeCity1.length;
+    }
+
+    /**
+     * Get a city's name (normalized, lowercase)
+     */
+    public String getCityName(int cityId) {
+        return cityNames[cityId];
+    }
+
+    public int getEdgeCity1(int edgeId) {
+        return edgeCity1[edgeId];
+    }
+
+    public int getEdgeCity2(int edgeId) {
+        return edgeCity2[edgeId];
+    }
+
+    /**
+     * Get the city at the other end of a route
+     */
+    public int getOtherCity(int edgeId, int cityId) {
+        return edgeCity1[edgeId] == cityId ? edgeCity2[edgeId] : edgeCity1[edgeId];
+    }
+
+    public int getWeight(int edgeId) {
+        return edgeWeight[edgeId];
+    }
+
+    public int getFerryCount(int edgeId) {
+        return edgeFerryCount[edgeId];
+    }
+
+    public boolean isTunnel(int edgeId) {
+        return edgeTunnel[edgeId];
+    }
+
+    /**
+     * Get the color of a route (null if multicolor)
+     */
+    public Color getColor(int edgeId) {
+        return edgeColor[edgeId];
+    }
+
+    /**
+     * Index of the first route of a city in the incidence list (see getIncidentEdge)
+     */
+    public int getIncidentStart(int cityId) {
+        return incidentOffsets[cityId];
+    }
+
+    /**
+     * Index one past the last route of a city in the incidence list
+     */
+    public int getIncidentEnd(int cityId) {
+        return incidentOffsets[cityId + 1];
+    }
+
+    /**
+     * Route id at a position of the incidence list. Iterate a city's routes with
+     * for (int i = getIncidentStart(c); i < getIncidentEnd(c); i++) getIncidentEdge(i)
+     */
+    public int getIncidentEdge(int index) {
+        return incidentEdges[index];
+    }
+
+    public int getDegree(int cityId) {
+        return incidentOffsets[cityId + 1] - incidentOffsets[cityId];
+    }
+
+    /**
+     * A city's routes as a bitset over route ids (see PlayerNetwork), shared by every game on this
+     * topology. Callers must not modify it.
+     */
+    long[] getIncidentMask(int cityId) {
+        long[][] masks = incidentMasks;
+        if (masks == null) {
+            masks = new long[cityNames.length][PlayerNetwork.wordsFor(edgeCity1.length)];
+            for (int c = 0; c < cityNames.length; c++) {
+                for (int i = incidentOffsets[c]; i < incidentOffsets[c + 1]; i++) {
+                    masks[c][incidentEdges[i] >>> 6] |= 1L << incidentEdges[i];
+                }
+            }
+            incidentMasks = masks; // Racing builders produce identical arrays
+        }
+        return masks[cityId];
+    }
+}
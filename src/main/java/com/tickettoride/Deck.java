@@ -10,29 +10,76 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Random;
 
 public abstract class Deck {
 
     protected Deque<Card> cards;
     protected List<Card> discardPile;
+    protected Random random;
 
     public Deck() {
         cards = new ArrayDeque<>();
         discardPile = new ArrayList<>();
+        random = new Random();
+    }
+
+    /**
+     * Sets the random source used for shuffling (seed it for reproducible games)
+     */
+    public void setRandom(Random random) {
+        if (random == null) {
+            throw new IllegalArgumentException("Random cannot be null");
+        }
+        this.random = random;
+    }
+
+    /**
+     * Number of cards left in the draw pile
+     */
+    public int size() {
+        return cards.size();
     }
 
     public void addCard(Card card) {
         cards.add(card);
     }  
 
+    /**
+     * Load cards from a CSV file. First line is header and is skipped
+     */
     public void loadCardsFromFile(String filePath) {
-        System.out.print("Please enter the deck file name:  " + filePath);
+        loadCards(readCardLines(filePath));
+    }
+
+    /**
+     * Load cards from the data lines of a card file (header already removed)
+     */
+    public void loadCards(List<String> fileLines) {
+        for (String fileLine : fileLines) {
+            Card card = this.parseCard(fileLine);
+
+            cards.add(card);
+        }
+    }
+
+    /**
+     * Read the data lines of a CSV card file. First line is header and is skipped
+     * @return The non-empty lines after the header (empty if the file can't be read)
+     */
+    public static List<String> readCardLines(String filePath) {
+        List<String> lines = new ArrayList<>();
+        boolean isFirstLine = true;
         try (Scanner scanner = new Scanner(new File(filePath))) {
             while (scanner.hasNextLine()) {
-                String fileLine = scanner.nextLine();
-                Card card = this.parseCard(fileLine);
-                
-                cards.add(card);
+                String fileLine = scanner.nextLine().trim();
+
+                // Skip header row and empty lines
+                if (isFirstLine || fileLine.isEmpty()) {
+                    isFirstLine = false;
+                    continue;
+                }
+                lines.add(fileLine);
             }
         }
         catch (FileNotFoundException e) {
@@ -43,18 +90,29 @@ public abstract class Deck {
             System.out.println("Error reading card file: " + filePath);
             System.out.println("Exception: " + e.getMessage());
         }
+        return lines;
     }
 
     public void shuffle() {
-        Collections.shuffle(discardPile);
+        Collections.shuffle(discardPile, random);
 
         for (int i = 0; i < discardPile.size(); i++) { //Needs to be Card because of DiscardPile being implemented from generic class
             Card card = discardPile.get(i);
             card.setLocation("DECK");
-            this.addCard(card);
+            cards.add(card); // Not addCard: the card is moving within the deck, not joining it
         }
         discardPile.clear();
     }
 
+    /**
+     * Shuffles the cards still in the draw pile (used once the deck is loaded)
+     */
+    public void shuffleDrawPile() {
+        List<Card> pile = new ArrayList<>(cards);
+        Collections.shuffle(pile, random);
+        cards.clear();
+        cards.addAll(pile);
+    }
+
     public abstract Card parseCard(String fileLine);
 }
@@ -0,0 +1,22 @@
+package com.tickettoride;
+
+/**
+ * Kinds of state change reported through the GameDeltaStream.
+ * Each type documents how the index and value fields of a GameDelta are used.
+ */
+public enum DeltaType {
+    ROUTE_CLAIMED,     // index = edge id, value = train cost of the route
+    VISIBLE_SLOT,      // index = visible slot (0-4), value = Color ordinal or -1 if empty
+    HAND_SIZE,         // index = Color ordinal, value = new count of that color in the hand
+    TRAINS,            // value = trains remaining
+    POINTS,            // value = new point total
+    TICKET_COMPLETED,  // value = points awarded, cardId = destination card id
+    TICKET_KEPT,       // value = points on the card, cardId = destination card id
+    TUNNEL_DRAWN,      // index = edge id, value = extra cards required by the tunnel draw
+    TURN_ENDED;        // index = turn number (starting at 0) of the turn that just ended
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
@@ -10,6 +10,8 @@ public class DestinationCard extends Card {
     private String city2;
     private int points;
     private boolean completed; //Dependent on gameplay, implementation may vary
+    private CityRef cityRef1; // resolved on the game's map, null until GameMap.resolveDestination()
+    private CityRef cityRef2;
 
     /**
      * Constructor for DestinationCard
@@ -49,6 +51,28 @@ public class DestinationCard extends Card {
         return points;
     }
 
+    /**
+     * Get the resolved first city (null until resolved on a map)
+     */
+    public CityRef getCityRef1() {
+        return cityRef1;
+    }
+
+    /**
+     * Get the resolved second city (null until resolved on a map)
+     */
+    public CityRef getCityRef2() {
+        return cityRef2;
+    }
+
+    /**
+     * Cache the cities resolved on the game's map (done by GameMap.resolveDestination)
+     */
+    public void setCityRefs(CityRef cityRef1, CityRef cityRef2) {
+        this.cityRef1 = cityRef1;
+        this.cityRef2 = cityRef2;
+    }
+
     /**
      * Check if destination has been completed
      */
@@ -2,6 +2,8 @@ package com.tickettoride;
 
 import com.tickettoride.Deck;
 import com.tickettoride.Card;
+import java.util.List;
+import java.util.ArrayList;
 
 public class DestinationDeck extends Deck {
 
@@ -42,9 +44,28 @@ public class DestinationDeck extends Deck {
         }
     }
 
+    /**
+     * Get the destination cards still in the draw pile, in draw order
+     */
+    public List<DestinationCard> getCards() {
+        List<DestinationCard> list = new ArrayList<>();
+        for (Card card : cards) {
+            list.add((DestinationCard) card);
+        }
+        return list;
+    }
+
+    /**
+     * Draws destination cards for a player to choose from. Returned tickets are shuffled back
+     * in when the draw pile runs short.
+     * @throws IllegalStateException if fewer than numCards tickets are left (no card is drawn)
+     */
     public DestinationCard[] drawDestinations(String playerId,int numCards) {
         DestinationCard[] choices = new DestinationCard[numCards];
-        if (cards.isEmpty()) {
+        if (cards.size() < numCards) {
+            shuffle();
+        }
+        if (cards.size() < numCards) {
             throw new IllegalStateException("Deck is empty");
         }
         for (int i = 0; i < numCards; i++) {
@@ -1,8 +1,7 @@
 package com.tickettoride;
 
 import java.util.Scanner;
-import java.util.Hashtable;
-import java.util.List;
+import java.util.Random;
 
 public class Game { 
     private Player[] allPlayers;
@@ -12,20 +11,50 @@ public class Game {
     private int turns;
     private Scanner input;
     private boolean isGameOver;
+    private TicketEstimator ticketEstimator;
+    private GameSnapshotPublisher snapshotPublisher;
+    private TicketBlockTracker ticketBlockTracker;
+    private RouteHintService routeHints;
 
     public Game(Player[] allPlayers, GameMap map) {
         this.allPlayers = allPlayers;
         this.map = map;
-        this.colorDeck = new ColorDeck();
-        colorDeck.loadCardsFromFile("data/colors/europe.csv");
+        this.colorDeck = new ColorDeck(); // Loads and shuffles the default color cards
         this.destinationDeck = new DestinationDeck();
         destinationDeck.loadCardsFromFile("data/destinations/american.csv");
+        destinationDeck.shuffleDrawPile();
+        setUp();
+    }
+
+    /**
+     * Creates a game on a shared map bundle (see MapRegistry)
+     * @param allPlayers Players in turn order, already attached to map
+     * @param map A map created with bundle.newMap()
+     * @param bundle The bundle the decks are dealt from
+     */
+    public Game(Player[] allPlayers, GameMap map, MapBundle bundle) {
+        this.allPlayers = allPlayers;
+        this.map = map;
+        Random random = new Random();
+        this.colorDeck = bundle.newColorDeck(random);
+        this.destinationDeck = bundle.newDestinationDeck(random);
+        setUp();
+    }
+
+    private void setUp() {
         this.input = new Scanner(System.in);
         this.isGameOver = false;
         
         // Set decks on GameMap (shared by all players)
         map.setColorDeck(colorDeck);
         map.setDestinationDeck(destinationDeck);
+
+        // Spectators and dashboards read the snapshot published after each turn
+        this.snapshotPublisher = GameSnapshotPublisher.attach(map, allPlayers);
+
+        // Warns players when a claim blocks one of their tickets or makes it more expensive
+        this.ticketBlockTracker = TicketBlockTracker.attach(map, allPlayers);
+        this.routeHints = RouteHintService.attach(map, allPlayers);
     }
 
     public void startGame() {
@@ -38,7 +67,7 @@ public class Game {
         // Deal initial color cards to all players
         for (int i = 0; i < 7; i++) {
             for (Player player: allPlayers) {
-                colorDeck.drawMystery(player.getPlayerId());
+                player.drawColorCard(true, -1);
             }
         }
 
@@ -70,12 +99,17 @@ public class Game {
             default: displayMessage("Invalid choice. Please enter a valid choice."); break;
         }
         checkDestinationCards(player);
+        map.getDeltaStream().emit(DeltaType.TURN_ENDED, player.getPlayerId(), turns, 0, null);
+        for (TicketBlockTracker.Alert alert : ticketBlockTracker.drainAlerts()) {
+            displayMessage("Warning: " + alert);
+        }
 
         displayMessage(player + "'s + turn complete!");
     }
 
     public void endGame() {
         System.out.println("Game ended!");
+        displayFinalScores();
         if (input != null) {
             input.close();
         }
@@ -135,8 +169,19 @@ public class Game {
      */
     private String promptStringLine(String prompt) {
         System.out.print(prompt);
-        input.nextLine(); // Consume any leftover newline
-        return input.nextLine();
+        return nextNonBlankLine();
+    }
+
+    /**
+     * Reads the next line with any text on it. Skips the rest of the line left behind by
+     * a token read (next()) and blank lines, so piped input works as well as typed input.
+     */
+    private String nextNonBlankLine() {
+        String line = input.nextLine();
+        while (line.trim().isEmpty()) {
+            line = input.nextLine();
+        }
+        return line;
     }
 
     // ============ Game Action Handlers ============
@@ -149,19 +194,17 @@ public class Game {
         DestinationCard[] cards = destinationDeck.drawDestinations(player.getPlayerId(), 5);
         
         displayMessage("\n" + player.getPlayerId() + ", you drew 5 destination cards:");
-        for (int i = 0; i < 5; i++) {
-            displayMessage((i + 1) + ". " + cards[i].getCity1() + " to " + cards[i].getCity2() + " (" + cards[i].getPoints() + " points)");
-        }
+        displayDestinationChoices(player, cards);
         
-        displayMessage("Pick three cards to keep (enter two numbers 1-5, separated by space):");
+        displayMessage("Pick three cards to keep (enter three numbers 1-5, separated by space):");
         
         int[] choices = new int[3];
         boolean valid = false;
         while (!valid) {
-            String inputLine = input.nextLine().trim();
+            String inputLine = nextNonBlankLine().trim();
             String[] parts = inputLine.split("\\s+");
             
-            if (parts.length == 2) {
+            if (parts.length == 3) {
                 try {
                     int choice1 = Integer.parseInt(parts[0]);
                     int choice2 = Integer.parseInt(parts[1]);
@@ -184,11 +227,11 @@ public class Game {
             }
         }
         
-        // Keep the two selected cards, discard the other three
+        // Keep the three selected cards, discard the other two
         for (int i = 0; i < 5; i++) {
             boolean keep = (i + 1 == choices[0] || i + 1 == choices[1] || i + 1 == choices[2]);
             if (keep) {
-                player.getDestinationCards().add(cards[i]);
+                player.keepDestinationCard(cards[i]);
             } else {
                 cards[i].setLocation("DISCARD");
                 map.getDestinationDeck().discardPile.add(cards[i]);
@@ -206,9 +249,7 @@ public class Game {
         DestinationCard[] cards = player.drawDestinationCards();
         
         displayMessage("\n" + player.getPlayerId() + ", you drew 3 destination cards:");
-        for (int i = 0; i < 3; i++) {
-            displayMessage((i + 1) + ". " + cards[i].getCity1() + " to " + cards[i].getCity2() + " (" + cards[i].getPoints() + " points)");
-        }
+        displayDestinationChoices(player, cards);
         
         int choice = promptInt("Pick one card to keep (1-3): ", 1, 3);
         
@@ -220,6 +261,20 @@ public class Game {
         }
     }
 
+    /**
+     * Lists drawn destination cards with their estimated chance of completion
+     */
+    private void displayDestinationChoices(Player player, DestinationCard[] cards) {
+        if (ticketEstimator == null) {
+            ticketEstimator = new TicketEstimator(map);
+        }
+        double[] chances = ticketEstimator.estimate(player, allPlayers, cards);
+        for (int i = 0; i < cards.length; i++) {
+            displayMessage((i + 1) + ". " + cards[i].getCity1() + " to " + cards[i].getCity2() + " (" + cards[i].getPoints() + " points)"
+                    + String.format(" - about %.0f%% likely to complete", chances[i] * 100));
+        }
+    }
+
     /**
      * Handles drawing two color cards
      * @param player The player drawing the card
@@ -258,7 +313,7 @@ public class Game {
                         displayMessage((j + 1) + ". " + card.getColor().toDisplayString());
 
                     } else {
-                        displayMessage((i + 1) + ". (empty)");
+                        displayMessage((j + 1) + ". (empty)");
                     }
                 }
                 
@@ -322,7 +377,10 @@ public class Game {
         int extraTunnelCost = 0;
         boolean isTunnel = map.isRouteTunnel(city1, city2);
         if (isTunnel) {
-            displayMessage("\nThis is a tunnel! Drawing 3 cards to determine extra cost...");
+            double[] odds = colorDeck.getTunnelCostDistribution(colorChoice);
+            displayMessage("\nThis is a tunnel! Chance of extra cost: "
+                    + String.format("0: %.0f%%, 1: %.0f%%, 2: %.0f%%, 3: %.0f%%", odds[0] * 100, odds[1] * 100, odds[2] * 100, odds[3] * 100));
+            displayMessage("Drawing 3 cards to determine extra cost...");
             extraTunnelCost = handleTunnelDraw(colorChoice);
             displayMessage("Extra tunnel cost: " + extraTunnelCost + " card(s).");
         }
@@ -351,6 +409,10 @@ public class Game {
         for (int i = 1; i <= 3; i++) {
             displayMessage("Drawing card " + i + " of 3...");
             ColorCard drawn = colorDeck.drawMysteryToDiscard();
+            if (drawn == null) {
+                displayMessage("  → The deck is empty, no more cards to draw.");
+                break;
+            }
             
             // Display the drawn card
             String cardColor = drawn.getColor().toDisplayString();
@@ -392,20 +454,41 @@ public class Game {
         displayMessage("==================\n");
     }
 
+    /**
+     * Displays the final score breakdown for every player and announces the winner
+     */
+    public void displayFinalScores() {
+        ScoreBreakdown[] scores = new ScoringEngine().score(this);
+        displayMessage("\n=== Final Scores ===");
+        ScoreBreakdown winner = null;
+        for (ScoreBreakdown score : scores) {
+            displayMessage(score.toString());
+            if (winner == null || score.getTotal() > winner.getTotal()) {
+                winner = score;
+            }
+        }
+        if (winner != null) {
+            displayMessage("Winner: " + winner.getPlayerId() + " with " + winner.getTotal() + " points!");
+        }
+        displayMessage("====================\n");
+    }
+
     /**
      * Displays a player's hand
      * @param player The player whose hand to display
      */
     public void displayPlayerHand(Player player) {
         displayMessage("\n" + player.getPlayerId() + "'s hand:");
-        Hashtable<Color, List<ColorCard>> hand = player.getHand();
         for (Color color : Color.values()) {
-            List<ColorCard> cards = hand.get(color);
-            if (cards != null && !cards.isEmpty()) {
-                displayMessage(color.toDisplayString() + ": " + cards.size());
+            int count = player.getCardCount(color);
+            if (count > 0) {
+                displayMessage(color.toDisplayString() + ": " + count);
             }
         }
         displayMessage("Destination cards: " + player.getDestinations());
+        for (RouteHintService.Hint hint : routeHints.getHints(player.getPlayerId())) {
+            displayMessage("  Hint: " + hint);
+        }
     }
 
     // ============ Getters ============
@@ -425,4 +508,11 @@ public class Game {
     public Player[] getAllPlayers() {
         return allPlayers;
     }
+
+    /**
+     * Gets the publisher of per-turn snapshots (safe to read from any thread)
+     */
+    public GameSnapshotPublisher getSnapshotPublisher() {
+        return snapshotPublisher;
+    }
 }
\ No newline at end of file
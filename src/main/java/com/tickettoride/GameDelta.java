@@ -0,0 +1,62 @@
+package com.tickettoride;
+
+/**
+ * A single compact, immutable state change emitted by the game engine.
+ * Clients apply deltas in sequence order to stay in sync without full snapshots.
+ */
+public class GameDelta {
+    private final long sequence;
+    private final DeltaType type;
+    private final String playerId; // null for changes not tied to a player (e.g. visible slots)
+    private final int index;
+    private final int value;
+    private final String cardId;   // null unless the change concerns a specific card
+
+    public GameDelta(long sequence, DeltaType type, String playerId, int index, int value, String cardId) {
+        this.sequence = sequence;
+        this.type = type;
+        this.playerId = playerId;
+        this.index = index;
+        this.value = value;
+        this.cardId = cardId;
+    }
+
+    /**
+     * Monotonically increasing sequence number (starts at 1)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public DeltaType getType() {
+        return type;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Edge id, visible slot or Color ordinal depending on the type (see DeltaType)
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * New value for the changed field (see DeltaType)
+     */
+    public int getValue() {
+        return value;
+    }
+
+    public String getCardId() {
+        return cardId;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + (playerId != null ? " " + playerId : "")
+                + " [" + index + "]=" + value + (cardId != null ? " card " + cardId : "");
+    }
+}
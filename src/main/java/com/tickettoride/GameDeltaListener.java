@@ -0,0 +1,8 @@
+package com.tickettoride;
+
+/**
+ * Receives every GameDelta as soon as it is emitted
+ */
+public interface GameDeltaListener {
+    void onDelta(GameDelta delta);
+}
@@ -0,0 +1,113 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * GameDeltaStream - sequence-numbered feed of every state change in a game.
+ * Listeners are pushed each delta immediately; clients that render per frame
+ * can instead enable the frame buffer and call drainFrame() once per frame.
+ * Nothing is allocated while there are no listeners and the buffer is off.
+ * Listeners are called outside the stream's lock, so a slow listener does not hold up
+ * other threads emitting into the same game; deltas emitted concurrently may reach a
+ * listener in a different order than their sequence numbers. A listener added while
+ * holding the stream's lock receives every delta numbered after that point.
+ */
+public class GameDeltaStream {
+
+    private static final GameDeltaListener[] NO_LISTENERS = new GameDeltaListener[0];
+
+    private long lastSequence;
+    private GameDeltaListener[] listeners; // copied on change, so emit() can call them after leaving the lock
+    private List<GameDelta> frameBuffer; // null while frame buffering is disabled
+
+    public GameDeltaStream() {
+        this.lastSequence = 0;
+        this.listeners = NO_LISTENERS;
+        this.frameBuffer = null;
+    }
+
+    public synchronized void addListener(GameDeltaListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        GameDeltaListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    public synchronized void removeListener(GameDeltaListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                GameDeltaListener[] removed = new GameDeltaListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, removed, 0, i);
+                System.arraycopy(listeners, i + 1, removed, i, removed.length - i);
+                listeners = removed.length == 0 ? NO_LISTENERS : removed;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start collecting deltas for drainFrame()
+     */
+    public synchronized void enableFrameBuffer() {
+        if (frameBuffer == null) {
+            frameBuffer = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Check if anyone is consuming deltas
+     */
+    public synchronized boolean isActive() {
+        return frameBuffer != null || listeners.length > 0;
+    }
+
+    /**
+     * Get the sequence number of the most recently emitted delta (0 if none)
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Emit a delta to all listeners and the frame buffer
+     * @return The emitted delta, or null if nobody is consuming deltas
+     */
+    public GameDelta emit(DeltaType type, String playerId, int index, int value, String cardId) {
+        GameDeltaListener[] notify;
+        GameDelta delta;
+        synchronized (this) {
+            // Read under the lock: a listener that attaches while holding the lock sees every
+            // change before it registered, and gets every delta emitted after
+            notify = listeners;
+            if (frameBuffer == null && notify.length == 0) {
+                return null;
+            }
+            delta = new GameDelta(++lastSequence, type, playerId, index, value, cardId);
+            if (frameBuffer != null) {
+                frameBuffer.add(delta);
+            }
+        }
+        for (GameDeltaListener listener : notify) {
+            listener.onDelta(delta);
+        }
+        return delta;
+    }
+
+    /**
+     * Returns every delta emitted since the previous call, in sequence order
+     * @return List of deltas (a shared empty list if nothing changed or buffering is disabled)
+     */
+    public synchronized List<GameDelta> drainFrame() {
+        if (frameBuffer == null || frameBuffer.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<GameDelta> frame = frameBuffer;
+        frameBuffer = new ArrayList<>();
+        return frame;
+    }
+}
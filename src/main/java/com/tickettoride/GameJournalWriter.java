@@ -0,0 +1,208 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * GameJournalWriter - appends finished games to a compact binary journal file.
+ *
+ * File layout (big-endian):
+ *   header: MAGIC, VERSION, header length, route table (source, destination),
+ *           ticket table (id, city1, city2, points)
+ *   blocks: BLOCK_MAGIC, byte length, game count, then the games of the block back to back
+ *   game:   GAME_START, player count, events..., GAME_END, turns
+ *   events: ROUTE player edge | KEPT player ticket | DONE player ticket | TUNNEL player edge extra
+ *
+ * Games never span blocks, so a reader can split a file at block boundaries and decode
+ * blocks in parallel. Each game is recorded from its GameDeltaStream by a Recorder and
+ * appended in one piece, so many games can record into the same writer concurrently.
+ */
+public class GameJournalWriter implements Closeable {
+
+    public static final int MAGIC = 0x54545231;        // "TTR1"
+    public static final int BLOCK_MAGIC = 0x424C4B31;  // "BLK1"
+    public static final short VERSION = 1;
+
+    public static final byte GAME_START = 'G';
+    public static final byte GAME_END = 'E';
+    public static final byte ROUTE = 'R';
+    public static final byte TICKET_KEPT = 'K';
+    public static final byte TICKET_DONE = 'D';
+    public static final byte TUNNEL = 'T';
+
+    private static final int BLOCK_SIZE = 1 << 20; // Flush a block once it reaches about 1 MB
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> ticketIndex;
+    private final ByteArrayOutputStream block;
+    private int gamesInBlock;
+    private long gamesWritten;
+
+    /**
+     * Creates a journal file for games played on one map
+     * @param filePath Journal file to create (overwritten if it exists)
+     * @param map The map every journaled game is played on (for the route table)
+     * @param tickets Every destination card of the map (for the ticket table)
+     * @throws IOException if the file cannot be created
+     */
+    public GameJournalWriter(String filePath, GameMap map, List<DestinationCard> tickets) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16));
+        this.ticketIndex = new HashMap<>();
+        this.block = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(map.getEdgeCount());
+        for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+            header.writeUTF(map.getRouteSource(edgeId));
+            header.writeUTF(map.getRouteDestination(edgeId));
+        }
+        header.writeInt(tickets.size());
+        for (int i = 0; i < tickets.size(); i++) {
+            DestinationCard card = tickets.get(i);
+            ticketIndex.put(card.getCardId(), i);
+            header.writeUTF(card.getCardId());
+            header.writeUTF(card.getCity1());
+            header.writeUTF(card.getCity2());
+            header.writeShort(card.getPoints());
+        }
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(headerBytes.size()); // Lets readers jump straight to the first block
+        headerBytes.writeTo(out);
+    }
+
+    /**
+     * Starts recording a game. Call before the game begins and finish() when it is over.
+     * @param map The game's map (the recorder listens to its delta stream)
+     * @param allPlayers Players in seat order
+     * @return The recorder for this game
+     */
+    public Recorder record(GameMap map, Player[] allPlayers) {
+        Recorder recorder = new Recorder(map, allPlayers);
+        map.getDeltaStream().addListener(recorder);
+        return recorder;
+    }
+
+    /**
+     * Appends one encoded game, flushing the current block when it is full
+     */
+    private synchronized void appendGame(byte[] game) throws IOException {
+        block.write(game);
+        gamesInBlock++;
+        gamesWritten++;
+        if (block.size() >= BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (gamesInBlock == 0) {
+            return;
+        }
+        out.writeInt(BLOCK_MAGIC);
+        out.writeInt(block.size());
+        out.writeInt(gamesInBlock);
+        block.writeTo(out);
+        block.reset();
+        gamesInBlock = 0;
+    }
+
+    public synchronized long getGamesWritten() {
+        return gamesWritten;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flushBlock();
+        out.close();
+    }
+
+    /**
+     * Recorder - encodes the deltas of one game into its own buffer
+     */
+    public class Recorder implements GameDeltaListener {
+        private final GameMap map;
+        private final Map<String, Integer> seats;
+        private final ByteArrayOutputStream buffer;
+        private final DataOutputStream data;
+        private int turns;
+
+        private Recorder(GameMap map, Player[] allPlayers) {
+            this.map = map;
+            this.seats = new HashMap<>();
+            this.buffer = new ByteArrayOutputStream(512);
+            this.data = new DataOutputStream(buffer);
+            for (int i = 0; i < allPlayers.length; i++) {
+                seats.put(allPlayers[i].getPlayerId(), i);
+            }
+            writeByte(GAME_START);
+            writeByte(allPlayers.length);
+        }
+
+        @Override
+        public void onDelta(GameDelta delta) {
+            Integer seat = delta.getPlayerId() != null ? seats.get(delta.getPlayerId()) : null;
+            switch (delta.getType()) {
+                case ROUTE_CLAIMED:
+                    write(ROUTE, seat, delta.getIndex());
+                    break;
+                case TICKET_KEPT:
+                    write(TICKET_KEPT, seat, ticketIndex.getOrDefault(delta.getCardId(), -1));
+                    break;
+                case TICKET_COMPLETED:
+                    write(TICKET_DONE, seat, ticketIndex.getOrDefault(delta.getCardId(), -1));
+                    break;
+                case TUNNEL_DRAWN:
+                    write(TUNNEL, seat, delta.getIndex());
+                    writeByte(delta.getValue());
+                    break;
+                case TURN_ENDED:
+                    turns++;
+                    break;
+                default:
+                    break; // Cards, trains and points are not journaled
+            }
+        }
+
+        /**
+         * Ends the game record and appends it to the journal
+         * @throws IOException if the journal cannot be written
+         */
+        public void finish() throws IOException {
+            map.getDeltaStream().removeListener(this);
+            data.writeByte(GAME_END);
+            data.writeShort(turns);
+            appendGame(buffer.toByteArray());
+        }
+
+        /**
+         * Writes an event: tag, seat (-1 if unknown) and a route or ticket id
+         */
+        private void write(byte tag, Integer seat, int id) {
+            writeByte(tag);
+            writeByte(seat != null ? seat : -1);
+            try {
+                data.writeShort(id);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error writing journal record", e); // Not thrown by in-memory streams
+            }
+        }
+
+        private void writeByte(int value) {
+            try {
+                data.writeByte(value);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error writing journal record", e);
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -22,6 +24,9 @@ public class GameMap {
     protected class WeightedGraph {
         protected Map<String, List<Edge>> adjacencyList;
         protected Set<String> cities;
+        protected Map<String, Integer> cityIds; // dense city id per normalized name
+        protected List<String> cityNames;       // indexed by city id
+        protected List<Edge> edgeList; // indexed by edge id
 
         /**
          * Color enum for Ticket to Ride route colors
@@ -34,29 +39,40 @@ public class GameMap {
          * Stores destination, weight (distance), tunnel status, ferry count, color, and claim state
          */
         protected class Edge {
+            private int id;  // dense index into edgeList
+            private String source;
             private String destination;
             private int weight;
             private boolean isTunnel;
             private int ferryCount;
             private Color color;  // null = multicolor/wildcard
-            private String claimedBy;  // null = unclaimed
+            private final AtomicReference<String> claimedBy = new AtomicReference<>();  // null = unclaimed; CAS so concurrent claims can't both win
 
-            public Edge(String destination, int weight, boolean isTunnel, int ferryCount, Color color) {
+            public Edge(int id, String source, String destination, int weight, boolean isTunnel, int ferryCount, Color color) {
                 // Validate ferryCount is less than weight
                 if (ferryCount >= weight) {
                     throw new IllegalArgumentException("Ferry count must be less than weight");
                 }
+                this.id = id;
+                this.source = source;
                 this.destination = destination;
                 this.weight = weight;
                 this.isTunnel = isTunnel;
                 this.ferryCount = ferryCount;
                 this.color = color;  // null is valid (multicolor)
-                this.claimedBy = null;  // Initially unclaimed
             }
 
             /**
              * Accessor methods for immutable properties
              */
+            public int getId() {
+                return id;
+            }
+
+            public String getSource() {
+                return source;
+            }
+
             public String getDestination() {
                 return destination;
             }
@@ -93,7 +109,7 @@ public class GameMap {
              * Claim state methods
              */
             public String getClaimedBy() {
-                return claimedBy;
+                return claimedBy.get();
             }
 
             /**
@@ -101,26 +117,37 @@ public class GameMap {
              * Throws exception if edge is already claimed
              */
             public void claim(String playerIdentifier) {
-                if (getClaimedBy() != null) {
-                    throw new IllegalStateException("Route already claimed by " + claimedBy);
+                if (!tryClaim(playerIdentifier)) {
+                    throw new IllegalStateException("Route already claimed by " + claimedBy.get());
                 }
+            }
+
+            /**
+             * Atomically claim the edge if nobody owns it yet
+             * @return true if this call claimed it, false if it was already claimed
+             */
+            public boolean tryClaim(String playerIdentifier) {
                 if (playerIdentifier == null || playerIdentifier.trim().isEmpty()) {
                     throw new IllegalArgumentException("Player identifier cannot be null or empty");
                 }
-                this.claimedBy = playerIdentifier;
+                return claimedBy.compareAndSet(null, playerIdentifier);
             }
 
             /**
-             * Unclaim the edge (make it available again), WILL NEVER BE USED
+             * Unclaim the edge (make it available again); only used to give back a claim whose
+             * payment failed (GameMap.releaseRoute)
              */
             public void unclaim() {
-                this.claimedBy = null;
+                claimedBy.set(null);
             }
         }
 
         protected WeightedGraph() {
             this.adjacencyList = new HashMap<>();
             this.cities = new HashSet<>();
+            this.cityIds = new HashMap<>();
+            this.cityNames = new ArrayList<>();
+            this.edgeList = new ArrayList<>();
         }
 
         /**
@@ -132,7 +159,10 @@ public class GameMap {
                 throw new IllegalArgumentException("City name cannot be null or empty");
             }
             city = city.trim().toLowerCase();
-            cities.add(city);
+            if (cities.add(city)) {
+                cityIds.put(city, cityNames.size());
+                cityNames.add(city);
+            }
             // Initialize empty adjacency list for the city
             adjacencyList.putIfAbsent(city, new ArrayList<>());
         }
@@ -150,6 +180,9 @@ public class GameMap {
          * @param color Color enum value, or null for multicolor/wildcard routes
          */
         public void addEdge(String source, String destination, int weight, boolean isTunnel, int ferryCount, Color color) {
+            source = source.trim().toLowerCase();
+            destination = destination.trim().toLowerCase();
+
             // Validate that both cities exist
             if (!hasCity(source)) {
                 throw new IllegalArgumentException("Source city '" + source + "' does not exist. Add cities first.");
@@ -164,8 +197,9 @@ public class GameMap {
             }
 
             // Create edge and add to source's adjacency list
-            Edge edge = new Edge(destination, weight, isTunnel, ferryCount, color);
+            Edge edge = new Edge(edgeList.size(), source, destination, weight, isTunnel, ferryCount, color);
             adjacencyList.get(source).add(edge);
+            edgeList.add(edge);
         }
 
         /**
@@ -210,29 +244,37 @@ public class GameMap {
          * @return Edge if found, null otherwise
          */
         protected Edge getEdge(String source, String destination) {
-            source = source.trim().toLowerCase();
-            destination = destination.trim().toLowerCase();
+            source = normalize(source);
+            destination = normalize(destination);
             
             List<Edge> edges = adjacencyList.get(source);
             if (edges != null) {
-                for (Edge edge : edges) {
-                    if (edge.getDestination().equals(destination)) {
-                        return edge;
+                for (int i = 0; i < edges.size(); i++) {
+                    if (edges.get(i).getDestination().equals(destination)) {
+                        return edges.get(i);
                     }
                 }
             }
             // Check reverse direction (undirected graph)
             edges = adjacencyList.get(destination);
             if (edges != null) {
-                for (Edge edge : edges) {
-                    if (edge.getDestination().equals(source)) {
-                        return edge;
+                for (int i = 0; i < edges.size(); i++) {
+                    if (edges.get(i).getDestination().equals(source)) {
+                        return edges.get(i);
                     }
                 }
             }
             return null;
         }
 
+        /**
+         * Normalized form of a city name. Names that are already known are returned as is,
+         * so lookups with stored names (the usual case outside the UI) create no strings.
+         */
+        protected String normalize(String city) {
+            return cityIds.containsKey(city) ? city : city.trim().toLowerCase();
+        }
+
         /**
          * Load edges from a CSV file
          * Format: source,destination,weight,isTunnel,ferryCount,color
@@ -263,7 +305,7 @@ public class GameMap {
                     }
                     
                     // Parse CSV line
-                    String[] parts = line.split(",");
+                    String[] parts = line.split(",", -1); // Keep trailing empty color column
                     if (parts.length != 6) {
                         System.out.println("Error on line " + lineNumber + ": Expected 6 columns, found " + parts.length);
                         continue;
@@ -312,6 +354,15 @@ public class GameMap {
     private WeightedGraph map;
     private ColorDeck colorDeck;
     private DestinationDeck destinationDeck;
+    private GameDeltaStream deltaStream;
+    // Built lazily and reset when map data is loaded. compactGraph is written last, so a thread
+    // that sees it also sees the handles and claimed network built with it (claims read these
+    // without taking the map's lock).
+    private volatile CompactGraph compactGraph;
+    private CityRef[] cityRefs;
+    private RouteRef[] routeRefs;
+    private final Map<String, PlayerNetwork> networks = new ConcurrentHashMap<>(); // by player id
+    private volatile PlayerNetwork claimedNetwork; // every claimed route, created with the CompactGraph
 
     /**
      * Default constructor - creates empty GameMap.
@@ -319,6 +370,7 @@ public class GameMap {
      */
     public GameMap() {
         map = new WeightedGraph();
+        deltaStream = new GameDeltaStream();
     }
 
     /**
@@ -328,9 +380,31 @@ public class GameMap {
      */
     public GameMap(String cityFilePath, String edgeFilePath) {
         map = new WeightedGraph();
+        deltaStream = new GameDeltaStream();
         loadFromFiles(cityFilePath, edgeFilePath);
     }
 
+    /**
+     * Constructor that copies a topology that is already loaded (see MapBundle).
+     * The new map shares the immutable CompactGraph but has its own claims, decks and delta stream.
+     * @param topology The topology to copy
+     */
+    public GameMap(CompactGraph topology) {
+        map = new WeightedGraph();
+        deltaStream = new GameDeltaStream();
+        for (int cityId = 0; cityId < topology.getCityCount(); cityId++) {
+            map.addCity(topology.getCityName(cityId));
+        }
+        for (int edgeId = 0; edgeId < topology.getEdgeCount(); edgeId++) {
+            map.addEdge(topology.getCityName(topology.getEdgeCity1(edgeId)),
+                    topology.getCityName(topology.getEdgeCity2(edgeId)), topology.getWeight(edgeId),
+                    topology.isTunnel(edgeId), topology.getFerryCount(edgeId), topology.getColor(edgeId));
+        }
+        synchronized (this) {
+            publish(topology); // Same ids in the same order, so the handles match it
+        }
+    }
+
     /**
      * Loads map data from city and edge files.
      * Game class should handle prompting user for file names and call this method.
@@ -341,6 +415,11 @@ public class GameMap {
     public boolean loadFromFiles(String cityFilePath, String edgeFilePath) {
         int citiesLoaded = map.loadCitiesFromFile(cityFilePath);
         int edgesLoaded = map.loadEdgesFromFile(edgeFilePath);
+        synchronized (this) {
+            compactGraph = null; // Topology changed, handles are rebuilt on next use
+            networks.clear();    // ...and so are the networks, which are indexed by route id
+            claimedNetwork = null;
+        }
         return citiesLoaded > 0 && edgesLoaded > 0;
     }
 
@@ -352,6 +431,22 @@ public class GameMap {
         return map.cities.size();
     }
 
+    /**
+     * Gets the number of routes loaded in the map (edge ids are 0 to count - 1)
+     * @return number of routes
+     */
+    public int getEdgeCount() {
+        return map.edgeList.size();
+    }
+
+    /**
+     * Gets the stream that reports every state change in this game
+     * @return The delta stream (never null)
+     */
+    public GameDeltaStream getDeltaStream() {
+        return deltaStream;
+    }
+
     // ============ Deck Accessor Methods ============
 
     /**
@@ -360,6 +455,9 @@ public class GameMap {
      */
     public void setColorDeck(ColorDeck colorDeck) {
         this.colorDeck = colorDeck;
+        if (colorDeck != null) {
+            colorDeck.setDeltaStream(deltaStream);
+        }
     }
 
     /**
@@ -376,6 +474,15 @@ public class GameMap {
      */
     public void setDestinationDeck(DestinationDeck destinationDeck) {
         this.destinationDeck = destinationDeck;
+        if (destinationDeck != null) {
+            // Resolve every card's cities once so ticket checks never look names up again
+            for (Card card : destinationDeck.cards) {
+                resolveDestination((DestinationCard) card);
+            }
+            for (Card card : destinationDeck.discardPile) {
+                resolveDestination((DestinationCard) card);
+            }
+        }
     }
 
     /**
@@ -441,12 +548,30 @@ public class GameMap {
      * @return true if successful, false if route doesn't exist or is already claimed
      */
     public boolean claimRoute(String city1, String city2, String playerId) {
+        RouteRef route = resolveRoute(city1, city2);
+        return route != null && claimRoute(route, playerId);
+    }
+
+    /**
+     * Get the id of the route between two cities, -1 if not found
+     */
+    public int getRouteId(String city1, String city2) {
         WeightedGraph.Edge edge = map.getEdge(city1, city2);
-        if (edge == null || edge.getClaimedBy() != null) {
-            return false;
-        }
-        edge.claim(playerId);
-        return true;
+        return edge != null ? edge.getId() : -1;
+    }
+
+    /**
+     * Get the first city of a route by id (as loaded, lowercase)
+     */
+    public String getRouteSource(int edgeId) {
+        return map.edgeList.get(edgeId).getSource();
+    }
+
+    /**
+     * Get the second city of a route by id (as loaded, lowercase)
+     */
+    public String getRouteDestination(int edgeId) {
+        return map.edgeList.get(edgeId).getDestination();
     }
 
     public int getRoutePoints(String city1, String city2) {
@@ -454,8 +579,57 @@ public class GameMap {
         if (edge == null) {
             return 0;
         }
-        int weight = edge.getWeight();
+        return pointsForWeight(edge.getWeight());
+    }
+
+    // ============ Route Accessor Methods by Id ============
+
+    /**
+     * Get who owns a route by id (null if unclaimed)
+     */
+    public String getRouteOwner(int edgeId) {
+        return map.edgeList.get(edgeId).getClaimedBy();
+    }
+
+    /**
+     * Get the weight (train cost) of a route by id
+     */
+    public int getRouteWeight(int edgeId) {
+        return map.edgeList.get(edgeId).getWeight();
+    }
+
+    /**
+     * Get the color of a route by id (null if multicolor)
+     */
+    public Color getRouteColor(int edgeId) {
+        return map.edgeList.get(edgeId).getColor();
+    }
+
+    /**
+     * Check if a route is a tunnel by id
+     */
+    public boolean isRouteTunnel(int edgeId) {
+        return map.edgeList.get(edgeId).isTunnel();
+    }
+
+    /**
+     * Get the ferry count for a route by id
+     */
+    public int getRouteFerryCount(int edgeId) {
+        return map.edgeList.get(edgeId).getFerryCount();
+    }
+
+    /**
+     * Get the points awarded for claiming a route by id
+     */
+    public int getRoutePoints(int edgeId) {
+        return pointsForWeight(map.edgeList.get(edgeId).getWeight());
+    }
 
+    /**
+     * Points awarded for claiming a route of the given length
+     */
+    public static int pointsForWeight(int weight) {
         switch (weight) {
             case 1: return 1;
             case 2: return 2;
@@ -472,42 +646,247 @@ public class GameMap {
      * Check if a destination card is completed (path exists between cities using player's routes)
      */
     public boolean destinationCardCompleted(String city1, String city2, String playerId) {
-        if (!(map.hasCity(city1.toLowerCase()) && map.hasCity(city2.toLowerCase()))) {
+        CityRef from = resolveCity(city1);
+        CityRef to = resolveCity(city2);
+        if (from == null || to == null) {
             return false;
         }
-        
-        // Use a visited set to prevent infinite loops
-        Set<String> visited = new HashSet<>();
-        return findPath(city1.toLowerCase(), city2.toLowerCase(), playerId, visited);
+        return destinationCardCompleted(from, to, playerId);
     }
 
     /**
-     * Recursive helper to find a path between two cities using only player's claimed routes
+     * Check if a destination card is completed using resolved cities
+     * (breadth-first search over the player's network, in either direction)
      */
-    private boolean findPath(String current, String destination, String playerId, Set<String> visited) {
-        if (current.equals(destination)) {
+    public boolean destinationCardCompleted(CityRef city1, CityRef city2, String playerId) {
+        if (city1.getId() == city2.getId()) {
             return true;
         }
-        
-        visited.add(current);
-        
-        // Get all edges from current city
-        List<WeightedGraph.Edge> edges = map.adjacencyList.get(current);
-        if (edges == null) {
+        PlayerNetwork network = networks.get(playerId);
+        return network != null && network.connects(city1.getId(), city2.getId());
+    }
+
+    /**
+     * Check if a destination card's route is complete for a player, resolving its cities
+     * on this map first if that hasn't been done yet
+     */
+    public boolean destinationCardCompleted(DestinationCard card, String playerId) {
+        if (!resolveDestination(card)) {
             return false;
         }
-        
-        for (WeightedGraph.Edge edge : edges) {
-            String nextCity = edge.getDestination();
-            
-            // Only traverse edges claimed by this player and not yet visited
-            if (playerId.equals(edge.getClaimedBy()) && !visited.contains(nextCity)) {
-                if (findPath(nextCity, destination, playerId, visited)) {
-                    return true;
-                }
+        return destinationCardCompleted(card.getCityRef1(), card.getCityRef2(), playerId);
+    }
+
+    // ============ Resolved Handle API ============
+
+    /**
+     * Gets the int-indexed topology of this map (built on first use)
+     */
+    public CompactGraph getCompactGraph() {
+        CompactGraph graph = compactGraph;
+        return graph != null ? graph : buildCompactGraph();
+    }
+
+    private synchronized CompactGraph buildCompactGraph() {
+        if (compactGraph == null) {
+            int edgeCount = map.edgeList.size();
+            String[] names = map.cityNames.toArray(new String[0]);
+            int[] city1 = new int[edgeCount];
+            int[] city2 = new int[edgeCount];
+            int[] weight = new int[edgeCount];
+            int[] ferries = new int[edgeCount];
+            boolean[] tunnel = new boolean[edgeCount];
+            Color[] color = new Color[edgeCount];
+            for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+                WeightedGraph.Edge edge = map.edgeList.get(edgeId);
+                city1[edgeId] = map.cityIds.get(edge.getSource());
+                city2[edgeId] = map.cityIds.get(edge.getDestination());
+                weight[edgeId] = edge.getWeight();
+                ferries[edgeId] = edge.getFerryCount();
+                tunnel[edgeId] = edge.isTunnel();
+                color[edgeId] = edge.getColor();
             }
+
+            publish(new CompactGraph(names, city1, city2, weight, ferries, tunnel, color));
         }
-        
-        return false;
+        return compactGraph;
+    }
+
+    /**
+     * Creates the city and route handles and the claimed network for a CompactGraph, then
+     * publishes the graph (caller holds the map's lock)
+     */
+    private void publish(CompactGraph graph) {
+        CityRef[] cities = new CityRef[graph.getCityCount()];
+        for (int cityId = 0; cityId < cities.length; cityId++) {
+            cities[cityId] = new CityRef(this, cityId, graph.getCityName(cityId));
+        }
+        RouteRef[] routes = new RouteRef[graph.getEdgeCount()];
+        for (int edgeId = 0; edgeId < routes.length; edgeId++) {
+            routes[edgeId] = new RouteRef(edgeId, cities[graph.getEdgeCity1(edgeId)], cities[graph.getEdgeCity2(edgeId)]);
+        }
+        cityRefs = cities;
+        routeRefs = routes;
+        claimedNetwork = new PlayerNetwork(graph);
+        compactGraph = graph;
+    }
+
+    /**
+     * Resolve a city name to a handle (normalizes the name once)
+     * @return The handle, or null if the city is not on this map
+     */
+    public CityRef resolveCity(String city) {
+        if (city == null) {
+            return null;
+        }
+        getCompactGraph();
+        Integer cityId = map.cityIds.get(map.normalize(city));
+        return cityId != null ? cityRefs[cityId] : null;
+    }
+
+    /**
+     * Get the handle for a city by id
+     */
+    public CityRef getCity(int cityId) {
+        getCompactGraph();
+        return cityRefs[cityId];
+    }
+
+    /**
+     * Resolve the route between two named cities to a handle
+     * @return The handle, or null if no route connects them
+     */
+    public RouteRef resolveRoute(String city1, String city2) {
+        WeightedGraph.Edge edge = map.getEdge(city1, city2);
+        return edge != null ? getRoute(edge.getId()) : null;
+    }
+
+    /**
+     * Resolve the route between two resolved cities (no string handling)
+     * @return The handle, or null if no route connects them
+     */
+    public RouteRef resolveRoute(CityRef city1, CityRef city2) {
+        CompactGraph graph = getCompactGraph();
+        int from = city1.getId();
+        for (int i = graph.getIncidentStart(from); i < graph.getIncidentEnd(from); i++) {
+            int edgeId = graph.getIncidentEdge(i);
+            if (graph.getOtherCity(edgeId, from) == city2.getId()) {
+                return routeRefs[edgeId];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the handle for a route by id
+     */
+    public RouteRef getRoute(int edgeId) {
+        getCompactGraph();
+        return routeRefs[edgeId];
+    }
+
+    /**
+     * Resolve (once) and cache a destination card's cities on this map
+     * @return true if both cities are on this map
+     */
+    public boolean resolveDestination(DestinationCard card) {
+        CityRef ref1 = card.getCityRef1();
+        CityRef ref2 = card.getCityRef2();
+        if (ref1 == null || ref2 == null || !ref1.belongsTo(this) || !ref2.belongsTo(this)) {
+            ref1 = resolveCity(card.getCity1());
+            ref2 = resolveCity(card.getCity2());
+            card.setCityRefs(ref1, ref2);
+        }
+        return ref1 != null && ref2 != null;
+    }
+
+    public String getRouteOwner(RouteRef route) {
+        return getRouteOwner(route.getId());
+    }
+
+    public int getRouteWeight(RouteRef route) {
+        return getRouteWeight(route.getId());
+    }
+
+    public Color getRouteColor(RouteRef route) {
+        return getRouteColor(route.getId());
+    }
+
+    public boolean isRouteTunnel(RouteRef route) {
+        return isRouteTunnel(route.getId());
+    }
+
+    public int getRouteFerryCount(RouteRef route) {
+        return getRouteFerryCount(route.getId());
+    }
+
+    public int getRoutePoints(RouteRef route) {
+        return getRoutePoints(route.getId());
+    }
+
+    /**
+     * Claim a route for a player by handle
+     * @return true if successful, false if the route is already claimed
+     */
+    public boolean claimRoute(RouteRef route, String playerId) {
+        if (!reserveRoute(route.getId(), playerId)) {
+            return false; // Lost the race (or already claimed)
+        }
+        publishClaim(route.getId(), playerId);
+        return true;
+    }
+
+    /**
+     * Sets a route's owner (atomic compare-and-set) without updating the networks or reporting
+     * it yet. Follow with publishClaim, or with releaseRoute if the claim cannot be completed.
+     * @return true if this call claimed it, false if it was already claimed
+     */
+    boolean reserveRoute(int edgeId, String playerId) {
+        return map.edgeList.get(edgeId).tryClaim(playerId);
+    }
+
+    /**
+     * Gives back a route reserved by reserveRoute that was never published
+     */
+    void releaseRoute(int edgeId, String playerId) {
+        WeightedGraph.Edge edge = map.edgeList.get(edgeId);
+        if (!playerId.equals(edge.getClaimedBy())) {
+            throw new IllegalStateException(playerId + " has not reserved route " + edgeId);
+        }
+        edge.unclaim();
+    }
+
+    /**
+     * Completes a claim made by reserveRoute: adds the route to the networks and reports it
+     */
+    void publishClaim(int edgeId, String playerId) {
+        getNetwork(playerId).add(edgeId);
+        getClaimedNetwork().add(edgeId);
+        deltaStream.emit(DeltaType.ROUTE_CLAIMED, playerId, edgeId, map.edgeList.get(edgeId).getWeight(), null);
+    }
+
+    /**
+     * Get the routes a player owns as a bitset network (empty if the player owns none yet).
+     * Updated by claimRoute right after each successful claim.
+     */
+    public PlayerNetwork getNetwork(String playerId) {
+        PlayerNetwork network = networks.get(playerId);
+        if (network == null) {
+            CompactGraph graph = getCompactGraph();
+            network = networks.computeIfAbsent(playerId, id -> new PlayerNetwork(graph));
+        }
+        return network;
+    }
+
+    /**
+     * Get every claimed route, whoever owns it, as a bitset network
+     */
+    public PlayerNetwork getClaimedNetwork() {
+        PlayerNetwork claimed = claimedNetwork;
+        if (claimed == null) {
+            getCompactGraph(); // Creates it
+            claimed = claimedNetwork;
+        }
+        return claimed;
     }
 }
\ No newline at end of file
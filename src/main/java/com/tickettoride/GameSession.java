@@ -0,0 +1,225 @@
+package com.tickettoride;
+
+/**
+ * GameSession - one hosted game: its map, decks, players and whose turn it is.
+ * Sessions are kept by a GameSessionCache, which hibernates idle ones to disk with
+ * GameSessionCodec and reloads them on the next move.
+ */
+public class GameSession {
+
+    public static final int STARTING_COLOR_CARDS = 7;
+
+    // Heap cost estimates (bytes) for the memory budget of GameSessionCache
+    private static final long BASE_BYTES = 4096;
+    private static final long BYTES_PER_CITY = 200;
+    private static final long BYTES_PER_ROUTE = 240;
+    private static final long BYTES_PER_CARD = 96;
+    private static final long BYTES_PER_PLAYER = 512;
+
+    private final String sessionId;
+    private final MapBundle bundle;
+    private final long seed;
+    private final ResumableRandom random; // Every shuffle in the game; saved by GameSessionCodec
+    private final GameMap map;
+    private final ColorDeck colorDeck;
+    private final DestinationDeck destinationDeck;
+    private final Player[] players;
+    private int turn;
+    private int currentPlayer;
+    private volatile GameSnapshotPublisher snapshots; // Attached by the first getSnapshot()
+
+    /**
+     * Starts a new game: loads the map and decks, shuffles with the seed and deals the color cards
+     * @param sessionId Unique id of the session (letters, digits, '-' and '_' only)
+     * @param cityFilePath Path to the city file
+     * @param edgeFilePath Path to the edge file
+     * @param destinationFilePath Path to the destination card file
+     * @param playerIds Player ids in turn order
+     * @param seed Seed for every shuffle in the game
+     */
+    public GameSession(String sessionId, String cityFilePath, String edgeFilePath, String destinationFilePath,
+                       String[] playerIds, long seed) {
+        this(sessionId, MapBundle.forFiles(cityFilePath, edgeFilePath, destinationFilePath,
+                ColorDeck.DEFAULT_CARD_FILE), playerIds, seed);
+    }
+
+    /**
+     * Starts a new game on a shared map bundle (see MapRegistry), shuffled with the seed and dealt
+     * @param sessionId Unique id of the session (letters, digits, '-' and '_' only)
+     * @param bundle The map
+     * @param playerIds Player ids in turn order
+     * @param seed Seed for every shuffle in the game
+     */
+    public GameSession(String sessionId, MapBundle bundle, String[] playerIds, long seed) {
+        this(sessionId, bundle, playerIds, seed, new ResumableRandom(seed));
+        for (int i = 0; i < STARTING_COLOR_CARDS; i++) {
+            for (Player player : players) {
+                player.drawColorCard(true, -1);
+            }
+        }
+    }
+
+    /**
+     * Sets up the map, decks and players without dealing (GameSessionCodec restores the rest)
+     */
+    GameSession(String sessionId, MapBundle bundle, String[] playerIds, long seed, ResumableRandom random) {
+        if (!isValidId(sessionId)) {
+            throw new IllegalArgumentException("Invalid session id: " + sessionId);
+        }
+        if (playerIds == null || playerIds.length < 2) {
+            throw new IllegalArgumentException("A game needs at least 2 players");
+        }
+        this.sessionId = sessionId;
+        this.bundle = bundle;
+        this.seed = seed;
+        this.random = random;
+        this.map = bundle.newMap();
+        this.colorDeck = bundle.newColorDeck(random);
+        this.destinationDeck = bundle.newDestinationDeck(random);
+        map.setColorDeck(colorDeck);
+        map.setDestinationDeck(destinationDeck);
+
+        this.players = new Player[playerIds.length];
+        for (int i = 0; i < playerIds.length; i++) {
+            players[i] = new Player(playerIds[i]);
+            players[i].setGameMap(map);
+        }
+        this.turn = 0;
+        this.currentPlayer = 0;
+    }
+
+    /**
+     * Session ids double as file names, so only letters, digits, '-' and '_' are allowed
+     */
+    public static boolean isValidId(String sessionId) {
+        if (sessionId == null || sessionId.isEmpty() || sessionId.length() > 128) {
+            return false;
+        }
+        for (int i = 0; i < sessionId.length(); i++) {
+            char c = sessionId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ends the current player's turn and passes play to the next player
+     */
+    public void endTurn() {
+        map.getDeltaStream().emit(DeltaType.TURN_ENDED, players[currentPlayer].getPlayerId(), turn, 0, null);
+        turn++;
+        currentPlayer = (currentPlayer + 1) % players.length;
+    }
+
+    /**
+     * Rough heap footprint of this session's object graph, for memory budgeting
+     */
+    public long estimateHeapBytes() {
+        long cards = colorDeck.getPoolSize() + destinationDeck.size() + destinationDeck.discardPile.size();
+        for (Player player : players) {
+            for (Color color : Color.values()) {
+                cards += player.getCardCount(color);
+            }
+            cards += player.getDestinationCards().size();
+        }
+        CompactGraph graph = map.getCompactGraph();
+        return BASE_BYTES + graph.getCityCount() * BYTES_PER_CITY + graph.getEdgeCount() * BYTES_PER_ROUTE
+                + (cards + colorDeck.getVisibleSlotCount()) * BYTES_PER_CARD + players.length * BYTES_PER_PLAYER;
+    }
+
+    /**
+     * Restores the turn counters (used by GameSessionCodec)
+     */
+    void restoreTurn(int turn, int currentPlayer) {
+        this.turn = turn;
+        this.currentPlayer = currentPlayer;
+    }
+
+    // ============ Getters ============
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public MapBundle getBundle() {
+        return bundle;
+    }
+
+    public String getCityFilePath() {
+        return bundle.getCityFilePath();
+    }
+
+    public String getEdgeFilePath() {
+        return bundle.getEdgeFilePath();
+    }
+
+    public String getDestinationFilePath() {
+        return bundle.getDestinationFilePath();
+    }
+
+    public String getColorFilePath() {
+        return bundle.getColorFilePath();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Random source of every shuffle in this game (GameSessionCodec saves and restores its state)
+     */
+    ResumableRandom getRandom() {
+        return random;
+    }
+
+    public GameMap getMap() {
+        return map;
+    }
+
+    public ColorDeck getColorDeck() {
+        return colorDeck;
+    }
+
+    public DestinationDeck getDestinationDeck() {
+        return destinationDeck;
+    }
+
+    public Player[] getPlayers() {
+        return players;
+    }
+
+    /**
+     * Number of turns completed
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    public Player getCurrentPlayer() {
+        return players[currentPlayer];
+    }
+
+    public int getCurrentPlayerIndex() {
+        return currentPlayer;
+    }
+
+    /**
+     * Immutable view of the game as of the last completed turn, for web, stats and socket readers.
+     * The first call starts publishing (one snapshot per turn from then on) and reads the game, so
+     * make it from the thread playing the game; later calls never block and are safe from any thread.
+     */
+    public GameSnapshot getSnapshot() {
+        GameSnapshotPublisher publisher = snapshots;
+        if (publisher == null) {
+            synchronized (this) {
+                if (snapshots == null) {
+                    snapshots = GameSnapshotPublisher.attach(map, players, turn, currentPlayer);
+                }
+                publisher = snapshots;
+            }
+        }
+        return publisher.getSnapshot();
+    }
+}
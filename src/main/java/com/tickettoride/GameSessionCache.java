@@ -0,0 +1,367 @@
+package com.tickettoride;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GameSessionCache - keeps hosted games in memory up to a heap budget.
+ * When the estimated size of the resident sessions goes over the budget, the least
+ * recently used ones are written to disk with GameSessionCodec and dropped from the heap.
+ * acquire() brings a hibernated session back transparently.
+ *
+ * Callers acquire a session before a move and release it after; a session that is in use
+ * is never evicted. All methods are thread-safe. Encoding, decoding and file reads and writes
+ * run outside the cache's lock: a session being written or reloaded is marked as such, and
+ * callers that want it wait until that finishes while other sessions stay available.
+ */
+public class GameSessionCache {
+
+    private static final String FILE_SUFFIX = ".session";
+
+    /**
+     * A resident session with its size estimate and how many callers hold it
+     */
+    private static final class Entry {
+        final GameSession session;
+        long bytes;
+        int pins;
+        boolean evicting; // Being written to disk (never while pinned)
+
+        Entry(GameSession session) {
+            this.session = session;
+            this.bytes = session.estimateHeapBytes();
+        }
+    }
+
+    private final File directory;
+    private final long memoryBudgetBytes;
+    private final MapRegistry registry; // Maps of reloaded sessions
+    private final LinkedHashMap<String, Entry> resident; // access order: eldest = least recently used
+    private final Set<String> hibernated;
+    private final Set<String> loading; // Hibernated sessions being read back
+    private long residentBytes;
+    private long evictingBytes; // Part of residentBytes already being written out
+
+    // Metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictionFailures;
+    private long bytesWritten;
+    private long rehydrationNanosTotal;
+    private long rehydrationNanosMax;
+
+    /**
+     * @param directory Where hibernated sessions are written (created if missing)
+     * @param memoryBudgetBytes Estimated heap the resident sessions may use
+     */
+    public GameSessionCache(File directory, long memoryBudgetBytes) {
+        this(directory, memoryBudgetBytes, MapRegistry.getDefault());
+    }
+
+    /**
+     * @param directory Where hibernated sessions are written (created if missing)
+     * @param memoryBudgetBytes Estimated heap the resident sessions may use
+     * @param registry Registry the maps of reloaded sessions are taken from
+     */
+    public GameSessionCache(File directory, long memoryBudgetBytes, MapRegistry registry) {
+        if (memoryBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create session directory " + directory);
+        }
+        this.directory = directory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.registry = registry;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.hibernated = new HashSet<>();
+        this.loading = new HashSet<>();
+    }
+
+    /**
+     * Adds a new session (it counts as just used)
+     */
+    public void put(GameSession session) {
+        String id = session.getSessionId();
+        Entry entry = new Entry(session);
+        synchronized (this) {
+            if (resident.containsKey(id) || hibernated.contains(id)) {
+                throw new IllegalArgumentException("Session " + id + " already exists");
+            }
+            resident.put(id, entry);
+            residentBytes += entry.bytes;
+        }
+        evictIfOverBudget();
+    }
+
+    /**
+     * Gets a session for a move, reloading it from disk if it was hibernated.
+     * Every successful acquire must be followed by release().
+     * @param sessionId The session id
+     * @return The live session, or null if no such session exists (or it could not be reloaded,
+     *         or the thread was interrupted while the session was being written or reloaded)
+     */
+    public GameSession acquire(String sessionId) {
+        Entry entry;
+        synchronized (this) {
+            while (true) {
+                entry = resident.get(sessionId);
+                if (entry != null && !entry.evicting) {
+                    hits++;
+                    entry.pins++;
+                    break;
+                }
+                if (entry == null && !hibernated.contains(sessionId)) {
+                    return null;
+                }
+                if (entry == null && loading.add(sessionId)) {
+                    misses++;
+                    break; // This thread reloads it
+                }
+                try {
+                    wait(); // Until the session is written out or reloaded
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+        if (entry == null) {
+            entry = rehydrate(sessionId);
+            if (entry == null) {
+                return null;
+            }
+        }
+        evictIfOverBudget(); // After pinning, so a reloaded session can't be evicted straight away
+        return entry.session;
+    }
+
+    /**
+     * Returns a session after a move; it may be hibernated from now on
+     */
+    public void release(GameSession session) {
+        long bytes = session.estimateHeapBytes(); // The move may have changed the session's size
+        synchronized (this) {
+            Entry entry = resident.get(session.getSessionId());
+            if (entry == null || entry.pins == 0) {
+                throw new IllegalStateException("Session " + session.getSessionId() + " was not acquired");
+            }
+            entry.pins--;
+            residentBytes += bytes - entry.bytes;
+            entry.bytes = bytes;
+        }
+        evictIfOverBudget();
+    }
+
+    /**
+     * Removes a finished game from memory and disk
+     */
+    public synchronized void remove(String sessionId) {
+        Entry entry = resident.remove(sessionId);
+        if (entry != null) {
+            residentBytes -= entry.bytes;
+            if (entry.evicting) {
+                evictingBytes -= entry.bytes; // hibernate() deletes the file it is writing
+            }
+        }
+        if (hibernated.remove(sessionId) && !loading.contains(sessionId)) { // A reload drops it when done
+            fileFor(sessionId).delete();
+        }
+    }
+
+    /**
+     * Writes out least recently used sessions until the resident ones fit the budget
+     */
+    private void evictIfOverBudget() {
+        List<Entry> victims = chooseVictims();
+        for (Entry entry : victims) {
+            hibernate(entry);
+        }
+    }
+
+    /**
+     * Marks the sessions to write out (least recently used first, skipping those in use)
+     */
+    private synchronized List<Entry> chooseVictims() {
+        long over = residentBytes - evictingBytes - memoryBudgetBytes;
+        if (over <= 0) {
+            return Collections.emptyList();
+        }
+        List<Entry> victims = new ArrayList<>();
+        for (Entry entry : resident.values()) {
+            if (over <= 0) {
+                break;
+            }
+            if (entry.pins > 0 || entry.evicting) {
+                continue; // In use or already going, try the next least recently used
+            }
+            entry.evicting = true;
+            evictingBytes += entry.bytes;
+            over -= entry.bytes;
+            victims.add(entry);
+        }
+        return victims;
+    }
+
+    private void hibernate(Entry entry) {
+        GameSession session = entry.session;
+        String id = session.getSessionId();
+        File file = fileFor(id);
+        byte[] data = null;
+        boolean written = false;
+        try {
+            data = GameSessionCodec.encode(session); // No move can start while it is marked evicting
+            Files.write(file.toPath(), data);
+            written = true;
+        }
+        catch (IOException | RuntimeException e) {
+            System.out.println("Error: could not hibernate session " + id);
+            System.out.println("Exception: " + e);
+        }
+        finally {
+            // Always clear the mark, or the session could never be evicted or moved again
+            synchronized (this) {
+                boolean removed = resident.get(id) != entry;
+                if (!removed) {
+                    entry.evicting = false;
+                    evictingBytes -= entry.bytes;
+                    if (!written) {
+                        evictionFailures++; // Keep it in memory
+                    } else {
+                        resident.remove(id);
+                        residentBytes -= entry.bytes;
+                        hibernated.add(id);
+                        bytesWritten += data.length;
+                        evictions++;
+                    }
+                }
+                notifyAll();
+                if (removed || !written) {
+                    file.delete(); // Removed while it was being written, or only partly written
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a hibernated session back (the caller has marked it as loading)
+     * @return Its new entry, already pinned, or null if it could not be reloaded
+     */
+    private Entry rehydrate(String sessionId) {
+        long start = System.nanoTime();
+        File file = fileFor(sessionId);
+        Entry entry = null;
+        boolean kept = false;
+        try {
+            // Missing map files or corrupt data surface as runtime exceptions from decode
+            entry = new Entry(GameSessionCodec.decode(Files.readAllBytes(file.toPath()), registry));
+        }
+        catch (IOException | RuntimeException e) {
+            System.out.println("Error: could not reload session " + sessionId);
+            System.out.println("Exception: " + e);
+        }
+        finally {
+            // Always clear the mark, or every later acquire of the session would wait for good
+            synchronized (this) {
+                loading.remove(sessionId);
+                notifyAll();
+                if (!hibernated.contains(sessionId)) {
+                    file.delete(); // Removed while it was being read
+                } else if (entry != null) { // Otherwise it stays hibernated
+                    hibernated.remove(sessionId);
+                    entry.pins++;
+                    resident.put(sessionId, entry);
+                    residentBytes += entry.bytes;
+                    long nanos = System.nanoTime() - start;
+                    rehydrationNanosTotal += nanos;
+                    rehydrationNanosMax = Math.max(rehydrationNanosMax, nanos);
+                    kept = true;
+                }
+            }
+        }
+        if (!kept) {
+            return null;
+        }
+        file.delete(); // Pinned, so it can't be written out again before this
+        return entry;
+    }
+
+    private File fileFor(String sessionId) {
+        return new File(directory, sessionId + FILE_SUFFIX);
+    }
+
+    // ============ Metrics ============
+
+    /**
+     * Acquires served from memory
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Acquires that had to reload a hibernated session
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getEvictionFailures() {
+        return evictionFailures;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    public synchronized int getHibernatedCount() {
+        return hibernated.size();
+    }
+
+    /**
+     * Estimated heap used by the resident sessions
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized double getAverageRehydrationMillis() {
+        return misses > 0 ? rehydrationNanosTotal / 1e6 / misses : 0.0;
+    }
+
+    public synchronized double getMaxRehydrationMillis() {
+        return rehydrationNanosMax / 1e6;
+    }
+
+    /**
+     * One-line summary of the metrics for logs and dashboards
+     */
+    public synchronized String formatMetrics() {
+        return String.format("resident=%d (%d KB of %d KB) hibernated=%d hits=%d misses=%d hitRate=%.3f evictions=%d "
+                        + "evictionFailures=%d written=%d KB rehydrate avg=%.2f ms max=%.2f ms",
+                resident.size(), residentBytes / 1024, memoryBudgetBytes / 1024, hibernated.size(), hits, misses,
+                getHitRate(), evictions, evictionFailures, bytesWritten / 1024, getAverageRehydrationMillis(),
+                getMaxRehydrationMillis());
+    }
+}
@@ -0,0 +1,311 @@
+package com.tickettoride;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GameSessionCodec - compact binary form of a GameSession (typically 1-2 KB).
+ * Only the game state is stored: the map is referenced by name (and its files by path, for maps
+ * outside the MapRegistry), cards are stored by id, and routes by owning seat. The state of the
+ * game's random source is saved too, so a restored game shuffles exactly as the original would.
+ *
+ * Layout (DataOutputStream, big-endian):
+ *   int MAGIC, byte VERSION, UTF session id, UTF map name, UTF city/edge/destination/color paths,
+ *   long seed, long random state, int turn, byte current seat, byte player count,
+ *   per player: UTF id, int points, short trains, card list (hand), ticket list with completed flags,
+ *   short route count + one byte per route (owning seat, -1 if unclaimed),
+ *   color deck: card list (draw pile in order), card list (discards), visible slot ids ("" if empty),
+ *   destination deck: card list (draw pile in order), card list (discards).
+ * A card list is a short count followed by UTF card ids.
+ * Version 1 sessions have no color path and use the default color deck. Versions 1 and 2 have
+ * no map name or random state: they are reloaded from their paths and reseeded from the seed and turn.
+ */
+public final class GameSessionCodec {
+
+    public static final int MAGIC = 0x54545253; // "TTRS"
+    public static final byte VERSION = 3;
+
+    private GameSessionCodec() {
+    }
+
+    /**
+     * Encodes a session
+     * @param session The session (must not be changed while encoding)
+     * @return The encoded bytes
+     */
+    public static byte[] encode(GameSession session) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(2048);
+        DataOutputStream out = new DataOutputStream(buffer);
+        Player[] players = session.getPlayers();
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(session.getSessionId());
+        out.writeUTF(session.getBundle().getName());
+        out.writeUTF(session.getCityFilePath());
+        out.writeUTF(session.getEdgeFilePath());
+        out.writeUTF(session.getDestinationFilePath());
+        out.writeUTF(session.getColorFilePath());
+        out.writeLong(session.getSeed());
+        out.writeLong(session.getRandom().getState());
+        out.writeInt(session.getTurn());
+        out.writeByte(session.getCurrentPlayerIndex());
+        out.writeByte(players.length);
+
+        for (Player player : players) {
+            out.writeUTF(player.getPlayerId());
+            out.writeInt(player.getPoints());
+            out.writeShort(player.getTrainCount());
+            List<Card> hand = new ArrayList<>();
+            for (Color color : Color.values()) {
+                List<ColorCard> cards = player.getHand().get(color);
+                if (cards != null) {
+                    hand.addAll(cards);
+                }
+            }
+            writeCards(out, hand);
+            List<DestinationCard> tickets = player.getDestinationCards();
+            out.writeShort(tickets.size());
+            for (DestinationCard ticket : tickets) {
+                out.writeUTF(ticket.getCardId());
+                out.writeBoolean(ticket.isCompleted());
+            }
+        }
+
+        GameMap map = session.getMap();
+        out.writeShort(map.getEdgeCount());
+        for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+            out.writeByte(seatOf(players, map.getRouteOwner(edgeId)));
+        }
+
+        ColorDeck colorDeck = session.getColorDeck();
+        writeCards(out, colorDeck.cards);
+        writeCards(out, colorDeck.discardPile);
+        Card[] visible = colorDeck.getVisibleCards();
+        out.writeByte(visible.length);
+        for (Card card : visible) {
+            out.writeUTF(card != null ? card.getCardId() : "");
+        }
+
+        DestinationDeck destinationDeck = session.getDestinationDeck();
+        writeCards(out, destinationDeck.cards);
+        writeCards(out, destinationDeck.discardPile);
+
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Rebuilds a live session from its encoded form, on a map from the default MapRegistry
+     * @see #decode(byte[], MapRegistry)
+     */
+    public static GameSession decode(byte[] data) throws IOException {
+        return decode(data, MapRegistry.getDefault());
+    }
+
+    /**
+     * Rebuilds a live session from its encoded form. The map comes from the registry (its files
+     * are only read if nobody has loaded it yet; maps the registry doesn't know are read from
+     * their paths) and the saved state is applied, including the random source, so later
+     * shuffles are the ones the saved game would have made. Delta listeners are not saved and
+     * must be attached again. The map is only acquired while decoding: callers that host the
+     * game hold their own reference to keep it loaded.
+     * @param data Bytes produced by encode()
+     * @param registry Registry to take the map from
+     * @return The restored session
+     * @throws IOException if the data is truncated or not a session
+     */
+    public static GameSession decode(byte[] data, MapRegistry registry) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a game session");
+        }
+        int version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported session version " + version);
+        }
+        String sessionId = in.readUTF();
+        String mapName = version >= 3 ? in.readUTF() : null;
+        String cityFilePath = in.readUTF();
+        String edgeFilePath = in.readUTF();
+        String destinationFilePath = in.readUTF();
+        String colorFilePath = version >= 2 ? in.readUTF() : ColorDeck.DEFAULT_CARD_FILE;
+        long seed = in.readLong();
+        long randomState = version >= 3 ? in.readLong() : 0;
+        int turn = in.readInt();
+        int currentPlayer = in.readByte();
+        int playerCount = in.readByte();
+
+        String[] playerIds = new String[playerCount];
+        int[] points = new int[playerCount];
+        int[] trains = new int[playerCount];
+        List<List<String>> hands = new ArrayList<>();
+        List<List<String>> tickets = new ArrayList<>();
+        List<List<Boolean>> completed = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            playerIds[i] = in.readUTF();
+            points[i] = in.readInt();
+            trains[i] = in.readShort();
+            hands.add(readIds(in));
+            int ticketCount = in.readShort();
+            List<String> ids = new ArrayList<>(ticketCount);
+            List<Boolean> flags = new ArrayList<>(ticketCount);
+            for (int t = 0; t < ticketCount; t++) {
+                ids.add(in.readUTF());
+                flags.add(in.readBoolean());
+            }
+            tickets.add(ids);
+            completed.add(flags);
+        }
+
+        int edgeCount = in.readShort();
+        int[] owners = new int[edgeCount];
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            owners[edgeId] = in.readByte();
+        }
+
+        List<String> colorDraw = readIds(in);
+        List<String> colorDiscard = readIds(in);
+        String[] visibleIds = new String[in.readByte()];
+        for (int slot = 0; slot < visibleIds.length; slot++) {
+            visibleIds[slot] = in.readUTF();
+        }
+        List<String> destinationDraw = readIds(in);
+        List<String> destinationDiscard = readIds(in);
+
+        // Start a fresh game on the same map, then put every card where it was
+        ResumableRandom random = new ResumableRandom(version >= 3 ? seed : seed ^ (turn * 0x9E3779B97F4A7C15L));
+        MapBundle bundle = mapName != null ? registry.acquire(mapName) : null;
+        GameSession session;
+        if (bundle != null) {
+            try {
+                session = new GameSession(sessionId, bundle, playerIds, seed, random);
+            } finally {
+                registry.release(bundle);
+            }
+        } else {
+            bundle = mapName != null
+                    ? new MapBundle(mapName, cityFilePath, edgeFilePath, destinationFilePath, colorFilePath)
+                    : MapBundle.forFiles(cityFilePath, edgeFilePath, destinationFilePath, colorFilePath);
+            session = new GameSession(sessionId, bundle, playerIds, seed, random);
+        }
+        GameMap map = session.getMap();
+        if (map.getEdgeCount() != edgeCount) {
+            throw new IOException("Map " + edgeFilePath + " has changed since the session was saved");
+        }
+
+        ColorDeck colorDeck = session.getColorDeck();
+        Map<String, Card> colorCards = new HashMap<>();
+        for (Card card : colorDeck.cards) {
+            colorCards.put(card.getCardId(), card);
+        }
+        for (Card card : colorDeck.getVisibleCards()) {
+            if (card != null) {
+                colorCards.put(card.getCardId(), card);
+            }
+        }
+        for (Card card : colorDeck.discardPile) { // The initial deal may have discarded 3 of a color
+            colorCards.put(card.getCardId(), card);
+        }
+        DestinationDeck destinationDeck = session.getDestinationDeck();
+        Map<String, Card> destinationCards = new HashMap<>();
+        for (Card card : destinationDeck.cards) {
+            destinationCards.put(card.getCardId(), card);
+        }
+
+        Card[] visible = new Card[visibleIds.length];
+        for (int slot = 0; slot < visible.length; slot++) {
+            visible[slot] = visibleIds[slot].isEmpty() ? null : lookup(colorCards, visibleIds[slot]);
+        }
+        colorDeck.restore(lookupAll(colorCards, colorDraw), lookupAll(colorCards, colorDiscard), visible);
+        destinationDeck.cards.clear();
+        destinationDeck.cards.addAll(lookupAll(destinationCards, destinationDraw));
+        destinationDeck.discardPile.clear();
+        for (Card card : lookupAll(destinationCards, destinationDiscard)) {
+            card.setLocation("DISCARD");
+            destinationDeck.discardPile.add(card);
+        }
+
+        Player[] players = session.getPlayers();
+        for (int i = 0; i < playerCount; i++) {
+            List<ColorCard> hand = new ArrayList<>();
+            for (Card card : lookupAll(colorCards, hands.get(i))) {
+                hand.add((ColorCard) card);
+            }
+            List<DestinationCard> kept = new ArrayList<>();
+            List<String> ids = tickets.get(i);
+            for (int t = 0; t < ids.size(); t++) {
+                DestinationCard ticket = (DestinationCard) lookup(destinationCards, ids.get(t));
+                ticket.setLocation("HAND", playerIds[i]);
+                ticket.setCompleted(completed.get(i).get(t));
+                kept.add(ticket);
+            }
+            players[i].restoreState(points[i], trains[i], hand, kept);
+        }
+
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            if (owners[edgeId] >= 0) {
+                map.claimRoute(map.getRoute(edgeId), playerIds[owners[edgeId]]);
+            }
+        }
+        session.restoreTurn(turn, currentPlayer);
+        if (version >= 3) {
+            random.restoreState(randomState); // After the setup above, which shuffled the new decks
+        }
+        return session;
+    }
+
+    private static int seatOf(Player[] players, String playerId) {
+        if (playerId != null) {
+            for (int i = 0; i < players.length; i++) {
+                if (players[i].getPlayerId().equals(playerId)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void writeCards(DataOutputStream out, Iterable<? extends Card> cards) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (Card card : cards) {
+            ids.add(card.getCardId());
+        }
+        out.writeShort(ids.size());
+        for (String id : ids) {
+            out.writeUTF(id);
+        }
+    }
+
+    private static List<String> readIds(DataInputStream in) throws IOException {
+        int count = in.readShort();
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(in.readUTF());
+        }
+        return ids;
+    }
+
+    private static Card lookup(Map<String, Card> cards, String id) throws IOException {
+        Card card = cards.remove(id); // Removed so a card can't end up in two places
+        if (card == null) {
+            throw new IOException("Unknown or duplicate card id " + id);
+        }
+        return card;
+    }
+
+    private static List<Card> lookupAll(Map<String, Card> cards, List<String> ids) throws IOException {
+        List<Card> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(lookup(cards, id));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,258 @@
+package com.tickettoride;
+
+/**
+ * GameSnapshot - immutable, versioned view of a game between turns for spectators, dashboards,
+ * stats and remote bots. Built once per turn and shared by every reader, so readers on any
+ * thread see one consistent state without copying anything or touching the engine.
+ * Holds only what those readers need (scores, trains, hand counts, tickets, route owners,
+ * face-up cards, whose turn it is) in flat arrays, never the order of the draw pile.
+ * Tickets are secret during play: a UI should only show players their own.
+ * Get the latest one from a GameSnapshotPublisher (or GameSession.getSnapshot()).
+ */
+public final class GameSnapshot {
+
+    private static final int EMPTY = -1;
+    private static final Color[] COLORS = Color.values();
+
+    private final long version;         // sequence number of the last delta included
+    private final int turn;             // number of turns completed
+    private final int currentPlayer;    // index of the player to move
+    private final String[] playerIds;
+    private final int[] points;
+    private final int[] trains;
+    private final int[] cardCounts;     // [player * COLORS.length + Color ordinal]
+    private final int[] ticketStart;    // Tickets of player i are ticketStart[i] .. ticketStart[i + 1] - 1
+    private final String[] ticketIds;
+    private final String[] ticketCity1;
+    private final String[] ticketCity2;
+    private final int[] ticketPoints;
+    private final boolean[] ticketCompleted;
+    private final int[] routeOwners;    // edge id -> player index, EMPTY if unclaimed
+    private final int[] visible;        // Color ordinal per face-up slot, EMPTY if none
+
+    private GameSnapshot(long version, int turn, int currentPlayer, String[] playerIds, int[] points, int[] trains,
+                         int[] cardCounts, int[] ticketStart, String[] ticketIds, String[] ticketCity1, String[] ticketCity2,
+                         int[] ticketPoints, boolean[] ticketCompleted, int[] routeOwners, int[] visible) {
+        this.version = version;
+        this.turn = turn;
+        this.currentPlayer = currentPlayer;
+        this.playerIds = playerIds;
+        this.points = points;
+        this.trains = trains;
+        this.cardCounts = cardCounts;
+        this.ticketStart = ticketStart;
+        this.ticketIds = ticketIds;
+        this.ticketCity1 = ticketCity1;
+        this.ticketCity2 = ticketCity2;
+        this.ticketPoints = ticketPoints;
+        this.ticketCompleted = ticketCompleted;
+        this.routeOwners = routeOwners;
+        this.visible = visible;
+    }
+
+    /**
+     * Copies the current state of a game. Call from the game thread between turns.
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @param turn Number of turns completed
+     * @param currentPlayer Index of the player to move
+     * @param version Version to stamp on the snapshot (the delta sequence number)
+     * @return The snapshot
+     */
+    public static GameSnapshot capture(GameMap map, Player[] allPlayers, int turn, int currentPlayer, long version) {
+        int playerCount = allPlayers.length;
+        String[] playerIds = new String[playerCount];
+        int[] points = new int[playerCount];
+        int[] trains = new int[playerCount];
+        int[] cardCounts = new int[playerCount * COLORS.length];
+        int[] ticketStart = new int[playerCount + 1];
+        for (int i = 0; i < playerCount; i++) {
+            Player player = allPlayers[i];
+            playerIds[i] = player.getPlayerId();
+            points[i] = player.getPoints();
+            trains[i] = player.getTrainCount();
+            for (Color color : COLORS) {
+                cardCounts[i * COLORS.length + color.ordinal()] = player.getCardCount(color);
+            }
+            ticketStart[i + 1] = ticketStart[i] + player.getDestinationCards().size();
+        }
+
+        int ticketTotal = ticketStart[playerCount];
+        String[] ticketIds = new String[ticketTotal];
+        String[] ticketCity1 = new String[ticketTotal];
+        String[] ticketCity2 = new String[ticketTotal];
+        int[] ticketPoints = new int[ticketTotal];
+        boolean[] ticketCompleted = new boolean[ticketTotal];
+        for (int i = 0; i < playerCount; i++) {
+            int index = ticketStart[i];
+            for (DestinationCard card : allPlayers[i].getDestinationCards()) {
+                ticketIds[index] = card.getCardId();
+                ticketCity1[index] = card.getCity1();
+                ticketCity2[index] = card.getCity2();
+                ticketPoints[index] = card.getPoints();
+                ticketCompleted[index] = card.isCompleted();
+                index++;
+            }
+        }
+
+        int[] routeOwners = new int[map.getEdgeCount()];
+        for (int edgeId = 0; edgeId < routeOwners.length; edgeId++) {
+            routeOwners[edgeId] = indexOf(playerIds, map.getRouteOwner(edgeId));
+        }
+
+        int[] visible = new int[0];
+        ColorDeck deck = map.getColorDeck();
+        if (deck != null) {
+            Card[] visibleCards = deck.getVisibleCards();
+            visible = new int[visibleCards.length];
+            for (int slot = 0; slot < visibleCards.length; slot++) {
+                visible[slot] = visibleCards[slot] != null ? ((ColorCard) visibleCards[slot]).getColor().ordinal() : EMPTY;
+            }
+        }
+
+        return new GameSnapshot(version, turn, currentPlayer, playerIds, points, trains, cardCounts, ticketStart,
+                ticketIds, ticketCity1, ticketCity2, ticketPoints, ticketCompleted, routeOwners, visible);
+    }
+
+    private static int indexOf(String[] playerIds, String playerId) {
+        if (playerId == null) {
+            return EMPTY;
+        }
+        for (int i = 0; i < playerIds.length; i++) {
+            if (playerIds[i].equals(playerId)) {
+                return i;
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Version of this snapshot; a higher version is a later state of the same game
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Number of turns completed when the snapshot was taken
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Index of the player whose turn it is
+     */
+    public int getCurrentPlayerIndex() {
+        return currentPlayer;
+    }
+
+    public int getPlayerCount() {
+        return playerIds.length;
+    }
+
+    public String getPlayerId(int playerIndex) {
+        return playerIds[playerIndex];
+    }
+
+    /**
+     * Get the index of a player, -1 if not in this game
+     */
+    public int getPlayerIndex(String playerId) {
+        return indexOf(playerIds, playerId);
+    }
+
+    public int getPoints(int playerIndex) {
+        return points[playerIndex];
+    }
+
+    public int getTrainCount(int playerIndex) {
+        return trains[playerIndex];
+    }
+
+    public int getCardCount(int playerIndex, Color color) {
+        return cardCounts[playerIndex * COLORS.length + color.ordinal()];
+    }
+
+    /**
+     * Total number of color cards in a player's hand
+     */
+    public int getHandSize(int playerIndex) {
+        int size = 0;
+        for (int c = 0; c < COLORS.length; c++) {
+            size += cardCounts[playerIndex * COLORS.length + c];
+        }
+        return size;
+    }
+
+    public int getTicketCount(int playerIndex) {
+        return ticketStart[playerIndex + 1] - ticketStart[playerIndex];
+    }
+
+    public int getCompletedTicketCount(int playerIndex) {
+        int completed = 0;
+        for (int t = ticketStart[playerIndex]; t < ticketStart[playerIndex + 1]; t++) {
+            completed += ticketCompleted[t] ? 1 : 0;
+        }
+        return completed;
+    }
+
+    // Tickets of a player, numbered 0 .. getTicketCount(playerIndex) - 1 in the order they were kept
+
+    public String getTicketId(int playerIndex, int ticket) {
+        return ticketIds[ticketIndex(playerIndex, ticket)];
+    }
+
+    public String getTicketCity1(int playerIndex, int ticket) {
+        return ticketCity1[ticketIndex(playerIndex, ticket)];
+    }
+
+    public String getTicketCity2(int playerIndex, int ticket) {
+        return ticketCity2[ticketIndex(playerIndex, ticket)];
+    }
+
+    public int getTicketPoints(int playerIndex, int ticket) {
+        return ticketPoints[ticketIndex(playerIndex, ticket)];
+    }
+
+    public boolean isTicketCompleted(int playerIndex, int ticket) {
+        return ticketCompleted[ticketIndex(playerIndex, ticket)];
+    }
+
+    private int ticketIndex(int playerIndex, int ticket) {
+        if (ticket < 0 || ticket >= getTicketCount(playerIndex)) {
+            throw new IndexOutOfBoundsException("Player " + playerIndex + " has no ticket " + ticket);
+        }
+        return ticketStart[playerIndex] + ticket;
+    }
+
+    public int getRouteCount() {
+        return routeOwners.length;
+    }
+
+    /**
+     * Get the index of the player owning a route, -1 if unclaimed
+     */
+    public int getRouteOwnerIndex(int edgeId) {
+        return routeOwners[edgeId];
+    }
+
+    /**
+     * Get the id of the player owning a route (null if unclaimed)
+     */
+    public String getRouteOwner(int edgeId) {
+        int owner = routeOwners[edgeId];
+        return owner != EMPTY ? playerIds[owner] : null;
+    }
+
+    /**
+     * Get the color of a face-up card (null if the slot is empty)
+     */
+    public Color getVisibleColor(int slot) {
+        return visible[slot] != EMPTY ? COLORS[visible[slot]] : null;
+    }
+
+    public int getVisibleSlotCount() {
+        return visible.length;
+    }
+}
@@ -0,0 +1,86 @@
+package com.tickettoride;
+
+/**
+ * GameSnapshotPublisher - publishes an immutable GameSnapshot at the end of every turn.
+ * The game thread captures the snapshot when it emits TURN_ENDED and swaps it into a
+ * volatile field; readers just read that field, so they never block the game and always
+ * see a state from between two turns. Create one with attach().
+ */
+public class GameSnapshotPublisher implements GameDeltaListener {
+
+    private final GameMap map;
+    private final Player[] allPlayers;
+    private int turnsCompleted; // only touched on the game thread
+    private int currentPlayer;
+    private volatile GameSnapshot current;
+
+    private GameSnapshotPublisher(GameMap map, Player[] allPlayers) {
+        this.map = map;
+        this.allPlayers = allPlayers;
+    }
+
+    /**
+     * Starts publishing snapshots of a game (the first one is taken immediately)
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @return The publisher
+     */
+    public static GameSnapshotPublisher attach(GameMap map, Player[] allPlayers) {
+        return attach(map, allPlayers, 0, 0);
+    }
+
+    /**
+     * Starts publishing snapshots of a game already under way (the first one is taken immediately)
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @param turnsCompleted Number of turns played so far
+     * @param currentPlayer Index of the player to move
+     * @return The publisher
+     */
+    public static GameSnapshotPublisher attach(GameMap map, Player[] allPlayers, int turnsCompleted, int currentPlayer) {
+        GameSnapshotPublisher publisher = new GameSnapshotPublisher(map, allPlayers);
+        publisher.turnsCompleted = turnsCompleted;
+        publisher.currentPlayer = currentPlayer;
+        GameDeltaStream stream = map.getDeltaStream();
+        synchronized (stream) { // No delta can slip in between the first snapshot and registration
+            publisher.current = GameSnapshot.capture(map, allPlayers, turnsCompleted, currentPlayer, stream.getLastSequence());
+            stream.addListener(publisher);
+        }
+        return publisher;
+    }
+
+    /**
+     * Stops publishing (the last snapshot stays readable)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+    }
+
+    @Override
+    public void onDelta(GameDelta delta) {
+        if (delta.getType() == DeltaType.TURN_ENDED) {
+            turnsCompleted++;
+            int seat = indexOf(delta.getPlayerId());
+            if (seat >= 0) {
+                currentPlayer = (seat + 1) % allPlayers.length;
+            }
+            current = GameSnapshot.capture(map, allPlayers, turnsCompleted, currentPlayer, delta.getSequence());
+        }
+    }
+
+    private int indexOf(String playerId) {
+        for (int i = 0; i < allPlayers.length; i++) {
+            if (allPlayers[i].getPlayerId().equals(playerId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Latest published snapshot. Never blocks; safe from any thread.
+     */
+    public GameSnapshot getSnapshot() {
+        return current;
+    }
+}
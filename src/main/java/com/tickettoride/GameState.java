@@ -0,0 +1,422 @@
+package com.tickettoride;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * GameState - persistent (immutable, structurally shared) copy of a game's state
+ * for what-if branching by search bots and for undo.
+ *
+ * Every mutation returns a new GameState and leaves this one untouched, so forking
+ * is free: just keep the reference. Only the pieces a move touches are copied
+ * (the claim array for a claim, one player's counts, the visible slots and deck
+ * cursor for a draw); everything else is shared with the parent state.
+ *
+ * Cards are tracked by color only (Color ordinals), which is all the rules need.
+ */
+public final class GameState {
+
+    /**
+     * Immutable per-player counts. Replaced as a whole when that player changes.
+     */
+    public static final class PlayerState {
+        private final int[] colorCounts; // indexed by Color ordinal, never mutated
+        private final int trains;
+        private final int points;
+
+        private PlayerState(int[] colorCounts, int trains, int points) {
+            this.colorCounts = colorCounts;
+            this.trains = trains;
+            this.points = points;
+        }
+
+        public int getCardCount(Color color) {
+            return colorCounts[color.ordinal()];
+        }
+
+        public int getTrainCount() {
+            return trains;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        private PlayerState withCard(int colorOrdinal) {
+            int[] counts = colorCounts.clone();
+            counts[colorOrdinal]++;
+            return new PlayerState(counts, trains, points);
+        }
+    }
+
+    private static final int VISIBLE_SLOTS = 5;
+    private static final int EMPTY = -1;
+
+    // Shared by every state forked from the same capture
+    private final GameMap map;
+    private final String[] playerIds;
+
+    private final int[] routeOwners;      // edge id -> player index, EMPTY if unclaimed
+    private final PlayerState[] players;
+    private final int[] drawPile;         // color ordinals in draw order, never mutated
+    private final int deckCursor;         // next card to draw from drawPile
+    private final int[] visible;          // color ordinal per visible slot, EMPTY if none
+    private final int[] discardCounts;    // indexed by Color ordinal
+    private final int currentPlayer;
+    private final long hash;              // Zobrist hash, updated with each move
+
+    private GameState(GameMap map, String[] playerIds, int[] routeOwners, PlayerState[] players,
+                      int[] drawPile, int deckCursor, int[] visible, int[] discardCounts, int currentPlayer,
+                      long hash) {
+        this.map = map;
+        this.playerIds = playerIds;
+        this.routeOwners = routeOwners;
+        this.players = players;
+        this.drawPile = drawPile;
+        this.deckCursor = deckCursor;
+        this.visible = visible;
+        this.discardCounts = discardCounts;
+        this.currentPlayer = currentPlayer;
+        this.hash = hash;
+    }
+
+    /**
+     * Captures the live engine state into a persistent GameState
+     * @param map The game map (its color deck supplies the draw pile, visible cards and discards)
+     * @param allPlayers Players in turn order
+     * @param currentPlayer Index of the player whose turn it is
+     * @return The captured state
+     */
+    public static GameState capture(GameMap map, Player[] allPlayers, int currentPlayer) {
+        String[] playerIds = new String[allPlayers.length];
+        PlayerState[] players = new PlayerState[allPlayers.length];
+        for (int i = 0; i < allPlayers.length; i++) {
+            Player player = allPlayers[i];
+            playerIds[i] = player.getPlayerId();
+            int[] counts = new int[Color.values().length];
+            for (Color color : Color.values()) {
+                counts[color.ordinal()] = player.getCardCount(color);
+            }
+            players[i] = new PlayerState(counts, player.getTrainCount(), player.getPoints());
+        }
+
+        int[] routeOwners = new int[map.getEdgeCount()];
+        for (int edgeId = 0; edgeId < routeOwners.length; edgeId++) {
+            routeOwners[edgeId] = indexOf(playerIds, map.getRouteOwner(edgeId));
+        }
+
+        ColorDeck deck = map.getColorDeck();
+        int[] drawPile = new int[deck != null ? deck.cards.size() : 0];
+        int[] visible = new int[VISIBLE_SLOTS];
+        int[] discardCounts = new int[Color.values().length];
+        Arrays.fill(visible, EMPTY);
+        if (deck != null) {
+            int i = 0;
+            for (Card card : deck.cards) {
+                drawPile[i++] = ((ColorCard) card).getColor().ordinal();
+            }
+            Card[] visibleCards = deck.getVisibleCards();
+            for (int slot = 0; slot < VISIBLE_SLOTS; slot++) {
+                if (visibleCards[slot] != null) {
+                    visible[slot] = ((ColorCard) visibleCards[slot]).getColor().ordinal();
+                }
+            }
+            for (Card card : deck.discardPile) {
+                discardCounts[((ColorCard) card).getColor().ordinal()]++;
+            }
+        }
+
+        int[][] colorCounts = new int[players.length][];
+        int[] trains = new int[players.length];
+        for (int i = 0; i < players.length; i++) {
+            colorCounts[i] = players[i].colorCounts;
+            trains[i] = players[i].trains;
+        }
+        long hash = Zobrist.hash(routeOwners, colorCounts, trains, visible, Zobrist.tickets(allPlayers), currentPlayer);
+        return new GameState(map, playerIds, routeOwners, players, drawPile, 0, visible, discardCounts, currentPlayer, hash);
+    }
+
+    private static int indexOf(String[] playerIds, String playerId) {
+        if (playerId == null) {
+            return EMPTY;
+        }
+        for (int i = 0; i < playerIds.length; i++) {
+            if (playerIds[i].equals(playerId)) {
+                return i;
+            }
+        }
+        return EMPTY;
+    }
+
+    // ============ Queries ============
+
+    public int getPlayerCount() {
+        return players.length;
+    }
+
+    public String getPlayerId(int playerIndex) {
+        return playerIds[playerIndex];
+    }
+
+    public PlayerState getPlayer(int playerIndex) {
+        return players[playerIndex];
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Zobrist hash of this position (see Zobrist): equal for positions reached by different
+     * move orders, and equal to ZobristHasher's hash of the live game the state was captured from
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the index of the player owning a route, -1 if unclaimed
+     */
+    public int getRouteOwner(int edgeId) {
+        return routeOwners[edgeId];
+    }
+
+    /**
+     * Get the color in a visible slot (null if the slot is empty)
+     */
+    public Color getVisibleColor(int slot) {
+        return visible[slot] == EMPTY ? null : Color.values()[visible[slot]];
+    }
+
+    /**
+     * Number of cards left to draw before the discards are reshuffled
+     */
+    public int getDrawPileSize() {
+        return drawPile.length - deckCursor;
+    }
+
+    /**
+     * Forks this state. States are immutable, so the fork is the same object
+     * and diverges only when a mutation is applied to it.
+     */
+    public GameState fork() {
+        return this;
+    }
+
+    // ============ Mutations (each returns a new state) ============
+
+    /**
+     * Passes the turn to the next player
+     */
+    public GameState endTurn() {
+        int next = (currentPlayer + 1) % players.length;
+        return new GameState(map, playerIds, routeOwners, players, drawPile, deckCursor, visible, discardCounts,
+                next, hash ^ Zobrist.toMove(currentPlayer) ^ Zobrist.toMove(next));
+    }
+
+    /**
+     * Claims a route for the current player, paying with the given color plus wildcards.
+     * Applies the same rules as Player.buildRoute.
+     * @param edgeId The route to claim
+     * @param colorToUse Card color to pay with (must match colored routes)
+     * @param extraTunnelCost Extra cards required by a tunnel draw
+     * @return The new state, or null if the claim is not legal
+     */
+    public GameState claimRoute(int edgeId, Color colorToUse, int extraTunnelCost) {
+        if (edgeId < 0 || edgeId >= routeOwners.length || routeOwners[edgeId] != EMPTY) {
+            return null;
+        }
+        Color routeColor = map.getRouteColor(edgeId);
+        if (routeColor != null && colorToUse != routeColor && colorToUse != Color.MULTICOLOR) {
+            return null;
+        }
+        if (routeColor != null) {
+            colorToUse = routeColor;
+        }
+        if (colorToUse == null) {
+            return null; // Gray route and no color chosen (Player.checkRoute: WRONG_COLOR)
+        }
+
+        PlayerState player = players[currentPlayer];
+        int cost = map.getRouteWeight(edgeId) + extraTunnelCost;
+        int ferryCount = map.getRouteFerryCount(edgeId);
+        int color = colorToUse.ordinal();
+        int wild = Color.MULTICOLOR.ordinal();
+        int wildcards = player.colorCounts[wild];
+        int colored = color == wild ? 0 : player.colorCounts[color];
+        if (cost > player.trains || wildcards < ferryCount || colored + wildcards < cost) {
+            return null;
+        }
+
+        // Same payment order as Player.playCards: ferries, then colored cards, then wildcards
+        int colorUsed = Math.min(colored, cost - ferryCount);
+        int wildUsed = cost - colorUsed;
+
+        int[] counts = player.colorCounts.clone();
+        counts[color] -= colorUsed;
+        counts[wild] -= wildUsed;
+        int[] discards = discardCounts.clone();
+        discards[color] += colorUsed;
+        discards[wild] += wildUsed;
+
+        PlayerState[] nextPlayers = players.clone();
+        nextPlayers[currentPlayer] = new PlayerState(counts, player.trains - cost,
+                player.points + map.getRoutePoints(edgeId));
+        int[] nextOwners = routeOwners.clone();
+        nextOwners[edgeId] = currentPlayer;
+
+        long nextHash = hash ^ Zobrist.route(edgeId, currentPlayer)
+                ^ Zobrist.cardsChanged(currentPlayer, color, player.colorCounts[color], counts[color])
+                ^ Zobrist.trains(currentPlayer, player.trains) ^ Zobrist.trains(currentPlayer, player.trains - cost);
+        if (color != wild) {
+            nextHash ^= Zobrist.cardsChanged(currentPlayer, wild, wildcards, counts[wild]);
+        }
+        return new GameState(map, playerIds, nextOwners, nextPlayers, drawPile, deckCursor, visible, discards, currentPlayer,
+                nextHash);
+    }
+
+    /**
+     * Draws the top card of the draw pile into the current player's hand
+     * @return The new state, or null if there are no cards left to draw
+     */
+    public GameState drawMystery() {
+        if (deckCursor >= drawPile.length) {
+            return null; // As ColorDeck: discards only come back while the pile is being drawn from
+        }
+        Piles piles = new Piles(drawPile, deckCursor, discardCounts);
+        int color = piles.draw();
+        piles.reshuffleIfLow();
+        PlayerState[] nextPlayers = players.clone();
+        nextPlayers[currentPlayer] = players[currentPlayer].withCard(color);
+        int held = players[currentPlayer].colorCounts[color];
+        return new GameState(map, playerIds, routeOwners, nextPlayers, piles.pile, piles.cursor,
+                visible, piles.discards, currentPlayer, hash ^ Zobrist.cardsChanged(currentPlayer, color, held, held + 1));
+    }
+
+    /**
+     * Takes a visible card into the current player's hand and refills the slot
+     * (discarding and refilling again while 3+ visible cards share a color, with the same
+     * rules as ColorDeck.checkVisible())
+     * @return The new state, or null if the slot is empty
+     */
+    public GameState drawVisible(int slot) {
+        if (slot < 0 || slot >= VISIBLE_SLOTS || visible[slot] == EMPTY) {
+            return null;
+        }
+        PlayerState[] nextPlayers = players.clone();
+        nextPlayers[currentPlayer] = players[currentPlayer].withCard(visible[slot]);
+
+        int[] nextVisible = visible.clone();
+        nextVisible[slot] = EMPTY;
+        Piles piles = new Piles(drawPile, deckCursor, discardCounts);
+        piles.refill(nextVisible);
+        for (int redeals = 0; redeals < ColorDeck.MAX_REDEALS; redeals++) {
+            int[] counts = new int[Color.values().length];
+            for (int color : nextVisible) {
+                if (color != EMPTY) {
+                    counts[color]++;
+                }
+            }
+            int redeal = ColorDeck.colorToRedeal(counts);
+            if (redeal < 0) {
+                break;
+            }
+            for (int i = 0; i < VISIBLE_SLOTS; i++) {
+                if (nextVisible[i] == redeal) {
+                    nextVisible[i] = EMPTY;
+                    piles.discard(redeal);
+                }
+            }
+            piles.refill(nextVisible);
+        }
+
+        int held = players[currentPlayer].colorCounts[visible[slot]];
+        long nextHash = hash ^ Zobrist.cardsChanged(currentPlayer, visible[slot], held, held + 1);
+        for (int i = 0; i < VISIBLE_SLOTS; i++) {
+            if (nextVisible[i] != visible[i]) {
+                nextHash ^= Zobrist.visible(i, visible[i]) ^ Zobrist.visible(i, nextVisible[i]);
+            }
+        }
+        return new GameState(map, playerIds, routeOwners, nextPlayers, piles.pile, piles.cursor, nextVisible,
+                piles.discards, currentPlayer, nextHash); // The piles are not part of the hash
+    }
+
+    /**
+     * Draw pile and discards while one move is applied; the arrays are copied before the
+     * first change, so the parent state's arrays stay shared and untouched
+     */
+    private static final class Piles {
+        int[] pile;
+        int cursor;
+        int[] discards;
+        private boolean discardsCopied;
+
+        Piles(int[] pile, int cursor, int[] discards) {
+            this.pile = pile;
+            this.cursor = cursor;
+            this.discards = discards;
+        }
+
+        int draw() {
+            return pile[cursor++];
+        }
+
+        void discard(int color) {
+            if (!discardsCopied) {
+                discards = discards.clone();
+                discardsCopied = true;
+            }
+            discards[color]++;
+        }
+
+        /**
+         * Fills empty visible slots from the pile, as ColorDeck.refillVisible() does
+         */
+        void refill(int[] visible) {
+            for (int i = 0; i < visible.length; i++) {
+                if (visible[i] == EMPTY && cursor < pile.length) {
+                    visible[i] = draw();
+                }
+            }
+            reshuffleIfLow();
+        }
+
+        /**
+         * Once the pile is down to ColorDeck.RESHUFFLE_AT cards, shuffles the discards under it
+         * (deterministically, so replaying a branch is repeatable)
+         */
+        void reshuffleIfLow() {
+            int remaining = pile.length - cursor;
+            if (remaining > ColorDeck.RESHUFFLE_AT) {
+                return;
+            }
+            int total = 0;
+            for (int count : discards) {
+                total += count;
+            }
+            if (total == 0) {
+                return;
+            }
+            int[] shuffled = new int[total];
+            int i = 0;
+            for (int color = 0; color < discards.length; color++) {
+                for (int n = 0; n < discards[color]; n++) {
+                    shuffled[i++] = color;
+                }
+            }
+            Random random = new Random(31L * pile.length + 17L * cursor + total);
+            for (int j = shuffled.length - 1; j > 0; j--) {
+                int k = random.nextInt(j + 1);
+                int swap = shuffled[j];
+                shuffled[j] = shuffled[k];
+                shuffled[k] = swap;
+            }
+            int[] next = Arrays.copyOfRange(pile, cursor, pile.length + total);
+            System.arraycopy(shuffled, 0, next, remaining, total);
+            pile = next;
+            cursor = 0;
+            discards = new int[discards.length];
+            discardsCopied = true;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.tickettoride;
+
+import java.util.Arrays;
+
+/**
+ * GreedyBot - ticket-driven strategy.
+ * Each turn it finds the cheapest paths for its unfinished destination cards (own routes
+ * are free, opponents' routes are blocked), builds the longest affordable route on them,
+ * and otherwise draws cards in the colors those routes need.
+ * With no ticket work left it builds the longest route it can afford.
+ * Tunnels are skipped while the extra cost is more likely than not to be unaffordable.
+ */
+public class GreedyBot implements Bot {
+
+    private static final double MAX_TUNNEL_RISK = 0.5; // Skip tunnels more likely than not to fail
+
+    @Override
+    public String getName() {
+        return "GreedyBot";
+    }
+
+    /**
+     * Keeps tickets whose cheapest path costs no more trains than they are worth
+     * (the minimum is enforced by the game)
+     */
+    @Override
+    public boolean[] chooseInitialTickets(SimulatedGame game, Player self, DestinationCard[] offered) {
+        boolean[] keep = new boolean[offered.length];
+        for (int i = 0; i < offered.length; i++) {
+            int cost = pathCost(game.getMap(), self.getPlayerId(), offered[i], null);
+            keep[i] = cost >= 0 && cost <= offered[i].getPoints();
+        }
+        return keep;
+    }
+
+    @Override
+    public void takeTurn(SimulatedGame game, Player self) {
+        GameMap map = game.getMap();
+
+        // Mark every route that lies on a cheapest path for an unfinished ticket
+        boolean[] wanted = new boolean[map.getEdgeCount()];
+        for (DestinationCard card : self.getDestinationCards()) {
+            if (!card.isCompleted()) {
+                pathCost(map, self.getPlayerId(), card, wanted);
+            }
+        }
+
+        // Validate every open route in one batch, paying with the color chooseColor picks
+        int edgeCount = map.getEdgeCount();
+        long[] claimed = map.getClaimedNetwork().getRoutes(null);
+        int[] candidates = new int[edgeCount];
+        Color[] colors = new Color[edgeCount];
+        int count = 0;
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            if (!PlayerNetwork.isSet(claimed, edgeId)) {
+                candidates[count] = edgeId;
+                colors[count] = chooseColor(self, map.getRouteColor(edgeId), map.getRouteWeight(edgeId), map.getRouteFerryCount(edgeId));
+                count++;
+            }
+        }
+        RouteValidation validation = self.validateRoutes(candidates, colors, null, count, new RouteValidation(count));
+
+        int best = -1;
+        int fallback = -1;
+        Color bestColor = null;
+        Color fallbackColor = null;
+        for (int i = 0; i < count; i++) {
+            int edgeId = candidates[i];
+            int weight = validation.getCost(i);
+            if (!validation.isOk(i) || (map.isRouteTunnel(edgeId) && tunnelRisk(game, self, colors[i], weight) > MAX_TUNNEL_RISK)) {
+                continue;
+            }
+            if (wanted[edgeId] && (best < 0 || weight > map.getRouteWeight(best))) {
+                best = edgeId;
+                bestColor = colors[i];
+            }
+            if (fallback < 0 || weight > map.getRouteWeight(fallback)) {
+                fallback = edgeId;
+                fallbackColor = colors[i];
+            }
+        }
+
+        boolean anyWanted = false;
+        for (boolean w : wanted) {
+            anyWanted |= w;
+        }
+        if (best < 0 && !anyWanted) {
+            best = fallback; // No ticket work left, score what we can
+            bestColor = fallbackColor;
+        }
+
+        if (best >= 0) {
+            game.buildRoute(self, best, bestColor);
+            return;
+        }
+
+        // Draw toward the colors needed by wanted routes
+        int[] need = new int[Color.values().length];
+        for (int edgeId = 0; edgeId < wanted.length; edgeId++) {
+            Color color = map.getRouteColor(edgeId);
+            if (wanted[edgeId] && color != null && !PlayerNetwork.isSet(claimed, edgeId)) {
+                need[color.ordinal()] += map.getRouteWeight(edgeId);
+            }
+        }
+        for (int drawn = 0; drawn < 2; drawn++) {
+            ColorDeck deck = game.getColorDeck();
+            int slot = -1;
+            for (int i = 0; i < deck.getVisibleSlotCount(); i++) {
+                Card card = deck.getVisibleCard(i);
+                if (card != null) {
+                    Color color = ((ColorCard) card).getColor();
+                    if (color == Color.MULTICOLOR || need[color.ordinal()] > self.getCardCount(color)) {
+                        slot = i;
+                        break;
+                    }
+                }
+            }
+            if (slot >= 0) {
+                self.drawColorCard(false, slot);
+            } else if (game.getColorDeck().size() > 0) {
+                self.drawColorCard(true, -1);
+            }
+        }
+    }
+
+    /**
+     * Probability that a tunnel's extra cost exceeds the cards left over after paying its base cost
+     */
+    static double tunnelRisk(SimulatedGame game, Player self, Color color, int weight) {
+        int spare = self.getCardCount(Color.MULTICOLOR) - weight;
+        if (color != Color.MULTICOLOR) {
+            spare += self.getCardCount(color);
+        }
+        return 1.0 - game.getColorDeck().getTunnelAffordProbability(color, spare);
+    }
+
+    /**
+     * Cheapest cost in trains to connect a ticket's cities using own routes (free) and
+     * unclaimed routes. Relaxes the small edge list until nothing changes.
+     * @param wanted If not null, the unowned routes on the cheapest path are flagged here
+     * @return The cost, or -1 if the ticket can no longer be completed
+     */
+    static int pathCost(GameMap map, String playerId, DestinationCard card, boolean[] wanted) {
+        CompactGraph graph = map.getCompactGraph();
+        int edgeCount = graph.getEdgeCount();
+        CityRef fromCity = card.getCityRef1();
+        CityRef toCity = card.getCityRef2();
+        if (fromCity == null || toCity == null || !fromCity.belongsTo(map)) {
+            fromCity = map.resolveCity(card.getCity1());
+            toCity = map.resolveCity(card.getCity2());
+        }
+        if (fromCity == null || toCity == null) {
+            return -1;
+        }
+        int from = fromCity.getId();
+        int to = toCity.getId();
+
+        long[] own = map.getNetwork(playerId).getRoutes(null);
+        long[] claimed = map.getClaimedNetwork().getRoutes(null);
+
+        int[] dist = new int[graph.getCityCount()];
+        int[] via = new int[graph.getCityCount()];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(via, -1);
+        dist[from] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+                boolean owned = PlayerNetwork.isSet(own, edgeId);
+                if (!owned && PlayerNetwork.isSet(claimed, edgeId)) {
+                    continue; // An opponent's route
+                }
+                int cost = owned ? 0 : graph.getWeight(edgeId);
+                for (int side = 0; side < 2; side++) {
+                    int a = side == 0 ? graph.getEdgeCity1(edgeId) : graph.getEdgeCity2(edgeId);
+                    int b = graph.getOtherCity(edgeId, a);
+                    if (dist[a] != Integer.MAX_VALUE && dist[a] + cost < dist[b]) {
+                        dist[b] = dist[a] + cost;
+                        via[b] = edgeId;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        if (dist[to] == Integer.MAX_VALUE) {
+            return -1;
+        }
+
+        if (wanted != null) {
+            int city = to;
+            while (city != from && via[city] >= 0) {
+                int edgeId = via[city];
+                if (!PlayerNetwork.isSet(claimed, edgeId)) {
+                    wanted[edgeId] = true;
+                }
+                city = graph.getOtherCity(edgeId, city);
+            }
+        }
+        return dist[to];
+    }
+}
@@ -0,0 +1,257 @@
+package com.tickettoride;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * HandBatch - the card counts of many players (typically one per in-flight simulated game),
+ * stored as one int[] per color instead of one hand per player, so affordability and color
+ * choice for a route can be answered for the whole batch in a few passes over flat arrays.
+ * The passes are simple counted loops over int[] (max, add, compare), the shape HotSpot's
+ * auto-vectorizer turns into SIMD instructions; on hardware without it they still avoid the
+ * per-player Hashtable lookups and Color.values() copies of Player.canAffordRoute.
+ *
+ * A batch is a snapshot: load() copies a player's counts, and later draws or builds are not
+ * seen until the slot is loaded again (or updated with setCount). Not thread-safe; use one
+ * batch per thread.
+ */
+public class HandBatch {
+
+    private static final Color[] COLORS = Color.values();
+    private static final int WILD = Color.MULTICOLOR.ordinal();
+
+    private final int[][] counts;  // [color ordinal][slot]
+    private final int[] maxCount;  // Scratch: most cards of a single non-wild color per slot
+    private final int[] maxColor;  // Scratch: that color's ordinal (lowest on ties)
+    private int size;
+
+    /**
+     * @param capacity Number of slots (players) the batch can hold
+     */
+    public HandBatch(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+        this.counts = new int[COLORS.length][capacity];
+        this.maxCount = new int[capacity];
+        this.maxColor = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return maxCount.length;
+    }
+
+    /**
+     * Number of slots in use (slots 0 .. size - 1)
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Empties the batch (slots keep their arrays, so refilling allocates nothing)
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies a player's card counts into the next free slot
+     * @return The slot
+     */
+    public int add(Player player) {
+        if (size == getCapacity()) {
+            throw new IllegalStateException("Batch is full (" + size + " players)");
+        }
+        int slot = size;
+        load(slot, player); // Grows the batch by one
+        return slot;
+    }
+
+    /**
+     * Copies a player's current card counts into a slot (grows the batch if the slot is past the end)
+     */
+    public void load(int slot, Player player) {
+        checkSlot(slot);
+        for (Color color : COLORS) {
+            counts[color.ordinal()][slot] = player.getCardCount(color);
+        }
+        size = Math.max(size, slot + 1);
+    }
+
+    public void setCount(int slot, Color color, int count) {
+        checkSlot(slot);
+        if (count < 0) {
+            throw new IllegalArgumentException("Card count cannot be negative");
+        }
+        counts[color.ordinal()][slot] = count;
+        size = Math.max(size, slot + 1);
+    }
+
+    public int getCount(int slot, Color color) {
+        return counts[color.ordinal()][slot];
+    }
+
+    /**
+     * Checks a route against every hand in the batch (same rule as Player.canAffordRoute)
+     * @param routeColor The color required (null for gray/any color routes)
+     * @param cost Number of cards needed
+     * @param ferryCount Minimum number of MULTICOLOR cards required
+     * @param out Result per slot (at least getSize() long)
+     * @return Number of slots that can afford the route
+     */
+    public int canAfford(Color routeColor, int cost, int ferryCount, boolean[] out) {
+        int[] have = routeColor != null ? counts[routeColor.ordinal()] : maxCounts();
+        int[] wild = counts[WILD];
+        int affordable = 0;
+        for (int i = 0; i < size; i++) {
+            boolean ok = have[i] + wild[i] >= cost & wild[i] >= ferryCount;
+            out[i] = ok;
+            affordable += ok ? 1 : 0;
+        }
+        return affordable;
+    }
+
+    /**
+     * Picks the color each hand would pay for a route with (same rule as Bot.chooseColor:
+     * the route's color, or for gray routes the affordable color the hand holds most of)
+     * @param routeColor The color required (null for gray/any color routes)
+     * @param cost Number of cards needed
+     * @param ferryCount Minimum number of MULTICOLOR cards required
+     * @param out Color per slot, null where the route is unaffordable (at least getSize() long)
+     * @return Number of slots that can afford the route
+     */
+    public int chooseColors(Color routeColor, int cost, int ferryCount, Color[] out) {
+        if (routeColor != null) {
+            int[] have = counts[routeColor.ordinal()];
+            int[] wild = counts[WILD];
+            int affordable = 0;
+            for (int i = 0; i < size; i++) {
+                boolean ok = have[i] + wild[i] >= cost & wild[i] >= ferryCount;
+                out[i] = ok ? routeColor : null;
+                affordable += ok ? 1 : 0;
+            }
+            return affordable;
+        }
+
+        int[] have = maxCounts();
+        int[] wild = counts[WILD];
+        // Lowest ordinal holding the maximum: walk the colors from the top down, later ones win
+        for (int c = COLORS.length - 1; c >= 0; c--) {
+            if (c == WILD) {
+                continue;
+            }
+            int[] colorCounts = counts[c];
+            for (int i = 0; i < size; i++) {
+                maxColor[i] = colorCounts[i] == have[i] ? c : maxColor[i];
+            }
+        }
+        int affordable = 0;
+        for (int i = 0; i < size; i++) {
+            boolean ok = have[i] + wild[i] >= cost & wild[i] >= ferryCount;
+            out[i] = ok ? COLORS[maxColor[i]] : null;
+            affordable += ok ? 1 : 0;
+        }
+        return affordable;
+    }
+
+    /**
+     * Fills maxCount with the largest non-wild color count of each slot
+     */
+    private int[] maxCounts() {
+        Arrays.fill(maxCount, 0, size, 0);
+        for (int c = 0; c < COLORS.length; c++) {
+            if (c == WILD) {
+                continue;
+            }
+            int[] colorCounts = counts[c];
+            for (int i = 0; i < size; i++) {
+                maxCount[i] = Math.max(maxCount[i], colorCounts[i]);
+            }
+        }
+        return maxCount;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= getCapacity()) {
+            throw new IllegalArgumentException("Slot " + slot + " is outside the batch (capacity " + getCapacity() + ")");
+        }
+    }
+
+    /**
+     * Compares batch evaluation with per-player Player.canAffordRoute / Bot.chooseColor on random
+     * hands, checks that both give the same answers, and prints the throughput of each.
+     * Usage: HandBatch [mapName] [players] [seconds]
+     */
+    public static void main(String[] args) {
+        String mapName = args.length > 0 ? args[0] : "american";
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 3.0;
+        MapBundle bundle = MapRegistry.getDefault().acquire(mapName);
+        if (bundle == null) {
+            System.out.println("Error: Unknown map " + mapName + ". Available maps: " + MapRegistry.getDefault().getMapNames());
+            return;
+        }
+
+        // Random hands dealt from real decks (a fresh deck whenever one runs low)
+        Random random = new Random(1);
+        Player[] hands = new Player[players];
+        GameMap map = null;
+        for (int i = 0; i < players; i++) {
+            if (map == null || map.getColorDeck().size() < 20) {
+                map = bundle.newMap();
+                map.setColorDeck(bundle.newColorDeck(random));
+            }
+            hands[i] = new Player("p" + i);
+            hands[i].setGameMap(map);
+            for (int drawn = random.nextInt(13); drawn > 0; drawn--) {
+                hands[i].drawColorCard(true, -1);
+            }
+        }
+        HandBatch batch = new HandBatch(players);
+        for (Player hand : hands) {
+            batch.add(hand);
+        }
+
+        CompactGraph graph = map.getCompactGraph();
+        Bot bot = new RandomBot();
+        Color[] batchColors = new Color[players];
+        for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+            batch.chooseColors(graph.getColor(edgeId), graph.getWeight(edgeId), graph.getFerryCount(edgeId), batchColors);
+            for (int i = 0; i < players; i++) {
+                Color expected = bot.chooseColor(hands[i], graph.getColor(edgeId), graph.getWeight(edgeId), graph.getFerryCount(edgeId));
+                if (expected != batchColors[i]) {
+                    System.out.println("Error: Batch chose " + batchColors[i] + " but chooseColor chose " + expected
+                            + " for player " + i + " on route " + map.getRoute(edgeId));
+                    return;
+                }
+            }
+        }
+        System.out.printf("Checked %d players x %d routes: batch matches chooseColor%n", players, graph.getEdgeCount());
+
+        boolean[] affordable = new boolean[players];
+        long scalarChecks = 0;
+        long sink = 0;
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+                for (Player hand : hands) {
+                    sink += hand.canAffordRoute(graph.getColor(edgeId), graph.getWeight(edgeId), graph.getFerryCount(edgeId)) ? 1 : 0;
+                }
+                scalarChecks += players;
+            }
+        }
+        long batchChecks = 0;
+        end = System.nanoTime() + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+                sink += batch.canAfford(graph.getColor(edgeId), graph.getWeight(edgeId), graph.getFerryCount(edgeId), affordable);
+                batchChecks += players;
+            }
+        }
+        System.out.printf("Per player: %,.0f checks/s%n", scalarChecks / seconds);
+        System.out.printf("Batch:      %,.0f checks/s (%.1fx)%n", batchChecks / seconds, (double) batchChecks / scalarChecks);
+        System.out.println("(affordable total " + sink + ")");
+        MapRegistry.getDefault().release(bundle);
+    }
+}
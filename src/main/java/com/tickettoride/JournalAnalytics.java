@@ -0,0 +1,368 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * JournalAnalytics - mines journals written by GameJournalWriter.
+ *
+ * The file is split into chunks of whole blocks, each chunk is memory-mapped and decoded
+ * on its own thread straight from the bytes (no Game, Player or GameMap objects are
+ * created), and the per-chunk counters are merged at the end. Produces route claim
+ * frequency, ticket completion rates, the tunnel extra-cost distribution and game length.
+ */
+public class JournalAnalytics {
+
+    private static final long CHUNK_BYTES = 64L << 20; // Blocks are grouped into ~64 MB mapped chunks
+    private static final int BLOCK_HEADER_BYTES = 12;
+    private static final int MAX_TURNS = 1 << 16;
+
+    /**
+     * Counters for a set of games, mergeable across chunks
+     */
+    public static class Stats {
+        private long games;
+        private long turnSum;
+        private final long[] turnHistogram = new long[MAX_TURNS];
+        private final long[] edgeClaims;
+        private final long[] tunnelDraws;
+        private final long[] tunnelExtraSum;
+        private final long[] tunnelExtraHistogram = new long[4]; // 0-3 extra cards
+        private final long[] ticketKept;
+        private final long[] ticketCompleted;
+
+        private Stats(int edgeCount, int ticketCount) {
+            edgeClaims = new long[edgeCount];
+            tunnelDraws = new long[edgeCount];
+            tunnelExtraSum = new long[edgeCount];
+            ticketKept = new long[ticketCount];
+            ticketCompleted = new long[ticketCount];
+        }
+
+        private Stats merge(Stats other) {
+            games += other.games;
+            turnSum += other.turnSum;
+            add(turnHistogram, other.turnHistogram);
+            add(edgeClaims, other.edgeClaims);
+            add(tunnelDraws, other.tunnelDraws);
+            add(tunnelExtraSum, other.tunnelExtraSum);
+            add(tunnelExtraHistogram, other.tunnelExtraHistogram);
+            add(ticketKept, other.ticketKept);
+            add(ticketCompleted, other.ticketCompleted);
+            return this;
+        }
+
+        private static void add(long[] into, long[] from) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += from[i];
+            }
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        public double getMeanTurns() {
+            return games == 0 ? 0 : (double) turnSum / games;
+        }
+
+        public long getEdgeClaims(int edgeId) {
+            return edgeClaims[edgeId];
+        }
+
+        public long getTicketKept(int ticket) {
+            return ticketKept[ticket];
+        }
+
+        public long getTicketCompleted(int ticket) {
+            return ticketCompleted[ticket];
+        }
+
+        /**
+         * Number of tunnel draws that cost the given number of extra cards (0-3)
+         */
+        public long getTunnelExtraCount(int extra) {
+            return tunnelExtraHistogram[extra];
+        }
+    }
+
+    private final String filePath;
+    private final String[] edgeSources;
+    private final String[] edgeDestinations;
+    private final String[] ticketIds;
+    private final String[] ticketCity1;
+    private final String[] ticketCity2;
+    private final int[] ticketPoints;
+    private final List<long[]> chunks; // {file offset, length} of whole blocks
+
+    /**
+     * Opens a journal and indexes its blocks (reads only the block headers)
+     * @param filePath Journal written by GameJournalWriter
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public JournalAnalytics(String filePath) throws IOException {
+        this.filePath = filePath;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(10);
+            channel.read(start, 0);
+            start.flip();
+            if (start.remaining() < 10 || start.getInt() != GameJournalWriter.MAGIC) {
+                throw new IOException("Not a game journal: " + filePath);
+            }
+            short version = start.getShort();
+            if (version != GameJournalWriter.VERSION) {
+                throw new IOException("Unsupported journal version " + version + ": " + filePath);
+            }
+            int headerLength = start.getInt();
+            ByteBuffer headerBuffer = ByteBuffer.allocate(headerLength);
+            channel.read(headerBuffer, 10);
+
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBuffer.array()));
+            int edgeCount = header.readInt();
+            edgeSources = new String[edgeCount];
+            edgeDestinations = new String[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                edgeSources[i] = header.readUTF();
+                edgeDestinations[i] = header.readUTF();
+            }
+            int ticketCount = header.readInt();
+            ticketIds = new String[ticketCount];
+            ticketCity1 = new String[ticketCount];
+            ticketCity2 = new String[ticketCount];
+            ticketPoints = new int[ticketCount];
+            for (int i = 0; i < ticketCount; i++) {
+                ticketIds[i] = header.readUTF();
+                ticketCity1[i] = header.readUTF();
+                ticketCity2[i] = header.readUTF();
+                ticketPoints[i] = header.readShort();
+            }
+
+            chunks = indexChunks(channel, 10L + headerLength);
+        }
+    }
+
+    /**
+     * Walks the block headers and groups consecutive blocks into chunks
+     */
+    private List<long[]> indexChunks(FileChannel channel, long position) throws IOException {
+        List<long[]> result = new ArrayList<>();
+        long size = channel.size();
+        long chunkStart = position;
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+
+        while (position + BLOCK_HEADER_BYTES <= size) {
+            blockHeader.clear();
+            channel.read(blockHeader, position);
+            blockHeader.flip();
+            if (blockHeader.getInt() != GameJournalWriter.BLOCK_MAGIC) {
+                throw new IOException("Corrupt journal block at offset " + position + ": " + filePath);
+            }
+            long blockEnd = position + BLOCK_HEADER_BYTES + blockHeader.getInt();
+            if (blockEnd > size) {
+                break; // Truncated last block (journal still being written)
+            }
+            if (blockEnd - chunkStart > CHUNK_BYTES && position > chunkStart) {
+                result.add(new long[] {chunkStart, position - chunkStart});
+                chunkStart = position;
+            }
+            position = blockEnd;
+        }
+        if (position > chunkStart) {
+            result.add(new long[] {chunkStart, position - chunkStart});
+        }
+        return result;
+    }
+
+    /**
+     * Decodes every chunk in parallel and merges the counters
+     * @return Aggregated statistics over all games in the journal
+     */
+    public Stats analyze() {
+        // Each chunk gets a fresh Stats, so merging into the left-hand side is safe
+        return chunks.parallelStream()
+                .map(this::analyzeChunk)
+                .reduce(Stats::merge)
+                .orElse(new Stats(edgeSources.length, ticketIds.length));
+    }
+
+    private Stats analyzeChunk(long[] chunk) {
+        Stats stats = new Stats(edgeSources.length, ticketIds.length);
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1]);
+            while (buffer.remaining() >= BLOCK_HEADER_BYTES) {
+                buffer.getInt(); // BLOCK_MAGIC, checked while indexing
+                int length = buffer.getInt();
+                buffer.getInt(); // game count
+                int blockEnd = buffer.position() + length;
+                while (buffer.position() < blockEnd) {
+                    decodeGame(buffer, stats);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading journal chunk at offset " + chunk[0] + ": " + filePath, e);
+        }
+        return stats;
+    }
+
+    private void decodeGame(ByteBuffer buffer, Stats stats) {
+        if (buffer.get() != GameJournalWriter.GAME_START) {
+            throw new IllegalStateException("Corrupt game record at offset " + buffer.position() + ": " + filePath);
+        }
+        buffer.get(); // player count
+        while (true) {
+            byte tag = buffer.get();
+            if (tag == GameJournalWriter.GAME_END) {
+                int turns = buffer.getShort() & 0xFFFF;
+                stats.games++;
+                stats.turnSum += turns;
+                stats.turnHistogram[turns]++;
+                return;
+            }
+            buffer.get(); // seat
+            int id = buffer.getShort();
+            switch (tag) {
+                case GameJournalWriter.ROUTE:
+                    stats.edgeClaims[id]++;
+                    break;
+                case GameJournalWriter.TICKET_KEPT:
+                    if (id >= 0) {
+                        stats.ticketKept[id]++;
+                    }
+                    break;
+                case GameJournalWriter.TICKET_DONE:
+                    if (id >= 0) {
+                        stats.ticketCompleted[id]++;
+                    }
+                    break;
+                case GameJournalWriter.TUNNEL:
+                    int extra = buffer.get();
+                    stats.tunnelDraws[id]++;
+                    stats.tunnelExtraSum[id] += extra;
+                    stats.tunnelExtraHistogram[Math.max(0, Math.min(3, extra))]++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal event '" + (char) tag + "' in " + filePath);
+            }
+        }
+    }
+
+    // ============ Reports ============
+
+    /**
+     * Writes the route heatmap: how often each route is claimed and its tunnel costs
+     */
+    public boolean writeEdgeHeatmapCsv(Stats stats, String outputPath) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath))) {
+            out.println("source,destination,claims,claim_rate,tunnel_draws,mean_tunnel_extra");
+            for (int i = 0; i < edgeSources.length; i++) {
+                out.printf("%s,%s,%d,%.4f,%d,%.3f%n", edgeSources[i], edgeDestinations[i], stats.edgeClaims[i],
+                        stats.games == 0 ? 0.0 : (double) stats.edgeClaims[i] / stats.games, stats.tunnelDraws[i],
+                        stats.tunnelDraws[i] == 0 ? 0.0 : (double) stats.tunnelExtraSum[i] / stats.tunnelDraws[i]);
+            }
+            return true;
+        } catch (IOException e) {
+            return reportError(outputPath, e);
+        }
+    }
+
+    /**
+     * Writes the city heatmap: route claims touching each city
+     */
+    public boolean writeCityHeatmapCsv(Stats stats, String outputPath) {
+        Map<String, Long> cityClaims = new TreeMap<>();
+        for (int i = 0; i < edgeSources.length; i++) {
+            cityClaims.merge(edgeSources[i], stats.edgeClaims[i], Long::sum);
+            cityClaims.merge(edgeDestinations[i], stats.edgeClaims[i], Long::sum);
+        }
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath))) {
+            out.println("city,route_claims,claims_per_game");
+            for (Map.Entry<String, Long> entry : cityClaims.entrySet()) {
+                out.printf("%s,%d,%.4f%n", entry.getKey(), entry.getValue(),
+                        stats.games == 0 ? 0.0 : (double) entry.getValue() / stats.games);
+            }
+            return true;
+        } catch (IOException e) {
+            return reportError(outputPath, e);
+        }
+    }
+
+    /**
+     * Writes completion rates per destination card
+     */
+    public boolean writeTicketCsv(Stats stats, String outputPath) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath))) {
+            out.println("card_id,city1,city2,points,kept,completed,completion_rate");
+            for (int i = 0; i < ticketIds.length; i++) {
+                out.printf("%s,%s,%s,%d,%d,%d,%.4f%n", ticketIds[i], ticketCity1[i], ticketCity2[i], ticketPoints[i],
+                        stats.ticketKept[i], stats.ticketCompleted[i],
+                        stats.ticketKept[i] == 0 ? 0.0 : (double) stats.ticketCompleted[i] / stats.ticketKept[i]);
+            }
+            return true;
+        } catch (IOException e) {
+            return reportError(outputPath, e);
+        }
+    }
+
+    /**
+     * Writes game count, tunnel extra-cost distribution and the game length distribution
+     */
+    public boolean writeSummaryCsv(Stats stats, String outputPath) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(outputPath))) {
+            out.println("metric,value");
+            out.println("games," + stats.games);
+            out.printf("mean_turns,%.2f%n", stats.getMeanTurns());
+            for (int extra = 0; extra < stats.tunnelExtraHistogram.length; extra++) {
+                out.println("tunnel_extra_" + extra + "," + stats.tunnelExtraHistogram[extra]);
+            }
+            for (int turns = 0; turns < MAX_TURNS; turns++) {
+                if (stats.turnHistogram[turns] > 0) {
+                    out.println("games_of_" + turns + "_turns," + stats.turnHistogram[turns]);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return reportError(outputPath, e);
+        }
+    }
+
+    private boolean reportError(String outputPath, IOException e) {
+        System.out.println("Error writing analytics report: " + outputPath);
+        System.out.println("Exception: " + e.getMessage());
+        return false;
+    }
+
+    /**
+     * Usage: JournalAnalytics journalFile [reportPrefix]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: JournalAnalytics journalFile [reportPrefix]");
+            return;
+        }
+        String prefix = args.length > 1 ? args[1] : "analytics";
+
+        long startTime = System.nanoTime();
+        JournalAnalytics analytics = new JournalAnalytics(args[0]);
+        Stats stats = analytics.analyze();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("Analyzed %d games in %.2f s (%.0f games/s), mean length %.1f turns%n",
+                stats.getGames(), seconds, stats.getGames() / seconds, stats.getMeanTurns());
+        analytics.writeEdgeHeatmapCsv(stats, prefix + "_edges.csv");
+        analytics.writeCityHeatmapCsv(stats, prefix + "_cities.csv");
+        analytics.writeTicketCsv(stats, prefix + "_tickets.csv");
+        analytics.writeSummaryCsv(stats, prefix + "_summary.csv");
+    }
+}
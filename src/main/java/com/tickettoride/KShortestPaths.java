@@ -0,0 +1,476 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * KShortestPaths - ranked alternative paths between two cities (Yen's algorithm: the k
+ * cheapest paths that visit no city twice), so a player whose best path gets blocked already
+ * knows the next best ones. Costs are in trains. For a player, their own routes are free and
+ * opponents' routes are closed; without a player, every route counts at its length.
+ *
+ * Each search of Yen's algorithm ends at the same target city, so the trains from every city
+ * to the target (a shortest-path tree grown from the target) are computed once per player and
+ * target and guide every later search (A*) toward it, across queries. A search is cut off once
+ * it can only find paths over the cost bound. Results are cached per player and city pair and
+ * kept current from the delta stream: an opponent's claim only drops results that use the
+ * claimed route (the other paths are unaffected), a player's own claim drops that player's
+ * results and trees. Create one with attach().
+ */
+public class KShortestPaths implements GameDeltaListener {
+
+    /**
+     * One path between two cities
+     */
+    public static final class Path {
+        private final GameMap map;
+        private final int[] edges;
+        private final int[] cities;
+        private final int cost;
+
+        private Path(GameMap map, int[] edges, int[] cities, int cost) {
+            this.map = map;
+            this.edges = edges;
+            this.cities = cities;
+            this.cost = cost;
+        }
+
+        /**
+         * Trains needed (own routes are free)
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * Routes in order from the first city to the second
+         */
+        public List<RouteRef> getRoutes() {
+            List<RouteRef> routes = new ArrayList<>(edges.length);
+            for (int edgeId : edges) {
+                routes.add(map.getRoute(edgeId));
+            }
+            return routes;
+        }
+
+        /**
+         * Cities in order, both ends included
+         */
+        public List<CityRef> getCities() {
+            List<CityRef> refs = new ArrayList<>(cities.length);
+            for (int cityId : cities) {
+                refs.add(map.getCity(cityId));
+            }
+            return refs;
+        }
+
+        public int getRouteCount() {
+            return edges.length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Path && Arrays.equals(edges, ((Path) other).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int cityId : cities) {
+                sb.append(sb.length() == 0 ? "" : " - ").append(map.getCity(cityId).getName());
+            }
+            return sb.append(" (").append(cost).append(" trains)").toString();
+        }
+    }
+
+    /**
+     * Cached paths for one player and city pair
+     */
+    private static final class Result {
+        final List<Path> paths;
+        final boolean exhausted; // No further path within the bound
+        final int bound;         // Cost bound the search ran with
+        final long[] used;       // Routes on any of the paths (bitset over route ids)
+
+        Result(List<Path> paths, boolean exhausted, int bound, long[] used) {
+            this.paths = paths;
+            this.exhausted = exhausted;
+            this.bound = bound;
+            this.used = used;
+        }
+    }
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final String ANYONE = "";  // Cache key for queries that ignore ownership
+
+    private final GameMap map;
+    private final CompactGraph graph;
+    private final Map<String, Result> results = new HashMap<>();  // player|from|to
+    private final Map<String, int[]> trees = new HashMap<>();     // player|to: trains from each city to the target
+
+    // Scratch space for searches (all work happens under this object's lock)
+    private final long[] own;
+    private final long[] closed;
+    private final int[] removedEdge;   // Search stamp of routes removed for the current spur
+    private final int[] removedCity;
+    private final int[] reached;       // Search stamp of cities with a cost in g
+    private final int[] settled;
+    private int stamp;
+    private final int[] g;
+    private final int[] via;
+    private final long[] heap;         // Queue entries: key << 32 | city
+
+    private long hits;
+    private long searches;
+    private long invalidations;
+
+    private KShortestPaths(GameMap map) {
+        this.map = map;
+        this.graph = map.getCompactGraph();
+        int words = PlayerNetwork.wordsFor(graph.getEdgeCount());
+        this.own = new long[words];
+        this.closed = new long[words];
+        this.removedEdge = new int[graph.getEdgeCount()];
+        this.removedCity = new int[graph.getCityCount()];
+        this.reached = new int[graph.getCityCount()];
+        this.settled = new int[graph.getCityCount()];
+        this.g = new int[graph.getCityCount()];
+        this.via = new int[graph.getCityCount()];
+        this.heap = new long[2 * graph.getEdgeCount() + 1]; // At most one entry per route direction, plus the start
+    }
+
+    /**
+     * Starts serving paths for a map, keeping the cache in step with its claims
+     * @param map The game map
+     * @return The path finder
+     */
+    public static KShortestPaths attach(GameMap map) {
+        KShortestPaths finder = new KShortestPaths(map);
+        map.getDeltaStream().addListener(finder); // The cache starts empty, so nothing can be missed
+        return finder;
+    }
+
+    /**
+     * Stops following the map's claims (results cached afterwards may be stale)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+    }
+
+    @Override
+    public synchronized void onDelta(GameDelta delta) {
+        if (delta.getType() != DeltaType.ROUTE_CLAIMED || delta.getPlayerId() == null) {
+            return;
+        }
+        String claimant = delta.getPlayerId() + "|";
+        int edgeId = delta.getIndex();
+        trees.keySet().removeIf(key -> key.startsWith(claimant)); // Other players' trees only got longer: still lower bounds
+        Iterator<Map.Entry<String, Result>> it = results.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Result> entry = it.next();
+            boolean anyone = entry.getKey().startsWith(ANYONE + "|");
+            if (!anyone && (entry.getKey().startsWith(claimant) || PlayerNetwork.isSet(entry.getValue().used, edgeId))) {
+                it.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    // ============ Queries ============
+
+    /**
+     * The k cheapest paths between two cities
+     * @param playerId Player whose routes are free and whose opponents' routes are closed,
+     *                 or null to count every route at its length
+     * @return Paths, cheapest first (fewer than k if no more exist)
+     */
+    public List<Path> find(String playerId, String city1, String city2, int k) {
+        return find(playerId, map.resolveCity(city1), map.resolveCity(city2), k, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The k cheapest paths between two cities that cost at most maxCost trains
+     * @param playerId Player whose routes are free and whose opponents' routes are closed,
+     *                 or null to count every route at its length
+     * @param maxCost Paths costing more are not searched for
+     * @return Paths, cheapest first (fewer than k if no more exist within the bound)
+     */
+    public synchronized List<Path> find(String playerId, CityRef from, CityRef to, int k, int maxCost) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Need at least one path, got k = " + k);
+        }
+        if (from == null || to == null || !from.belongsTo(map) || !to.belongsTo(map)) {
+            throw new IllegalArgumentException("Cities must belong to this map");
+        }
+        String player = playerId != null ? playerId : ANYONE;
+        String key = player + "|" + from.getId() + "|" + to.getId();
+        Result cached = results.get(key);
+        if (cached != null && cached.bound >= maxCost && (cached.exhausted || cached.paths.size() >= k)) {
+            hits++;
+            return within(cached.paths, k, maxCost);
+        }
+
+        searches++;
+        Result result = yen(playerId, from.getId(), to.getId(), k, maxCost);
+        results.put(key, result);
+        return within(result.paths, k, maxCost);
+    }
+
+    private static List<Path> within(List<Path> paths, int k, int maxCost) {
+        int count = 0;
+        while (count < Math.min(k, paths.size()) && paths.get(count).cost <= maxCost) {
+            count++;
+        }
+        return paths.subList(0, count);
+    }
+
+    /**
+     * Queries answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Queries that needed a search
+     */
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Cached results dropped because of a claim
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    // ============ Search ============
+
+    private Result yen(String playerId, int from, int to, int k, int maxCost) {
+        Arrays.fill(own, 0);
+        Arrays.fill(closed, 0);
+        if (playerId != null) {
+            map.getNetwork(playerId).getRoutes(own);
+            map.getClaimedNetwork().getRoutes(closed);
+            for (int i = 0; i < closed.length; i++) {
+                closed[i] &= ~own[i]; // Opponents' routes only
+            }
+        }
+        int[] toGo = tree(playerId, to);
+
+        List<Path> found = new ArrayList<>();
+        long[] used = new long[own.length];
+        stamp++;
+        Path best = search(from, to, 0, maxCost, toGo, null, 0);
+        boolean exhausted = best == null;
+        if (best != null) {
+            found.add(best);
+        }
+
+        PriorityQueue<Path> candidates = new PriorityQueue<>((a, b) -> Integer.compare(a.cost, b.cost));
+        Set<Path> seen = new HashSet<>(found);
+        while (!exhausted && found.size() < k) {
+            Path previous = found.get(found.size() - 1);
+            int rootCost = 0;
+            for (int i = 0; i < previous.edges.length; i++) {
+                int spurCity = previous.cities[i];
+                stamp++;
+                // Routes that would repeat a known path with this root, and the root's cities
+                for (Path path : found) {
+                    if (path.edges.length > i && samePrefix(path, previous, i)) {
+                        removedEdge[path.edges[i]] = stamp;
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    removedCity[previous.cities[j]] = stamp;
+                }
+                Path spur = search(spurCity, to, rootCost, maxCost, toGo, previous, i);
+                if (spur != null && seen.add(spur)) {
+                    candidates.add(spur);
+                }
+                rootCost += edgeCost(previous.edges[i]);
+            }
+            Path next = candidates.poll();
+            if (next == null) {
+                exhausted = true;
+            } else {
+                found.add(next);
+            }
+        }
+        for (Path path : found) {
+            for (int edgeId : path.edges) {
+                used[edgeId >>> 6] |= 1L << edgeId;
+            }
+        }
+        return new Result(Collections.unmodifiableList(found), exhausted, maxCost, used);
+    }
+
+    private static boolean samePrefix(Path a, Path b, int length) {
+        for (int j = 0; j < length; j++) {
+            if (a.edges[j] != b.edges[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A* from a spur city to the target, skipping removed routes and cities (this stamp)
+     * @param rootCost Cost of the root path before the spur city
+     * @param root Path whose first rootLength routes lead to the spur city (null for none)
+     * @return The root joined with the cheapest spur, or null if there is none within maxCost
+     */
+    private Path search(int start, int to, int rootCost, int maxCost, int[] toGo, Path root, int rootLength) {
+        if (toGo[start] == UNREACHABLE || (long) rootCost + toGo[start] > maxCost) {
+            return null;
+        }
+        int visit = stamp;
+        reached[start] = visit;
+        g[start] = 0;
+        via[start] = -1;
+        int size = push(0, toGo[start], start);
+        boolean found = false;
+        while (size > 0) {
+            int city = (int) heap[0];
+            size = pop(size);
+            if (settled[city] == visit) {
+                continue;
+            }
+            settled[city] = visit;
+            if (city == to) {
+                found = true;
+                break;
+            }
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                int next = graph.getOtherCity(edgeId, city);
+                if (removedEdge[edgeId] == visit || removedCity[next] == visit || settled[next] == visit
+                        || PlayerNetwork.isSet(closed, edgeId) || toGo[next] == UNREACHABLE) {
+                    continue;
+                }
+                int cost = g[city] + edgeCost(edgeId);
+                if ((long) rootCost + cost + toGo[next] > maxCost) {
+                    continue; // Cut off: nothing through here fits the bound
+                }
+                if (reached[next] == visit && cost >= g[next]) {
+                    continue; // Reached as cheaply already
+                }
+                reached[next] = visit;
+                g[next] = cost;
+                via[next] = edgeId;
+                size = push(size, cost + toGo[next], next);
+            }
+        }
+        if (!found) {
+            return null;
+        }
+
+        int spurLength = 0;
+        for (int city = to; city != start; city = graph.getOtherCity(via[city], city)) {
+            spurLength++;
+        }
+        int[] edges = new int[rootLength + spurLength];
+        int[] cities = new int[edges.length + 1];
+        for (int j = 0; j < rootLength; j++) {
+            edges[j] = root.edges[j];
+            cities[j] = root.cities[j];
+        }
+        cities[edges.length] = to;
+        int city = to;
+        for (int j = edges.length - 1; j >= rootLength; j--) {
+            edges[j] = via[city];
+            city = graph.getOtherCity(via[city], city);
+            cities[j] = city;
+        }
+        return new Path(map, edges, cities, rootCost + g[to]);
+    }
+
+    private int edgeCost(int edgeId) {
+        return PlayerNetwork.isSet(own, edgeId) ? 0 : graph.getWeight(edgeId);
+    }
+
+    /**
+     * Trains from every city to the target over the routes the current query may use
+     * (cached per player and target)
+     */
+    private int[] tree(String playerId, int target) {
+        String key = (playerId != null ? playerId : ANYONE) + "|" + target;
+        int[] toGo = trees.get(key);
+        if (toGo != null) {
+            return toGo;
+        }
+        toGo = new int[graph.getCityCount()];
+        Arrays.fill(toGo, UNREACHABLE);
+        toGo[target] = 0;
+        int size = push(0, 0, target);
+        while (size > 0) {
+            int city = (int) heap[0];
+            int trains = (int) (heap[0] >>> 32);
+            size = pop(size);
+            if (trains > toGo[city]) {
+                continue;
+            }
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                if (PlayerNetwork.isSet(closed, edgeId)) {
+                    continue;
+                }
+                int next = graph.getOtherCity(edgeId, city);
+                int total = trains + edgeCost(edgeId);
+                if (total < toGo[next]) {
+                    toGo[next] = total;
+                    size = push(size, total, next);
+                }
+            }
+        }
+        trees.put(key, toGo);
+        return toGo;
+    }
+
+    private int push(int size, int key, int city) {
+        long entry = (long) key << 32 | city;
+        int i = size;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+        return size + 1;
+    }
+
+    /**
+     * Removes the smallest entry
+     * @return The new size
+     */
+    private int pop(int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+}
@@ -2,6 +2,7 @@ package com.tickettoride;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
 /**
  * Main entry point for the Ticket to Ride game
@@ -9,7 +10,14 @@ import java.util.Scanner;
 public class Main {
 
     private Game game;
+    /**
+     * Usage: Main (interactive) or Main --batch &lt;script file or directory&gt; [threads] (see ScriptRunner)
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            ScriptRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Main main = new Main();
         main.run();
     }
@@ -40,22 +48,30 @@ public class Main {
             }
         }
 
-        // Prompt for map files
-        System.out.print("Please enter the city file name (e.g., american.txt): ");
-        String cityFile = scnr.next();
-        String cityFilePath = "data/cities/" + cityFile;
-        
-        System.out.print("Please enter the edge file name (e.g., american.csv): ");
-        String edgeFile = scnr.next();
-        String edgeFilePath = "data/edges/" + edgeFile;
-        
-        GameMap gameBoard = new GameMap(cityFilePath, edgeFilePath);
-        
-        if (gameBoard.getCityCount() == 0) {
-            System.out.println("Error: Failed to load map files. Exiting.");
+        // Prompt for a map among those found under data/
+        MapRegistry registry = MapRegistry.getDefault();
+        if (registry.getMapNames().isEmpty()) {
+            System.out.println("Error: No maps found in " + MapRegistry.DEFAULT_DATA_DIRECTORY + ". Exiting.");
             scnr.close();
             return;
         }
+        System.out.println("Available maps: " + String.join(", ", registry.getMapNames()));
+        MapBundle bundle = null;
+        while (bundle == null) {
+            System.out.print("Please enter the map name (e.g., " + registry.getMapNames().get(0) + "): ");
+            String mapName = scnr.next().trim();
+            if (!registry.hasMap(mapName)) {
+                System.out.println("Unknown map: '" + mapName + "'.");
+                continue;
+            }
+            bundle = registry.acquire(mapName);
+            if (bundle == null) {
+                System.out.println("Error: Failed to load map files. Exiting.");
+                scnr.close();
+                return;
+            }
+        }
+        GameMap gameBoard = bundle.newMap();
         
         System.out.println("Map loaded successfully!");
 
@@ -93,12 +109,13 @@ public class Main {
         }
         
         // Create game
-        game = new Game(allPlayers, gameBoard);
+        game = new Game(allPlayers, gameBoard, bundle);
         
         System.out.println("Game initialized with " + players + " players and game board.");
         
         // Start the game
         game.startGame();
+        registry.release(bundle);
         
         scnr.close();
 
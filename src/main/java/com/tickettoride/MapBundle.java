@@ -0,0 +1,207 @@
+package com.tickettoride;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * MapBundle - the files that make up one map (cities, edges, destination tickets, color cards)
+ * and their parsed contents. The files are read once, on first use, and the result is shared
+ * by every game on the map: newMap() and the deck factories only copy the shared data, so each
+ * game still gets its own claims and cards.
+ *
+ * Bundles are normally obtained from a MapRegistry, which counts the games using each bundle
+ * and unloads the ones nobody is using.
+ */
+public class MapBundle {
+
+    /**
+     * Parsed contents of the bundle's files (immutable once built)
+     */
+    private static final class Data {
+        final CompactGraph topology;
+        final List<String> destinationLines;
+        final List<String> colorLines;
+
+        Data(CompactGraph topology, List<String> destinationLines, List<String> colorLines) {
+            this.topology = topology;
+            this.destinationLines = destinationLines;
+            this.colorLines = colorLines;
+        }
+    }
+
+    private final String name;
+    private final String cityFilePath;
+    private final String edgeFilePath;
+    private final String destinationFilePath;
+    private final String colorFilePath;
+    private volatile Data data; // null until loaded, and again after unload()
+    private int loadCount;
+
+    /**
+     * @param name Map name (e.g. "american")
+     * @param cityFilePath Path to the city file
+     * @param edgeFilePath Path to the edge file
+     * @param destinationFilePath Path to the destination card file
+     * @param colorFilePath Path to the color card file
+     */
+    public MapBundle(String name, String cityFilePath, String edgeFilePath, String destinationFilePath,
+                     String colorFilePath) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Map name cannot be empty");
+        }
+        this.name = name;
+        this.cityFilePath = cityFilePath;
+        this.edgeFilePath = edgeFilePath;
+        this.destinationFilePath = destinationFilePath;
+        this.colorFilePath = colorFilePath;
+    }
+
+    /**
+     * Bundle for map files outside a registry, named after the city file without its directory
+     * and extension (so "data/cities/american.txt" is the map "american")
+     */
+    public static MapBundle forFiles(String cityFilePath, String edgeFilePath, String destinationFilePath,
+                                     String colorFilePath) {
+        String name = new File(cityFilePath).getName();
+        if (name.endsWith(".txt")) {
+            name = name.substring(0, name.length() - ".txt".length());
+        }
+        return new MapBundle(name.isEmpty() ? cityFilePath : name, cityFilePath, edgeFilePath, destinationFilePath,
+                colorFilePath);
+    }
+
+    /**
+     * Bundle for the standard layout under a data directory:
+     * cities/&lt;name&gt;.txt, edges/&lt;name&gt;.csv, destinations/&lt;name&gt;.csv and colors/&lt;name&gt;.csv
+     * (the default color deck if the map has none of its own)
+     * @return The bundle, or null if the map's city, edge or destination file is missing
+     */
+    public static MapBundle inDirectory(File dataDirectory, String name) {
+        File cities = new File(dataDirectory, "cities/" + name + ".txt");
+        File edges = new File(dataDirectory, "edges/" + name + ".csv");
+        File destinations = new File(dataDirectory, "destinations/" + name + ".csv");
+        File colors = new File(dataDirectory, "colors/" + name + ".csv");
+        if (!cities.isFile() || !edges.isFile() || !destinations.isFile()) {
+            return null;
+        }
+        String colorFilePath = colors.isFile() ? colors.getPath() : ColorDeck.DEFAULT_CARD_FILE;
+        return new MapBundle(name, cities.getPath(), edges.getPath(), destinations.getPath(), colorFilePath);
+    }
+
+    /**
+     * Reads and parses the files if they are not loaded yet (thread-safe, reads at most once)
+     * @return true if the map loaded with at least one city and route
+     */
+    public boolean load() {
+        return loaded() != null;
+    }
+
+    private Data loaded() {
+        Data current = data;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (data == null) {
+                GameMap map = new GameMap(cityFilePath, edgeFilePath);
+                if (map.getCityCount() == 0 || map.getEdgeCount() == 0) {
+                    System.out.println("Error: Failed to load map " + name);
+                    return null;
+                }
+                data = new Data(map.getCompactGraph(), Deck.readCardLines(destinationFilePath),
+                        Deck.readCardLines(colorFilePath));
+                loadCount++;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Drops the parsed data (games already created keep working; the next use reloads the files)
+     */
+    synchronized void unload() {
+        data = null;
+    }
+
+    public boolean isLoaded() {
+        return data != null;
+    }
+
+    /**
+     * Number of times the files were read (1 if sharing works, more after unloads)
+     */
+    public synchronized int getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Creates a fresh, unclaimed map for a new game
+     * @throws IllegalStateException if the map files could not be loaded
+     */
+    public GameMap newMap() {
+        return new GameMap(require().topology);
+    }
+
+    /**
+     * Creates a fresh, shuffled color deck for a new game
+     * @param random Random source for all shuffles (seed it for reproducible games)
+     */
+    public ColorDeck newColorDeck(Random random) {
+        return new ColorDeck(random, require().colorLines);
+    }
+
+    /**
+     * Creates a fresh, shuffled destination deck for a new game
+     * @param random Random source for all shuffles (seed it for reproducible games)
+     */
+    public DestinationDeck newDestinationDeck(Random random) {
+        DestinationDeck deck = new DestinationDeck();
+        deck.setRandom(random);
+        deck.loadCards(require().destinationLines);
+        deck.shuffleDrawPile();
+        return deck;
+    }
+
+    /**
+     * The shared topology of the map
+     */
+    public CompactGraph getTopology() {
+        return require().topology;
+    }
+
+    private Data require() {
+        Data current = loaded();
+        if (current == null) {
+            throw new IllegalStateException("Map " + name + " could not be loaded");
+        }
+        return current;
+    }
+
+    // ============ Getters ============
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCityFilePath() {
+        return cityFilePath;
+    }
+
+    public String getEdgeFilePath() {
+        return edgeFilePath;
+    }
+
+    public String getDestinationFilePath() {
+        return destinationFilePath;
+    }
+
+    public String getColorFilePath() {
+        return colorFilePath;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,161 @@
+package com.tickettoride;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MapRegistry - the maps available under a data directory, shared by every game.
+ * A map is any name with a city file, an edge file and a destination file (see
+ * MapBundle.inDirectory()). Bundles load on first acquire() and stay loaded while games use
+ * them; once released by every game they stay cached until more than maxIdleMaps unused maps
+ * are loaded, then the least recently released ones are unloaded. All methods are thread-safe.
+ */
+public class MapRegistry {
+
+    public static final String DEFAULT_DATA_DIRECTORY = "data";
+    public static final int DEFAULT_MAX_IDLE_MAPS = 2;
+
+    private static MapRegistry defaultRegistry;
+
+    private final Map<String, MapBundle> bundles;     // by name, sorted
+    private final Map<MapBundle, Integer> references; // games using each bundle
+    private final LinkedHashMap<MapBundle, Boolean> idle; // loaded but unused, least recently released first
+    private final int maxIdleMaps;
+    private long evictions;
+
+    /**
+     * Finds the maps under a data directory
+     * @param dataDirectory Directory with cities/, edges/, destinations/ and colors/ subdirectories
+     * @param maxIdleMaps Unused maps kept loaded before the oldest is unloaded
+     */
+    public MapRegistry(File dataDirectory, int maxIdleMaps) {
+        if (maxIdleMaps < 0) {
+            throw new IllegalArgumentException("Idle map limit cannot be negative");
+        }
+        this.bundles = new LinkedHashMap<>();
+        this.references = new HashMap<>();
+        this.idle = new LinkedHashMap<>();
+        this.maxIdleMaps = maxIdleMaps;
+
+        File[] cityFiles = new File(dataDirectory, "cities").listFiles((dir, file) -> file.endsWith(".txt"));
+        if (cityFiles == null) {
+            System.out.println("Error: No map data found in " + dataDirectory);
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (File cityFile : cityFiles) {
+            names.add(cityFile.getName().substring(0, cityFile.getName().length() - ".txt".length()));
+        }
+        Collections.sort(names);
+        for (String name : names) {
+            MapBundle bundle = MapBundle.inDirectory(dataDirectory, name);
+            if (bundle != null) {
+                bundles.put(name, bundle);
+            } else {
+                System.out.println("Skipping map " + name + ": missing edge or destination file");
+            }
+        }
+    }
+
+    /**
+     * Registry of the maps under data/ (created on first use)
+     */
+    public static synchronized MapRegistry getDefault() {
+        if (defaultRegistry == null) {
+            defaultRegistry = new MapRegistry(new File(DEFAULT_DATA_DIRECTORY), DEFAULT_MAX_IDLE_MAPS);
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Names of the available maps, sorted
+     */
+    public synchronized List<String> getMapNames() {
+        return new ArrayList<>(bundles.keySet());
+    }
+
+    public synchronized boolean hasMap(String name) {
+        return bundles.containsKey(name);
+    }
+
+    /**
+     * Gets a map for a new game, loading it if needed.
+     * Every successful acquire must be followed by release() when the game ends.
+     * @param name Map name
+     * @return The loaded bundle, or null if there is no such map or it fails to load
+     */
+    public MapBundle acquire(String name) {
+        MapBundle bundle;
+        synchronized (this) {
+            bundle = bundles.get(name);
+            if (bundle == null) {
+                return null;
+            }
+            references.merge(bundle, 1, Integer::sum);
+            idle.remove(bundle);
+        }
+        // Loaded outside the registry lock so one slow map doesn't hold up the others
+        if (!bundle.load()) {
+            release(bundle);
+            return null;
+        }
+        return bundle;
+    }
+
+    /**
+     * Returns a map when a game ends; it may be unloaded once no game uses it
+     */
+    public synchronized void release(MapBundle bundle) {
+        Integer count = references.get(bundle);
+        if (count == null) {
+            throw new IllegalStateException("Map " + bundle + " was not acquired");
+        }
+        if (count > 1) {
+            references.put(bundle, count - 1);
+            return;
+        }
+        references.remove(bundle);
+        if (bundle.isLoaded()) {
+            idle.put(bundle, Boolean.TRUE);
+            evictIdle(maxIdleMaps);
+        }
+    }
+
+    /**
+     * Unloads every map no game is using
+     */
+    public synchronized void evictUnused() {
+        evictIdle(0);
+    }
+
+    private void evictIdle(int keep) {
+        Iterator<MapBundle> it = idle.keySet().iterator();
+        while (idle.size() > keep && it.hasNext()) {
+            it.next().unload();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Number of games currently using a map
+     */
+    public synchronized int getReferenceCount(String name) {
+        MapBundle bundle = bundles.get(name);
+        Integer count = bundle != null ? references.get(bundle) : null;
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Number of maps unloaded because nobody was using them
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -2,25 +2,36 @@ package com.tickettoride;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Hashtable;
+import java.util.Map;
 
+/**
+ * Player - one player's hand, trains, points and destination cards. Every method that changes
+ * the hand holds this player's lock, so a route checked and claimed under it can always be paid.
+ */
 public class Player {
 
+    public static final int STARTING_TRAINS = 45; // Each player starts with 45 trains
+    private static final Color[] COLORS = Color.values(); // values() copies the array on every call
 
     private String playerId;
     private int points;
     private int trains;
     private Hashtable<Color, List<ColorCard>> hand;
     private List<DestinationCard> destinations;
+    private List<DestinationCard> destinationsView;
     private GameMap gameMap;
 
 
     public Player(String playerId) {
         this.playerId = playerId;
         this.points = 0;
-        this.trains = 45; // Each player starts with 45 trains
+        this.trains = STARTING_TRAINS;
         this.hand = new Hashtable<Color, List<ColorCard>>();
         this.destinations = new ArrayList<>();
+        this.destinationsView = Collections.unmodifiableList(destinations);
         this.gameMap = null; //TODO: Pass in the game map, will be done differently when implementing the game map
     }
 
@@ -28,6 +39,25 @@ public class Player {
         this.gameMap = gameMap;
     }
 
+    /**
+     * Restores a saved player (used by GameSessionCodec when a hibernated game is reloaded)
+     * @param points Points scored
+     * @param trains Trains left
+     * @param handCards Color cards in the hand
+     * @param destinationCards Destination cards kept
+     */
+    synchronized void restoreState(int points, int trains, List<ColorCard> handCards, List<DestinationCard> destinationCards) {
+        this.points = points;
+        this.trains = trains;
+        hand.clear();
+        for (ColorCard card : handCards) {
+            card.setLocation("HAND", playerId);
+            hand.computeIfAbsent(card.getColor(), c -> new ArrayList<>()).add(card);
+        }
+        destinations.clear();
+        destinations.addAll(destinationCards);
+    }
+
     public int getPoints() {
         return points;
     }
@@ -45,19 +75,25 @@ public class Player {
     }
 
     /**
-     * Gets the player's hand organized by color
-     * @return Hashtable mapping Color to List of ColorCards
+     * Gets a read-only copy of the player's hand organized by color
+     * (use getCardCount for counts; other threads should read a GameSnapshot)
+     * @return Map from Color to the ColorCards of that color
      */
-    public Hashtable<Color, List<ColorCard>> getHand() {
-        return hand;
+    public Map<Color, List<ColorCard>> getHand() {
+        Map<Color, List<ColorCard>> copy = new EnumMap<>(Color.class);
+        for (Map.Entry<Color, List<ColorCard>> entry : hand.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
     }
 
     /**
-     * Gets the list of destination cards the player has
+     * Gets the destination cards the player has, as a read-only view that follows the hand
+     * (other threads should read a GameSnapshot)
      * @return List of DestinationCards
      */
     public List<DestinationCard> getDestinationCards() {
-        return destinations;
+        return destinationsView;
     }
 
     /**
@@ -87,7 +123,7 @@ public class Player {
         for (int i = 0; i < 3; i++) {
             if (i == choice - 1) {
                 // Selected card - add to destinations
-                destinations.add(cards[i]);
+                keepDestinationCard(cards[i]);
             } else {
                 // Other cards - discard
                 if (cards[i] != null) {
@@ -99,6 +135,15 @@ public class Player {
         return true;
     }
 
+    /**
+     * Adds a destination card the player chose to keep
+     * @param card The destination card to keep
+     */
+    public void keepDestinationCard(DestinationCard card) {
+        destinations.add(card);
+        emit(DeltaType.TICKET_KEPT, 0, card.getPoints(), card.getCardId());
+    }
+
     /**
      * Draws a color card based on player's choice.
      * Game class should prompt user and call this method with their choice.
@@ -123,12 +168,15 @@ public class Player {
             return null;
         }
         
-        // Add card to hand
+        // Add card to hand (drawn outside this player's lock, so the deck lock is never held under it)
         Color cardColor = card.getColor();
-        if (hand.get(cardColor) == null) {
-            hand.put(cardColor, new ArrayList<>());
+        int count;
+        synchronized (this) {
+            List<ColorCard> cards = hand.computeIfAbsent(cardColor, c -> new ArrayList<>());
+            cards.add(card);
+            count = cards.size();
         }
-        hand.get(cardColor).add(card);
+        emit(DeltaType.HAND_SIZE, cardColor.ordinal(), count, null);
         
         return card;
     }
@@ -153,7 +201,7 @@ public class Player {
         
         if (routeColor == null) {
             // Gray route - can use any single color + wildcards
-            for (Color c : Color.values()) {
+            for (Color c : COLORS) {
                 if (c != Color.MULTICOLOR) {
                     int colorCount = getCardCount(c);
                     if (colorCount + wildcards >= cost && wildcards >= ferryCount) {
@@ -164,8 +212,8 @@ public class Player {
             return false;
         } 
         else {
-            // Specific color route
-            int colorCount = getCardCount(routeColor);
+            // Specific color route (or a route paid with wildcards only, which are counted once)
+            int colorCount = routeColor != Color.MULTICOLOR ? getCardCount(routeColor) : 0;
             return (colorCount + wildcards >= cost) && (wildcards >= ferryCount);
         }
     }
@@ -177,7 +225,16 @@ public class Player {
      * @param ferryCount Minimum wildcards required
      * @return List of cards played (for discarding)
      */
-    public List<ColorCard> playCards(Color colorToUse, int cost, int ferryCount) {
+    public synchronized List<ColorCard> playCards(Color colorToUse, int cost, int ferryCount) {
+        List<ColorCard> played = takeCards(colorToUse, cost, ferryCount);
+        discardPlayed(colorToUse, played);
+        return played;
+    }
+
+    /**
+     * Removes the cards for a route from the hand without discarding them or reporting it yet
+     */
+    private List<ColorCard> takeCards(Color colorToUse, int cost, int ferryCount) {
         List<ColorCard> played = new ArrayList<>();
         
         List<ColorCard> colorCards = hand.get(colorToUse);
@@ -212,13 +269,62 @@ public class Player {
         // Update hand
         hand.put(colorToUse, colorCards);
         hand.put(Color.MULTICOLOR, wildcards);
+        return played;
+    }
+
+    /**
+     * Reports the new hand sizes and sends cards taken by takeCards to the discard pile
+     */
+    private void discardPlayed(Color colorToUse, List<ColorCard> played) {
+        reportHandSizes(colorToUse);
 
         // Add played cards to discard pile
         for (ColorCard card : played) {
-            gameMap.getColorDeck().discardPile.add(card);
+            gameMap.getColorDeck().discard(card);
         }
+    }
 
-        return played;
+    /**
+     * Moves the cards for a route straight from the hand to the discard pile (no lists created).
+     * Same choice of cards as takeCards: required wildcards, then the color, then wildcards.
+     * The caller holds this player's lock and has already checked that the hand can pay.
+     * @throws IllegalStateException if the hand cannot pay (nothing is removed in that case)
+     */
+    private void payCards(Color colorToUse, int cost, int ferryCount) {
+        List<ColorCard> colorCards = hand.get(colorToUse);
+        List<ColorCard> wildcards = hand.get(Color.MULTICOLOR);
+        int wildcardCount = wildcards != null ? wildcards.size() : 0;
+        int colorCount = colorToUse != Color.MULTICOLOR && colorCards != null ? colorCards.size() : 0;
+
+        int ferries = ferryCount;
+        int fromColor = Math.min(cost - ferries, colorCount);
+        int extraWildcards = cost - ferries - fromColor;
+        if (ferries + extraWildcards > wildcardCount) {
+            throw new IllegalStateException(playerId + " cannot pay " + cost + " " + colorToUse + " cards");
+        }
+
+        // Discarded in the same order as playCards; taken from the end of each list so nothing shifts.
+        // The deck lock is taken once for the whole payment instead of once per card.
+        ColorDeck colorDeck = gameMap.getColorDeck();
+        synchronized (colorDeck) {
+            for (int i = 0; i < ferries; i++) {
+                colorDeck.discard(wildcards.remove(wildcards.size() - 1));
+            }
+            for (int i = 0; i < fromColor; i++) {
+                colorDeck.discard(colorCards.remove(colorCards.size() - 1));
+            }
+            for (int i = 0; i < extraWildcards; i++) {
+                colorDeck.discard(wildcards.remove(wildcards.size() - 1));
+            }
+        }
+        reportHandSizes(colorToUse);
+    }
+
+    private void reportHandSizes(Color colorToUse) {
+        emit(DeltaType.HAND_SIZE, colorToUse.ordinal(), getCardCount(colorToUse), null);
+        if (colorToUse != Color.MULTICOLOR) {
+            emit(DeltaType.HAND_SIZE, Color.MULTICOLOR.ordinal(), getCardCount(Color.MULTICOLOR), null);
+        }
     }
 
     
@@ -231,57 +337,148 @@ public class Player {
      * @return RouteBuildResult containing success status, error message (if failed), points earned, and trains remaining
      */
     public RouteBuildResult buildRoute(String city1, String city2, Color colorChoice, int extraTunnelCost) {
-        // Validate route exists and is available
-        if (!gameMap.routeExists(city1, city2)) {
-            return new RouteBuildResult(false, "Route does not exist", 0, trains, 0);
-        }
-        if (gameMap.getRouteOwner(city1, city2) != null) {
-            return new RouteBuildResult(false, "Route is already claimed", 0, trains, 0);
+        // Resolve the city names once; everything after works on the handle
+        RouteRef route = gameMap.resolveRoute(city1, city2);
+        if (route == null) {
+            return new RouteBuildResult(RouteStatus.NO_ROUTE, null, 0, 0, 0, trains, 0);
         }
+        return buildRoute(route, colorChoice, extraTunnelCost);
+    }
 
-        int cost = gameMap.getRouteWeight(city1, city2);
-        int ferryCount = gameMap.getRouteFerryCount(city1, city2);
-        Color routeColor = gameMap.getRouteColor(city1, city2);
-        int pointsEarned = gameMap.getRoutePoints(city1, city2);
-
-        // Validate color choice
-        if (routeColor != null && colorChoice != routeColor && colorChoice != Color.MULTICOLOR) {
-            return new RouteBuildResult(false, "Must use " + routeColor.toDisplayString() + " cards for this route", 0, trains, 0);
+    /**
+     * Build a route using a resolved route handle (see tryBuildRoute).
+     * The result's error message is only built if the UI asks for it.
+     * @param route The route to build
+     * @param colorChoice The color to use (required for gray routes, must match for colored routes)
+     * @param extraTunnelCost Extra cost from tunnel drawing (0 if not a tunnel)
+     * @return RouteBuildResult containing success status, error message (if failed), points earned, and trains remaining
+     */
+    public synchronized RouteBuildResult buildRoute(RouteRef route, Color colorChoice, int extraTunnelCost) {
+        int edgeId = route.getId();
+        RouteStatus status = tryBuildRoute(edgeId, colorChoice, extraTunnelCost);
+        if (status == RouteStatus.OK) {
+            return new RouteBuildResult(true, null, gameMap.getRoutePoints(edgeId), trains, extraTunnelCost);
         }
-
-        // For gray routes, use the player's chosen color
+        Color routeColor = gameMap.getRouteColor(edgeId);
         Color colorToUse = (routeColor == null) ? colorChoice : routeColor;
-        
-        // Add tunnel extra cost (calculated in Game class via live card drawing)
-        int totalCost = cost + extraTunnelCost;
-        
-        // Check if player can still afford after tunnel cost
-        if (extraTunnelCost > 0 && !canAffordRoute(colorToUse, totalCost, ferryCount)) {
-            return new RouteBuildResult(false, "Cannot afford tunnel extra cost! Need " + totalCost + " cards but only have " + (getCardCount(colorToUse) + getCardCount(Color.MULTICOLOR)), 0, trains, extraTunnelCost);
+        if (status == RouteStatus.CLAIMED || status == RouteStatus.WRONG_COLOR) {
+            return new RouteBuildResult(status, colorToUse, 0, 0, 0, trains, 0);
         }
+        return new RouteBuildResult(status, colorToUse, gameMap.getRouteWeight(edgeId) + extraTunnelCost,
+                gameMap.getRouteFerryCount(edgeId), getCardCount(colorToUse) + getCardCount(Color.MULTICOLOR),
+                trains, extraTunnelCost);
+    }
 
-        // Validate train count
-        if (totalCost > this.trains) {
-            return new RouteBuildResult(false, "Not enough trains! Need " + totalCost + ", have " + trains, 0, trains, extraTunnelCost);
+    /**
+     * Builds a route and reports the outcome as a status only. Creates no objects, so servers
+     * and simulations can call it in their hot loops (deltas are only created if someone listens).
+     * Safe while other players build at the same time: the claim is a compare-and-set on the route.
+     * @param edgeId The route to build
+     * @param colorChoice The color to use (required for gray routes, must match for colored routes)
+     * @param extraTunnelCost Extra cost from tunnel drawing (0 if not a tunnel)
+     * @return OK if the route was built, otherwise why not (nothing changed in that case)
+     */
+    public synchronized RouteStatus tryBuildRoute(int edgeId, Color colorChoice, int extraTunnelCost) {
+        RouteStatus status = checkRoute(edgeId, colorChoice, extraTunnelCost);
+        if (status == RouteStatus.NO_ROUTE || status == RouteStatus.CLAIMED) {
+            return status;
         }
 
-        // Validate player has enough cards
-        if (!canAffordRoute(colorToUse, totalCost, ferryCount)) {
-            return new RouteBuildResult(false, "Not enough cards! Need " + totalCost + " " + colorToUse.toDisplayString() + " cards (with at least " + ferryCount + " wildcards)", 0, trains, extraTunnelCost);
+        // Report the tunnel draw whether or not the player can pay for it
+        if (gameMap.isRouteTunnel(edgeId)) {
+            emit(DeltaType.TUNNEL_DRAWN, edgeId, extraTunnelCost, null);
+        }
+        if (status != RouteStatus.OK) {
+            return status;
         }
 
-        // Play the cards
-        playCards(colorToUse, totalCost, ferryCount);
-
-        // Claim the route
-        gameMap.claimRoute(city1, city2, playerId);
+        // Reserve the route first (atomic compare-and-set), then pay, then publish the claim.
+        // The hand was checked under this player's lock, which every method that changes the
+        // hand holds; should paying still fail, the reservation is released and nothing changed.
+        // A lost reservation leaves nothing to undo.
+        if (!gameMap.reserveRoute(edgeId, playerId)) {
+            return RouteStatus.CLAIMED;
+        }
+        Color routeColor = gameMap.getRouteColor(edgeId);
+        Color colorToUse = (routeColor == null) ? colorChoice : routeColor; // For gray routes, use the player's chosen color
+        int totalCost = gameMap.getRouteWeight(edgeId) + extraTunnelCost;
+        try {
+            payCards(colorToUse, totalCost, gameMap.getRouteFerryCount(edgeId));
+        } catch (IllegalStateException e) {
+            gameMap.releaseRoute(edgeId, playerId);
+            return RouteStatus.NOT_ENOUGH_CARDS;
+        }
+        gameMap.publishClaim(edgeId, playerId);
         this.trains -= totalCost;
 
         // Award points
-        this.points += pointsEarned;
+        this.points += gameMap.getRoutePoints(edgeId);
+        emit(DeltaType.TRAINS, 0, trains, null);
+        emit(DeltaType.POINTS, 0, points, null);
         // checkTrainCount(); //TODO: Implement when game driver is implemented
 
-        return new RouteBuildResult(true, null, pointsEarned, trains, extraTunnelCost);
+        return RouteStatus.OK;
+    }
+
+    /**
+     * Checks whether a route could be built right now, without changing anything.
+     * Checks run in the same order as buildRoute reports them.
+     * @param edgeId Route id
+     * @param colorChoice The color to use (required for gray routes, must match for colored routes)
+     * @param extraTunnelCost Extra cost from tunnel drawing (0 if not a tunnel or not drawn yet)
+     * @return The status (OK if the route can be built)
+     */
+    public RouteStatus checkRoute(int edgeId, Color colorChoice, int extraTunnelCost) {
+        if (edgeId < 0 || edgeId >= gameMap.getEdgeCount()) {
+            return RouteStatus.NO_ROUTE;
+        }
+        if (gameMap.getRouteOwner(edgeId) != null) {
+            return RouteStatus.CLAIMED;
+        }
+        Color routeColor = gameMap.getRouteColor(edgeId);
+        if (routeColor != null && colorChoice != routeColor && colorChoice != Color.MULTICOLOR) {
+            return RouteStatus.WRONG_COLOR;
+        }
+        Color colorToUse = (routeColor == null) ? colorChoice : routeColor;
+        if (colorToUse == null) {
+            return RouteStatus.WRONG_COLOR;
+        }
+        int ferryCount = gameMap.getRouteFerryCount(edgeId);
+        int totalCost = gameMap.getRouteWeight(edgeId) + extraTunnelCost;
+        if (extraTunnelCost > 0 && !canAffordRoute(colorToUse, totalCost, ferryCount)) {
+            return RouteStatus.TUNNEL_UNAFFORDABLE;
+        }
+        if (totalCost > trains) {
+            return RouteStatus.NOT_ENOUGH_TRAINS;
+        }
+        if (!canAffordRoute(colorToUse, totalCost, ferryCount)) {
+            return RouteStatus.NOT_ENOUGH_CARDS;
+        }
+        return RouteStatus.OK;
+    }
+
+    /**
+     * Validates many candidate routes at once without side effects or per-candidate objects
+     * @param edgeIds Route id of each candidate
+     * @param colors Color of each candidate (as for buildRoute)
+     * @param extraTunnelCosts Tunnel extra cost of each candidate, or null for none
+     * @param count Number of candidates to validate (a prefix of the arrays)
+     * @param out Results are written here (status, total cost and points per candidate)
+     * @return out
+     */
+    public RouteValidation validateRoutes(int[] edgeIds, Color[] colors, int[] extraTunnelCosts, int count, RouteValidation out) {
+        out.reset(count);
+        for (int i = 0; i < count; i++) {
+            int edgeId = edgeIds[i];
+            int extra = extraTunnelCosts != null ? extraTunnelCosts[i] : 0;
+            RouteStatus status = checkRoute(edgeId, colors[i], extra);
+            if (status == RouteStatus.NO_ROUTE) {
+                out.set(i, status, 0, 0);
+            } else {
+                out.set(i, status, gameMap.getRouteWeight(edgeId) + extra, gameMap.getRoutePoints(edgeId));
+            }
+        }
+        return out;
     }
 
     /**
@@ -296,13 +493,24 @@ public class Player {
             return 0;
         }
         
-        boolean completed = gameMap.destinationCardCompleted(destinationCard.getCity1(), destinationCard.getCity2(), playerId);
+        boolean completed = gameMap.destinationCardCompleted(destinationCard, playerId);
         if (completed) {
             int pointsEarned = destinationCard.getPoints();
             points += pointsEarned;
             destinationCard.setCompleted(true); // Mark as completed to prevent duplicate awards
+            emit(DeltaType.TICKET_COMPLETED, 0, pointsEarned, destinationCard.getCardId());
+            emit(DeltaType.POINTS, 0, points, null);
             return pointsEarned;
         }
         return 0;
     }
+
+    /**
+     * Reports a change to this player's state on the game's delta stream
+     */
+    private void emit(DeltaType type, int index, int value, String cardId) {
+        if (gameMap != null) {
+            gameMap.getDeltaStream().emit(type, playerId, index, value, cardId);
+        }
+    }
 }
@@ -0,0 +1,227 @@
+package com.tickettoride;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PlayerNetwork - the routes one player owns, as a bitset over the dense route ids of a
+ * CompactGraph, with the cities those routes touch and the routes next to them kept alongside.
+ * Questions like "routes I own", "cities I touch" or "open routes that extend my network" are
+ * then bit operations over long[] words, 64 routes at a time, instead of comparing owner strings.
+ *
+ * GameMap keeps one network per player, plus one holding every claimed route, and adds each
+ * route right after its claim succeeds (see GameMap.getNetwork). All methods are thread-safe
+ * and take no lock: bits are set with atomic word updates, so claims in the same game never
+ * queue behind each other. A read during a claim may or may not include that claim's route.
+ * Methods that fill a long[] copy the words, so the result can be combined freely.
+ */
+public final class PlayerNetwork {
+
+    private final CompactGraph graph;
+    private final AtomicLongArray routes;   // Owned route ids
+    private final AtomicLongArray cities;   // City ids touched by owned routes
+    private final AtomicLongArray adjacent; // Route ids incident to a touched city (owned or not)
+    private final AtomicInteger routeCount = new AtomicInteger();
+    private final AtomicInteger cityCount = new AtomicInteger();
+    private final AtomicInteger trainsSpent = new AtomicInteger();
+
+    PlayerNetwork(CompactGraph graph) {
+        this.graph = graph;
+        this.routes = new AtomicLongArray(wordsFor(graph.getEdgeCount()));
+        this.cities = new AtomicLongArray(wordsFor(graph.getCityCount()));
+        this.adjacent = new AtomicLongArray(routes.length());
+    }
+
+    /**
+     * Number of long words needed for a bitset over ids 0 .. bits - 1
+     */
+    public static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Check if an id is set in a bitset
+     */
+    public static boolean isSet(long[] words, int id) {
+        return (words[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * First id set in a bitset at or after an id, or -1 if none. Iterate with
+     * for (int id = nextSet(words, 0); id >= 0; id = nextSet(words, id + 1))
+     */
+    public static int nextSet(long[] words, int fromId) {
+        int word = fromId >>> 6;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << fromId);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Number of ids set in a bitset
+     */
+    public static int count(long[] words) {
+        int total = 0;
+        for (long word : words) {
+            total += Long.bitCount(word);
+        }
+        return total;
+    }
+
+    /**
+     * Records a newly claimed route (no-op if it is already in the network)
+     */
+    void add(int edgeId) {
+        if (!setBit(routes, edgeId)) {
+            return;
+        }
+        routeCount.incrementAndGet();
+        trainsSpent.addAndGet(graph.getWeight(edgeId));
+        touch(graph.getEdgeCity1(edgeId));
+        touch(graph.getEdgeCity2(edgeId));
+    }
+
+    private void touch(int cityId) {
+        if (!setBit(cities, cityId)) {
+            return;
+        }
+        cityCount.incrementAndGet();
+        long[] incident = graph.getIncidentMask(cityId);
+        for (int i = 0; i < incident.length; i++) {
+            if (incident[i] != 0) {
+                orWord(adjacent, i, incident[i]);
+            }
+        }
+    }
+
+    /**
+     * Atomically sets a bit
+     * @return true if this call set it (false if it was already set)
+     */
+    private static boolean setBit(AtomicLongArray words, int id) {
+        long bit = 1L << id;
+        return (orWord(words, id >>> 6, bit) & bit) == 0;
+    }
+
+    /**
+     * Atomically ORs bits into a word
+     * @return The word before
+     */
+    private static long orWord(AtomicLongArray words, int word, long bits) {
+        long before = words.get(word);
+        while ((before & bits) != bits && !words.compareAndSet(word, before, before | bits)) {
+            before = words.get(word);
+        }
+        return before;
+    }
+
+    public boolean ownsRoute(int edgeId) {
+        return (routes.get(edgeId >>> 6) & (1L << edgeId)) != 0;
+    }
+
+    public boolean touchesCity(int cityId) {
+        return (cities.get(cityId >>> 6) & (1L << cityId)) != 0;
+    }
+
+    public int getRouteCount() {
+        return routeCount.get();
+    }
+
+    public int getCityCount() {
+        return cityCount.get();
+    }
+
+    /**
+     * Trains on the board: total length of the owned routes (tunnel extra costs not included)
+     */
+    public int getTrainsSpent() {
+        return trainsSpent.get();
+    }
+
+    /**
+     * Copies the owned routes into a bitset
+     * @param out Destination, or null (or too short) to allocate one
+     * @return The bitset over route ids
+     */
+    public long[] getRoutes(long[] out) {
+        return copy(routes, out);
+    }
+
+    /**
+     * Copies the touched cities into a bitset
+     * @param out Destination, or null (or too short) to allocate one
+     * @return The bitset over city ids
+     */
+    public long[] getCities(long[] out) {
+        return copy(cities, out);
+    }
+
+    /**
+     * The routes that would extend this network: unclaimed routes with an end on a touched city
+     * @param claimed Network of every claimed route (GameMap.getClaimedNetwork())
+     * @param out Destination, or null (or too short) to allocate one
+     * @return The bitset over route ids (empty while the network is empty)
+     */
+    public long[] getFrontier(PlayerNetwork claimed, long[] out) {
+        out = claimed.getRoutes(out);
+        for (int i = 0; i < adjacent.length(); i++) {
+            out[i] = adjacent.get(i) & ~out[i];
+        }
+        return out;
+    }
+
+    /**
+     * Check if two cities are connected by owned routes (breadth-first search over owned routes)
+     */
+    public boolean connects(int city1, int city2) {
+        if (city1 == city2) {
+            return true;
+        }
+        if (!touchesCity(city1) || !touchesCity(city2)) {
+            return false; // One end is not on the network at all
+        }
+
+        long[] visited = new long[cities.length()];
+        int[] queue = new int[graph.getCityCount()]; // Not cityCount: routes may be added while searching
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = city1;
+        visited[city1 >>> 6] |= 1L << city1;
+        while (head < tail) {
+            int city = queue[head++];
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                if (!ownsRoute(edgeId)) {
+                    continue;
+                }
+                int next = graph.getOtherCity(edgeId, city);
+                if (next == city2) {
+                    return true;
+                }
+                if (!isSet(visited, next)) {
+                    visited[next >>> 6] |= 1L << next;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long[] copy(AtomicLongArray words, long[] out) {
+        if (out == null || out.length < words.length()) {
+            out = new long[words.length()];
+        }
+        for (int i = 0; i < words.length(); i++) {
+            out[i] = words.get(i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,54 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * RandomBot - baseline strategy that picks uniformly among legal actions.
+ * Builds a random affordable route two times out of three, otherwise draws two cards.
+ */
+public class RandomBot implements Bot {
+
+    @Override
+    public String getName() {
+        return "RandomBot";
+    }
+
+    @Override
+    public boolean[] chooseInitialTickets(SimulatedGame game, Player self, DestinationCard[] offered) {
+        return new boolean[offered.length]; // Keep only the required minimum
+    }
+
+    @Override
+    public void takeTurn(SimulatedGame game, Player self) {
+        GameMap map = game.getMap();
+        Random random = game.getRandom();
+
+        long[] claimed = map.getClaimedNetwork().getRoutes(null);
+        List<Integer> affordable = new ArrayList<>();
+        for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+            if (!PlayerNetwork.isSet(claimed, edgeId) && map.getRouteWeight(edgeId) <= self.getTrainCount()
+                    && chooseColor(self, map.getRouteColor(edgeId), map.getRouteWeight(edgeId), map.getRouteFerryCount(edgeId)) != null) {
+                affordable.add(edgeId);
+            }
+        }
+
+        if (!affordable.isEmpty() && random.nextInt(3) != 0) {
+            int edgeId = affordable.get(random.nextInt(affordable.size()));
+            Color color = chooseColor(self, map.getRouteColor(edgeId), map.getRouteWeight(edgeId), map.getRouteFerryCount(edgeId));
+            game.buildRoute(self, edgeId, color);
+            return;
+        }
+
+        for (int drawn = 0; drawn < 2; drawn++) {
+            ColorDeck deck = game.getColorDeck();
+            int slot = random.nextInt(deck.getVisibleSlotCount() + 1); // Last option is the mystery deck
+            if (slot < deck.getVisibleSlotCount() && deck.getVisibleCard(slot) != null) {
+                self.drawColorCard(false, slot);
+            } else if (game.getColorDeck().size() > 0) {
+                self.drawColorCard(true, -1);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.tickettoride;
+
+import java.util.Random;
+
+/**
+ * ResumableRandom - a java.util.Random whose state can be read and restored. It runs the same
+ * 48-bit generator as Random, so a game seeded with it shuffles exactly as one seeded with
+ * new Random(seed); GameSessionCodec saves the state so a hibernated or migrated game draws
+ * the same cards it would have drawn had it never left memory. Thread-safe.
+ */
+final class ResumableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // Set by setSeed, which Random's constructor calls
+
+    ResumableRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed); // Clears the cached Gaussian
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected synchronized int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * The generator state, for restoreState (a cached nextGaussian value is not included)
+     */
+    synchronized long getState() {
+        return state;
+    }
+
+    /**
+     * Continues from a state returned by getState
+     */
+    synchronized void restoreState(long state) {
+        this.state = state & MASK;
+    }
+}
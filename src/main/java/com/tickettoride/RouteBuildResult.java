@@ -2,14 +2,21 @@ package com.tickettoride;
 
 /**
  * Result object returned from Player.buildRoute() to communicate success/failure
- * and provide information for UI display
+ * and provide information for UI display.
+ * Failures keep the status and the numbers behind it; the error message is only built
+ * when the UI asks for it.
  */
 public class RouteBuildResult {
     private boolean success;
-    private String errorMessage;
+    private String errorMessage; // null until rendered (or for success)
     private int pointsEarned;
     private int trainsRemaining;
     private int extraTunnelCost; // 0 if not a tunnel, or the extra cost if it was
+    private RouteStatus status;
+    private Color requiredColor; // Color the route must be paid in (null if none was chosen)
+    private int totalCost;
+    private int ferryCount;
+    private int cardsAvailable;  // Matching cards plus wildcards at the time of the attempt
 
     public RouteBuildResult(boolean success, String errorMessage, int pointsEarned, int trainsRemaining, int extraTunnelCost) {
         this.success = success;
@@ -17,16 +24,69 @@ public class RouteBuildResult {
         this.pointsEarned = pointsEarned;
         this.trainsRemaining = trainsRemaining;
         this.extraTunnelCost = extraTunnelCost;
+        this.status = success ? RouteStatus.OK : null;
+    }
+
+    /**
+     * Result of a failed attempt; the message is rendered from these values by getErrorMessage()
+     * @param status Why the route could not be built (not OK)
+     * @param requiredColor Color the route must be paid in (null for a gray route with no color chosen)
+     * @param totalCost Cards and trains needed, including the tunnel extra cost
+     * @param ferryCount Minimum wildcards required
+     * @param cardsAvailable Matching cards plus wildcards in hand
+     * @param trainsRemaining Trains in hand
+     * @param extraTunnelCost Tunnel extra cost drawn (0 if not a tunnel)
+     */
+    RouteBuildResult(RouteStatus status, Color requiredColor, int totalCost, int ferryCount, int cardsAvailable,
+                     int trainsRemaining, int extraTunnelCost) {
+        this.success = false;
+        this.status = status;
+        this.requiredColor = requiredColor;
+        this.totalCost = totalCost;
+        this.ferryCount = ferryCount;
+        this.cardsAvailable = cardsAvailable;
+        this.trainsRemaining = trainsRemaining;
+        this.extraTunnelCost = extraTunnelCost;
     }
 
     public boolean isSuccess() {
         return success;
     }
 
+    /**
+     * Why the build failed (OK on success; null for failures created from a message only)
+     */
+    public RouteStatus getStatus() {
+        return status;
+    }
+
     public String getErrorMessage() {
+        if (errorMessage == null && !success && status != null) {
+            errorMessage = describe();
+        }
         return errorMessage;
     }
 
+    private String describe() {
+        switch (status) {
+            case NO_ROUTE:
+                return "Route does not exist";
+            case CLAIMED:
+                return "Route is already claimed";
+            case WRONG_COLOR:
+                if (requiredColor == null) {
+                    return "Choose a color for this gray route";
+                }
+                return "Must use " + requiredColor.toDisplayString() + " cards for this route";
+            case TUNNEL_UNAFFORDABLE:
+                return "Cannot afford tunnel extra cost! Need " + totalCost + " cards but only have " + cardsAvailable;
+            case NOT_ENOUGH_TRAINS:
+                return "Not enough trains! Need " + totalCost + ", have " + trainsRemaining;
+            default:
+                return "Not enough cards! Need " + totalCost + " " + requiredColor.toDisplayString() + " cards (with at least " + ferryCount + " wildcards)";
+        }
+    }
+
     public int getPointsEarned() {
         return pointsEarned;
     }
@@ -39,4 +99,3 @@ public class RouteBuildResult {
         return extraTunnelCost;
     }
 }
-
@@ -0,0 +1,415 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * RouteCriticality - which routes and cities are chokepoints of a map.
+ *
+ * For every route it computes edge betweenness centrality over cheapest paths (train cost as
+ * distance, Brandes' algorithm run in parallel across source cities), once counting every pair
+ * of cities and once weighting each pair by the points of the destination tickets that connect
+ * them. It also finds bridges (routes whose loss disconnects cities) and articulation cities.
+ *
+ * Results are immutable. forMap() caches the analysis of a map's full graph and full ticket list; a
+ * RouteCriticalityTracker keeps an analysis of the routes that are still unclaimed.
+ */
+public final class RouteCriticality {
+
+    private static final Map<CompactGraph, RouteCriticality> CACHE = new WeakHashMap<>();
+
+    private final CompactGraph graph;
+    private final double[] betweenness;       // per edge, over all city pairs
+    private final double[] ticketBetweenness; // per edge, pairs weighted by ticket points
+    private final boolean[] bridges;          // per edge
+    private final boolean[] articulation;     // per city
+    private final boolean[] removed;          // per edge, routes left out of the analysis
+
+    RouteCriticality(CompactGraph graph, double[] betweenness, double[] ticketBetweenness,
+                     boolean[] bridges, boolean[] articulation, boolean[] removed) {
+        this.graph = graph;
+        this.betweenness = betweenness;
+        this.ticketBetweenness = ticketBetweenness;
+        this.bridges = bridges;
+        this.articulation = articulation;
+        this.removed = removed;
+    }
+
+    /**
+     * Gets the analysis of a map's full graph, weighted by every destination ticket of the map
+     * (computed once per loaded bundle; its route and city ids match every game on the bundle)
+     */
+    public static RouteCriticality forMap(MapBundle bundle) {
+        CompactGraph graph = bundle.getTopology();
+        synchronized (CACHE) {
+            RouteCriticality cached = CACHE.get(graph);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Weighted by a fresh deck, which holds every ticket, so no game's deals change the result
+        GameMap map = bundle.newMap();
+        map.setDestinationDeck(bundle.newDestinationDeck(new Random(0)));
+        RouteCriticality result = analyze(map, deckTickets(map), new boolean[graph.getEdgeCount()]);
+        synchronized (CACHE) {
+            CACHE.putIfAbsent(graph, result);
+            return CACHE.get(graph);
+        }
+    }
+
+    /**
+     * Analyzes a map
+     * @param map The map
+     * @param tickets Destination tickets whose city pairs weigh the ticket betweenness
+     * @param removed Routes to leave out (e.g. claimed ones), indexed by edge id
+     * @return The analysis
+     */
+    public static RouteCriticality analyze(GameMap map, List<DestinationCard> tickets, boolean[] removed) {
+        CompactGraph graph = map.getCompactGraph();
+        double[][] pairWeights = ticketPairWeights(map, tickets);
+        int cityCount = graph.getCityCount();
+        int edgeCount = graph.getEdgeCount();
+
+        int[] sources = new int[cityCount];
+        for (int c = 0; c < cityCount; c++) {
+            sources[c] = c;
+        }
+        double[] betweenness = new double[edgeCount];
+        double[] ticketBetweenness = new double[edgeCount];
+        accumulate(graph, removed, pairWeights, sources, betweenness, ticketBetweenness);
+
+        boolean[] bridges = new boolean[edgeCount];
+        boolean[] articulation = new boolean[cityCount];
+        new Tarjan(graph, removed, bridges, articulation).runAll();
+        return new RouteCriticality(graph, betweenness, ticketBetweenness, bridges, articulation, removed.clone());
+    }
+
+    /**
+     * Every ticket card still in the map's destination deck (draw and discard piles)
+     */
+    static List<DestinationCard> deckTickets(GameMap map) {
+        List<DestinationCard> tickets = new ArrayList<>();
+        DestinationDeck deck = map.getDestinationDeck();
+        if (deck != null) {
+            tickets.addAll(deck.getCards());
+            for (Card card : deck.discardPile) {
+                tickets.add((DestinationCard) card);
+            }
+        }
+        return tickets;
+    }
+
+    /**
+     * Points of the tickets between each pair of cities (symmetric)
+     */
+    static double[][] ticketPairWeights(GameMap map, List<DestinationCard> tickets) {
+        int cityCount = map.getCompactGraph().getCityCount();
+        double[][] weights = new double[cityCount][cityCount];
+        for (DestinationCard ticket : tickets) {
+            if (map.resolveDestination(ticket)) {
+                int a = ticket.getCityRef1().getId();
+                int b = ticket.getCityRef2().getId();
+                weights[a][b] += ticket.getPoints();
+                weights[b][a] += ticket.getPoints();
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Runs Brandes from the given sources in parallel and adds the results to the two arrays.
+     * Every pair is reached from both ends, so each contribution is halved.
+     */
+    static void accumulate(CompactGraph graph, boolean[] removed, double[][] pairWeights, int[] sources,
+                           double[] betweenness, double[] ticketBetweenness) {
+        Brandes total = IntStream.of(sources).parallel().collect(
+                () -> new Brandes(graph, removed, pairWeights),
+                Brandes::run,
+                Brandes::merge);
+        for (int e = 0; e < betweenness.length; e++) {
+            betweenness[e] += total.edgeScore[e] / 2.0;
+            ticketBetweenness[e] += total.ticketEdgeScore[e] / 2.0;
+        }
+    }
+
+    // ============ Queries ============
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Number of cheapest paths between city pairs that use a route (fractional for ties)
+     */
+    public double getBetweenness(int edgeId) {
+        return betweenness[edgeId];
+    }
+
+    /**
+     * Like getBetweenness, with each city pair weighted by the points of the tickets between them
+     */
+    public double getTicketBetweenness(int edgeId) {
+        return ticketBetweenness[edgeId];
+    }
+
+    /**
+     * Check if losing a route disconnects some cities (among the routes analyzed)
+     */
+    public boolean isBridge(int edgeId) {
+        return bridges[edgeId];
+    }
+
+    /**
+     * Check if losing a city disconnects some other cities (among the routes analyzed)
+     */
+    public boolean isArticulationPoint(int cityId) {
+        return articulation[cityId];
+    }
+
+    /**
+     * Check if a route was left out of the analysis (e.g. already claimed)
+     */
+    public boolean isRemoved(int edgeId) {
+        return removed[edgeId];
+    }
+
+    /**
+     * Routes ordered by ticket betweenness, most critical first
+     * @param limit Maximum number of routes to return
+     * @return Route ids
+     */
+    public int[] getMostCriticalRoutes(int limit) {
+        return IntStream.range(0, betweenness.length)
+                .filter(e -> !removed[e])
+                .boxed()
+                .sorted((a, b) -> Double.compare(ticketBetweenness[b], ticketBetweenness[a]))
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Single-source Brandes over cheapest paths (Dijkstra, plain O(V^2) selection since maps
+     * are small). One instance per worker thread; scores accumulate across sources.
+     */
+    static final class Brandes {
+        private final CompactGraph graph;
+        private final boolean[] removed;
+        private final double[][] pairWeights;
+        final double[] edgeScore;
+        final double[] ticketEdgeScore;
+
+        private final int[] dist;
+        private final double[] sigma;
+        private final double[] delta;
+        private final double[] ticketDelta;
+        private final boolean[] settled;
+        private final int[] order;
+
+        Brandes(CompactGraph graph, boolean[] removed, double[][] pairWeights) {
+            this.graph = graph;
+            this.removed = removed;
+            this.pairWeights = pairWeights;
+            int cityCount = graph.getCityCount();
+            this.edgeScore = new double[graph.getEdgeCount()];
+            this.ticketEdgeScore = new double[graph.getEdgeCount()];
+            this.dist = new int[cityCount];
+            this.sigma = new double[cityCount];
+            this.delta = new double[cityCount];
+            this.ticketDelta = new double[cityCount];
+            this.settled = new boolean[cityCount];
+            this.order = new int[cityCount];
+        }
+
+        void run(int source) {
+            int cityCount = dist.length;
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            Arrays.fill(settled, false);
+            dist[source] = 0;
+
+            // Dijkstra, recording the order cities are settled in
+            int settledCount = 0;
+            while (true) {
+                int city = -1;
+                for (int c = 0; c < cityCount; c++) {
+                    if (!settled[c] && dist[c] != Integer.MAX_VALUE && (city < 0 || dist[c] < dist[city])) {
+                        city = c;
+                    }
+                }
+                if (city < 0) {
+                    break;
+                }
+                settled[city] = true;
+                order[settledCount++] = city;
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    if (removed[edgeId]) {
+                        continue;
+                    }
+                    int next = graph.getOtherCity(edgeId, city);
+                    int nextDist = dist[city] + graph.getWeight(edgeId);
+                    if (nextDist < dist[next]) {
+                        dist[next] = nextDist;
+                    }
+                }
+            }
+
+            // Count cheapest paths in settle order (predecessors always settle first)
+            sigma[source] = 1.0;
+            for (int k = 1; k < settledCount; k++) {
+                int city = order[k];
+                double paths = 0.0;
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    int prev = graph.getOtherCity(edgeId, city);
+                    if (isPredecessorEdge(edgeId, prev, city)) {
+                        paths += sigma[prev];
+                    }
+                }
+                sigma[city] = paths;
+            }
+
+            // Accumulate dependencies in reverse settle order
+            for (int k = 0; k < settledCount; k++) {
+                delta[order[k]] = 0.0;
+                ticketDelta[order[k]] = 0.0;
+            }
+            double[] sourceWeights = pairWeights[source];
+            for (int k = settledCount - 1; k > 0; k--) {
+                int city = order[k];
+                double coefficient = (1.0 + delta[city]) / sigma[city];
+                double ticketCoefficient = (sourceWeights[city] + ticketDelta[city]) / sigma[city];
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    int prev = graph.getOtherCity(edgeId, city);
+                    if (isPredecessorEdge(edgeId, prev, city)) {
+                        double share = sigma[prev] * coefficient;
+                        double ticketShare = sigma[prev] * ticketCoefficient;
+                        edgeScore[edgeId] += share;
+                        ticketEdgeScore[edgeId] += ticketShare;
+                        delta[prev] += share;
+                        ticketDelta[prev] += ticketShare;
+                    }
+                }
+            }
+        }
+
+        private boolean isPredecessorEdge(int edgeId, int prev, int city) {
+            return !removed[edgeId] && prev != city && dist[prev] != Integer.MAX_VALUE
+                    && dist[prev] + graph.getWeight(edgeId) == dist[city];
+        }
+
+        void merge(Brandes other) {
+            for (int e = 0; e < edgeScore.length; e++) {
+                edgeScore[e] += other.edgeScore[e];
+                ticketEdgeScore[e] += other.ticketEdgeScore[e];
+            }
+        }
+    }
+
+    /**
+     * Tarjan's bridge and articulation point search (low-link values, depth-first).
+     * Parallel routes between the same two cities are handled by skipping only the route
+     * used to enter a city, never its twin.
+     */
+    static final class Tarjan {
+        private final CompactGraph graph;
+        private final boolean[] removed;
+        private final boolean[] bridges;
+        private final boolean[] articulation;
+        private final int[] discovery;
+        private final int[] low;
+        private int time;
+
+        Tarjan(CompactGraph graph, boolean[] removed, boolean[] bridges, boolean[] articulation) {
+            this.graph = graph;
+            this.removed = removed;
+            this.bridges = bridges;
+            this.articulation = articulation;
+            this.discovery = new int[graph.getCityCount()];
+            this.low = new int[graph.getCityCount()];
+        }
+
+        void runAll() {
+            for (int city = 0; city < discovery.length; city++) {
+                if (discovery[city] == 0) {
+                    visitRoot(city);
+                }
+            }
+        }
+
+        /**
+         * Searches the component containing a city (bridges/articulation of that component are set)
+         */
+        void visitRoot(int root) {
+            int children = visit(root, -1);
+            articulation[root] = children > 1;
+        }
+
+        private int visit(int city, int parentEdge) {
+            discovery[city] = ++time;
+            low[city] = discovery[city];
+            int children = 0;
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                if (removed[edgeId] || edgeId == parentEdge) {
+                    continue;
+                }
+                int next = graph.getOtherCity(edgeId, city);
+                if (discovery[next] == 0) {
+                    children++;
+                    visit(next, edgeId);
+                    low[city] = Math.min(low[city], low[next]);
+                    if (low[next] > discovery[city]) {
+                        bridges[edgeId] = true;
+                    }
+                    if (parentEdge >= 0 && low[next] >= discovery[city]) {
+                        articulation[city] = true;
+                    }
+                } else {
+                    low[city] = Math.min(low[city], discovery[next]);
+                }
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Prints the most critical routes, bridges and articulation cities of a map.
+     * Usage: RouteCriticality [mapName] [count]
+     */
+    public static void main(String[] args) {
+        String mapName = args.length > 0 ? args[0] : "american";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        MapBundle bundle = MapRegistry.getDefault().acquire(mapName);
+        if (bundle == null) {
+            System.out.println("Error: Unknown map " + mapName + ". Available maps: " + MapRegistry.getDefault().getMapNames());
+            return;
+        }
+        GameMap map = bundle.newMap(); // Same ids as the analysis, for route and city names
+
+        long startTime = System.nanoTime();
+        RouteCriticality criticality = forMap(bundle);
+        System.out.printf("Analyzed %d cities and %d routes in %.1f ms%n", map.getCompactGraph().getCityCount(),
+                map.getEdgeCount(), (System.nanoTime() - startTime) / 1e6);
+
+        System.out.println("Most critical routes (ticket-weighted betweenness):");
+        for (int edgeId : criticality.getMostCriticalRoutes(count)) {
+            System.out.printf("  %-40s tickets %8.1f  all pairs %6.1f%s%n", map.getRoute(edgeId),
+                    criticality.getTicketBetweenness(edgeId), criticality.getBetweenness(edgeId),
+                    criticality.isBridge(edgeId) ? "  (bridge)" : "");
+        }
+        StringBuilder cities = new StringBuilder();
+        for (int city = 0; city < map.getCompactGraph().getCityCount(); city++) {
+            if (criticality.isArticulationPoint(city)) {
+                cities.append(cities.length() > 0 ? ", " : "").append(map.getCompactGraph().getCityName(city));
+            }
+        }
+        System.out.println("Articulation cities: " + (cities.length() > 0 ? cities : "none"));
+    }
+}
@@ -0,0 +1,188 @@
+package com.tickettoride;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RouteCriticalityTracker - keeps a RouteCriticality of the routes that are still unclaimed.
+ * A claim only changes cheapest paths inside the connected component the route belonged to,
+ * so the tracker marks that component dirty and, when the view is next read, reruns Brandes
+ * from its cities only and redoes the bridge search there. Every other score is reused.
+ * Create one with attach().
+ */
+public class RouteCriticalityTracker implements GameDeltaListener {
+
+    private final GameMap map;
+    private final CompactGraph graph;
+    private final double[][] pairWeights;
+    private final boolean[] removed;
+    private final boolean[] dirtyCities;
+    private final double[] betweenness;
+    private final double[] ticketBetweenness;
+    private final boolean[] bridges;
+    private final boolean[] articulation;
+    private boolean dirty;
+    private RouteCriticality view;
+    private int refreshes;
+    private int sourcesRecomputed;
+
+    private RouteCriticalityTracker(GameMap map, List<DestinationCard> tickets) {
+        this.map = map;
+        this.graph = map.getCompactGraph();
+        this.pairWeights = RouteCriticality.ticketPairWeights(map, tickets);
+        this.removed = new boolean[graph.getEdgeCount()];
+        this.dirtyCities = new boolean[graph.getCityCount()];
+        this.betweenness = new double[graph.getEdgeCount()];
+        this.ticketBetweenness = new double[graph.getEdgeCount()];
+        this.bridges = new boolean[graph.getEdgeCount()];
+        this.articulation = new boolean[graph.getCityCount()];
+    }
+
+    /**
+     * Starts tracking a game, weighting pairs by the tickets in its destination deck
+     * @param map The game map
+     * @return The tracker
+     */
+    public static RouteCriticalityTracker attach(GameMap map) {
+        return attach(map, RouteCriticality.deckTickets(map));
+    }
+
+    /**
+     * Starts tracking a game
+     * @param map The game map
+     * @param tickets Destination tickets whose city pairs weigh the ticket betweenness
+     * @return The tracker
+     */
+    public static RouteCriticalityTracker attach(GameMap map, List<DestinationCard> tickets) {
+        RouteCriticalityTracker tracker = new RouteCriticalityTracker(map, tickets);
+        GameDeltaStream stream = map.getDeltaStream();
+        synchronized (stream) { // No claim can slip in between reading the owners and registration
+            for (int edgeId = 0; edgeId < tracker.removed.length; edgeId++) {
+                tracker.removed[edgeId] = map.getRouteOwner(edgeId) != null;
+            }
+            Arrays.fill(tracker.dirtyCities, true);
+            tracker.dirty = true;
+            stream.addListener(tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Stops tracking (the last view stays readable)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+    }
+
+    @Override
+    public synchronized void onDelta(GameDelta delta) {
+        if (delta.getType() == DeltaType.ROUTE_CLAIMED && !removed[delta.getIndex()]) {
+            int edgeId = delta.getIndex();
+            removed[edgeId] = true;
+            // The component may split in two; each half contains one end of the route
+            dirtyCities[graph.getEdgeCity1(edgeId)] = true;
+            dirtyCities[graph.getEdgeCity2(edgeId)] = true;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Criticality of the unclaimed routes, refreshed first if routes were claimed since the last call
+     */
+    public synchronized RouteCriticality getView() {
+        if (dirty) {
+            refresh();
+        }
+        return view;
+    }
+
+    private void refresh() {
+        int cityCount = graph.getCityCount();
+        int[] component = components();
+
+        // Grow the dirty cities to their whole components
+        boolean[] dirtyComponent = new boolean[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            if (dirtyCities[city]) {
+                dirtyComponent[component[city]] = true;
+            }
+        }
+        int sourceCount = 0;
+        int[] sources = new int[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            if (dirtyComponent[component[city]]) {
+                sources[sourceCount++] = city;
+                articulation[city] = false;
+            }
+        }
+
+        // Scores of routes inside (or just cut from) the dirty components start over
+        for (int edgeId = 0; edgeId < removed.length; edgeId++) {
+            if (removed[edgeId] || dirtyComponent[component[graph.getEdgeCity1(edgeId)]]) {
+                betweenness[edgeId] = 0.0;
+                ticketBetweenness[edgeId] = 0.0;
+                bridges[edgeId] = false;
+            }
+        }
+
+        RouteCriticality.accumulate(graph, removed, pairWeights, Arrays.copyOf(sources, sourceCount),
+                betweenness, ticketBetweenness);
+        RouteCriticality.Tarjan tarjan = new RouteCriticality.Tarjan(graph, removed, bridges, articulation);
+        for (int city = 0; city < cityCount; city++) {
+            if (component[city] == city && dirtyComponent[city]) { // component ids are their lowest city
+                tarjan.visitRoot(city);
+            }
+        }
+
+        view = new RouteCriticality(graph, betweenness.clone(), ticketBetweenness.clone(), bridges.clone(),
+                articulation.clone(), removed.clone());
+        Arrays.fill(dirtyCities, false);
+        dirty = false;
+        refreshes++;
+        sourcesRecomputed += sourceCount;
+    }
+
+    /**
+     * Labels every city with the lowest city id of its component over the unclaimed routes
+     */
+    private int[] components() {
+        int cityCount = graph.getCityCount();
+        int[] component = new int[cityCount];
+        Arrays.fill(component, -1);
+        int[] stack = new int[cityCount];
+        for (int root = 0; root < cityCount; root++) {
+            if (component[root] >= 0) {
+                continue;
+            }
+            component[root] = root;
+            int size = 0;
+            stack[size++] = root;
+            while (size > 0) {
+                int city = stack[--size];
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    int next = graph.getOtherCity(edgeId, city);
+                    if (!removed[edgeId] && component[next] < 0) {
+                        component[next] = root;
+                        stack[size++] = next;
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Number of times the view was recomputed
+     */
+    public synchronized int getRefreshCount() {
+        return refreshes;
+    }
+
+    /**
+     * Total Brandes sources run across all refreshes (a full analysis runs one per city)
+     */
+    public synchronized int getSourcesRecomputed() {
+        return sourcesRecomputed;
+    }
+}
@@ -0,0 +1,543 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RouteHintService - answers "what is the cheapest way to finish this ticket from my network,
+ * with my hand?" for every open ticket of every player. A hint is found by an A* search over
+ * the compact graph: own routes are free, opponents' routes are closed, and an unclaimed route
+ * costs its trains plus the cards the player is still missing for it (its color against
+ * the hand, ferry locomotives included) plus the extra cards a tunnel is expected to take.
+ * Each route is costed against the whole hand on its own, so a hint is a guide rather than
+ * an exact plan when several routes need the same color.
+ *
+ * Hints are cached per player and ticket, and the delta stream keeps the cache honest:
+ * an opponent's claim only drops hints whose path used that route, a player's own claim drops
+ * their hints whose ticket it could shorten, and a hand change makes that player's hints
+ * recompute on the next request. The A* heuristic (the ticket's cost to go in trains alone,
+ * which never overestimates) is cached as well and survives everything but the player's own
+ * claims, so most recomputations walk straight along the path. Create one with attach().
+ *
+ * Queries read the deck's tunnel odds before taking this service's lock: the deck reports
+ * visible card changes to onDelta while holding its own lock, so the two are never taken in
+ * the opposite order.
+ */
+public class RouteHintService implements GameDeltaListener {
+
+    /**
+     * Cheapest known way to complete one ticket
+     */
+    public static final class Hint {
+        private final DestinationCard ticket;
+        private final List<RouteRef> routes;
+        private final int trainsNeeded;
+        private final int cardsMissing;
+        private final double expectedTunnelCards;
+
+        private Hint(DestinationCard ticket, List<RouteRef> routes, int trainsNeeded, int cardsMissing, double expectedTunnelCards) {
+            this.ticket = ticket;
+            this.routes = routes;
+            this.trainsNeeded = trainsNeeded;
+            this.cardsMissing = cardsMissing;
+            this.expectedTunnelCards = expectedTunnelCards;
+        }
+
+        public DestinationCard getTicket() {
+            return ticket;
+        }
+
+        /**
+         * Routes still to claim, from the ticket's first city to its second (empty if already connected)
+         */
+        public List<RouteRef> getRoutes() {
+            return routes;
+        }
+
+        /**
+         * Check if the ticket can no longer be completed (no routes, nothing to hint)
+         */
+        public boolean isBlocked() {
+            return trainsNeeded < 0;
+        }
+
+        /**
+         * Trains the routes take, -1 if the ticket is blocked
+         */
+        public int getTrainsNeeded() {
+            return trainsNeeded;
+        }
+
+        /**
+         * Cards the player still has to draw for the routes (tunnel extras not included)
+         */
+        public int getCardsMissing() {
+            return cardsMissing;
+        }
+
+        /**
+         * Extra cards the tunnels on the path are expected to cost, given the cards left in the
+         * deck when the hint was computed
+         */
+        public double getExpectedTunnelCards() {
+            return expectedTunnelCards;
+        }
+
+        /**
+         * The cost the search minimized: trains + cards missing + expected tunnel cards
+         */
+        public double getCost() {
+            return isBlocked() ? Double.POSITIVE_INFINITY : trainsNeeded + cardsMissing + expectedTunnelCards;
+        }
+
+        @Override
+        public String toString() {
+            String ticketName = ticket.getCity1() + " - " + ticket.getCity2();
+            if (isBlocked()) {
+                return ticketName + ": blocked";
+            }
+            if (routes.isEmpty()) {
+                return ticketName + ": already connected";
+            }
+            return String.format("%s: claim %s (%d trains, %d cards to draw, %.1f expected tunnel cards)",
+                    ticketName, routes, trainsNeeded, cardsMissing, expectedTunnelCards);
+        }
+    }
+
+    /**
+     * Cache entry for one open ticket of one player
+     */
+    private static final class Entry {
+        final DestinationCard card;
+        final int from;
+        final int to;
+        int[] toGo;         // Heuristic: trains from each city to the ticket's second city, null until computed
+        Hint hint;          // null when invalidated
+        long[] path;        // Routes of the cached hint (bitset over route ids)
+        int handVersion;    // Hand the hint was computed with
+
+        Entry(DestinationCard card, int from, int to) {
+            this.card = card;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static final Color[] COLORS = Color.values();
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final GameMap map;
+    private final CompactGraph graph;
+    private final Player[] players;
+    private final List<Map<DestinationCard, Entry>> entries; // Per seat
+    private final int[] handVersions;
+    private final KShortestPaths alternatives;
+
+    // Scratch space for searches (all work happens under this service's lock)
+    private double[] tunnelCosts; // Expected tunnel extras by paying color, read before the lock
+    private final double[] cost;
+    private final int[] via;
+    private final boolean[] settled;
+    private final double[] heapKeys;
+    private final int[] heapCities;
+    private final double[] routeCosts;
+
+    private long hits;
+    private long searches;
+    private long invalidations;
+
+    private RouteHintService(GameMap map, Player[] allPlayers) {
+        this.map = map;
+        this.graph = map.getCompactGraph();
+        this.players = allPlayers.clone();
+        this.entries = new ArrayList<>();
+        for (int seat = 0; seat < players.length; seat++) {
+            entries.add(new HashMap<>());
+        }
+        this.handVersions = new int[players.length];
+        this.alternatives = KShortestPaths.attach(map);
+        int cities = graph.getCityCount();
+        this.cost = new double[cities];
+        this.via = new int[cities];
+        this.settled = new boolean[cities];
+        this.heapKeys = new double[2 * graph.getEdgeCount() + 1]; // At most one entry per route direction, plus the start
+        this.heapCities = new int[heapKeys.length];
+        this.routeCosts = new double[graph.getEdgeCount()];
+    }
+
+    /**
+     * Starts serving hints for a game's players
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @return The service
+     */
+    public static RouteHintService attach(GameMap map, Player[] allPlayers) {
+        RouteHintService service = new RouteHintService(map, allPlayers);
+        map.getDeltaStream().addListener(service); // The cache starts empty, so nothing can be missed
+        return service;
+    }
+
+    /**
+     * Stops following the game (hints computed afterwards may be stale)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+        alternatives.detach();
+    }
+
+    @Override
+    public synchronized void onDelta(GameDelta delta) {
+        int seat = seatOf(delta.getPlayerId());
+        if (seat < 0) {
+            return;
+        }
+        switch (delta.getType()) {
+            case ROUTE_CLAIMED:
+                claimed(seat, delta.getIndex());
+                break;
+            case HAND_SIZE:
+                handVersions[seat]++; // Hints recompute lazily, the heuristic stays
+                break;
+            case TICKET_COMPLETED:
+                entries.get(seat).values().removeIf(entry -> entry.card.getCardId().equals(delta.getCardId()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void claimed(int claimant, int edgeId) {
+        int city1 = graph.getEdgeCity1(edgeId);
+        for (int seat = 0; seat < players.length; seat++) {
+            for (Entry entry : entries.get(seat).values()) {
+                if (seat == claimant) {
+                    // Free for its owner now: could shorten any ticket that could reach it
+                    if (entry.toGo == null || entry.toGo[city1] != UNREACHABLE) {
+                        entry.toGo = null;
+                        invalidate(entry);
+                    }
+                } else if (entry.hint != null && PlayerNetwork.isSet(entry.path, edgeId)) {
+                    invalidate(entry); // Closed for everyone else; the heuristic still never overestimates
+                }
+            }
+        }
+    }
+
+    private void invalidate(Entry entry) {
+        if (entry.hint != null) {
+            entry.hint = null;
+            invalidations++;
+        }
+    }
+
+    // ============ Queries ============
+
+    /**
+     * Hint for one of a player's open tickets
+     * @return The hint, or null if it is not an open ticket of that player on this map
+     */
+    public Hint getHint(String playerId, DestinationCard card) {
+        double[] expectedTunnelCosts = readTunnelCosts();
+        synchronized (this) {
+            tunnelCosts = expectedTunnelCosts;
+            return hint(playerId, card);
+        }
+    }
+
+    private Hint hint(String playerId, DestinationCard card) {
+        int seat = seatOf(playerId);
+        if (seat < 0 || card == null || card.isCompleted() || !players[seat].getDestinationCards().contains(card)) {
+            return null;
+        }
+        Entry entry = entries.get(seat).get(card);
+        if (entry == null) {
+            if (!map.resolveDestination(card)) {
+                return null;
+            }
+            entry = new Entry(card, card.getCityRef1().getId(), card.getCityRef2().getId());
+            entries.get(seat).put(card, entry);
+        }
+        if (entry.hint != null && entry.handVersion == handVersions[seat]) {
+            hits++;
+            return entry.hint;
+        }
+        search(seat, entry);
+        return entry.hint;
+    }
+
+    /**
+     * Hints for all of a player's open tickets, in the order they were kept
+     */
+    public List<Hint> getHints(String playerId) {
+        int seat = seatOf(playerId);
+        if (seat < 0) {
+            return Collections.emptyList();
+        }
+        double[] expectedTunnelCosts = readTunnelCosts();
+        List<Hint> hints = new ArrayList<>();
+        synchronized (this) {
+            tunnelCosts = expectedTunnelCosts;
+            for (DestinationCard card : players[seat].getDestinationCards()) {
+                Hint hint = hint(playerId, card);
+                if (hint != null) {
+                    hints.add(hint);
+                }
+            }
+        }
+        return hints;
+    }
+
+    /**
+     * Expected tunnel extras by paying color (null without a deck); call without holding this lock
+     */
+    private double[] readTunnelCosts() {
+        ColorDeck deck = map.getColorDeck();
+        return deck != null ? deck.getExpectedTunnelCosts() : null;
+    }
+
+    /**
+     * Ranked fallbacks for a ticket: the k cheapest paths in trains over the player's own and
+     * unclaimed routes (see KShortestPaths), for when the hinted path gets blocked
+     * @return Paths, cheapest first (empty if it is not an open ticket of that player on this map)
+     */
+    public synchronized List<KShortestPaths.Path> getFallbacks(String playerId, DestinationCard card, int k) {
+        int seat = seatOf(playerId);
+        if (seat < 0 || card == null || card.isCompleted() || !players[seat].getDestinationCards().contains(card)
+                || !map.resolveDestination(card)) {
+            return Collections.emptyList();
+        }
+        return alternatives.find(playerId, card.getCityRef1(), card.getCityRef2(), k, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Requests answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Requests that needed a search
+     */
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Cached hints dropped because of a claim
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    // ============ Search ============
+
+    private void search(int seat, Entry entry) {
+        searches++;
+        String playerId = players[seat].getPlayerId();
+        PlayerNetwork own = map.getNetwork(playerId);
+        PlayerNetwork claimed = map.getClaimedNetwork();
+        if (entry.toGo == null) {
+            entry.toGo = trainsToGo(own, claimed, entry.to);
+        }
+        entry.handVersion = handVersions[seat];
+        entry.path = entry.path != null ? entry.path : new long[PlayerNetwork.wordsFor(graph.getEdgeCount())];
+        Arrays.fill(entry.path, 0);
+        if (entry.toGo[entry.from] == UNREACHABLE) {
+            entry.hint = new Hint(entry.card, Collections.emptyList(), -1, 0, 0);
+            return;
+        }
+
+        // A*: cost so far plus trains still to go (every route costs at least its trains)
+        Player player = players[seat];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(via, -1);
+        Arrays.fill(settled, false);
+        Arrays.fill(routeCosts, -1);
+        cost[entry.from] = 0;
+        int size = push(0, entry.from, entry.toGo[entry.from]);
+        while (size > 0) {
+            int city = heapCities[0];
+            size = pop(size);
+            if (settled[city]) {
+                continue;
+            }
+            settled[city] = true;
+            if (city == entry.to) {
+                break;
+            }
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                int next = graph.getOtherCity(edgeId, city);
+                boolean owned = own.ownsRoute(edgeId);
+                if ((!owned && claimed.ownsRoute(edgeId)) || settled[next] || entry.toGo[next] == UNREACHABLE) {
+                    continue;
+                }
+                double step = owned ? 0 : routeCost(player, edgeId);
+                if (cost[city] + step < cost[next]) {
+                    cost[next] = cost[city] + step;
+                    via[next] = edgeId;
+                    size = push(size, next, cost[next] + entry.toGo[next]);
+                }
+            }
+        }
+
+        if (!settled[entry.to]) {
+            // Cut off by an opponent's claim since the heuristic was computed
+            entry.hint = new Hint(entry.card, Collections.emptyList(), -1, 0, 0);
+            return;
+        }
+
+        List<RouteRef> routes = new ArrayList<>();
+        int trains = 0;
+        int missing = 0;
+        double tunnelCards = 0;
+        for (int city = entry.to; city != entry.from; city = graph.getOtherCity(via[city], city)) {
+            int edgeId = via[city];
+            entry.path[edgeId >>> 6] |= 1L << edgeId;
+            if (own.ownsRoute(edgeId)) {
+                continue;
+            }
+            routes.add(map.getRoute(edgeId));
+            trains += graph.getWeight(edgeId);
+            missing += cardsMissing(player, edgeId);
+            tunnelCards += expectedTunnelCards(player, edgeId);
+        }
+        Collections.reverse(routes);
+        entry.hint = new Hint(entry.card, Collections.unmodifiableList(routes), trains, missing, tunnelCards);
+    }
+
+    /**
+     * Trains needed from every city to the target over own (free) and unclaimed routes,
+     * ignoring the hand: a lower bound on the search cost, used as its heuristic
+     */
+    private int[] trainsToGo(PlayerNetwork own, PlayerNetwork claimed, int target) {
+        int[] toGo = new int[graph.getCityCount()];
+        Arrays.fill(toGo, UNREACHABLE);
+        toGo[target] = 0;
+        int size = push(0, target, 0);
+        while (size > 0) {
+            int city = heapCities[0];
+            int trains = (int) heapKeys[0];
+            size = pop(size);
+            if (trains > toGo[city]) {
+                continue;
+            }
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                boolean owned = own.ownsRoute(edgeId);
+                if (!owned && claimed.ownsRoute(edgeId)) {
+                    continue;
+                }
+                int next = graph.getOtherCity(edgeId, city);
+                int total = trains + (owned ? 0 : graph.getWeight(edgeId));
+                if (total < toGo[next]) {
+                    toGo[next] = total;
+                    size = push(size, next, total);
+                }
+            }
+        }
+        return toGo;
+    }
+
+    /**
+     * Search cost of an unclaimed route for a player (memoized per search in routeCosts)
+     */
+    private double routeCost(Player player, int edgeId) {
+        if (routeCosts[edgeId] < 0) {
+            routeCosts[edgeId] = graph.getWeight(edgeId) + cardsMissing(player, edgeId) + expectedTunnelCards(player, edgeId);
+        }
+        return routeCosts[edgeId];
+    }
+
+    /**
+     * Cards still to draw to afford a route (same rule as Player.canAffordRoute), locomotives
+     * for ferries first
+     */
+    private int cardsMissing(Player player, int edgeId) {
+        int wild = player.getCardCount(Color.MULTICOLOR);
+        int have = player.getCardCount(payingColor(player, edgeId));
+        int missingWild = Math.max(0, graph.getFerryCount(edgeId) - wild);
+        return missingWild + Math.max(0, graph.getWeight(edgeId) - have - wild - missingWild);
+    }
+
+    private double expectedTunnelCards(Player player, int edgeId) {
+        if (!graph.isTunnel(edgeId) || tunnelCosts == null) {
+            return 0;
+        }
+        return tunnelCosts[payingColor(player, edgeId).ordinal()];
+    }
+
+    /**
+     * The route's color, or for gray routes the color the player holds most of (MULTICOLOR if none)
+     */
+    private Color payingColor(Player player, int edgeId) {
+        Color color = graph.getColor(edgeId);
+        if (color != null) {
+            return color;
+        }
+        Color best = Color.MULTICOLOR;
+        int most = 0;
+        for (Color candidate : COLORS) {
+            if (candidate != Color.MULTICOLOR && player.getCardCount(candidate) > most) {
+                best = candidate;
+                most = player.getCardCount(candidate);
+            }
+        }
+        return best;
+    }
+
+    private int push(int size, int city, double key) {
+        int i = size;
+        while (i > 0 && heapKeys[(i - 1) / 2] > key) {
+            heapKeys[i] = heapKeys[(i - 1) / 2];
+            heapCities[i] = heapCities[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heapKeys[i] = key;
+        heapCities[i] = city;
+        return size + 1;
+    }
+
+    /**
+     * Removes the entry with the smallest key
+     * @return The new size
+     */
+    private int pop(int size) {
+        size--;
+        double key = heapKeys[size];
+        int city = heapCities[size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (heapKeys[child] >= key) {
+                break;
+            }
+            heapKeys[i] = heapKeys[child];
+            heapCities[i] = heapCities[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapCities[i] = city;
+        return size;
+    }
+
+    private int seatOf(String playerId) {
+        if (playerId == null) {
+            return -1;
+        }
+        for (int seat = 0; seat < players.length; seat++) {
+            if (players[seat].getPlayerId().equals(playerId)) {
+                return seat;
+            }
+        }
+        return -1;
+    }
+}
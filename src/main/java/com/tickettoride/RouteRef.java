@@ -0,0 +1,45 @@
+package com.tickettoride;
+
+/**
+ * Resolved handle to a route on a specific GameMap.
+ * Obtain one with GameMap.resolveRoute() or GameMap.getRoute(edgeId); a handle always
+ * refers to an existing route, so queries through it never fail or allocate.
+ */
+public final class RouteRef {
+    private final int id;
+    private final CityRef city1;
+    private final CityRef city2;
+
+    RouteRef(int id, CityRef city1, CityRef city2) {
+        this.id = id;
+        this.city1 = city1;
+        this.city2 = city2;
+    }
+
+    /**
+     * Dense route (edge) id
+     */
+    public int getId() {
+        return id;
+    }
+
+    public CityRef getCity1() {
+        return city1;
+    }
+
+    public CityRef getCity2() {
+        return city2;
+    }
+
+    /**
+     * Check if this handle was resolved on the given map
+     */
+    public boolean belongsTo(GameMap gameMap) {
+        return city1.belongsTo(gameMap);
+    }
+
+    @Override
+    public String toString() {
+        return city1.getName() + " - " + city2.getName();
+    }
+}
@@ -0,0 +1,29 @@
+package com.tickettoride;
+
+/**
+ * Outcome of checking whether a player can build a route.
+ * Batch validation stores these as ordinals (see RouteValidation) so no result objects are created.
+ */
+public enum RouteStatus {
+    OK,                  // The route can be built
+    NO_ROUTE,            // No such route
+    CLAIMED,             // Route is already claimed
+    WRONG_COLOR,         // Color does not match the route (or no color chosen for a gray route)
+    TUNNEL_UNAFFORDABLE, // Not enough cards once the tunnel extra cost is added
+    NOT_ENOUGH_TRAINS,
+    NOT_ENOUGH_CARDS;
+
+    private static final RouteStatus[] VALUES = values();
+
+    /**
+     * Get the status for a code stored by RouteValidation
+     */
+    public static RouteStatus fromCode(int code) {
+        return VALUES[code];
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,66 @@
+package com.tickettoride;
+
+/**
+ * RouteValidation - compact results of Player.validateRoutes().
+ * Holds one status code, total card cost and points per candidate in parallel arrays.
+ * Reuse one instance across turns; it only grows when given more candidates than it can hold.
+ */
+public class RouteValidation {
+    private byte[] status;
+    private int[] cost;
+    private int[] points;
+    private int size;
+
+    public RouteValidation(int capacity) {
+        status = new byte[capacity];
+        cost = new int[capacity];
+        points = new int[capacity];
+    }
+
+    /**
+     * Clears the results and makes room for the given number of candidates
+     */
+    void reset(int count) {
+        if (status.length < count) {
+            status = new byte[count];
+            cost = new int[count];
+            points = new int[count];
+        }
+        size = count;
+    }
+
+    void set(int index, RouteStatus routeStatus, int totalCost, int pointsEarned) {
+        status[index] = (byte) routeStatus.ordinal();
+        cost[index] = totalCost;
+        points[index] = pointsEarned;
+    }
+
+    /**
+     * Number of candidates in the last validation
+     */
+    public int size() {
+        return size;
+    }
+
+    public RouteStatus getStatus(int index) {
+        return RouteStatus.fromCode(status[index]);
+    }
+
+    public boolean isOk(int index) {
+        return status[index] == RouteStatus.OK.ordinal();
+    }
+
+    /**
+     * Total cards (and trains) the candidate costs, including the tunnel extra
+     */
+    public int getCost(int index) {
+        return cost[index];
+    }
+
+    /**
+     * Points the route would score
+     */
+    public int getPoints(int index) {
+        return points[index];
+    }
+}
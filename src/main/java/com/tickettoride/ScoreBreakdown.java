@@ -0,0 +1,60 @@
+package com.tickettoride;
+
+/**
+ * Immutable end-of-game score for one player, as computed by ScoringEngine
+ */
+public class ScoreBreakdown {
+    private final String playerId;
+    private final int routePoints;
+    private final int ticketGains;   // points from completed destination cards
+    private final int ticketLosses;  // points lost for unfinished destination cards (positive number)
+    private final int longestRoute;  // length in trains of the player's longest continuous route
+    private final int longestRouteBonus;
+
+    public ScoreBreakdown(String playerId, int routePoints, int ticketGains, int ticketLosses, int longestRoute, int longestRouteBonus) {
+        this.playerId = playerId;
+        this.routePoints = routePoints;
+        this.ticketGains = ticketGains;
+        this.ticketLosses = ticketLosses;
+        this.longestRoute = longestRoute;
+        this.longestRouteBonus = longestRouteBonus;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public int getRoutePoints() {
+        return routePoints;
+    }
+
+    public int getTicketGains() {
+        return ticketGains;
+    }
+
+    public int getTicketLosses() {
+        return ticketLosses;
+    }
+
+    public int getLongestRoute() {
+        return longestRoute;
+    }
+
+    public int getLongestRouteBonus() {
+        return longestRouteBonus;
+    }
+
+    /**
+     * Final score: routes + completed tickets - unfinished tickets + longest route bonus
+     */
+    public int getTotal() {
+        return routePoints + ticketGains - ticketLosses + longestRouteBonus;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d (routes %d, tickets +%d/-%d, longest route %d%s)",
+                playerId, getTotal(), routePoints, ticketGains, ticketLosses, longestRoute,
+                longestRouteBonus > 0 ? " +" + longestRouteBonus + " bonus" : "");
+    }
+}
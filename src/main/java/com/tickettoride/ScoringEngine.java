@@ -0,0 +1,149 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.stream.Collectors;
+
+/**
+ * ScoringEngine - computes final scores for finished games.
+ * Scores are recomputed from the board rather than read from Player.getPoints(),
+ * so unfinished destination cards are subtracted and the longest route bonus applied.
+ * Batches of games are scored in parallel across all cores.
+ */
+public class ScoringEngine {
+
+    public static final int DEFAULT_LONGEST_ROUTE_BONUS = 10;
+
+    private final int longestRouteBonus;
+
+    public ScoringEngine() {
+        this(DEFAULT_LONGEST_ROUTE_BONUS);
+    }
+
+    /**
+     * @param longestRouteBonus Points awarded to the player(s) with the longest continuous route
+     */
+    public ScoringEngine(int longestRouteBonus) {
+        if (longestRouteBonus < 0) {
+            throw new IllegalArgumentException("Longest route bonus cannot be negative");
+        }
+        this.longestRouteBonus = longestRouteBonus;
+    }
+
+    /**
+     * Scores a batch of finished games in parallel
+     * @param games The games to score
+     * @return One array of breakdowns per game, in the same order as the input
+     */
+    public List<ScoreBreakdown[]> scoreBatch(List<Game> games) {
+        return games.parallelStream()
+                .map(game -> score(game.getMap(), game.getAllPlayers()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Scores a single finished game
+     * @param game The game to score
+     * @return Breakdowns in player order
+     */
+    public ScoreBreakdown[] score(Game game) {
+        return score(game.getMap(), game.getAllPlayers());
+    }
+
+    /**
+     * Scores the players of a finished game
+     * @param map The game map holding route ownership
+     * @param allPlayers Players in turn order
+     * @return Breakdowns in player order
+     */
+    public ScoreBreakdown[] score(GameMap map, Player[] allPlayers) {
+        int[] routePoints = new int[allPlayers.length];
+        int[] longest = new int[allPlayers.length];
+        int best = 0;
+
+        for (int i = 0; i < allPlayers.length; i++) {
+            long[] routes = map.getNetwork(allPlayers[i].getPlayerId()).getRoutes(null);
+            List<Integer> owned = new ArrayList<>();
+            for (int edgeId = PlayerNetwork.nextSet(routes, 0); edgeId >= 0; edgeId = PlayerNetwork.nextSet(routes, edgeId + 1)) {
+                owned.add(edgeId);
+                routePoints[i] += map.getRoutePoints(edgeId);
+            }
+            longest[i] = longestRoute(map, owned);
+            best = Math.max(best, longest[i]);
+        }
+
+        ScoreBreakdown[] results = new ScoreBreakdown[allPlayers.length];
+        for (int i = 0; i < allPlayers.length; i++) {
+            Player player = allPlayers[i];
+            int gains = 0;
+            int losses = 0;
+            for (DestinationCard card : player.getDestinationCards()) {
+                boolean completed = card.isCompleted()
+                        || map.destinationCardCompleted(card, player.getPlayerId());
+                if (completed) {
+                    gains += card.getPoints();
+                } else {
+                    losses += card.getPoints();
+                }
+            }
+            // Ties share the bonus; nobody gets it if nobody built anything
+            int bonus = (best > 0 && longest[i] == best) ? longestRouteBonus : 0;
+            results[i] = new ScoreBreakdown(player.getPlayerId(), routePoints[i], gains, losses, longest[i], bonus);
+        }
+        return results;
+    }
+
+    /**
+     * Length (in trains) of the longest continuous path through the given routes.
+     * Cities may be revisited but each route is used at most once.
+     */
+    private int longestRoute(GameMap map, List<Integer> owned) {
+        if (owned.isEmpty()) {
+            return 0;
+        }
+
+        // Number the cities touched by these routes and build a local adjacency list
+        Map<String, Integer> cityIndex = new HashMap<>();
+        int[][] ends = new int[owned.size()][2];
+        int[] weights = new int[owned.size()];
+        for (int e = 0; e < owned.size(); e++) {
+            int edgeId = owned.get(e);
+            ends[e][0] = cityIndex.computeIfAbsent(map.getRouteSource(edgeId), k -> cityIndex.size());
+            ends[e][1] = cityIndex.computeIfAbsent(map.getRouteDestination(edgeId), k -> cityIndex.size());
+            weights[e] = map.getRouteWeight(edgeId);
+        }
+        List<List<Integer>> incident = new ArrayList<>();
+        for (int c = 0; c < cityIndex.size(); c++) {
+            incident.add(new ArrayList<>());
+        }
+        for (int e = 0; e < owned.size(); e++) {
+            incident.get(ends[e][0]).add(e);
+            incident.get(ends[e][1]).add(e);
+        }
+
+        boolean[] used = new boolean[owned.size()];
+        int best = 0;
+        for (int start = 0; start < cityIndex.size(); start++) {
+            best = Math.max(best, longestFrom(start, incident, ends, weights, used));
+        }
+        return best;
+    }
+
+    /**
+     * Depth-first search for the longest trail starting at a city
+     */
+    private int longestFrom(int city, List<List<Integer>> incident, int[][] ends, int[] weights, boolean[] used) {
+        int best = 0;
+        for (int e : incident.get(city)) {
+            if (!used[e]) {
+                used[e] = true;
+                int next = ends[e][0] == city ? ends[e][1] : ends[e][0];
+                best = Math.max(best, weights[e] + longestFrom(next, incident, ends, weights, used));
+                used[e] = false;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ScriptResult - outcome of replaying one move script with ScriptRunner:
+ * validation failures (with line numbers), how far the game got, the final scores and timing.
+ */
+public class ScriptResult {
+
+    private final String scriptName;
+    private final List<String> failures;
+    private int turns;
+    private boolean gameOver;
+    private ScoreBreakdown[] finalScores;
+    private long elapsedNanos;
+
+    public ScriptResult(String scriptName) {
+        this.scriptName = scriptName;
+        this.failures = new ArrayList<>();
+        this.finalScores = new ScoreBreakdown[0];
+    }
+
+    /**
+     * Records a validation failure
+     * @param lineNumber Script line (1-based), or 0 for the script as a whole
+     * @param message What went wrong
+     */
+    void fail(int lineNumber, String message) {
+        failures.add(lineNumber > 0 ? "line " + lineNumber + ": " + message : message);
+    }
+
+    void finish(int turns, boolean gameOver, ScoreBreakdown[] finalScores, long elapsedNanos) {
+        this.turns = turns;
+        this.gameOver = gameOver;
+        this.finalScores = finalScores;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getScriptName() {
+        return scriptName;
+    }
+
+    /**
+     * Check if every line replayed and every expectation held
+     */
+    public boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    public List<String> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Turns played before the script ended
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Check if the game reached its end (last round finished)
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Scores as they stood when the script ended, in seat order (empty if no game was started)
+     */
+    public ScoreBreakdown[] getFinalScores() {
+        return finalScores.clone();
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%s: %s after %d turns%s in %.2f ms", scriptName,
+                isSuccess() ? "OK" : "FAILED (" + failures.size() + ")", turns, gameOver ? " (game over)" : "",
+                getElapsedMillis()));
+        for (ScoreBreakdown score : finalScores) {
+            report.append(System.lineSeparator()).append("  ").append(score);
+        }
+        for (String failure : failures) {
+            report.append(System.lineSeparator()).append("  ").append(failure);
+        }
+        return report.toString();
+    }
+}
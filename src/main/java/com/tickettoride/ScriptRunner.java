@@ -0,0 +1,352 @@
+package com.tickettoride;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ScriptRunner - replays recorded move scripts without a terminal, for regression and load tests.
+ * Each script is played through a GameSession (same rule engine as Game, seeded shuffles) and
+ * every line is validated; scripts run in parallel on a fixed thread pool and share map
+ * bundles through a MapRegistry.
+ *
+ * Script format: one command per line, '#' starts a comment, blank lines are ignored.
+ * Player ids are single words; city pairs are written "city one - city two".
+ *   map &lt;name&gt;                                 map from the registry (required, before players)
+ *   seed &lt;number&gt;                               seed for every shuffle (default 0)
+ *   players &lt;id&gt; &lt;id&gt; ...                        seats in turn order; starts the game and deals
+ *   keep &lt;player&gt; &lt;n&gt; &lt;n&gt; &lt;n&gt; ...                 initial tickets: draws 5, keeps the listed ones (1-5, at least 3)
+ *   &lt;player&gt; draw &lt;M|V1-V5&gt; &lt;M|V1-V5&gt;           turn: two color cards, mystery or visible slot
+ *   &lt;player&gt; tickets &lt;n&gt;                       turn: draws 3 destination tickets, keeps ticket n (1-3)
+ *   &lt;player&gt; build &lt;city&gt; - &lt;city&gt; [COLOR]      turn: builds a route (color required for gray routes)
+ *   expect &lt;player&gt; points|trains|cards|tickets|completed|score &lt;n&gt;
+ *   expect owner &lt;city&gt; - &lt;city&gt; &lt;player|none&gt;
+ * Turns must come in seat order. A turn whose action fails still ends, as in Game.
+ */
+public class ScriptRunner {
+
+    public static final String SCRIPT_SUFFIX = ".script";
+
+    private static final String SESSION_ID = "script";
+    private static final ScoringEngine SCORING = new ScoringEngine();
+
+    private final MapRegistry registry;
+    private final int threads;
+
+    /**
+     * @param registry Where scripts find their maps
+     * @param threads Worker threads (0 for one per core)
+     */
+    public ScriptRunner(MapRegistry registry, int threads) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry cannot be null");
+        }
+        this.registry = registry;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Finds the scripts to run
+     * @param path A script file, or a directory whose *.script files are run (sorted by name)
+     * @return The script files
+     */
+    public static List<File> collectScripts(File path) {
+        List<File> scripts = new ArrayList<>();
+        if (path.isDirectory()) {
+            File[] files = path.listFiles((dir, name) -> name.endsWith(SCRIPT_SUFFIX));
+            if (files != null) {
+                Arrays.sort(files);
+                scripts.addAll(Arrays.asList(files));
+            }
+        } else if (path.isFile()) {
+            scripts.add(path);
+        }
+        return scripts;
+    }
+
+    /**
+     * Runs scripts on the thread pool
+     * @param scripts Script files
+     * @return One result per script, in the same order
+     */
+    public List<ScriptResult> runAll(List<File> scripts) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, scripts.size())));
+        try {
+            List<Future<ScriptResult>> futures = new ArrayList<>();
+            for (File script : scripts) {
+                futures.add(pool.submit(() -> runFile(script)));
+            }
+            List<ScriptResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    ScriptResult result = new ScriptResult(scripts.get(i).getName());
+                    result.fail(0, "Runner error: " + e.getCause());
+                    results.add(result);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs one script file on the calling thread
+     */
+    public ScriptResult runFile(File script) {
+        try {
+            return run(script.getName(), Files.readAllLines(script.toPath(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            ScriptResult result = new ScriptResult(script.getName());
+            result.fail(0, "Could not read script: " + e.getMessage());
+            return result;
+        }
+    }
+
+    /**
+     * Runs one script on the calling thread
+     * @param name Name used in the report
+     * @param lines The script's lines
+     * @return The result
+     */
+    public ScriptResult run(String name, List<String> lines) {
+        long start = System.nanoTime();
+        Replay replay = new Replay(new ScriptResult(name));
+        try {
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    replay.execute(line);
+                } catch (RuntimeException e) { // Bad arguments and engine errors fail the line, not the run
+                    replay.result.fail(i + 1, e.getMessage() != null ? e.getMessage() : e.toString());
+                }
+            }
+            replay.finish(System.nanoTime() - start);
+        } finally {
+            if (replay.bundle != null) {
+                registry.release(replay.bundle);
+            }
+        }
+        return replay.result;
+    }
+
+    /**
+     * State of one script being replayed
+     */
+    private final class Replay {
+        final ScriptResult result;
+        MapBundle bundle;
+        long seed;
+        GameSession session;
+        int finalTurnsLeft = -1; // -1 until someone triggers the last round
+
+        Replay(ScriptResult result) {
+            this.result = result;
+        }
+
+        void execute(String line) {
+            String[] words = line.split("\\s+");
+            switch (words[0]) {
+                case "map": setMap(words); return;
+                case "seed": seed = Long.parseLong(argument(words, 1)); return;
+                case "players": startGame(words); return;
+                case "keep": keep(words); return;
+                case "expect": expect(line, words); return;
+                default: turn(line, words); return;
+            }
+        }
+
+        private void setMap(String[] words) {
+            if (bundle != null) {
+                throw new IllegalStateException("Map already chosen");
+            }
+            bundle = registry.acquire(argument(words, 1));
+            if (bundle == null) {
+                throw new IllegalArgumentException("Unknown map " + words[1] + ", available: " + registry.getMapNames());
+            }
+        }
+
+        private void startGame(String[] words) {
+            if (bundle == null) {
+                throw new IllegalStateException("Choose a map before the players");
+            }
+            if (session != null) {
+                throw new IllegalStateException("Game already started");
+            }
+            session = new GameSession(SESSION_ID, bundle, Arrays.copyOfRange(words, 1, words.length), seed);
+        }
+
+        private void keep(String[] words) {
+            player(argument(words, 1)); // A game must have started
+            SessionMoves.keep(session, words);
+        }
+
+        private void turn(String line, String[] words) {
+            Player player = player(words[0]);
+            if (finalTurnsLeft == 0) {
+                throw new IllegalStateException("The game is over");
+            }
+            int turnBefore = session.getTurn();
+            try {
+                SessionMoves.turn(session, line, words);
+            } finally {
+                if (session.getTurn() != turnBefore) {
+                    countDownFinalRound(player);
+                }
+            }
+        }
+
+        private void countDownFinalRound(Player player) {
+            if (finalTurnsLeft > 0) {
+                finalTurnsLeft--;
+            } else if (finalTurnsLeft < 0 && (player.getTrainCount() <= 2 || allRoutesClaimed())) {
+                finalTurnsLeft = session.getPlayers().length;
+            }
+        }
+
+        private void expect(String line, String[] words) {
+            if (argument(words, 1).equals("owner")) {
+                int lastSpace = line.lastIndexOf(' ');
+                RouteRef route = route(line.substring(line.indexOf("owner") + "owner".length(), lastSpace).trim());
+                String expected = line.substring(lastSpace + 1);
+                String owner = session.getMap().getRouteOwner(route);
+                String actual = owner != null ? owner : "none";
+                if (!actual.equals(expected)) {
+                    throw new IllegalStateException("Expected " + route + " owned by " + expected + " but was " + actual);
+                }
+                return;
+            }
+            Player player = player(words[1]);
+            String property = argument(words, 2);
+            int expected = Integer.parseInt(argument(words, 3));
+            int actual;
+            switch (property) {
+                case "points": actual = player.getPoints(); break;
+                case "trains": actual = player.getTrainCount(); break;
+                case "cards": actual = countCards(player); break;
+                case "tickets": actual = player.getDestinationCards().size(); break;
+                case "completed": actual = countCompleted(player); break;
+                case "score": actual = score(player); break;
+                default: throw new IllegalArgumentException("Unknown expectation: " + property);
+            }
+            if (actual != expected) {
+                throw new IllegalStateException("Expected " + player.getPlayerId() + " " + property + " " + expected
+                        + " but was " + actual);
+            }
+        }
+
+        void finish(long elapsedNanos) {
+            if (session == null) {
+                result.fail(0, "Script never started a game (no players line)");
+                result.finish(0, false, new ScoreBreakdown[0], elapsedNanos);
+                return;
+            }
+            result.finish(session.getTurn(), finalTurnsLeft == 0,
+                    SCORING.score(session.getMap(), session.getPlayers()), elapsedNanos);
+        }
+
+        private Player player(String playerId) {
+            if (session == null) {
+                throw new IllegalStateException("No game started yet (players line missing)");
+            }
+            return SessionMoves.player(session, playerId);
+        }
+
+        private RouteRef route(String cities) {
+            return SessionMoves.route(session, cities);
+        }
+
+        private int score(Player player) {
+            for (ScoreBreakdown score : SCORING.score(session.getMap(), session.getPlayers())) {
+                if (score.getPlayerId().equals(player.getPlayerId())) {
+                    return score.getTotal();
+                }
+            }
+            return 0;
+        }
+
+        private boolean allRoutesClaimed() {
+            GameMap map = session.getMap();
+            for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+                if (map.getRouteOwner(edgeId) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static String argument(String[] words, int index) {
+        return SessionMoves.argument(words, index);
+    }
+
+    private static int countCards(Player player) {
+        int count = 0;
+        for (Color color : Color.values()) {
+            count += player.getCardCount(color);
+        }
+        return count;
+    }
+
+    private static int countCompleted(Player player) {
+        int count = 0;
+        for (DestinationCard card : player.getDestinationCards()) {
+            if (card.isCompleted()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Usage: ScriptRunner &lt;script file or directory&gt; [threads]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ScriptRunner <script file or directory> [threads]");
+            return;
+        }
+        List<File> scripts = collectScripts(new File(args[0]));
+        if (scripts.isEmpty()) {
+            System.out.println("Error: No scripts found at " + args[0]);
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        long startTime = System.nanoTime();
+        List<ScriptResult> results = new ScriptRunner(MapRegistry.getDefault(), threads).runAll(scripts);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        int failed = 0;
+        int turns = 0;
+        for (ScriptResult result : results) {
+            System.out.println(result);
+            failed += result.isSuccess() ? 0 : 1;
+            turns += result.getTurns();
+        }
+        System.out.printf("Ran %d scripts (%d turns) in %.2f s: %d passed, %d failed%n",
+                results.size(), turns, seconds, results.size() - failed, failed);
+    }
+}
@@ -0,0 +1,192 @@
+package com.tickettoride;
+
+/**
+ * SessionMoves - applies moves written in the script command language (see ScriptRunner)
+ * to a GameSession, with the same rules as Game. Shared by ScriptRunner and ShardWorker, so a
+ * game replayed from a script, played on one worker or handed between workers ends up in the
+ * same state for the same seed and moves.
+ *
+ * Moves:
+ *   keep &lt;player&gt; &lt;n&gt; &lt;n&gt; &lt;n&gt; ...                 initial tickets: draws 5, keeps the listed ones (1-5, at least 3)
+ *   &lt;player&gt; draw &lt;M|V1-V5&gt; &lt;M|V1-V5&gt;           turn: two color cards, mystery or visible slot
+ *   &lt;player&gt; tickets &lt;n&gt;                       turn: draws 3 destination tickets, keeps ticket n (1-3)
+ *   &lt;player&gt; build &lt;city&gt; - &lt;city&gt; [COLOR]      turn: builds a route (color required for gray routes)
+ * Turns must come in seat order. A turn whose action fails still ends, as in Game.
+ */
+public final class SessionMoves {
+
+    private SessionMoves() {
+    }
+
+    /**
+     * Applies one move
+     * @throws IllegalArgumentException If the move is malformed
+     * @throws IllegalStateException If the move is not allowed now (the turn still ends if it was a turn)
+     */
+    public static void apply(GameSession session, String line) {
+        String[] words = line.trim().split("\\s+");
+        if (words[0].equals("keep")) {
+            keep(session, words);
+        } else {
+            turn(session, line.trim(), words);
+        }
+    }
+
+    /**
+     * Initial ticket choice: draws 5 tickets and keeps the listed ones
+     */
+    static void keep(GameSession session, String[] words) {
+        Player player = player(session, argument(words, 1));
+        boolean[] keep = new boolean[SimulatedGame.INITIAL_TICKETS_OFFERED];
+        int kept = 0;
+        for (int i = 2; i < words.length; i++) {
+            int choice = Integer.parseInt(words[i]);
+            if (choice < 1 || choice > keep.length || keep[choice - 1]) {
+                throw new IllegalArgumentException("Invalid or repeated ticket choice " + words[i]);
+            }
+            keep[choice - 1] = true;
+            kept++;
+        }
+        if (kept < SimulatedGame.INITIAL_TICKETS_KEPT) {
+            throw new IllegalArgumentException("Keep at least " + SimulatedGame.INITIAL_TICKETS_KEPT + " tickets");
+        }
+        DestinationCard[] offered = session.getDestinationDeck().drawDestinations(player.getPlayerId(), keep.length);
+        for (int i = 0; i < offered.length; i++) {
+            if (keep[i]) {
+                player.keepDestinationCard(offered[i]);
+            } else {
+                offered[i].setLocation("DISCARD");
+                session.getDestinationDeck().discardPile.add(offered[i]);
+            }
+        }
+    }
+
+    /**
+     * One turn: checks it is the player's turn, plays the action and ends the turn
+     * (also when the action fails, in which case the failure is rethrown afterwards)
+     */
+    static void turn(GameSession session, String line, String[] words) {
+        Player player = player(session, words[0]);
+        if (player != session.getCurrentPlayer()) {
+            throw new IllegalStateException("Not " + player.getPlayerId() + "'s turn, "
+                    + session.getCurrentPlayer().getPlayerId() + " is next");
+        }
+        String action = argument(words, 1);
+        if (!action.equals("draw") && !action.equals("tickets") && !action.equals("build")) {
+            throw new IllegalArgumentException("Unknown command: " + line);
+        }
+        try {
+            switch (action) {
+                case "draw": drawColorCards(session, player, words); break;
+                case "tickets": drawTickets(player, words); break;
+                default: buildRoute(session, player, line); break;
+            }
+        } finally {
+            for (DestinationCard dest : player.getDestinationCards()) {
+                player.checkDestinationCardCompleted(dest);
+            }
+            session.endTurn();
+        }
+    }
+
+    private static void drawColorCards(GameSession session, Player player, String[] words) {
+        if (words.length != 4) {
+            throw new IllegalArgumentException("Draw exactly two cards (M or V1-V5)");
+        }
+        for (int i = 2; i < 4; i++) {
+            String source = words[i].toUpperCase();
+            ColorCard card;
+            if (source.equals("M")) {
+                card = player.drawColorCard(true, -1);
+            } else if (source.matches("V[1-5]")) {
+                int slot = source.charAt(1) - '1';
+                if (session.getColorDeck().getVisibleCard(slot) == null) {
+                    throw new IllegalStateException("Visible slot " + (slot + 1) + " is empty");
+                }
+                card = player.drawColorCard(false, slot);
+            } else {
+                throw new IllegalArgumentException("Invalid card source " + words[i]);
+            }
+            if (card == null) {
+                throw new IllegalStateException("Could not draw from " + source);
+            }
+        }
+    }
+
+    private static void drawTickets(Player player, String[] words) {
+        int choice = Integer.parseInt(argument(words, 2));
+        if (!player.selectDestinationCard(player.drawDestinationCards(), choice)) {
+            throw new IllegalArgumentException("Invalid ticket choice " + choice);
+        }
+    }
+
+    private static void buildRoute(GameSession session, Player player, String line) {
+        String cities = line.substring(line.indexOf(' ')).trim().substring("build".length()).trim();
+        Color colorChoice = null;
+        int lastSpace = cities.lastIndexOf(' ');
+        if (lastSpace > 0) {
+            colorChoice = parseColor(cities.substring(lastSpace + 1));
+            if (colorChoice != null) {
+                cities = cities.substring(0, lastSpace).trim();
+            }
+        }
+        RouteRef route = route(session, cities);
+        GameMap map = session.getMap();
+        Color routeColor = map.getRouteColor(route);
+        if (colorChoice == null) {
+            colorChoice = routeColor;
+        }
+        if (colorChoice == null || colorChoice == Color.MULTICOLOR) {
+            throw new IllegalArgumentException("Gray route " + route + " needs a color");
+        }
+        int extraTunnelCost = map.isRouteTunnel(route) ? session.getColorDeck().drawTunnelCost(colorChoice) : 0;
+        RouteBuildResult built = player.buildRoute(route, colorChoice, extraTunnelCost);
+        if (!built.isSuccess()) {
+            throw new IllegalStateException("Failed to build " + route + ": " + built.getErrorMessage());
+        }
+    }
+
+    static Player player(GameSession session, String playerId) {
+        for (Player player : session.getPlayers()) {
+            if (player.getPlayerId().equals(playerId)) {
+                return player;
+            }
+        }
+        throw new IllegalArgumentException("Unknown player or command: " + playerId);
+    }
+
+    /**
+     * @param cities "city one - city two"
+     */
+    static RouteRef route(GameSession session, String cities) {
+        int dash = cities.indexOf(" - ");
+        if (dash < 0) {
+            throw new IllegalArgumentException("Write routes as \"city - city\": " + cities);
+        }
+        String city1 = cities.substring(0, dash).trim();
+        String city2 = cities.substring(dash + 3).trim();
+        RouteRef route = session.getMap().resolveRoute(city1, city2);
+        if (route == null) {
+            throw new IllegalArgumentException("Route does not exist between " + city1 + " and " + city2);
+        }
+        return route;
+    }
+
+    static String argument(String[] words, int index) {
+        if (index >= words.length) {
+            throw new IllegalArgumentException("Missing argument after " + words[words.length - 1]);
+        }
+        return words[index];
+    }
+
+    /**
+     * @return The color, or null if the word is not a color name
+     */
+    static Color parseColor(String word) {
+        try {
+            return Color.valueOf(word.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.tickettoride;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * ShardConnection - a client connection to a ShardWorker. Requests are answered in order on
+ * the same socket, so a connection is used by one request at a time; the methods are
+ * synchronized so one connection can still be shared.
+ *
+ * Wire format (DataOutputStream, big-endian), the same both ways:
+ *   request: byte op, UTF session id, UTF text, int length + bytes
+ *   reply:   byte status, UTF text, int length + bytes
+ * See the op and status constants in ShardWorker for what the fields hold.
+ */
+public class ShardConnection implements AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final byte[] NO_DATA = new byte[0];
+
+    /**
+     * One answer from a worker
+     */
+    public static final class Reply {
+        private final byte status;
+        private final String text;
+        private final byte[] data;
+
+        Reply(byte status, String text, byte[] data) {
+            this.status = status;
+            this.text = text;
+            this.data = data;
+        }
+
+        /**
+         * ShardWorker.OK, ERROR, MOVED or UNKNOWN
+         */
+        public byte getStatus() {
+            return status;
+        }
+
+        /**
+         * The result, error message or (for MOVED) the new owner's address
+         */
+        public String getText() {
+            return text;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isOk() {
+            return status == ShardWorker.OK;
+        }
+
+        @Override
+        public String toString() {
+            return ShardWorker.statusName(status) + (text.isEmpty() ? "" : " " + text);
+        }
+    }
+
+    private final String address;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * @param address "host:port" of the worker
+     * @throws IOException if the worker cannot be reached
+     */
+    public ShardConnection(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Write worker addresses as host:port: " + address);
+        }
+        this.address = address;
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))),
+                CONNECT_TIMEOUT_MILLIS);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Reply request(byte op, String sessionId, String text) throws IOException {
+        return request(op, sessionId, text, NO_DATA);
+    }
+
+    /**
+     * Sends a request and waits for its reply
+     * @throws IOException if the connection fails (it cannot be used afterwards)
+     */
+    public synchronized Reply request(byte op, String sessionId, String text, byte[] data) throws IOException {
+        out.writeByte(op);
+        out.writeUTF(sessionId);
+        out.writeUTF(text);
+        out.writeInt(data.length);
+        out.write(data);
+        out.flush();
+
+        byte status = in.readByte();
+        String replyText = in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > ShardWorker.MAX_DATA_BYTES) {
+            throw new IOException("Bad reply length " + length + " from " + address);
+        }
+        byte[] replyData = new byte[length];
+        in.readFully(replyData);
+        return new Reply(status, replyText, replyData);
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
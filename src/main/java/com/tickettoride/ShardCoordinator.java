@@ -0,0 +1,500 @@
+package com.tickettoride;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ShardCoordinator - spreads games over ShardWorker nodes and routes moves to them.
+ * New games go to their owner on a ShardRing; the coordinator keeps the actual owner of each
+ * game and, when a worker is added or removed, hands the games whose ring owner changed to
+ * their new owner while they are being played (see ShardWorker for the handoff). A move
+ * that reaches a worker which no longer has the game is answered MOVED and followed.
+ * All methods are thread-safe; connections to each worker are pooled.
+ *
+ * main() is a load test: it starts worker JVMs on this machine, plays bot games through the
+ * coordinator, adds a worker after each measuring period (moving games live), and checks
+ * every game against a local copy that was never moved.
+ */
+public class ShardCoordinator {
+
+    public static final int VIRTUAL_NODES = 200;
+    private static final int MAX_REDIRECTS = 8;
+
+    private final ShardRing ring = new ShardRing(VIRTUAL_NODES);
+    private final Map<String, String> owners = new ConcurrentHashMap<>(); // game id -> worker address
+    private final Map<String, Queue<ShardConnection>> idleConnections = new ConcurrentHashMap<>();
+    private final AtomicLong handoffs = new AtomicLong();
+
+    /**
+     * Adds a worker and moves to it the games it now owns on the ring
+     * @param address "host:port" of a running ShardWorker
+     * @return Games handed to the new worker
+     */
+    public synchronized int addWorker(String address) throws IOException {
+        request(address, ShardWorker.STATS, "", ""); // Fails here if the worker is not reachable
+        if (!ring.addNode(address)) {
+            throw new IllegalArgumentException("Worker " + address + " already added");
+        }
+        return rebalance();
+    }
+
+    /**
+     * Removes a worker after handing its games to the remaining workers
+     * @return Games handed off
+     */
+    public synchronized int removeWorker(String address) throws IOException {
+        if (ring.getNodeCount() == 1 && ring.getNodes().contains(address)) {
+            throw new IllegalStateException("Cannot remove the last worker");
+        }
+        if (!ring.removeNode(address)) {
+            throw new IllegalArgumentException("Unknown worker " + address);
+        }
+        int moved = rebalance();
+        Queue<ShardConnection> idle = idleConnections.remove(address);
+        if (idle != null) {
+            for (ShardConnection connection : idle) {
+                connection.close();
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Moves every game whose ring owner is not its current owner
+     */
+    private int rebalance() throws IOException {
+        int moved = 0;
+        for (Map.Entry<String, String> game : owners.entrySet()) {
+            String target = ring.getOwner(game.getKey());
+            if (!target.equals(game.getValue()) && migrate(game.getKey(), game.getValue(), target)) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Hands a game to another worker while it may be being played
+     * @return true if the game moved
+     */
+    public boolean migrate(String gameId, String target) throws IOException {
+        String owner = owners.get(gameId);
+        if (owner == null) {
+            throw new IllegalArgumentException("Unknown game " + gameId);
+        }
+        return migrate(gameId, owner, target);
+    }
+
+    private boolean migrate(String gameId, String owner, String target) throws IOException {
+        ShardConnection.Reply reply = request(owner, ShardWorker.MIGRATE, gameId, target);
+        if (reply.getStatus() == ShardWorker.MOVED) {
+            owners.replace(gameId, owner, reply.getText());
+            return false;
+        }
+        if (reply.getStatus() == ShardWorker.UNKNOWN) {
+            return false; // Finished meanwhile
+        }
+        if (!reply.isOk()) {
+            System.out.println("Error: could not move game " + gameId + " to " + target + ": " + reply.getText());
+            return false;
+        }
+        owners.replace(gameId, owner, target);
+        handoffs.incrementAndGet();
+        // New requests now go to the target, so the old owner can drop its MOVED answer
+        ShardConnection.Reply forgotten = request(owner, ShardWorker.FORGET, gameId, "");
+        if (!forgotten.isOk()) {
+            System.out.println("Error: " + owner + " kept its redirect for " + gameId + ": " + forgotten.getText());
+        }
+        return true;
+    }
+
+    /**
+     * Starts a game on its ring owner
+     * @param gameId Game id (see GameSession.isValidId())
+     * @param mapName A map known to the workers' MapRegistry
+     */
+    public ShardConnection.Reply createGame(String gameId, String mapName, long seed, String[] playerIds) throws IOException {
+        String owner = ring.getOwner(gameId);
+        if (owner == null) {
+            throw new IllegalStateException("No workers");
+        }
+        ShardConnection.Reply reply = request(owner, ShardWorker.CREATE, gameId,
+                mapName + " " + seed + " " + String.join(" ", playerIds));
+        if (reply.isOk()) {
+            owners.put(gameId, owner);
+        }
+        return reply;
+    }
+
+    /**
+     * Plays a move (see SessionMoves) on the game's owner
+     * @return OK with the turn after the move, ERROR if the move failed (a failed turn still ends),
+     *         or UNKNOWN if there is no such game
+     */
+    public ShardConnection.Reply move(String gameId, String line) throws IOException {
+        return routed(ShardWorker.MOVE, gameId, line);
+    }
+
+    /**
+     * Gets a game's encoded state (see ShardWorker.STATE)
+     */
+    public ShardConnection.Reply getState(String gameId) throws IOException {
+        return routed(ShardWorker.STATE, gameId, "");
+    }
+
+    public ShardConnection.Reply removeGame(String gameId) throws IOException {
+        ShardConnection.Reply reply = routed(ShardWorker.REMOVE, gameId, "");
+        owners.remove(gameId);
+        return reply;
+    }
+
+    /**
+     * Sends a request to a game's owner, following MOVED answers
+     */
+    private ShardConnection.Reply routed(byte op, String gameId, String text) throws IOException {
+        String address = owners.get(gameId);
+        if (address == null) {
+            throw new IllegalArgumentException("Unknown game " + gameId);
+        }
+        for (int hop = 0; hop < MAX_REDIRECTS; hop++) {
+            ShardConnection.Reply reply = request(address, op, gameId, text);
+            if (reply.getStatus() == ShardWorker.MOVED) {
+                owners.replace(gameId, address, reply.getText());
+                address = reply.getText();
+            } else if (reply.getStatus() == ShardWorker.UNKNOWN && !address.equals(owners.get(gameId))) {
+                address = owners.get(gameId); // Moved after we looked it up
+            } else {
+                return reply;
+            }
+        }
+        throw new IllegalStateException("Game " + gameId + " keeps moving");
+    }
+
+    private ShardConnection.Reply request(String address, byte op, String gameId, String text) throws IOException {
+        Queue<ShardConnection> idle = idleConnections.computeIfAbsent(address, a -> new ConcurrentLinkedQueue<>());
+        ShardConnection connection = idle.poll();
+        if (connection == null) {
+            connection = new ShardConnection(address);
+        }
+        ShardConnection.Reply reply;
+        try {
+            reply = connection.request(op, gameId, text);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        idle.offer(connection);
+        return reply;
+    }
+
+    /**
+     * @return Address of the worker a game is on, or null
+     */
+    public String getOwner(String gameId) {
+        return owners.get(gameId);
+    }
+
+    public List<String> getWorkers() {
+        return ring.getNodes();
+    }
+
+    public int getGameCount() {
+        return owners.size();
+    }
+
+    public long getHandoffs() {
+        return handoffs.get();
+    }
+
+    public String getWorkerStats(String address) throws IOException {
+        return request(address, ShardWorker.STATS, "", "").getText();
+    }
+
+    /**
+     * Stops every worker and closes all connections
+     */
+    public synchronized void shutdown() {
+        for (String address : ring.getNodes()) {
+            try {
+                request(address, ShardWorker.SHUTDOWN, "", "");
+            } catch (IOException e) {
+                System.out.println("Error: could not stop worker " + address + ": " + e.getMessage());
+            }
+        }
+        for (Queue<ShardConnection> idle : idleConnections.values()) {
+            for (ShardConnection connection : idle) {
+                connection.close();
+            }
+        }
+        idleConnections.clear();
+    }
+
+    // ============ Load test ============
+
+    private static final String[] PLAYERS = {"p1", "p2", "p3"};
+
+    /**
+     * Plays one game through the coordinator, choosing moves from a local copy of the game that
+     * gets the same moves but is never handed off or hibernated, then checks that the worker's
+     * game ends up identical to it
+     */
+    private static final class LoadClient implements Runnable {
+        private final ShardCoordinator coordinator;
+        private final MapBundle bundle;
+        private final int clientId;
+        private final AtomicBoolean running;
+        private final AtomicLong moves;
+        private final AtomicLong gamesChecked;
+        private final AtomicLong failures;
+
+        LoadClient(ShardCoordinator coordinator, MapBundle bundle, int clientId, AtomicBoolean running,
+                   AtomicLong moves, AtomicLong gamesChecked, AtomicLong failures) {
+            this.coordinator = coordinator;
+            this.bundle = bundle;
+            this.clientId = clientId;
+            this.running = running;
+            this.moves = moves;
+            this.gamesChecked = gamesChecked;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            for (int game = 0; running.get(); game++) {
+                String gameId = "c" + clientId + "-g" + game;
+                long seed = clientId * 1_000_003L + game;
+                try {
+                    playGame(gameId, seed);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Error: game " + gameId + " failed: " + e);
+                    failures.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        private void playGame(String gameId, long seed) throws IOException {
+            ShardConnection.Reply created = coordinator.createGame(gameId, bundle.getName(), seed, PLAYERS);
+            if (!created.isOk()) {
+                throw new IllegalStateException("Could not create " + gameId + ": " + created.getText());
+            }
+            GameSession local = new GameSession(gameId, bundle, PLAYERS, seed);
+            Random random = new Random(seed);
+
+            for (String player : PLAYERS) {
+                send(gameId, "keep " + player + " 1 2 3", local);
+            }
+            int lastRoundTurns = -1;
+            while (running.get() && lastRoundTurns != 0 && local.getTurn() < SimulatedGame.MAX_TURNS) {
+                Player player = local.getCurrentPlayer();
+                send(gameId, chooseMove(local, player, random), local);
+                if (lastRoundTurns > 0) {
+                    lastRoundTurns--;
+                } else if (lastRoundTurns < 0 && player.getTrainCount() <= 2) {
+                    lastRoundTurns = PLAYERS.length;
+                }
+            }
+            check(gameId, local);
+            coordinator.removeGame(gameId);
+        }
+
+        private void send(String gameId, String line, GameSession local) throws IOException {
+            ShardConnection.Reply reply = coordinator.move(gameId, line);
+            if (reply.getStatus() != ShardWorker.OK && reply.getStatus() != ShardWorker.ERROR) {
+                throw new IllegalStateException("Move \"" + line + "\" on " + gameId + ": " + reply);
+            }
+            moves.incrementAndGet();
+            applyQuietly(local, line);
+        }
+
+        private static String chooseMove(GameSession local, Player player, Random random) {
+            GameMap map = local.getMap();
+            String id = player.getPlayerId();
+            if (random.nextInt(3) != 0) {
+                List<Integer> affordable = new ArrayList<>();
+                for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+                    if (map.getRouteOwner(edgeId) == null && map.getRouteWeight(edgeId) <= player.getTrainCount()
+                            && payWith(player, map, edgeId) != null) {
+                        affordable.add(edgeId);
+                    }
+                }
+                if (!affordable.isEmpty()) {
+                    int edgeId = affordable.get(random.nextInt(affordable.size()));
+                    return id + " build " + map.getRouteSource(edgeId) + " - " + map.getRouteDestination(edgeId)
+                            + " " + payWith(player, map, edgeId);
+                }
+            }
+            if (random.nextInt(10) == 0 && local.getDestinationDeck().size() >= 3) {
+                return id + " tickets 1";
+            }
+            return id + " draw M M";
+        }
+
+        /**
+         * @return The color to pay for a route with, or null if the player cannot afford it
+         */
+        private static Color payWith(Player player, GameMap map, int edgeId) {
+            Color routeColor = map.getRouteColor(edgeId);
+            int cost = map.getRouteWeight(edgeId);
+            int ferries = map.getRouteFerryCount(edgeId);
+            if (routeColor != null && routeColor != Color.MULTICOLOR) {
+                return player.canAffordRoute(routeColor, cost, ferries) ? routeColor : null;
+            }
+            for (Color color : Color.values()) {
+                if (color != Color.MULTICOLOR && player.canAffordRoute(color, cost, ferries)) {
+                    return color;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares the worker's encoded state with the local game's
+         */
+        private void check(String gameId, GameSession local) throws IOException {
+            ShardConnection.Reply state = coordinator.getState(gameId);
+            if (!state.isOk()) {
+                throw new IllegalStateException("No state for " + gameId + ": " + state);
+            }
+            if (!Arrays.equals(GameSessionCodec.encode(local), state.getData())) {
+                throw new IllegalStateException("Game " + gameId + " differs from its local copy at turn " + local.getTurn());
+            }
+            gamesChecked.incrementAndGet();
+        }
+
+        private static void applyQuietly(GameSession session, String line) {
+            try {
+                SessionMoves.apply(session, line);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Failed moves are part of the game too
+            }
+        }
+    }
+
+    /**
+     * Starts a ShardWorker JVM and waits until it listens
+     */
+    private static Process startWorker(int port) throws IOException {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        File directory = new File(System.getProperty("java.io.tmpdir"), "ttr-shard-" + port);
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(), Integer.toString(port), directory.getPath())
+                .redirectErrorStream(true).start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = output.readLine()) != null && !line.startsWith("Shard worker listening")) {
+            System.out.println("[worker " + port + "] " + line);
+        }
+        if (line == null) {
+            throw new IOException("Worker on port " + port + " exited before listening");
+        }
+        Thread drain = new Thread(() -> {
+            try {
+                String more;
+                while ((more = output.readLine()) != null) {
+                    System.out.println("[worker " + port + "] " + more);
+                }
+            } catch (IOException e) {
+                // Worker exited
+            }
+        }, "shard-worker-output");
+        drain.setDaemon(true);
+        drain.start();
+        return process;
+    }
+
+    /**
+     * Usage: ShardCoordinator [workers] [clients] [secondsPerStep] [basePort] [map]
+     * Starts with one worker and adds one after each step until there are `workers`,
+     * printing moves/s for each worker count.
+     */
+    public static void main(String[] args) {
+        int workerCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        int basePort = args.length > 3 ? Integer.parseInt(args[3]) : 7400;
+        String mapName = args.length > 4 ? args[4] : "american";
+
+        MapRegistry registry = MapRegistry.getDefault();
+        MapBundle bundle = registry.acquire(mapName);
+        if (bundle == null) {
+            System.out.println("Error: Unknown map " + mapName + ". Available maps: " + registry.getMapNames());
+            return;
+        }
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+        ShardCoordinator coordinator = new ShardCoordinator();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong moves = new AtomicLong();
+        AtomicLong gamesChecked = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            processes.add(startWorker(basePort));
+            coordinator.addWorker("localhost:" + basePort);
+            for (int i = 0; i < clients; i++) {
+                Thread thread = new Thread(new LoadClient(coordinator, bundle, i, running, moves, gamesChecked, failures),
+                        "shard-client-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+            System.out.println("Playing " + mapName + " with " + clients + " clients, " + seconds + " s per step");
+            for (int workers = 1; ; workers++) {
+                long startMoves = moves.get();
+                long start = System.nanoTime();
+                TimeUnit.SECONDS.sleep(seconds);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d worker(s): %,.0f moves/s (%d games live, %d checked)%n", workers,
+                        (moves.get() - startMoves) / elapsed, coordinator.getGameCount(), gamesChecked.get());
+                if (workers == workerCount || failures.get() > 0) {
+                    break;
+                }
+                int port = basePort + workers;
+                processes.add(startWorker(port));
+                long handoffStart = System.nanoTime();
+                int moved = coordinator.addWorker("localhost:" + port);
+                System.out.printf("Added worker %d: handed off %d games in %.1f ms%n", port, moved,
+                        (System.nanoTime() - handoffStart) / 1e6);
+            }
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (String worker : coordinator.getWorkers()) {
+                System.out.println(worker + ": " + coordinator.getWorkerStats(worker));
+            }
+            System.out.printf("%,d moves, %,d games checked against local copies, %d handoffs, %d failures%n", moves.get(),
+                    gamesChecked.get(), coordinator.getHandoffs(), failures.get());
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+            coordinator.shutdown();
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                        process.destroy();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroy();
+                }
+            }
+            registry.release(bundle);
+        }
+    }
+}
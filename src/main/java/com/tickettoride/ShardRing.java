@@ -0,0 +1,106 @@
+package com.tickettoride;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * ShardRing - consistent hashing of game session ids onto worker nodes. Each node is placed on
+ * a 64-bit ring at many pseudo-random points (virtual nodes) and a session belongs to the
+ * first node point at or after its own hash. Adding or removing a node therefore only moves
+ * the sessions between that node's points and their neighbours (about 1/n of them), and the
+ * many points per node keep the load even. Thread-safe.
+ */
+public class ShardRing {
+
+    private final int virtualNodes;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final TreeSet<String> nodes = new TreeSet<>();
+
+    /**
+     * @param virtualNodes Points per node on the ring (a few hundred keep the load within a few percent)
+     */
+    public ShardRing(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Need at least one point per node");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @return true if the node was added (false if it was already on the ring)
+     */
+    public synchronized boolean addNode(String nodeId) {
+        if (nodeId == null || nodeId.isEmpty()) {
+            throw new IllegalArgumentException("Node id cannot be empty");
+        }
+        if (!nodes.add(nodeId)) {
+            return false;
+        }
+        for (int i = 0; i < virtualNodes; i++) {
+            long point = hash(nodeId + "#" + i);
+            String taken = ring.get(point);
+            if (taken == null || nodeId.compareTo(taken) < 0) { // Collisions go to the smaller id, whatever the order added
+                ring.put(point, nodeId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the node was removed
+     */
+    public synchronized boolean removeNode(String nodeId) {
+        if (!nodes.remove(nodeId)) {
+            return false;
+        }
+        ring.values().removeIf(nodeId::equals);
+        // Give any collided points back to the remaining nodes
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the node a session belongs to
+     * @return The node id, or null if the ring is empty
+     */
+    public synchronized String getOwner(String sessionId) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = ring.ceilingEntry(hash(sessionId));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Nodes on the ring, sorted by id
+     */
+    public synchronized List<String> getNodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    public synchronized int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * 64-bit hash of a string: FNV-1a over its UTF-8 bytes, then the SplitMix64 finalizer so
+     * similar ids (game-1, game-2, ...) land far apart on the ring
+     */
+    static long hash(String key) {
+        long h = 0xCBF29CE484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
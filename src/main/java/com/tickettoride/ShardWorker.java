@@ -0,0 +1,540 @@
+package com.tickettoride;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * ShardWorker - one node of a sharded game server: a JVM that hosts a share of the games in
+ * a GameSessionCache and plays their moves with SessionMoves, on the same engine as every
+ * other game. ShardCoordinator decides which worker owns which game (see ShardRing).
+ *
+ * A game can be handed to another worker while it is being played (MIGRATE). The worker
+ * encodes it with GameSessionCodec and sends it to the new owner; moves that arrive
+ * meanwhile are queued, then forwarded in order once the new owner has the game, and their
+ * callers get the new owner's answers. After that the worker answers MOVED with the new
+ * address until the coordinator, having recorded the new owner, sends FORGET. If the new
+ * owner cannot take the game the queued moves are played here instead. The encoded game
+ * includes its shuffle state, so a handed-off (or hibernated) game plays on exactly as if it
+ * had never left.
+ *
+ * Connections are served one thread each; moves on one game are serialized, moves on
+ * different games run in parallel.
+ */
+public class ShardWorker {
+
+    // Ops (see ShardConnection for the framing)
+    public static final byte CREATE = 1;   // text: "<map> <seed> <player> <player> ..."
+    public static final byte MOVE = 2;     // text: a move (see SessionMoves); reply text: turn after the move
+    public static final byte IMPORT = 3;   // data: GameSessionCodec bytes
+    public static final byte MIGRATE = 4;  // text: "host:port" of the worker to hand the game to
+    public static final byte STATE = 5;    // reply data: GameSessionCodec bytes
+    public static final byte REMOVE = 6;
+    public static final byte LIST = 7;     // reply text: hosted game ids, space separated
+    public static final byte STATS = 8;
+    public static final byte SHUTDOWN = 9;
+    public static final byte FORGET = 10;  // drops the MOVED answer left by a finished handoff
+
+    // Reply status
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;    // the request failed (a failed turn still ends, as in Game)
+    public static final byte MOVED = 2;    // text: "host:port" of the game's new owner
+    public static final byte UNKNOWN = 3;  // no such game here
+
+    public static final long DEFAULT_MEMORY_BUDGET_MB = 256;
+    static final int MAX_DATA_BYTES = 1 << 24; // Far above any encoded game
+
+    /**
+     * A game hosted here (or handed away, then only movedTo is used until FORGET)
+     */
+    private static final class Hosted {
+        final MapBundle bundle; // Held from the registry while hosted here (null for maps outside it)
+        List<QueuedMove> handoff; // Moves received while the game is being handed off, null otherwise
+        String movedTo;
+
+        Hosted(MapBundle bundle) {
+            this.bundle = bundle;
+        }
+    }
+
+    /**
+     * A move waiting for a handoff to finish
+     */
+    private static final class QueuedMove {
+        final String line;
+        ShardConnection.Reply reply;
+
+        QueuedMove(String line) {
+            this.line = line;
+        }
+
+        synchronized void complete(ShardConnection.Reply reply) {
+            this.reply = reply;
+            notifyAll();
+        }
+
+        /**
+         * Completes the move with this reply unless it already has one
+         */
+        synchronized void completeIfWaiting(ShardConnection.Reply reply) {
+            if (this.reply == null) {
+                complete(reply);
+            }
+        }
+
+        synchronized ShardConnection.Reply await() throws InterruptedException {
+            while (reply == null) {
+                wait();
+            }
+            return reply;
+        }
+    }
+
+    private final MapRegistry registry;
+    private final GameSessionCache cache;
+    private final Map<String, Hosted> hosted = new ConcurrentHashMap<>();
+    private ServerSocket server;
+
+    // Metrics
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong handoffsOut = new AtomicLong();
+    private final AtomicLong handoffsIn = new AtomicLong();
+    private final AtomicLong forwardedMoves = new AtomicLong();
+    private volatile long maxHandoffNanos; // Longest time moves were held back by a handoff
+
+    /**
+     * @param registry Maps new games are created on
+     * @param sessionDirectory Where the cache hibernates games
+     * @param memoryBudgetBytes Heap the resident games may use
+     */
+    public ShardWorker(MapRegistry registry, File sessionDirectory, long memoryBudgetBytes) {
+        this.registry = registry;
+        this.cache = new GameSessionCache(sessionDirectory, memoryBudgetBytes, registry);
+    }
+
+    /**
+     * Serves connections until SHUTDOWN
+     * @param port Port to listen on (0 for any free port)
+     * @param ready Called with the bound port once connections are accepted
+     */
+    public void serve(int port, IntConsumer ready) throws IOException {
+        synchronized (this) {
+            server = new ServerSocket(port);
+        }
+        ready.accept(server.getLocalPort());
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return; // Shut down
+                }
+                throw e;
+            }
+            Thread thread = new Thread(() -> serveConnection(socket), "shard-connection");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // Client closed the connection
+                }
+                String sessionId = in.readUTF();
+                String text = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_DATA_BYTES) {
+                    write(out, reply(ERROR, "Bad data length " + length));
+                    return; // The rest of the stream cannot be framed
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+
+                ShardConnection.Reply reply;
+                try {
+                    reply = handle(op, sessionId, text, data);
+                } catch (IOException | RuntimeException e) {
+                    reply = reply(ERROR, String.valueOf(e.getMessage()));
+                }
+                write(out, reply);
+                if (op == SHUTDOWN) {
+                    shutdown();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (!isShutDown()) {
+                System.out.println("Error: connection failed: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(DataOutputStream out, ShardConnection.Reply reply) throws IOException {
+        out.writeByte(reply.getStatus());
+        out.writeUTF(reply.getText());
+        out.writeInt(reply.getData().length);
+        out.write(reply.getData());
+        out.flush();
+    }
+
+    ShardConnection.Reply handle(byte op, String sessionId, String text, byte[] data) throws IOException, InterruptedException {
+        switch (op) {
+            case CREATE: return create(sessionId, text);
+            case MOVE: return move(sessionId, text);
+            case IMPORT: return importGame(sessionId, data);
+            case MIGRATE: return migrate(sessionId, text);
+            case STATE: return state(sessionId);
+            case REMOVE: return remove(sessionId);
+            case FORGET: return forget(sessionId);
+            case LIST: return list();
+            case STATS: return reply(OK, formatMetrics());
+            case SHUTDOWN: return reply(OK, "");
+            default: throw new IllegalArgumentException("Unknown op " + op);
+        }
+    }
+
+    private ShardConnection.Reply create(String sessionId, String text) {
+        if (!GameSession.isValidId(sessionId)) {
+            throw new IllegalArgumentException("Invalid game id " + sessionId);
+        }
+        String[] words = text.trim().split("\\s+");
+        if (words.length < 4) {
+            throw new IllegalArgumentException("Create needs a map, a seed and at least 2 players");
+        }
+        long seed = Long.parseLong(words[1]);
+        MapBundle bundle = registry.acquire(words[0]);
+        if (bundle == null) {
+            throw new IllegalArgumentException("Unknown map " + words[0] + ", available: " + registry.getMapNames());
+        }
+        synchronized (hosted) {
+            Hosted existing = hosted.get(sessionId);
+            if (existing != null && existing.movedTo == null) {
+                registry.release(bundle);
+                throw new IllegalStateException("Game " + sessionId + " already exists");
+            }
+            GameSession session;
+            try {
+                session = new GameSession(sessionId, bundle, Arrays.copyOfRange(words, 2, words.length), seed);
+            } catch (RuntimeException e) {
+                registry.release(bundle);
+                throw e;
+            }
+            cache.put(session);
+            hosted.put(sessionId, new Hosted(bundle));
+        }
+        return reply(OK, "");
+    }
+
+    private ShardConnection.Reply move(String sessionId, String line) throws InterruptedException {
+        Hosted game = hosted.get(sessionId);
+        if (game == null) {
+            return reply(UNKNOWN, "No game " + sessionId);
+        }
+        QueuedMove queued;
+        synchronized (game) {
+            if (game.movedTo != null) {
+                return reply(MOVED, game.movedTo);
+            }
+            if (game.handoff == null) {
+                return play(sessionId, game, line);
+            }
+            queued = new QueuedMove(line);
+            game.handoff.add(queued);
+        }
+        return queued.await();
+    }
+
+    /**
+     * Plays a move on a hosted game (caller holds the game's lock)
+     */
+    private ShardConnection.Reply play(String sessionId, Hosted game, String line) {
+        GameSession session = acquire(sessionId);
+        try {
+            SessionMoves.apply(session, line);
+            return reply(OK, Integer.toString(session.getTurn()));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return reply(ERROR, String.valueOf(e.getMessage()));
+        } finally {
+            moves.incrementAndGet();
+            cache.release(session);
+        }
+    }
+
+    /**
+     * Acquires a hosted game's session from the cache (caller holds the game's lock)
+     */
+    private GameSession acquire(String sessionId) {
+        GameSession session = cache.acquire(sessionId);
+        if (session == null) {
+            throw new IllegalStateException("Game " + sessionId + " could not be loaded");
+        }
+        return session;
+    }
+
+    private ShardConnection.Reply importGame(String sessionId, byte[] data) throws IOException {
+        GameSession session = GameSessionCodec.decode(data, registry);
+        if (!session.getSessionId().equals(sessionId)) {
+            throw new IllegalArgumentException("Data is for game " + session.getSessionId() + ", not " + sessionId);
+        }
+        MapBundle bundle = registry.acquire(session.getBundle().getName()); // Keeps the map loaded for reloads
+        synchronized (hosted) {
+            Hosted existing = hosted.get(sessionId);
+            if (existing != null && existing.movedTo == null) {
+                if (bundle != null) {
+                    registry.release(bundle);
+                }
+                throw new IllegalStateException("Game " + sessionId + " already exists");
+            }
+            cache.put(session);
+            hosted.put(sessionId, new Hosted(bundle));
+        }
+        handoffsIn.incrementAndGet();
+        return reply(OK, "");
+    }
+
+    /**
+     * Hands a game to another worker: sends it, then forwards the moves queued meanwhile in order
+     */
+    private ShardConnection.Reply migrate(String sessionId, String target) throws InterruptedException {
+        Hosted game = hosted.get(sessionId);
+        if (game == null) {
+            return reply(UNKNOWN, "No game " + sessionId);
+        }
+        byte[] data;
+        synchronized (game) {
+            if (game.movedTo != null) {
+                return reply(MOVED, game.movedTo);
+            }
+            if (game.handoff != null) {
+                throw new IllegalStateException("Game " + sessionId + " is already being handed off");
+            }
+            GameSession session = acquire(sessionId);
+            try {
+                data = GameSessionCodec.encode(session);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not encode game " + sessionId + ": " + e.getMessage());
+            } finally {
+                cache.release(session);
+            }
+            game.handoff = new ArrayList<>();
+        }
+        long start = System.nanoTime();
+
+        // Moves are queued from here until the handoff is done
+        ShardConnection connection = null;
+        ShardConnection.Reply imported;
+        try {
+            connection = new ShardConnection(target);
+            imported = connection.request(IMPORT, sessionId, "", data);
+        } catch (IOException e) {
+            imported = reply(ERROR, "Could not reach " + target + ": " + e.getMessage());
+        }
+
+        synchronized (game) {
+            List<QueuedMove> queued = game.handoff;
+            game.handoff = null;
+            game.notifyAll();
+            try {
+                if (!imported.isOk()) {
+                    for (QueuedMove move : queued) {
+                        move.complete(play(sessionId, game, move.line));
+                    }
+                    return reply(ERROR, "Handoff to " + target + " failed: " + imported.getText());
+                }
+                for (QueuedMove move : queued) {
+                    ShardConnection.Reply forwarded;
+                    try {
+                        forwarded = connection.request(MOVE, sessionId, move.line);
+                    } catch (IOException e) {
+                        forwarded = reply(ERROR, "Move lost in handoff to " + target + ": " + e.getMessage());
+                    }
+                    move.complete(forwarded);
+                    forwardedMoves.incrementAndGet();
+                }
+            } finally {
+                // If playing or forwarding threw, the moves not done yet must not wait forever
+                for (QueuedMove move : queued) {
+                    move.completeIfWaiting(reply(ERROR, "Move not played: handoff of " + sessionId + " failed"));
+                }
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+            game.movedTo = target;
+            cache.remove(sessionId);
+            if (game.bundle != null) {
+                registry.release(game.bundle);
+            }
+            handoffsOut.incrementAndGet();
+            synchronized (this) {
+                maxHandoffNanos = Math.max(maxHandoffNanos, System.nanoTime() - start);
+            }
+            return reply(OK, Integer.toString(queued.size()));
+        }
+    }
+
+    private ShardConnection.Reply state(String sessionId) throws IOException, InterruptedException {
+        Hosted game = hosted.get(sessionId);
+        if (game == null) {
+            return reply(UNKNOWN, "No game " + sessionId);
+        }
+        synchronized (game) {
+            while (game.handoff != null) {
+                game.wait(); // Until the handoff is done or has failed
+            }
+            if (game.movedTo != null) {
+                return reply(MOVED, game.movedTo);
+            }
+            GameSession session = acquire(sessionId);
+            try {
+                return new ShardConnection.Reply(OK, "", GameSessionCodec.encode(session));
+            } finally {
+                cache.release(session);
+            }
+        }
+    }
+
+    private ShardConnection.Reply remove(String sessionId) throws InterruptedException {
+        Hosted game = hosted.get(sessionId);
+        if (game == null) {
+            return reply(UNKNOWN, "No game " + sessionId);
+        }
+        synchronized (game) {
+            while (game.handoff != null) {
+                game.wait(); // Until the handoff is done or has failed
+            }
+            if (game.movedTo != null) {
+                return reply(MOVED, game.movedTo);
+            }
+            cache.remove(sessionId);
+            hosted.remove(sessionId, game);
+            if (game.bundle != null) {
+                registry.release(game.bundle);
+            }
+        }
+        return reply(OK, "");
+    }
+
+    /**
+     * Drops the MOVED answer of a game handed away, once the coordinator routes to its new owner
+     * (requests still in flight then get UNKNOWN, and the coordinator looks the owner up again)
+     */
+    private ShardConnection.Reply forget(String sessionId) {
+        Hosted game = hosted.get(sessionId);
+        if (game == null) {
+            return reply(UNKNOWN, "No game " + sessionId);
+        }
+        synchronized (game) {
+            if (game.movedTo == null) {
+                throw new IllegalStateException("Game " + sessionId + " is hosted here");
+            }
+            hosted.remove(sessionId, game);
+        }
+        return reply(OK, "");
+    }
+
+    private ShardConnection.Reply list() {
+        StringBuilder ids = new StringBuilder();
+        for (Map.Entry<String, Hosted> entry : hosted.entrySet()) {
+            if (entry.getValue().movedTo == null) {
+                ids.append(ids.length() > 0 ? " " : "").append(entry.getKey());
+            }
+        }
+        return reply(OK, ids.toString());
+    }
+
+    private synchronized boolean isShutDown() {
+        return server != null && server.isClosed();
+    }
+
+    private synchronized void shutdown() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    // ============ Metrics ============
+
+    public long getMoves() {
+        return moves.get();
+    }
+
+    public long getHandoffsOut() {
+        return handoffsOut.get();
+    }
+
+    public long getHandoffsIn() {
+        return handoffsIn.get();
+    }
+
+    public String formatMetrics() {
+        return String.format("games=%d moves=%d handoffs out=%d in=%d forwarded moves=%d max pause=%.1f ms | %s",
+                cache.getResidentCount() + cache.getHibernatedCount(), getMoves(), getHandoffsOut(), getHandoffsIn(),
+                forwardedMoves.get(), maxHandoffNanos / 1e6, cache.formatMetrics());
+    }
+
+    // ============ Helpers ============
+
+    static String statusName(byte status) {
+        switch (status) {
+            case OK: return "OK";
+            case ERROR: return "ERROR";
+            case MOVED: return "MOVED";
+            case UNKNOWN: return "UNKNOWN";
+            default: return "status " + status;
+        }
+    }
+
+    private static ShardConnection.Reply reply(byte status, String text) {
+        return new ShardConnection.Reply(status, text, new byte[0]);
+    }
+
+    /**
+     * Usage: ShardWorker &lt;port&gt; [sessionDirectory] [memoryBudgetMB]
+     * Prints "Shard worker listening on port N" once it accepts connections.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ShardWorker <port> [sessionDirectory] [memoryBudgetMB]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        File directory = args.length > 1 ? new File(args[1])
+                : new File(System.getProperty("java.io.tmpdir"), "ttr-shard-" + port);
+        long budgetMB = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MEMORY_BUDGET_MB;
+        try {
+            ShardWorker worker = new ShardWorker(MapRegistry.getDefault(), directory, budgetMB * 1024 * 1024);
+            worker.serve(port, bound -> System.out.println("Shard worker listening on port " + bound));
+            System.out.println("Shard worker stopped: " + worker.formatMetrics());
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.tickettoride;
+
+import java.util.Random;
+
+/**
+ * SimulatedGame - plays a full game between bots without any terminal interaction.
+ * Uses the same rule engine as Game (Player, GameMap, ColorDeck, DestinationDeck)
+ * with every shuffle driven by a single seed, so a game can be replayed exactly.
+ */
+public class SimulatedGame {
+
+    public static final int STARTING_COLOR_CARDS = 7;
+    public static final int INITIAL_TICKETS_OFFERED = 5;
+    public static final int INITIAL_TICKETS_KEPT = 3;
+    public static final int MAX_TURNS = 400; // Stops games where no one can make progress
+
+    private static final ScoringEngine SCORING = new ScoringEngine();
+
+    private final GameMap map;
+    private final Player[] players;
+    private final Bot[] bots;
+    private final Random random;
+    private final ColorDeck colorDeck;
+    private final DestinationDeck destinationDeck;
+    private int turns;
+
+    /**
+     * Creates a game with one player per bot, seated in the given order
+     * @param cityFilePath Path to the city file
+     * @param edgeFilePath Path to the edge file
+     * @param destinationFilePath Path to the destination card file
+     * @param bots One bot per seat
+     * @param seed Seed for every shuffle in the game
+     */
+    public SimulatedGame(String cityFilePath, String edgeFilePath, String destinationFilePath, Bot[] bots, long seed) {
+        this(MapBundle.forFiles(cityFilePath, edgeFilePath, destinationFilePath, ColorDeck.DEFAULT_CARD_FILE),
+                bots, seed);
+    }
+
+    /**
+     * Creates a game on a shared map bundle (no files are read if the bundle is loaded)
+     * @param bundle The map
+     * @param bots One bot per seat
+     * @param seed Seed for every shuffle in the game
+     */
+    public SimulatedGame(MapBundle bundle, Bot[] bots, long seed) {
+        if (bots == null || bots.length < 2) {
+            throw new IllegalArgumentException("A game needs at least 2 bots");
+        }
+        this.random = new Random(seed);
+        this.map = bundle.newMap();
+        this.colorDeck = bundle.newColorDeck(random);
+        this.destinationDeck = bundle.newDestinationDeck(random);
+        map.setColorDeck(colorDeck);
+        map.setDestinationDeck(destinationDeck);
+
+        this.bots = bots;
+        this.players = new Player[bots.length];
+        for (int i = 0; i < bots.length; i++) {
+            players[i] = new Player(bots[i].getName() + "#" + (i + 1)); // Seat suffix keeps self-play ids unique
+            players[i].setGameMap(map);
+        }
+        this.turns = 0;
+    }
+
+    /**
+     * Plays the game to the end: deal, initial tickets, turns until a player is down to
+     * 2 trains or every route is claimed, plus one final round (or MAX_TURNS), then final scoring
+     * @return Final score breakdowns in seat order
+     */
+    public ScoreBreakdown[] play() {
+        for (int i = 0; i < STARTING_COLOR_CARDS; i++) {
+            for (Player player : players) {
+                player.drawColorCard(true, -1);
+            }
+        }
+
+        for (int i = 0; i < players.length; i++) {
+            DestinationCard[] offered = destinationDeck.drawDestinations(players[i].getPlayerId(), INITIAL_TICKETS_OFFERED);
+            keepDestinationCards(players[i], offered, bots[i].chooseInitialTickets(this, players[i], offered), INITIAL_TICKETS_KEPT);
+        }
+
+        int finalTurnsLeft = -1; // -1 until someone triggers the last round
+        while (turns < MAX_TURNS && finalTurnsLeft != 0) {
+            int seat = turns % players.length;
+            Player player = players[seat];
+            bots[seat].takeTurn(this, player);
+            for (DestinationCard dest : player.getDestinationCards()) {
+                player.checkDestinationCardCompleted(dest);
+            }
+            map.getDeltaStream().emit(DeltaType.TURN_ENDED, player.getPlayerId(), turns, 0, null);
+            turns++;
+
+            if (finalTurnsLeft > 0) {
+                finalTurnsLeft--;
+            } else if (player.getTrainCount() <= 2 || allRoutesClaimed()) {
+                finalTurnsLeft = players.length;
+            }
+        }
+
+        return SCORING.score(map, players);
+    }
+
+    /**
+     * Check if every route on the map has been claimed
+     */
+    private boolean allRoutesClaimed() {
+        return map.getClaimedNetwork().getRouteCount() == map.getEdgeCount();
+    }
+
+    /**
+     * Keeps the flagged destination cards and discards the rest. If fewer than
+     * minimum are flagged, the first unflagged cards are kept as well.
+     */
+    public void keepDestinationCards(Player player, DestinationCard[] offered, boolean[] keep, int minimum) {
+        int kept = 0;
+        for (int i = 0; i < offered.length; i++) {
+            if (keep != null && i < keep.length && keep[i]) {
+                kept++;
+            }
+        }
+        for (int i = 0; i < offered.length; i++) {
+            boolean keepCard = keep != null && i < keep.length && keep[i];
+            if (!keepCard && kept < minimum) {
+                keepCard = true;
+                kept++;
+            }
+            if (keepCard) {
+                player.keepDestinationCard(offered[i]);
+            } else {
+                offered[i].setLocation("DISCARD");
+                destinationDeck.discardPile.add(offered[i]);
+            }
+        }
+    }
+
+    /**
+     * Builds a route for a player, performing the tunnel draw first if needed
+     * @param player The player building
+     * @param edgeId The route to build
+     * @param colorChoice The color to pay with
+     * @return The status from Player.tryBuildRoute (OK if built)
+     */
+    public RouteStatus buildRoute(Player player, int edgeId, Color colorChoice) {
+        int extraTunnelCost = 0;
+        if (map.isRouteTunnel(edgeId)) {
+            extraTunnelCost = drawTunnelCost(colorChoice);
+        }
+        return player.tryBuildRoute(edgeId, colorChoice, extraTunnelCost);
+    }
+
+    /**
+     * Reveals up to 3 cards to the discard pile and counts those matching the color or wild
+     * (same rule as Game.handleTunnelDraw)
+     */
+    public int drawTunnelCost(Color routeColor) {
+        return colorDeck.drawTunnelCost(routeColor);
+    }
+
+    // ============ Getters ============
+
+    public GameMap getMap() {
+        return map;
+    }
+
+    public Player[] getPlayers() {
+        return players;
+    }
+
+    public ColorDeck getColorDeck() {
+        return colorDeck;
+    }
+
+    public DestinationDeck getDestinationDeck() {
+        return destinationDeck;
+    }
+
+    /**
+     * The game's seeded random source (bots must use this for reproducibility)
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+}
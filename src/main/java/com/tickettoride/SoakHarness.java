@@ -0,0 +1,509 @@
+package com.tickettoride;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * SoakHarness - plays random legal games through the real engine classes for a long time and
+ * checks after every step that nothing drifted: every color and destination card is in exactly
+ * one place, the deck's pool counts match its piles, and each player's trains and points match
+ * what the harness expects from the moves made.
+ *
+ * The cheap checks (counts only) run after every step; a full scan of every card's location
+ * runs every FULL_CHECK_INTERVAL steps and at the end of each game. Heap use is sampled as it
+ * runs. The first failure stops the run and prints the game seed that reproduces it
+ * (replay it with --game).
+ */
+public class SoakHarness {
+
+    public static final long DEFAULT_SECONDS = 60;
+    public static final long DEFAULT_MAX_HEAP_GROWTH_MB = 64;
+
+    private static final int FULL_CHECK_INTERVAL = 4096;   // steps between full location scans
+    private static final int MAX_TURNS_PER_GAME = 2000;    // play goes on after every route is claimed, so the piles run dry
+    private static final long PROGRESS_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final MapBundle bundle;
+    private final int playerCount;
+    private final int colorCardTotal;
+    private final int destinationCardTotal;
+    private final String[] playerIds;
+
+    // Totals over the run
+    private long steps;
+    private long games;
+    private long routesBuilt;
+    private long tunnelsFailed;
+    private long fullChecks;
+
+    /**
+     * @param bundle The map to play on
+     * @param playerCount Players per game (2-6)
+     */
+    public SoakHarness(MapBundle bundle, int playerCount) {
+        if (playerCount < 2 || playerCount > 6) {
+            throw new IllegalArgumentException("Player count must be between 2 and 6");
+        }
+        this.bundle = bundle;
+        this.playerCount = playerCount;
+        this.playerIds = new String[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            playerIds[i] = "p" + (i + 1);
+        }
+        // What a freshly dealt deck holds is the amount that must be conserved
+        ColorDeck colorDeck = bundle.newColorDeck(new Random(0));
+        this.colorCardTotal = colorDeck.size() + colorDeck.discardPile.size() + countVisible(colorDeck);
+        this.destinationCardTotal = bundle.newDestinationDeck(new Random(0)).size();
+    }
+
+    /**
+     * Plays games with seeds derived from baseSeed until the time is up or an invariant fails
+     * @param seconds How long to run
+     * @param baseSeed Seed the per-game seeds are derived from
+     * @param maxHeapGrowthMb Fail if the heap (after GC) grows more than this over the run
+     * @return true if no invariant failed
+     */
+    public boolean run(long seconds, long baseSeed, long maxHeapGrowthMb) {
+        long heapBefore = usedHeapAfterGc();
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        long nextProgress = start + PROGRESS_INTERVAL_NANOS;
+        long peakHeap = heapBefore;
+
+        for (long game = 0; System.nanoTime() < deadline; game++) {
+            long seed = baseSeed ^ (game * 0x9E3779B97F4A7C15L);
+            try {
+                playGame(seed);
+            } catch (RuntimeException e) { // Invariant failures and engine errors alike
+                System.out.println("SOAK FAILURE in game " + game + " (seed " + seed + "): " + e);
+                System.out.println("Reproduce with: java com.tickettoride.SoakHarness --game " + seed + " "
+                        + bundle.getName() + " " + playerCount);
+                return false;
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextProgress) {
+                Runtime runtime = Runtime.getRuntime();
+                long heap = runtime.totalMemory() - runtime.freeMemory();
+                peakHeap = Math.max(peakHeap, heap);
+                System.out.printf("%,d steps in %,d games (%,.0f steps/min), heap %d MB%n", steps, games,
+                        steps / ((now - start) / 6e10), heap >> 20);
+                nextProgress = now + PROGRESS_INTERVAL_NANOS;
+            }
+        }
+
+        double minutes = (System.nanoTime() - start) / 6e10;
+        long heapAfter = usedHeapAfterGc();
+        long growthMb = (heapAfter - heapBefore) >> 20;
+        System.out.printf("Soak passed: %,d steps in %,d games (%,.0f steps/min), %,d routes built, "
+                        + "%,d unaffordable tunnels, %,d full checks%n",
+                steps, games, steps / minutes, routesBuilt, tunnelsFailed, fullChecks);
+        System.out.printf("Heap after GC: %d MB before, %d MB after (growth %d MB), peak sampled %d MB%n",
+                heapBefore >> 20, heapAfter >> 20, growthMb, peakHeap >> 20);
+        if (growthMb > maxHeapGrowthMb) {
+            System.out.println("SOAK FAILURE: heap grew " + growthMb + " MB (limit " + maxHeapGrowthMb + " MB)");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Plays one game of random legal moves, checking the invariants after every step
+     * @param seed Seed for the deck shuffles and every random choice (the same seed replays the same game)
+     * @throws IllegalStateException at the first step where an invariant fails
+     */
+    public void playGame(long seed) {
+        new Soak(seed).play();
+        games++;
+    }
+
+    /**
+     * One game being played, with the harness's own account of what each player should have
+     */
+    private final class Soak {
+        final long seed;
+        final SplittableRandom random;
+        final GameSession session;
+        final GameMap map;
+        final ColorDeck colorDeck;
+        final DestinationDeck destinationDeck;
+        final Player[] players;
+        final int[] expectedTrains;
+        final int[] expectedPoints;
+        final ZobristHasher hasher;
+        final TicketBlockTracker blockTracker;
+        int step;
+        int finalTurnsLeft = -1; // -1 until someone triggers the last round
+
+        Soak(long seed) {
+            this.seed = seed;
+            this.random = new SplittableRandom(seed);
+            this.session = new GameSession("soak", bundle, playerIds, seed);
+            this.map = session.getMap();
+            this.colorDeck = session.getColorDeck();
+            this.destinationDeck = session.getDestinationDeck();
+            this.players = session.getPlayers();
+            this.expectedTrains = new int[players.length];
+            this.expectedPoints = new int[players.length];
+            for (int i = 0; i < players.length; i++) {
+                expectedTrains[i] = Player.STARTING_TRAINS;
+            }
+            this.hasher = ZobristHasher.attach(map, players, session.getCurrentPlayerIndex());
+            this.blockTracker = TicketBlockTracker.attach(map, players);
+        }
+
+        void play() {
+            checkCounts("after the deal");
+            for (Player player : players) {
+                if (destinationDeck.size() + destinationDeck.discardPile.size() >= SimulatedGame.INITIAL_TICKETS_OFFERED) {
+                    keepInitialTickets(player);
+                }
+            }
+            fullCheck();
+
+            while (session.getTurn() < MAX_TURNS_PER_GAME && finalTurnsLeft != 0) {
+                int seat = session.getCurrentPlayerIndex();
+                Player player = players[seat];
+                int action = random.nextInt(100);
+                boolean acted = action < 10 ? drawTickets(player) : action < 55 && tryBuild(seat);
+                if (!acted) {
+                    drawColorCard(player);
+                    drawColorCard(player);
+                }
+                for (DestinationCard dest : player.getDestinationCards()) {
+                    expectedPoints[seat] += player.checkDestinationCardCompleted(dest);
+                }
+                session.endTurn();
+                checkCounts("after turn " + session.getTurn());
+
+                if (finalTurnsLeft > 0) {
+                    finalTurnsLeft--;
+                } else if (finalTurnsLeft < 0 && player.getTrainCount() <= 2) {
+                    finalTurnsLeft = players.length;
+                }
+            }
+            fullCheck();
+        }
+
+        private void keepInitialTickets(Player player) {
+            DestinationCard[] offered = destinationDeck.drawDestinations(player.getPlayerId(), SimulatedGame.INITIAL_TICKETS_OFFERED);
+            int skip = random.nextInt(offered.length); // Keep all but up to two
+            for (int i = 0; i < offered.length; i++) {
+                if (i == skip || (i == (skip + 1) % offered.length && random.nextBoolean())) {
+                    offered[i].setLocation("DISCARD");
+                    destinationDeck.discardPile.add(offered[i]);
+                } else {
+                    player.keepDestinationCard(offered[i]);
+                }
+            }
+            step(); // Once the offer is settled: until then the offered tickets are in no pile or hand
+        }
+
+        private void drawColorCard(Player player) {
+            boolean mystery = random.nextBoolean();
+            player.drawColorCard(mystery, mystery ? -1 : random.nextInt(5)); // null when the pile or slot is empty
+            step();
+        }
+
+        private boolean drawTickets(Player player) {
+            if (destinationDeck.size() + destinationDeck.discardPile.size() < 3) {
+                return false;
+            }
+            if (!player.selectDestinationCard(player.drawDestinationCards(), 1 + random.nextInt(3))) {
+                fail("selectDestinationCard refused a valid choice");
+            }
+            step();
+            return true;
+        }
+
+        /**
+         * Builds a random route the player can afford (paying with its most plentiful color on
+         * gray routes, or now and then with wildcards only), drawing for tunnels first
+         * @return false if no route is affordable
+         */
+        private boolean tryBuild(int seat) {
+            Player player = players[seat];
+            int edgeCount = map.getEdgeCount();
+            int offset = random.nextInt(edgeCount);
+            for (int k = 0; k < edgeCount; k++) {
+                int edgeId = (offset + k) % edgeCount;
+                Color color = map.getRouteColor(edgeId);
+                if (color == null) {
+                    // Sometimes pay a gray route with wildcards only, which must count each wildcard once
+                    color = random.nextInt(8) == 0 ? Color.MULTICOLOR : mostPlentifulColor(player);
+                }
+                if (player.checkRoute(edgeId, color, 0) != RouteStatus.OK) {
+                    continue;
+                }
+
+                int trainsBefore = player.getTrainCount();
+                int extra = map.isRouteTunnel(edgeId) ? colorDeck.drawTunnelCost(color) : 0;
+                RouteStatus expected = player.checkRoute(edgeId, color, extra);
+                GameState before = routesBuilt % 64 == 0 ? GameState.capture(map, players, seat) : null;
+                RouteStatus built = player.tryBuildRoute(edgeId, color, extra);
+                if (built != expected) {
+                    fail("tryBuildRoute returned " + built + " but checkRoute said " + expected + " for " + map.getRoute(edgeId));
+                }
+                if (built == RouteStatus.OK) {
+                    routesBuilt++;
+                    if (before != null && before.claimRoute(edgeId, color, extra).getHash() != hasher.getHash()) {
+                        fail("GameState hash after claiming " + map.getRoute(edgeId) + " differs from the live hash");
+                    }
+                    int weight = map.getRouteWeight(edgeId);
+                    expectedTrains[seat] -= weight + extra; // The engine also spends trains on tunnel extras
+                    expectedPoints[seat] += GameMap.pointsForWeight(weight);
+                    if (!player.getPlayerId().equals(map.getRouteOwner(edgeId))) {
+                        fail("route " + map.getRoute(edgeId) + " built but owned by " + map.getRouteOwner(edgeId));
+                    }
+                    checkTicketCosts();
+                } else {
+                    tunnelsFailed++;
+                    if (player.getTrainCount() != trainsBefore) {
+                        fail("failed build of " + map.getRoute(edgeId) + " changed trains");
+                    }
+                }
+                step(); // After the expected trains and points are updated
+                return true;
+            }
+            return false;
+        }
+
+        private void step() {
+            steps++;
+            checkCounts("after a step"); // A constant, so the check allocates nothing
+            if (++step % FULL_CHECK_INTERVAL == 0) {
+                fullCheck();
+            }
+        }
+
+        /**
+         * Count-only checks, cheap enough for every step
+         */
+        private void checkCounts(String when) {
+            int inHands = 0;
+            int tickets = 0;
+            for (int i = 0; i < players.length; i++) {
+                Player player = players[i];
+                for (Color color : Color.values()) {
+                    inHands += player.getCardCount(color);
+                }
+                tickets += player.getDestinationCards().size();
+                int trains = player.getTrainCount();
+                if (trains != expectedTrains[i] || trains < 0 || trains > Player.STARTING_TRAINS) {
+                    fail(player.getPlayerId() + " has " + trains + " trains, expected " + expectedTrains[i] + " " + when);
+                }
+                if (player.getPoints() != expectedPoints[i] || player.getPoints() < 0) {
+                    fail(player.getPlayerId() + " has " + player.getPoints() + " points, expected " + expectedPoints[i] + " " + when);
+                }
+            }
+            int pool = colorDeck.size() + colorDeck.discardPile.size();
+            int colorCards = pool + countVisible(colorDeck) + inHands;
+            if (colorCards != colorCardTotal) {
+                fail(colorCards + " color cards in play, expected " + colorCardTotal + " " + when);
+            }
+            if (colorDeck.getPoolSize() != pool) {
+                fail("color deck pool count " + colorDeck.getPoolSize() + " but piles hold " + pool + " " + when);
+            }
+            int destinationCards = destinationDeck.size() + destinationDeck.discardPile.size() + tickets;
+            if (destinationCards != destinationCardTotal) {
+                fail(destinationCards + " destination cards in play, expected " + destinationCardTotal + " " + when);
+            }
+        }
+
+        /**
+         * Walks every card: each is in exactly one place, its location field agrees with that
+         * place, ids are unique, and the deck's per-color pool counts are right
+         */
+        private void fullCheck() {
+            fullChecks++;
+            Set<Card> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<String> ids = new HashSet<>();
+            int[] poolCounts = new int[Color.values().length];
+
+            for (Card card : colorDeck.cards) {
+                expectCard(card, "DECK", null, seen, ids);
+                poolCounts[((ColorCard) card).getColor().ordinal()]++;
+            }
+            for (Card card : colorDeck.discardPile) {
+                expectCard(card, "DISCARD", null, seen, ids);
+                poolCounts[((ColorCard) card).getColor().ordinal()]++;
+            }
+            for (Card card : colorDeck.getVisibleCards()) {
+                if (card != null) {
+                    expectCard(card, "DECK", null, seen, ids);
+                }
+            }
+            for (Player player : players) {
+                for (Color color : Color.values()) {
+                    List<ColorCard> cards = player.getHand().get(color);
+                    if (cards == null) {
+                        continue;
+                    }
+                    for (ColorCard card : cards) {
+                        expectCard(card, "HAND", player.getPlayerId(), seen, ids);
+                        if (card.getColor() != color) {
+                            fail(card.getCardId() + " is filed under " + color + " in " + player.getPlayerId() + "'s hand");
+                        }
+                    }
+                }
+            }
+            for (Color color : Color.values()) {
+                if (colorDeck.getPoolCount(color) != poolCounts[color.ordinal()]) {
+                    fail("pool count for " + color + " is " + colorDeck.getPoolCount(color) + " but piles hold "
+                            + poolCounts[color.ordinal()]);
+                }
+            }
+
+            // Incremental hashes agree with hashing the position from scratch
+            long rehash = ZobristHasher.computeHash(map, players, session.getCurrentPlayerIndex());
+            if (hasher.getHash() != rehash) {
+                fail("live Zobrist hash " + Long.toHexString(hasher.getHash()) + " but a full rehash gives " + Long.toHexString(rehash));
+            }
+            if (GameState.capture(map, players, session.getCurrentPlayerIndex()).getHash() != rehash) {
+                fail("captured GameState hash differs from the live hash");
+            }
+
+            // Ownership bitsets agree with the routes' owners
+            PlayerNetwork claimed = map.getClaimedNetwork();
+            for (int edgeId = 0; edgeId < map.getEdgeCount(); edgeId++) {
+                String owner = map.getRouteOwner(edgeId);
+                if (claimed.ownsRoute(edgeId) != (owner != null)) {
+                    fail("claimed network disagrees about " + map.getRoute(edgeId) + " (owner " + owner + ")");
+                }
+                for (Player player : players) {
+                    if (map.getNetwork(player.getPlayerId()).ownsRoute(edgeId) != player.getPlayerId().equals(owner)) {
+                        fail(player.getPlayerId() + "'s network disagrees about " + map.getRoute(edgeId) + " (owner " + owner + ")");
+                    }
+                }
+            }
+
+            checkTicketCosts();
+
+            ids.clear(); // Ids are unique per deck
+            for (Card card : destinationDeck.cards) {
+                expectCard(card, "DECK", null, seen, ids);
+            }
+            for (Card card : destinationDeck.discardPile) {
+                expectCard(card, "DISCARD", null, seen, ids);
+            }
+            for (Player player : players) {
+                for (DestinationCard card : player.getDestinationCards()) {
+                    expectCard(card, "HAND", player.getPlayerId(), seen, ids);
+                }
+            }
+            if (seen.size() != colorCardTotal + destinationCardTotal) {
+                fail(seen.size() + " cards found, expected " + (colorCardTotal + destinationCardTotal));
+            }
+        }
+
+        /**
+         * Incrementally tracked ticket costs agree with a full search (cheap: a few tickets, small map)
+         */
+        private void checkTicketCosts() {
+            for (Player player : players) {
+                for (DestinationCard card : player.getDestinationCards()) {
+                    int cost = GreedyBot.pathCost(map, player.getPlayerId(), card, null);
+                    if (!card.isCompleted() && blockTracker.getTicketCost(player.getPlayerId(), card) != cost) {
+                        fail(player.getPlayerId() + "'s ticket " + card + " is tracked at cost "
+                                + blockTracker.getTicketCost(player.getPlayerId(), card) + " but a full search gives " + cost);
+                    }
+                }
+            }
+            blockTracker.drainAlerts();
+        }
+
+        private void expectCard(Card card, String location, String playerId, Set<Card> seen, Set<String> ids) {
+            if (!seen.add(card)) {
+                fail("card " + card.getCardId() + " is in two places");
+            }
+            if (!ids.add(card.getCardId())) {
+                fail("two cards in the same deck share the id " + card.getCardId());
+            }
+            if (!location.equals(card.getLocation()) || (playerId != null && !playerId.equals(card.getPlayerId()))) {
+                fail("card " + card.getCardId() + " is marked " + card.getLocation()
+                        + (card.getPlayerId() != null ? " of " + card.getPlayerId() : "") + " but is in "
+                        + location + (playerId != null ? " of " + playerId : ""));
+            }
+        }
+
+        private void fail(String message) {
+            throw new IllegalStateException("step " + step + ": " + message);
+        }
+    }
+
+    private static Color mostPlentifulColor(Player player) {
+        Color best = Color.RED;
+        for (Color color : Color.values()) {
+            if (color != Color.MULTICOLOR && player.getCardCount(color) > player.getCardCount(best)) {
+                best = color;
+            }
+        }
+        return best;
+    }
+
+    private static int countVisible(ColorDeck colorDeck) {
+        int count = 0;
+        for (Card card : colorDeck.getVisibleCards()) {
+            count += card != null ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Usage: SoakHarness [seconds] [baseSeed] [mapName] [players] [maxHeapGrowthMb]
+     *        SoakHarness --game &lt;seed&gt; [mapName] [players]   (replays one game)
+     */
+    public static void main(String[] args) {
+        boolean replay = args.length > 0 && args[0].equals("--game");
+        String mapName = args.length > 2 ? args[2] : "american";
+        int players = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        MapRegistry registry = MapRegistry.getDefault();
+        MapBundle bundle = registry.acquire(mapName);
+        if (bundle == null) {
+            System.out.println("Error: Unknown map " + mapName + ". Available maps: " + registry.getMapNames());
+            return;
+        }
+        try {
+            SoakHarness harness = new SoakHarness(bundle, players);
+            if (replay) {
+                long seed = Long.parseLong(args[1]);
+                try {
+                    harness.playGame(seed);
+                    System.out.println("Game " + seed + " passed (" + harness.getSteps() + " steps)");
+                } catch (RuntimeException e) {
+                    System.out.println("Game " + seed + " failed: " + e);
+                    e.printStackTrace(System.out);
+                }
+                return;
+            }
+            long seconds = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_SECONDS;
+            long baseSeed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+            long maxGrowth = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_MAX_HEAP_GROWTH_MB;
+            System.out.println("Soaking " + mapName + " with " + players + " players for " + seconds + " s (base seed "
+                    + baseSeed + ")");
+            harness.run(seconds, baseSeed, maxGrowth);
+        } finally {
+            registry.release(bundle);
+        }
+    }
+}
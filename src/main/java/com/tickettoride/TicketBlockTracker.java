@@ -0,0 +1,560 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TicketBlockTracker - tells players as soon as a claim ruins one of their open tickets.
+ * Each player can still use their own routes and the unclaimed ones; the tracker keeps the
+ * connected components of that usable graph per player, plus the cheapest remaining cost
+ * (trains for the unclaimed routes on the path) and the path itself for every open ticket.
+ *
+ * When a player loses a route to an opponent, only the component that route was in is
+ * re-examined: a breadth-first search runs from both ends at once and stops when they meet
+ * (nothing changed) or when one side runs out (that side becomes a new component), so the work
+ * is bounded by the smaller side. Tickets whose cities end up apart are reported as blocked;
+ * tickets whose cheapest path used the route are re-priced and reported if they got more
+ * expensive. Other tickets are not searched again.
+ *
+ * A player's own claim off a ticket's path only re-prices the ticket if the route could give
+ * a cheaper path: it must be in the ticket's component, and the distance from the ticket's first
+ * city to the route (a lower bound kept from the last search) must be below the ticket's cost.
+ * Create one with attach().
+ */
+public class TicketBlockTracker implements GameDeltaListener {
+
+    /**
+     * A ticket that became impossible or more expensive because of a claim
+     */
+    public static final class Alert {
+        private final String playerId;
+        private final DestinationCard ticket;
+        private final RouteRef route;
+        private final String claimedBy;
+        private final int oldCost;
+        private final int newCost;
+
+        private Alert(String playerId, DestinationCard ticket, RouteRef route, String claimedBy, int oldCost, int newCost) {
+            this.playerId = playerId;
+            this.ticket = ticket;
+            this.route = route;
+            this.claimedBy = claimedBy;
+            this.oldCost = oldCost;
+            this.newCost = newCost;
+        }
+
+        public String getPlayerId() {
+            return playerId;
+        }
+
+        public DestinationCard getTicket() {
+            return ticket;
+        }
+
+        /**
+         * The claimed route that caused the change
+         */
+        public RouteRef getRoute() {
+            return route;
+        }
+
+        public String getClaimedBy() {
+            return claimedBy;
+        }
+
+        /**
+         * Check if the ticket can no longer be completed at all
+         */
+        public boolean isBlocked() {
+            return newCost < 0;
+        }
+
+        /**
+         * Trains the ticket needed before the claim
+         */
+        public int getOldCost() {
+            return oldCost;
+        }
+
+        /**
+         * Trains the ticket needs now, -1 if it is blocked
+         */
+        public int getNewCost() {
+            return newCost;
+        }
+
+        @Override
+        public String toString() {
+            String what = playerId + "'s ticket " + ticket.getCity1() + " - " + ticket.getCity2();
+            String why = claimedBy + " claimed " + route;
+            if (isBlocked()) {
+                return what + " can no longer be completed (" + why + ")";
+            }
+            return what + " now needs " + newCost + " trains instead of " + oldCost + " (" + why + ")";
+        }
+    }
+
+    /**
+     * An open ticket of one player
+     */
+    private static final class Ticket {
+        final DestinationCard card;
+        final int city1;
+        final int city2;
+        final long[] path; // Routes on the current cheapest path (bitset over route ids)
+        final int[] fromStart; // Lower bound on trains from city1 to each city, as of the last search
+        int slack;         // Trains own claims may have cut from fromStart since then
+        int cost;          // -1 once blocked
+
+        Ticket(DestinationCard card, int city1, int city2, int edgeCount, int cityCount) {
+            this.card = card;
+            this.city1 = city1;
+            this.city2 = city2;
+            this.path = new long[PlayerNetwork.wordsFor(edgeCount)];
+            this.fromStart = new int[cityCount];
+        }
+    }
+
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    private final GameMap map;
+    private final CompactGraph graph;
+    private final Player[] players;
+    private final long[][] usable;        // Per seat: own and unclaimed routes (bitset over route ids)
+    private final long[][] own;           // Per seat: own routes
+    private final int[][] components;     // Per seat: component label of each city in the usable graph
+    private final int[] nextLabel;
+    private final List<List<Ticket>> tickets; // Per seat: open tickets
+    private final List<Alert> alerts;
+
+    // Scratch space, reused by every search (all work happens under this tracker's lock)
+    private final int[] seen;             // Search stamp per city
+    private int stamp;
+    private final int[] queueA;
+    private final int[] queueB;
+    private final int[] dist;
+    private final int[] via;
+    private final long[] heap;            // Dijkstra queue entries: distance << 32 | city
+
+    private long claimsProcessed;
+    private long citiesRelabeled;
+    private long ticketsRepriced;
+
+    private TicketBlockTracker(GameMap map, Player[] allPlayers) {
+        this.map = map;
+        this.graph = map.getCompactGraph();
+        this.players = allPlayers.clone();
+        int words = PlayerNetwork.wordsFor(graph.getEdgeCount());
+        this.usable = new long[players.length][words];
+        this.own = new long[players.length][words];
+        this.components = new int[players.length][graph.getCityCount()];
+        this.nextLabel = new int[players.length];
+        this.tickets = new ArrayList<>();
+        for (int seat = 0; seat < players.length; seat++) {
+            tickets.add(new ArrayList<>());
+        }
+        this.alerts = new ArrayList<>();
+        this.seen = new int[graph.getCityCount()];
+        this.queueA = new int[graph.getCityCount()];
+        this.queueB = new int[graph.getCityCount()];
+        this.dist = new int[graph.getCityCount()];
+        this.via = new int[graph.getCityCount()];
+        this.heap = new long[2 * graph.getEdgeCount() + 1]; // At most one entry per route direction, plus the start
+    }
+
+    /**
+     * Starts tracking a game's players and the tickets they hold or keep from now on
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @return The tracker
+     */
+    public static TicketBlockTracker attach(GameMap map, Player[] allPlayers) {
+        TicketBlockTracker tracker = new TicketBlockTracker(map, allPlayers);
+        GameDeltaStream stream = map.getDeltaStream();
+        synchronized (stream) { // No claim can slip in between reading the owners and registration
+            tracker.reset();
+            stream.addListener(tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Stops tracking (alerts not yet drained stay readable)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+    }
+
+    private synchronized void reset() {
+        for (int seat = 0; seat < players.length; seat++) {
+            String playerId = players[seat].getPlayerId();
+            for (int edgeId = 0; edgeId < graph.getEdgeCount(); edgeId++) {
+                String owner = map.getRouteOwner(edgeId);
+                if (owner == null || owner.equals(playerId)) {
+                    usable[seat][edgeId >>> 6] |= 1L << edgeId;
+                }
+                if (playerId.equals(owner)) {
+                    own[seat][edgeId >>> 6] |= 1L << edgeId;
+                }
+            }
+            labelComponents(seat);
+            for (DestinationCard card : players[seat].getDestinationCards()) {
+                if (!card.isCompleted()) {
+                    track(seat, card);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onDelta(GameDelta delta) {
+        int seat = seatOf(delta.getPlayerId());
+        if (seat < 0) {
+            return;
+        }
+        switch (delta.getType()) {
+            case ROUTE_CLAIMED:
+                claimed(seat, delta.getIndex());
+                break;
+            case TICKET_KEPT:
+                for (DestinationCard card : players[seat].getDestinationCards()) {
+                    if (card.getCardId().equals(delta.getCardId())) {
+                        track(seat, card);
+                        break;
+                    }
+                }
+                break;
+            case TICKET_COMPLETED:
+                tickets.get(seat).removeIf(ticket -> ticket.card.getCardId().equals(delta.getCardId()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Applies a claim: the claimant's tickets may get cheaper, everyone else loses the route
+     */
+    private void claimed(int claimant, int edgeId) {
+        if (PlayerNetwork.isSet(own[claimant], edgeId)) {
+            return; // Already applied
+        }
+        claimsProcessed++;
+        own[claimant][edgeId >>> 6] |= 1L << edgeId;
+        int city1 = graph.getEdgeCity1(edgeId);
+        int city2 = graph.getEdgeCity2(edgeId);
+        int weight = graph.getWeight(edgeId);
+        for (Ticket ticket : tickets.get(claimant)) {
+            if (ticket.cost <= 0 || components[claimant][city1] != components[claimant][ticket.city1]) {
+                continue; // Done, blocked, or the route is on no path the ticket can use
+            }
+            if (PlayerNetwork.isSet(ticket.path, edgeId)) {
+                ticket.cost -= weight; // Only this path got cheaper, by the route's weight, so it stays cheapest
+                ticket.slack += weight;
+            } else if (Math.min(ticket.fromStart[city1], ticket.fromStart[city2]) - ticket.slack < ticket.cost) {
+                price(claimant, ticket); // The route is free for its owner now and may open a cheaper path
+            } else {
+                ticket.slack += weight; // Any path through the route costs at least the current one
+            }
+        }
+
+        for (int seat = 0; seat < players.length; seat++) {
+            if (seat == claimant || !PlayerNetwork.isSet(usable[seat], edgeId)) {
+                continue;
+            }
+            usable[seat][edgeId >>> 6] &= ~(1L << edgeId);
+            int[] component = components[seat];
+            boolean split = splitIfDisconnected(seat, graph.getEdgeCity1(edgeId), graph.getEdgeCity2(edgeId));
+
+            for (Ticket ticket : tickets.get(seat)) {
+                if (ticket.cost < 0) {
+                    continue; // Already reported
+                }
+                int oldCost = ticket.cost;
+                if (split && component[ticket.city1] != component[ticket.city2]) {
+                    ticket.cost = -1;
+                    Arrays.fill(ticket.path, 0);
+                } else if (PlayerNetwork.isSet(ticket.path, edgeId)) {
+                    price(seat, ticket);
+                }
+                if (ticket.cost != oldCost) {
+                    alerts.add(new Alert(players[seat].getPlayerId(), ticket.card, map.getRoute(edgeId),
+                            players[claimant].getPlayerId(), oldCost, ticket.cost));
+                }
+            }
+        }
+    }
+
+    /**
+     * After a route between two cities was removed from a player's usable graph, checks whether
+     * they are still connected, searching from both at once. If not, the side whose search ran
+     * out first gets a new component label.
+     * @return true if the component split
+     */
+    private boolean splitIfDisconnected(int seat, int cityA, int cityB) {
+        int stampA = ++stamp;
+        int stampB = ++stamp;
+        int headA = 0;
+        int tailA = 0;
+        int headB = 0;
+        int tailB = 0;
+        queueA[tailA++] = cityA;
+        seen[cityA] = stampA;
+        queueB[tailB++] = cityB;
+        seen[cityB] = stampB;
+
+        while (headA < tailA && headB < tailB) {
+            int result = expand(seat, queueA[headA++], stampA, stampB, queueA, tailA);
+            if (result < 0) {
+                return false; // Met the other search
+            }
+            tailA = result;
+            result = expand(seat, queueB[headB++], stampB, stampA, queueB, tailB);
+            if (result < 0) {
+                return false;
+            }
+            tailB = result;
+        }
+
+        // One side is exhausted: it is the smaller, separated part
+        int[] side = headA >= tailA ? queueA : queueB;
+        int size = headA >= tailA ? tailA : tailB;
+        int label = nextLabel[seat]++;
+        for (int i = 0; i < size; i++) {
+            components[seat][side[i]] = label;
+        }
+        citiesRelabeled += size;
+        return true;
+    }
+
+    /**
+     * Expands one city of a search over usable routes
+     * @return The new queue tail, or -1 if the other search's cities were reached
+     */
+    private int expand(int seat, int city, int mine, int other, int[] queue, int tail) {
+        for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+            int edgeId = graph.getIncidentEdge(i);
+            if (!PlayerNetwork.isSet(usable[seat], edgeId)) {
+                continue;
+            }
+            int next = graph.getOtherCity(edgeId, city);
+            if (seen[next] == other) {
+                return -1;
+            }
+            if (seen[next] != mine) {
+                seen[next] = mine;
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Labels every component of a player's usable graph from scratch
+     */
+    private void labelComponents(int seat) {
+        int[] component = components[seat];
+        Arrays.fill(component, -1);
+        int label = 0;
+        for (int start = 0; start < component.length; start++) {
+            if (component[start] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queueA[tail++] = start;
+            component[start] = label;
+            while (head < tail) {
+                int city = queueA[head++];
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    int next = graph.getOtherCity(edgeId, city);
+                    if (PlayerNetwork.isSet(usable[seat], edgeId) && component[next] < 0) {
+                        component[next] = label;
+                        queueA[tail++] = next;
+                    }
+                }
+            }
+            label++;
+        }
+        nextLabel[seat] = label;
+    }
+
+    private void track(int seat, DestinationCard card) {
+        if (!map.resolveDestination(card)) {
+            return; // Not on this map
+        }
+        for (Ticket ticket : tickets.get(seat)) {
+            if (ticket.card == card) {
+                return;
+            }
+        }
+        Ticket ticket = new Ticket(card, card.getCityRef1().getId(), card.getCityRef2().getId(), graph.getEdgeCount(),
+                graph.getCityCount());
+        price(seat, ticket);
+        tickets.get(seat).add(ticket);
+    }
+
+    /**
+     * Finds a ticket's cheapest path over the player's usable routes (own routes are free);
+     * sets its cost (-1 if unreachable), path and distance bounds from its first city
+     */
+    private void price(int seat, Ticket ticket) {
+        ticketsRepriced++;
+        Arrays.fill(ticket.path, 0);
+        if (components[seat][ticket.city1] != components[seat][ticket.city2]) {
+            ticket.cost = -1;
+            return;
+        }
+
+        // Dijkstra, stopping as soon as the destination is settled
+        Arrays.fill(dist, INFINITE);
+        Arrays.fill(via, -1);
+        dist[ticket.city1] = 0;
+        int size = 0;
+        heap[size++] = ticket.city1;
+        while (size > 0) {
+            long top = heap[0];
+            size = popHeap(size);
+            int city = (int) top;
+            if ((int) (top >>> 32) > dist[city]) {
+                continue; // Stale entry, the city was reached more cheaply since
+            }
+            if (city == ticket.city2) {
+                break;
+            }
+            for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                int edgeId = graph.getIncidentEdge(i);
+                if (!PlayerNetwork.isSet(usable[seat], edgeId)) {
+                    continue;
+                }
+                int next = graph.getOtherCity(edgeId, city);
+                int cost = dist[city] + (PlayerNetwork.isSet(own[seat], edgeId) ? 0 : graph.getWeight(edgeId));
+                if (cost < dist[next]) {
+                    dist[next] = cost;
+                    via[next] = edgeId;
+                    size = pushHeap(size, (long) cost << 32 | next);
+                }
+            }
+        }
+
+        ticket.cost = dist[ticket.city2] == INFINITE ? -1 : dist[ticket.city2];
+        // Every city closer than the destination was settled; the others are at least as far
+        for (int city = 0; city < dist.length; city++) {
+            ticket.fromStart[city] = Math.min(dist[city], ticket.cost);
+        }
+        ticket.slack = 0;
+        for (int city = ticket.city2; city != ticket.city1 && via[city] >= 0; city = graph.getOtherCity(via[city], city)) {
+            ticket.path[via[city] >>> 6] |= 1L << via[city];
+        }
+    }
+
+    private int pushHeap(int size, long entry) {
+        int i = size;
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+        return size + 1;
+    }
+
+    /**
+     * Removes the smallest entry
+     * @return The new size
+     */
+    private int popHeap(int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    private int seatOf(String playerId) {
+        if (playerId == null) {
+            return -1;
+        }
+        for (int seat = 0; seat < players.length; seat++) {
+            if (players[seat].getPlayerId().equals(playerId)) {
+                return seat;
+            }
+        }
+        return -1;
+    }
+
+    // ============ Queries ============
+
+    /**
+     * Returns the alerts raised since the previous call, oldest first
+     */
+    public synchronized List<Alert> drainAlerts() {
+        List<Alert> drained = new ArrayList<>(alerts);
+        alerts.clear();
+        return drained;
+    }
+
+    /**
+     * Trains a player still needs to complete a ticket: 0 if its cities are already connected,
+     * -1 if it is blocked (or not an open ticket of that player)
+     */
+    public synchronized int getTicketCost(String playerId, DestinationCard card) {
+        int seat = seatOf(playerId);
+        if (seat >= 0) {
+            for (Ticket ticket : tickets.get(seat)) {
+                if (ticket.card == card) {
+                    return ticket.cost;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a player's open ticket can no longer be completed
+     */
+    public synchronized boolean isBlocked(String playerId, DestinationCard card) {
+        int seat = seatOf(playerId);
+        if (seat >= 0) {
+            for (Ticket ticket : tickets.get(seat)) {
+                if (ticket.card == card) {
+                    return ticket.cost < 0;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of claims applied since attach
+     */
+    public synchronized long getClaimsProcessed() {
+        return claimsProcessed;
+    }
+
+    /**
+     * Cities moved to a new component by splits (the work done instead of full searches)
+     */
+    public synchronized long getCitiesRelabeled() {
+        return citiesRelabeled;
+    }
+
+    /**
+     * Cheapest-path searches run for individual tickets (own claims that could not make a
+     * ticket cheaper skip them)
+     */
+    public synchronized long getTicketsRepriced() {
+        return ticketsRepriced;
+    }
+}
@@ -0,0 +1,284 @@
+package com.tickettoride;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * TicketEstimator - scores destination cards by how likely the player is to complete them.
+ * Each candidate gets randomized playouts over the map's CompactGraph: in every playout the
+ * opponents take a random share of the unclaimed routes and the remaining game length is
+ * sampled, then the cheapest path (own routes free) must fit in the player's spare trains and
+ * the turns needed to draw the missing cards and build it must fit in the game.
+ * Candidates are evaluated in parallel and each stops at its playout count or the time budget.
+ */
+public class TicketEstimator {
+
+    public static final int DEFAULT_PLAYOUTS = 512;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 40; // Leaves headroom under 50 ms
+
+    private static final int FREE = 0;
+    private static final int OWN = 1;
+    private static final int TAKEN = 2;
+    private static final int END_TRAINS = 2;   // The game ends when a player is down to this many
+    private static final int CARDS_PER_DRAW = 2;
+    private static final double MAX_BLOCK_CHANCE = 0.95;
+
+    private final GameMap map;
+    private int playouts;
+    private long timeBudgetNanos;
+    private long seed;
+
+    public TicketEstimator(GameMap map) {
+        if (map == null) {
+            throw new IllegalArgumentException("Map cannot be null");
+        }
+        this.map = map;
+        this.playouts = DEFAULT_PLAYOUTS;
+        this.timeBudgetNanos = DEFAULT_TIME_BUDGET_MILLIS * 1_000_000L;
+        this.seed = 0x7EC4E7L;
+    }
+
+    public void setPlayouts(int playouts) {
+        if (playouts <= 0) {
+            throw new IllegalArgumentException("Playouts must be positive");
+        }
+        this.playouts = playouts;
+    }
+
+    public void setTimeBudgetMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Time budget must be positive");
+        }
+        this.timeBudgetNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Sets the seed of the playouts (the same seed and state give the same estimates)
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Estimates the completion probability of each candidate ticket
+     * @param self The player choosing tickets
+     * @param players All players in the game (including self)
+     * @param candidates The tickets on offer
+     * @return One probability (0-1) per candidate
+     */
+    public double[] estimate(Player self, Player[] players, DestinationCard[] candidates) {
+        CompactGraph graph = map.getCompactGraph();
+        int edgeCount = graph.getEdgeCount();
+
+        // Snapshot the board once so parallel playouts don't read the live map
+        int[] state = new int[edgeCount];
+        int unclaimedWeight = 0;
+        double routeWeightSum = 0;
+        long[] own = map.getNetwork(self.getPlayerId()).getRoutes(null);
+        long[] claimed = map.getClaimedNetwork().getRoutes(null);
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++) {
+            if (!PlayerNetwork.isSet(claimed, edgeId)) {
+                state[edgeId] = FREE;
+                unclaimedWeight += graph.getWeight(edgeId);
+            } else {
+                state[edgeId] = PlayerNetwork.isSet(own, edgeId) ? OWN : TAKEN;
+            }
+            routeWeightSum += graph.getWeight(edgeId);
+        }
+
+        // Expected remaining turns per player: everyone builds about every other turn
+        double avgRouteWeight = edgeCount > 0 ? routeWeightSum / edgeCount : 1.0;
+        int minTrains = Integer.MAX_VALUE;
+        for (Player player : players) {
+            minTrains = Math.min(minTrains, player.getTrainCount());
+        }
+        double turnsLeft = Math.max(1.0, (minTrains - END_TRAINS) * 2.0 / avgRouteWeight);
+
+        // Share of the unclaimed routes the opponents will take before the end
+        double opponentSpend = 0;
+        for (Player player : players) {
+            if (player != self) {
+                opponentSpend += Math.min(player.getTrainCount(), turnsLeft * avgRouteWeight / 2.0);
+            }
+        }
+        double blockChance = unclaimedWeight > 0 ? Math.min(MAX_BLOCK_CHANCE, opponentSpend / unclaimedWeight) : 0.0;
+
+        // Trains already promised to unfinished tickets
+        Search search = new Search(graph);
+        int reserved = 0;
+        for (DestinationCard card : self.getDestinationCards()) {
+            if (!card.isCompleted() && map.resolveDestination(card)
+                    && search.run(state, null, card.getCityRef1().getId(), card.getCityRef2().getId())) {
+                reserved += search.cost;
+            }
+        }
+        int spareTrains = self.getTrainCount() - reserved;
+        int[] hand = countCards(self);
+
+        for (DestinationCard card : candidates) {
+            if (card != null) {
+                map.resolveDestination(card); // Resolve up front, the playouts only read the refs
+            }
+        }
+
+        double[] result = new double[candidates.length];
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        IntStream.range(0, candidates.length).parallel().forEach(i ->
+                result[i] = playout(graph, state, candidates[i], spareTrains, hand,
+                        blockChance, turnsLeft, deadline, new SplittableRandom(seed ^ (i * 0x9E3779B97F4A7C15L))));
+        return result;
+    }
+
+    private double playout(CompactGraph graph, int[] state, DestinationCard card, int spareTrains, int[] hand,
+                           double blockChance, double turnsLeft, long deadline, SplittableRandom random) {
+        if (card == null || card.getCityRef1() == null || card.getCityRef2() == null) {
+            return 0.0;
+        }
+        int from = card.getCityRef1().getId();
+        int to = card.getCityRef2().getId();
+        Search search = new Search(graph);
+        if (spareTrains <= 0) {
+            // Only a ticket the player's own routes already join can complete; blocking can't change that
+            return search.run(state, null, from, to) && search.cost == 0 ? 1.0 : 0.0;
+        }
+        boolean[] blocked = new boolean[graph.getEdgeCount()];
+        int[] cardsLeft = new int[hand.length];
+
+        int run = 0;
+        int successes = 0;
+        while (run < playouts) {
+            if ((run & 31) == 0 && run > 0 && System.nanoTime() >= deadline) {
+                break; // Out of time, answer with the playouts done so far
+            }
+            for (int edgeId = 0; edgeId < blocked.length; edgeId++) {
+                blocked[edgeId] = state[edgeId] == FREE && random.nextDouble() < blockChance;
+            }
+            double gameTurns = turnsLeft * (0.5 + random.nextDouble()); // Game length is uncertain
+            if (search.run(state, blocked, from, to) && search.cost <= spareTrains) {
+                int missingCards = search.missingCards(state, hand, cardsLeft);
+                int turnsNeeded = search.routes + (missingCards + CARDS_PER_DRAW - 1) / CARDS_PER_DRAW;
+                if (turnsNeeded <= gameTurns) {
+                    successes++;
+                }
+            }
+            run++;
+        }
+        return run > 0 ? (double) successes / run : 0.0;
+    }
+
+    /**
+     * @return The player's cards per Color ordinal
+     */
+    private static int[] countCards(Player player) {
+        int[] counts = new int[Color.values().length];
+        for (Color color : Color.values()) {
+            counts[color.ordinal()] = player.getCardCount(color);
+        }
+        return counts;
+    }
+
+    /**
+     * Reusable cheapest-path search (own routes free, taken or blocked routes closed).
+     * Plain O(V^2) Dijkstra: maps have few cities and it needs no heap.
+     */
+    private static final class Search {
+        private final CompactGraph graph;
+        private final int[] dist;
+        private final int[] hops;
+        private final int[] viaEdge; // Route the best path arrived by
+        private final boolean[] done;
+        private int from;
+        private int to;
+        int cost;
+        int routes;
+
+        Search(CompactGraph graph) {
+            this.graph = graph;
+            this.dist = new int[graph.getCityCount()];
+            this.hops = new int[graph.getCityCount()];
+            this.viaEdge = new int[graph.getCityCount()];
+            this.done = new boolean[graph.getCityCount()];
+        }
+
+        boolean run(int[] state, boolean[] blocked, int from, int to) {
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            Arrays.fill(done, false);
+            this.from = from;
+            this.to = to;
+            dist[from] = 0;
+            hops[from] = 0;
+            while (true) {
+                int city = -1;
+                for (int c = 0; c < dist.length; c++) {
+                    if (!done[c] && dist[c] != Integer.MAX_VALUE && (city < 0 || dist[c] < dist[city])) {
+                        city = c;
+                    }
+                }
+                if (city < 0) {
+                    return false;
+                }
+                if (city == to) {
+                    cost = dist[to];
+                    routes = hops[to];
+                    return true;
+                }
+                done[city] = true;
+                for (int i = graph.getIncidentStart(city); i < graph.getIncidentEnd(city); i++) {
+                    int edgeId = graph.getIncidentEdge(i);
+                    if (state[edgeId] == TAKEN || (blocked != null && blocked[edgeId])) {
+                        continue;
+                    }
+                    boolean own = state[edgeId] == OWN;
+                    int next = graph.getOtherCity(edgeId, city);
+                    int nextDist = dist[city] + (own ? 0 : graph.getWeight(edgeId));
+                    if (nextDist < dist[next]) {
+                        dist[next] = nextDist;
+                        hops[next] = hops[city] + (own ? 0 : 1); // Only routes still to build take a turn
+                        viaEdge[next] = edgeId;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Cards still to draw to pay for the routes left to build on the path found by the last
+         * successful run(), paying each as Player.canAffordRoute() does: cards of the route's
+         * color (gray routes: the color the hand has most of) plus locomotives, which also cover
+         * ferries. Colored routes are paid first so gray routes take what they leave.
+         * @param hand Cards per Color ordinal
+         * @param left Scratch array of the same length
+         */
+        int missingCards(int[] state, int[] hand, int[] left) {
+            System.arraycopy(hand, 0, left, 0, hand.length);
+            int wild = Color.MULTICOLOR.ordinal();
+            int shortfall = 0; // Cards only locomotives can still pay
+            for (int pass = 0; pass < 2; pass++) {
+                for (int city = to; city != from; ) {
+                    int edgeId = viaEdge[city];
+                    city = graph.getOtherCity(edgeId, city);
+                    Color color = graph.getColor(edgeId);
+                    if (state[edgeId] == OWN || (color == null) != (pass == 1)) {
+                        continue;
+                    }
+                    int payable = graph.getWeight(edgeId) - graph.getFerryCount(edgeId);
+                    int payWith = color != null ? color.ordinal() : mostLeft(left, wild);
+                    int paid = Math.min(payable, left[payWith]);
+                    left[payWith] -= paid;
+                    shortfall += graph.getWeight(edgeId) - paid;
+                }
+            }
+            return Math.max(0, shortfall - left[wild]);
+        }
+
+        private static int mostLeft(int[] left, int wild) {
+            int best = wild == 0 ? 1 : 0;
+            for (int color = 0; color < left.length; color++) {
+                if (color != wild && left[color] > left[best]) {
+                    best = color;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.tickettoride;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * TournamentRunner - plays bots against each other on the real rule engine.
+ *
+ * Each pairing plays gamesPerPairing two-player games over distinct seeds, alternating
+ * who moves first. Games are split into ranges on a work-stealing ForkJoinPool; each
+ * leaf aggregates into its own TournamentStats and merges once when done, so results
+ * stream in without storing per-game records.
+ */
+public class TournamentRunner {
+
+    /**
+     * How entrants are paired
+     */
+    public enum Pairing {
+        ROUND_ROBIN, // every entrant plays every other entrant
+        SWISS        // fixed number of rounds, pairing entrants with similar standings
+    }
+
+    private static final int GAMES_PER_TASK = 64;
+    private static final double Z_95 = 1.96;
+
+    private final List<Bot> entrants;
+    private final MapBundle bundle; // loaded once, shared by every game
+    private final int gamesPerPairing;
+    private final long baseSeed;
+    private final int threads;
+    private ForkJoinPool pool; // Only while run() is playing
+
+    private final TournamentStats[] stats;
+    private final long[][] headToHeadWins; // [winner][loser]
+    private long gamesPlayed;
+    private GameJournalWriter journal; // null unless games are being journaled
+
+    /**
+     * @param entrants Bots to compare (at least 2, stateless)
+     * @param cityFilePath Path to the city file
+     * @param edgeFilePath Path to the edge file
+     * @param destinationFilePath Path to the destination card file
+     * @param gamesPerPairing Games (seeds) played for each pairing
+     * @param baseSeed Seed the per-game seeds are derived from
+     * @param threads Worker threads (0 for one per core)
+     */
+    public TournamentRunner(List<Bot> entrants, String cityFilePath, String edgeFilePath, String destinationFilePath,
+                            int gamesPerPairing, long baseSeed, int threads) {
+        this(entrants, MapBundle.forFiles(cityFilePath, edgeFilePath, destinationFilePath,
+                ColorDeck.DEFAULT_CARD_FILE), gamesPerPairing, baseSeed, threads);
+    }
+
+    /**
+     * @param entrants Bots to compare (at least 2, stateless)
+     * @param bundle The map every game is played on
+     * @param gamesPerPairing Games (seeds) played for each pairing
+     * @param baseSeed Seed the per-game seeds are derived from
+     * @param threads Worker threads (0 for one per core)
+     */
+    public TournamentRunner(List<Bot> entrants, MapBundle bundle, int gamesPerPairing, long baseSeed, int threads) {
+        if (entrants == null || entrants.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least 2 entrants");
+        }
+        if (gamesPerPairing <= 0) {
+            throw new IllegalArgumentException("Games per pairing must be positive");
+        }
+        this.entrants = new ArrayList<>(entrants);
+        this.bundle = bundle;
+        this.gamesPerPairing = gamesPerPairing;
+        this.baseSeed = baseSeed;
+        this.threads = threads;
+
+        this.stats = new TournamentStats[entrants.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new TournamentStats(entrants.get(i).getName());
+        }
+        this.headToHeadWins = new long[entrants.size()][entrants.size()];
+    }
+
+    /**
+     * Records every game played from now on to a journal (see JournalAnalytics)
+     * @param journal The journal to append to, or null to stop journaling
+     */
+    public void setJournal(GameJournalWriter journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Runs the tournament
+     * @param pairing Pairing system
+     * @param swissRounds Number of rounds (only used for SWISS)
+     */
+    public void run(Pairing pairing, int swissRounds) {
+        pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+        try {
+            if (pairing == Pairing.ROUND_ROBIN) {
+                List<int[]> pairs = new ArrayList<>();
+                for (int a = 0; a < entrants.size(); a++) {
+                    for (int b = a + 1; b < entrants.size(); b++) {
+                        pairs.add(new int[] {a, b});
+                    }
+                }
+                playRound(pairs.toArray(new int[0][]), 0);
+            } else {
+                runSwiss(swissRounds);
+            }
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+            pool = null;
+        }
+    }
+
+    /**
+     * Swiss system: each round sorts entrants by match points (1 per match won, 0.5 per
+     * drawn match) and pairs neighbours that have not met yet. An odd entrant out gets a bye.
+     */
+    private void runSwiss(int rounds) {
+        int n = entrants.size();
+        double[] matchPoints = new double[n];
+        boolean[][] met = new boolean[n][n];
+
+        for (int round = 0; round < rounds; round++) {
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Double.compare(matchPoints[y], matchPoints[x]));
+
+            List<int[]> pairs = new ArrayList<>();
+            boolean[] paired = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                int a = order[i];
+                if (paired[a]) {
+                    continue;
+                }
+                int opponent = -1;
+                for (int j = i + 1; j < n; j++) {
+                    int b = order[j];
+                    if (!paired[b] && (opponent < 0 || (met[a][opponent] && !met[a][b]))) {
+                        opponent = b;
+                        if (!met[a][b]) {
+                            break;
+                        }
+                    }
+                }
+                if (opponent < 0) {
+                    matchPoints[a] += 1; // Bye
+                    paired[a] = true;
+                    continue;
+                }
+                paired[a] = true;
+                paired[opponent] = true;
+                met[a][opponent] = true;
+                met[opponent][a] = true;
+                pairs.add(new int[] {a, opponent});
+            }
+
+            long[][] before = new long[n][];
+            for (int i = 0; i < n; i++) {
+                before[i] = headToHeadWins[i].clone();
+            }
+            playRound(pairs.toArray(new int[0][]), round);
+            for (int[] pair : pairs) {
+                long winsA = headToHeadWins[pair[0]][pair[1]] - before[pair[0]][pair[1]];
+                long winsB = headToHeadWins[pair[1]][pair[0]] - before[pair[1]][pair[0]];
+                if (winsA > winsB) {
+                    matchPoints[pair[0]] += 1;
+                } else if (winsB > winsA) {
+                    matchPoints[pair[1]] += 1;
+                } else {
+                    matchPoints[pair[0]] += 0.5;
+                    matchPoints[pair[1]] += 0.5;
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays every game of every pairing in a round on the pool
+     */
+    private void playRound(int[][] pairs, int round) {
+        long totalGames = (long) pairs.length * gamesPerPairing;
+        pool.invoke(new MatchTask(pairs, round, 0, totalGames));
+    }
+
+    /**
+     * Range of games [start, end) across the round's pairings; splits until small enough
+     */
+    private class MatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] pairs;
+        private final int round;
+        private final long start;
+        private final long end;
+
+        MatchTask(int[][] pairs, int round, long start, long end) {
+            this.pairs = pairs;
+            this.round = round;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > GAMES_PER_TASK) {
+                long mid = (start + end) >>> 1;
+                invokeAll(new MatchTask(pairs, round, start, mid), new MatchTask(pairs, round, mid, end));
+                return;
+            }
+
+            TournamentStats[] local = new TournamentStats[stats.length];
+            for (int i = 0; i < local.length; i++) {
+                local[i] = new TournamentStats(stats[i].getBotName());
+            }
+            long[][] localWins = new long[stats.length][stats.length];
+
+            for (long game = start; game < end; game++) {
+                int[] pair = pairs[(int) (game / gamesPerPairing)];
+                long seedIndex = game % gamesPerPairing;
+                // Alternate seats so neither bot always moves first
+                int first = (seedIndex & 1) == 0 ? pair[0] : pair[1];
+                int second = first == pair[0] ? pair[1] : pair[0];
+                long seed = mix(baseSeed ^ mix(round * 1_000_003L + pair[0] * 1009L + pair[1]) ^ (seedIndex >> 1));
+
+                SimulatedGame simulation = new SimulatedGame(bundle,
+                        new Bot[] {entrants.get(first), entrants.get(second)}, seed);
+                GameJournalWriter.Recorder recorder = journal != null
+                        ? journal.record(simulation.getMap(), simulation.getPlayers()) : null;
+                ScoreBreakdown[] scores = simulation.play();
+                if (recorder != null) {
+                    try {
+                        recorder.finish();
+                    } catch (IOException e) {
+                        System.out.println("Error writing game journal: " + e.getMessage());
+                    }
+                }
+                int scoreFirst = scores[0].getTotal();
+                int scoreSecond = scores[1].getTotal();
+                int result = Integer.compare(scoreFirst, scoreSecond);
+
+                local[first].record(scoreFirst, result);
+                local[second].record(scoreSecond, -result);
+                if (result > 0) {
+                    localWins[first][second]++;
+                } else if (result < 0) {
+                    localWins[second][first]++;
+                }
+            }
+
+            synchronized (stats) {
+                for (int i = 0; i < stats.length; i++) {
+                    stats[i].merge(local[i]);
+                    for (int j = 0; j < stats.length; j++) {
+                        headToHeadWins[i][j] += localWins[i][j];
+                    }
+                }
+                gamesPlayed += end - start;
+            }
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads seeds so neighbouring games are uncorrelated
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // ============ Results ============
+
+    public long getGamesPlayed() {
+        synchronized (stats) {
+            return gamesPlayed;
+        }
+    }
+
+    /**
+     * Get the aggregated statistics for one entrant (in entrant order)
+     */
+    public TournamentStats getStats(int entrant) {
+        return stats[entrant];
+    }
+
+    /**
+     * Writes one summary row per bot with win rate and score 95% confidence intervals
+     * @return true if the file was written
+     */
+    public boolean writeSummaryCsv(String filePath) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(filePath))) {
+            out.println("bot,games,wins,draws,losses,win_rate,win_rate_ci_low,win_rate_ci_high,"
+                    + "mean_score,score_stddev,score_ci_low,score_ci_high,min_score,max_score");
+            for (TournamentStats s : stats) {
+                double[] winCi = s.getWinRateInterval(Z_95);
+                double[] scoreCi = s.getMeanScoreInterval(Z_95);
+                out.printf("%s,%d,%d,%d,%d,%.4f,%.4f,%.4f,%.2f,%.2f,%.2f,%.2f,%d,%d%n",
+                        s.getBotName(), s.getGames(), s.getWins(), s.getDraws(), s.getLosses(),
+                        s.getWinRate(), winCi[0], winCi[1], s.getMeanScore(), s.getScoreStdDev(),
+                        scoreCi[0], scoreCi[1], s.getMinScore(), s.getMaxScore());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing tournament report: " + filePath);
+            System.out.println("Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the score distribution of every bot (one row per score bucket) and the
+     * head-to-head win matrix
+     * @return true if the file was written
+     */
+    public boolean writeDistributionCsv(String filePath) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(filePath))) {
+            StringBuilder header = new StringBuilder("score_bucket");
+            for (TournamentStats s : stats) {
+                header.append(',').append(s.getBotName());
+            }
+            out.println(header);
+            long[][] histograms = new long[stats.length][];
+            for (int i = 0; i < stats.length; i++) {
+                histograms[i] = stats[i].getHistogram();
+            }
+            for (int bucket = 0; bucket < TournamentStats.HISTOGRAM_BUCKETS; bucket++) {
+                StringBuilder row = new StringBuilder();
+                row.append(TournamentStats.HISTOGRAM_MIN + bucket * TournamentStats.HISTOGRAM_WIDTH);
+                for (long[] histogram : histograms) {
+                    row.append(',').append(histogram[bucket]);
+                }
+                out.println(row);
+            }
+
+            out.println();
+            out.println(header.toString().replace("score_bucket", "wins_vs"));
+            for (int i = 0; i < stats.length; i++) {
+                StringBuilder row = new StringBuilder(stats[i].getBotName());
+                for (int j = 0; j < stats.length; j++) {
+                    row.append(',').append(headToHeadWins[i][j]);
+                }
+                out.println(row);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing tournament report: " + filePath);
+            System.out.println("Exception: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Usage: TournamentRunner [gamesPerPairing] [ROUND_ROBIN|SWISS] [reportPrefix] [mapName] [swissRounds] [journalFile]
+     */
+    public static void main(String[] args) throws IOException {
+        int gamesPerPairing = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Pairing pairing = args.length > 1 ? Pairing.valueOf(args[1].toUpperCase()) : Pairing.ROUND_ROBIN;
+        String reportPrefix = args.length > 2 ? args[2] : "tournament";
+        String mapName = args.length > 3 ? args[3] : "american";
+        int swissRounds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        String journalPath = args.length > 5 ? args[5] : null;
+
+        List<Bot> entrants = new ArrayList<>();
+        entrants.add(new RandomBot());
+        entrants.add(new GreedyBot());
+
+        MapRegistry registry = MapRegistry.getDefault();
+        MapBundle bundle = registry.acquire(mapName);
+        if (bundle == null) {
+            System.out.println("Error: Unknown map " + mapName + ". Available maps: " + registry.getMapNames());
+            return;
+        }
+        TournamentRunner runner = new TournamentRunner(entrants, bundle, gamesPerPairing, 42L, 0);
+
+        GameJournalWriter journal = null;
+        if (journalPath != null) {
+            DestinationDeck tickets = new DestinationDeck(); // File order, not shuffled
+            tickets.loadCardsFromFile(bundle.getDestinationFilePath());
+            journal = new GameJournalWriter(journalPath, bundle.newMap(), tickets.getCards());
+            runner.setJournal(journal);
+        }
+
+        long startTime = System.nanoTime();
+        runner.run(pairing, swissRounds);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        if (journal != null) {
+            journal.close();
+        }
+
+        System.out.printf("Played %d games in %.1f s (%.0f games/s)%n", runner.getGamesPlayed(), seconds, runner.getGamesPlayed() / seconds);
+        for (int i = 0; i < entrants.size(); i++) {
+            TournamentStats s = runner.getStats(i);
+            double[] ci = s.getWinRateInterval(Z_95);
+            System.out.printf("%s: win rate %.3f [%.3f, %.3f], mean score %.1f%n",
+                    s.getBotName(), s.getWinRate(), ci[0], ci[1], s.getMeanScore());
+        }
+        runner.writeSummaryCsv(reportPrefix + "_summary.csv");
+        runner.writeDistributionCsv(reportPrefix + "_scores.csv");
+        registry.release(bundle);
+    }
+}
@@ -0,0 +1,148 @@
+package com.tickettoride;
+
+/**
+ * TournamentStats - streaming, mergeable statistics for one bot in a tournament.
+ * Scores are folded in one game at a time (Welford's algorithm), so no per-game
+ * results are kept; partial stats from worker threads are combined with merge().
+ */
+public class TournamentStats {
+
+    public static final int HISTOGRAM_MIN = -100;   // lowest bucket start (scores below are clamped)
+    public static final int HISTOGRAM_WIDTH = 10;   // points per bucket
+    public static final int HISTOGRAM_BUCKETS = 41; // covers -100 to 309
+
+    private final String botName;
+    private long games;
+    private long wins;
+    private long draws;
+    private double meanScore;
+    private double m2;        // sum of squared differences from the mean
+    private int minScore;
+    private int maxScore;
+    private final long[] histogram;
+
+    public TournamentStats(String botName) {
+        this.botName = botName;
+        this.minScore = Integer.MAX_VALUE;
+        this.maxScore = Integer.MIN_VALUE;
+        this.histogram = new long[HISTOGRAM_BUCKETS];
+    }
+
+    /**
+     * Records one game
+     * @param score The bot's final score
+     * @param result 1 for a win, 0 for a draw, -1 for a loss
+     */
+    public void record(int score, int result) {
+        games++;
+        if (result > 0) {
+            wins++;
+        } else if (result == 0) {
+            draws++;
+        }
+        double delta = score - meanScore;
+        meanScore += delta / games;
+        m2 += delta * (score - meanScore);
+        minScore = Math.min(minScore, score);
+        maxScore = Math.max(maxScore, score);
+        int bucket = (score - HISTOGRAM_MIN) / HISTOGRAM_WIDTH;
+        histogram[Math.max(0, Math.min(HISTOGRAM_BUCKETS - 1, bucket))]++;
+    }
+
+    /**
+     * Folds another partial result for the same bot into this one
+     */
+    public void merge(TournamentStats other) {
+        if (other.games == 0) {
+            return;
+        }
+        long total = games + other.games;
+        double delta = other.meanScore - meanScore;
+        m2 += other.m2 + delta * delta * games * other.games / total;
+        meanScore += delta * other.games / total;
+        games = total;
+        wins += other.wins;
+        draws += other.draws;
+        minScore = Math.min(minScore, other.minScore);
+        maxScore = Math.max(maxScore, other.maxScore);
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+
+    public String getBotName() {
+        return botName;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public long getLosses() {
+        return games - wins - draws;
+    }
+
+    /**
+     * Win rate counting draws as half a win
+     */
+    public double getWinRate() {
+        return games == 0 ? 0 : (wins + 0.5 * draws) / games;
+    }
+
+    /**
+     * Wilson score interval for the win rate
+     * @param z Normal quantile (1.96 for 95%)
+     * @return {low, high}
+     */
+    public double[] getWinRateInterval(double z) {
+        if (games == 0) {
+            return new double[] {0, 1};
+        }
+        double p = getWinRate();
+        double z2 = z * z;
+        double center = (p + z2 / (2 * games)) / (1 + z2 / games);
+        double spread = z * Math.sqrt(p * (1 - p) / games + z2 / (4.0 * games * games)) / (1 + z2 / games);
+        return new double[] {center - spread, center + spread};
+    }
+
+    public double getMeanScore() {
+        return meanScore;
+    }
+
+    public double getScoreStdDev() {
+        return games < 2 ? 0 : Math.sqrt(m2 / (games - 1));
+    }
+
+    /**
+     * Normal-approximation confidence interval for the mean score
+     * @param z Normal quantile (1.96 for 95%)
+     * @return {low, high}
+     */
+    public double[] getMeanScoreInterval(double z) {
+        double halfWidth = games == 0 ? 0 : z * getScoreStdDev() / Math.sqrt(games);
+        return new double[] {meanScore - halfWidth, meanScore + halfWidth};
+    }
+
+    public int getMinScore() {
+        return games == 0 ? 0 : minScore;
+    }
+
+    public int getMaxScore() {
+        return games == 0 ? 0 : maxScore;
+    }
+
+    /**
+     * Game counts per score bucket (bucket i starts at HISTOGRAM_MIN + i * HISTOGRAM_WIDTH)
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+}
@@ -0,0 +1,358 @@
+package com.tickettoride;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TranspositionTable - fixed-size cache of search results keyed by position hash (see Zobrist),
+ * shared by every thread of a search so a position reached through another move order, or by
+ * another thread, is not searched twice.
+ *
+ * Entries live in flat arrays indexed by the low bits of the hash (no object per entry). The
+ * slots are split over lock stripes, so threads working on different slots rarely wait for each
+ * other. When a new result maps to a slot holding another position, the ReplacementPolicy decides
+ * which one stays; a new result for the position already in the slot always replaces it (the
+ * search has just looked at it again, whatever the depth). All methods are thread-safe.
+ *
+ * main() stores and probes from several threads and checks every probe reads back a whole entry.
+ */
+public class TranspositionTable {
+
+    /**
+     * How a stored value relates to the true value of the position (for alpha-beta style searches)
+     */
+    public enum Bound {
+        EXACT, // The value is exact
+        LOWER, // The true value is at least this (the search was cut off high)
+        UPPER  // The true value is at most this (no move reached the lower window)
+    }
+
+    /**
+     * Which result keeps a slot when two different positions map to it
+     */
+    public enum ReplacementPolicy {
+        ALWAYS,          // The newest result always wins
+        DEPTH_PREFERRED, // The deeper search wins (ties go to the newest)
+        AGED             // Depth preferred, but results from an earlier search (see newSearch) always lose
+    }
+
+    /**
+     * Result of a probe, filled in by probe() so lookups create no objects (reuse one per thread)
+     */
+    public static final class Entry {
+        private int depth;
+        private double value;
+        private Bound bound;
+        private int bestMove;
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public Bound getBound() {
+            return bound;
+        }
+
+        /**
+         * Best move found, as encoded by the search (-1 if none)
+         */
+        public int getBestMove() {
+            return bestMove;
+        }
+    }
+
+    private static final Bound[] BOUNDS = Bound.values();
+
+    private final ReplacementPolicy policy;
+    private final int mask;            // slots - 1 (slots is a power of two)
+    private final Object[] locks;      // slot i is guarded by locks[i & (locks.length - 1)]
+    private final long[] keys;
+    private final boolean[] used;
+    private final int[] depths;
+    private final double[] values;
+    private final byte[] bounds;
+    private final int[] bestMoves;
+    private final int[] generations;
+    private volatile int generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder overwrites = new LongAdder(); // Stores that evicted another position
+    private final LongAdder rejected = new LongAdder();   // Stores the policy turned down
+
+    /**
+     * @param capacity Number of entries (rounded up to a power of two)
+     * @param stripes Number of locks (rounded up to a power of two; a few per search thread is plenty)
+     * @param policy Which result keeps a contested slot
+     */
+    public TranspositionTable(int capacity, int stripes, ReplacementPolicy policy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got " + capacity);
+        }
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Need at least one lock stripe");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Replacement policy cannot be null");
+        }
+        int slots = powerOfTwoAtLeast(capacity);
+        int lockCount = Math.min(slots, powerOfTwoAtLeast(stripes));
+        this.policy = policy;
+        this.mask = slots - 1;
+        this.locks = new Object[lockCount];
+        for (int i = 0; i < lockCount; i++) {
+            locks[i] = new Object();
+        }
+        this.keys = new long[slots];
+        this.used = new boolean[slots];
+        this.depths = new int[slots];
+        this.values = new double[slots];
+        this.bounds = new byte[slots];
+        this.bestMoves = new int[slots];
+        this.generations = new int[slots];
+    }
+
+    private static int powerOfTwoAtLeast(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Stores a search result (subject to the replacement policy if the slot holds another position)
+     * @param key Position hash
+     * @param depth Depth the position was searched to
+     * @param value Value found
+     * @param bound How the value relates to the true value
+     * @param bestMove Best move found, as encoded by the search (-1 if none)
+     * @return true if the result was stored
+     */
+    public boolean store(long key, int depth, double value, Bound bound, int bestMove) {
+        int slot = (int) key & mask;
+        synchronized (locks[slot & (locks.length - 1)]) {
+            if (used[slot] && keys[slot] != key) {
+                if (!keeps(slot, depth)) {
+                    rejected.increment();
+                    return false;
+                }
+                overwrites.increment();
+            }
+            keys[slot] = key;
+            used[slot] = true;
+            depths[slot] = depth;
+            values[slot] = value;
+            bounds[slot] = (byte) bound.ordinal();
+            bestMoves[slot] = bestMove;
+            generations[slot] = generation;
+        }
+        stores.increment();
+        return true;
+    }
+
+    /**
+     * Check whether a new result of the given depth may replace what a slot holds
+     */
+    private boolean keeps(int slot, int depth) {
+        switch (policy) {
+            case ALWAYS:
+                return true;
+            case AGED:
+                return generations[slot] != generation || depth >= depths[slot];
+            default:
+                return depth >= depths[slot];
+        }
+    }
+
+    /**
+     * Looks up a position
+     * @param key Position hash
+     * @param out Filled in with the stored result if found
+     * @return true if the position is in the table
+     */
+    public boolean probe(long key, Entry out) {
+        int slot = (int) key & mask;
+        synchronized (locks[slot & (locks.length - 1)]) {
+            if (!used[slot] || keys[slot] != key) {
+                misses.increment();
+                return false;
+            }
+            out.depth = depths[slot];
+            out.value = values[slot];
+            out.bound = BOUNDS[bounds[slot]];
+            out.bestMove = bestMoves[slot];
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Marks the start of a new search: older results stay usable but lose slots to new ones
+     * under the AGED policy
+     */
+    public synchronized void newSearch() {
+        generation++;
+    }
+
+    /**
+     * Removes every entry (statistics are kept)
+     */
+    public void clear() {
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int slot = stripe; slot < used.length; slot += locks.length) {
+                    used[slot] = false;
+                }
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Number of slots holding a result
+     */
+    public int getSize() {
+        int size = 0;
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int slot = stripe; slot < used.length; slot += locks.length) {
+                    size += used[slot] ? 1 : 0;
+                }
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Stores that replaced a different position
+     */
+    public long getOverwrites() {
+        return overwrites.sum();
+    }
+
+    /**
+     * Stores turned down by the replacement policy
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        long probes = getHits() + getMisses();
+        return String.format("%s table, %d/%d slots used, %d probes (%.1f%% hits), %d stores, %d overwrites, %d rejected",
+                policy.toString().toLowerCase(), getSize(), getCapacity(), probes,
+                probes > 0 ? 100.0 * getHits() / probes : 0.0, getStores(), getOverwrites(), getRejected());
+    }
+
+    // ============ Check ============
+
+    /**
+     * Value stored for a key at a depth in main(), so a probe can tell whether its fields belong together
+     */
+    private static double checkValue(long key, int depth) {
+        return (double) ((key ^ (depth * 0x9E3779B97F4A7C15L)) >>> 11);
+    }
+
+    /**
+     * Stores and probes from several threads at once under every policy, over more positions
+     * than slots, and checks that each hit reads back one whole stored entry. Also checks that a
+     * shallower result replaces the same position. Prints throughput and the table statistics.
+     * Usage: TranspositionTable [threads] [seconds] [capacity]
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        int capacity = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 16;
+
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            TranspositionTable table = new TranspositionTable(16, 1, policy);
+            Entry entry = new Entry();
+            table.store(42, 6, 1.0, Bound.EXACT, 3);
+            table.store(42, 2, 2.0, Bound.LOWER, 4);
+            if (!table.probe(42, entry) || entry.getDepth() != 2 || entry.getBestMove() != 4) {
+                System.out.println("Error: " + policy + " kept a deeper result over a newer one for the same position");
+                return;
+            }
+        }
+
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            TranspositionTable table = new TranspositionTable(capacity, threads * 4, policy);
+            int positions = table.getCapacity() * 4; // Plenty of contested slots
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicBoolean failed = new AtomicBoolean();
+            LongAdder operations = new LongAdder();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                SplittableRandom random = new SplittableRandom(t);
+                Thread worker = new Thread(() -> {
+                    Entry entry = new Entry();
+                    long done = 0;
+                    while (running.get()) {
+                        long key = (random.nextInt(positions) + 1L) * 0x9E3779B97F4A7C15L; // Odd multiplier: distinct keys
+                        if (random.nextInt(4) == 0) {
+                            int depth = random.nextInt(12);
+                            table.store(key, depth, checkValue(key, depth), BOUNDS[depth % BOUNDS.length], depth);
+                        } else if (table.probe(key, entry) && (entry.getValue() != checkValue(key, entry.getDepth())
+                                || entry.getBound() != BOUNDS[entry.getDepth() % BOUNDS.length]
+                                || entry.getBestMove() != entry.getDepth())) {
+                            failed.set(true);
+                            running.set(false);
+                        }
+                        if (random.nextInt(1 << 16) == 0 && policy == ReplacementPolicy.AGED) {
+                            table.newSearch();
+                        }
+                        done++;
+                    }
+                    operations.add(done);
+                }, "tt-check-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+            long start = System.nanoTime();
+            try {
+                Thread.sleep((long) (seconds * 1000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.set(false);
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            if (failed.get()) {
+                System.out.println("Error: a probe read fields of different stores (" + policy + ")");
+                return;
+            }
+            System.out.printf("%d threads, %,.0f ops/s: %s%n", threads, operations.sum() / elapsed, table);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.tickettoride;
+
+/**
+ * TunnelRiskCalculator - exact distribution of the extra cost of a tunnel.
+ * A tunnel reveals TUNNEL_DRAWS cards; each one matching the chosen color (or MULTICOLOR)
+ * adds a card to the cost. Drawing without replacement from a pool of N cards of which M
+ * match is hypergeometric, so the distribution only depends on (N, M) and is cached on that key.
+ * Not thread-safe: each ColorDeck owns its own calculator.
+ */
+public class TunnelRiskCalculator {
+
+    public static final int TUNNEL_DRAWS = 3;
+
+    private final double[][][] cache; // cache[N][M] = P(extra = k) for k = 0..TUNNEL_DRAWS, filled on first use
+
+    /**
+     * @param maxPopulation Largest pool size that will be queried (the number of cards in the deck)
+     */
+    public TunnelRiskCalculator(int maxPopulation) {
+        this.cache = new double[maxPopulation + 1][][];
+    }
+
+    /**
+     * Largest pool size served from the cache
+     */
+    public int getMaxPopulation() {
+        return cache.length - 1;
+    }
+
+    /**
+     * Distribution of the extra tunnel cost
+     * @param population Number of cards the tunnel cards are drawn from
+     * @param matching How many of them match (chosen color + MULTICOLOR)
+     * @return P(extra = k) indexed by k = 0..TUNNEL_DRAWS (shared cached array, do not modify)
+     */
+    public double[] distribution(int population, int matching) {
+        if (population < 0 || matching < 0 || matching > population) {
+            throw new IllegalArgumentException("Invalid pool: " + matching + " matching of " + population);
+        }
+        if (population >= cache.length) {
+            return hypergeometric(population, matching); // Bigger than the deck this was sized for
+        }
+        double[][] row = cache[population];
+        if (row == null) {
+            row = new double[population + 1][];
+            cache[population] = row;
+        }
+        double[] result = row[matching];
+        if (result == null) {
+            result = hypergeometric(population, matching);
+            row[matching] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Probability that the extra cost is at most maxExtra
+     */
+    public double probabilityAtMost(int population, int matching, int maxExtra) {
+        if (maxExtra < 0) {
+            return 0.0;
+        }
+        double[] dist = distribution(population, matching);
+        double sum = 0.0;
+        for (int k = 0; k <= maxExtra && k < dist.length; k++) {
+            sum += dist[k];
+        }
+        return Math.min(1.0, sum);
+    }
+
+    /**
+     * Expected extra cost
+     */
+    public double expectedExtra(int population, int matching) {
+        double[] dist = distribution(population, matching);
+        double sum = 0.0;
+        for (int k = 1; k < dist.length; k++) {
+            sum += k * dist[k];
+        }
+        return sum;
+    }
+
+    /**
+     * P(k) = C(M, k) * C(N - M, n - k) / C(N, n) with n = min(TUNNEL_DRAWS, N)
+     */
+    private static double[] hypergeometric(int population, int matching) {
+        int draws = Math.min(TUNNEL_DRAWS, population);
+        double[] dist = new double[TUNNEL_DRAWS + 1];
+        double total = choose(population, draws);
+        for (int k = 0; k <= draws; k++) {
+            dist[k] = choose(matching, k) * choose(population - matching, draws - k) / total;
+        }
+        return dist;
+    }
+
+    private static double choose(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0.0;
+        }
+        double result = 1.0;
+        for (int i = 0; i < k; i++) {
+            result = result * (n - i) / (i + 1);
+        }
+        return result;
+    }
+}
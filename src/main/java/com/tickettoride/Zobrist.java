@@ -0,0 +1,136 @@
+package com.tickettoride;
+
+/**
+ * Zobrist - 64-bit Zobrist keys for game positions, and the full hash built from them.
+ * A position hashes to the XOR of one key per feature: the owner of each claimed route,
+ * each player's count of each card color, each player's trains, the color in each visible
+ * slot, each player's kept and completed tickets, and whose turn it is. A move changes only a
+ * few features, so a hash is kept up to date by XOR-ing the old keys out and the new keys in
+ * (see GameState and ZobristHasher), and positions reached by different move orders get the
+ * same hash.
+ *
+ * Keys are computed from the feature itself (SplitMix64 mixing), so there are no key tables
+ * and a position hashes the same in every game, thread and run. Cards in the draw pile and
+ * discards are hidden information and not part of the position.
+ */
+public final class Zobrist {
+
+    private static final long ROUTE = 1;
+    private static final long CARDS = 2;
+    private static final long TRAINS = 3;
+    private static final long VISIBLE = 4;
+    private static final long TICKET_KEPT = 5;
+    private static final long TICKET_COMPLETED = 6;
+    private static final long TO_MOVE = 7;
+
+    private Zobrist() {
+    }
+
+    /**
+     * Key for a route owned by a player
+     */
+    public static long route(int edgeId, int seat) {
+        return key(ROUTE, edgeId, seat, 0);
+    }
+
+    /**
+     * Key for a player holding a number of cards of one color
+     */
+    public static long cards(int seat, int colorOrdinal, int count) {
+        return key(CARDS, count, seat, colorOrdinal);
+    }
+
+    /**
+     * Key for a player's trains left
+     */
+    public static long trains(int seat, int trains) {
+        return key(TRAINS, trains, seat, 0);
+    }
+
+    /**
+     * Key for the color in a visible slot (-1 for an empty slot)
+     */
+    public static long visible(int slot, int colorOrdinal) {
+        return key(VISIBLE, slot, 0, colorOrdinal + 1);
+    }
+
+    /**
+     * Key for a ticket a player kept, or for that ticket being completed (both apply once completed)
+     */
+    public static long ticket(int seat, String cardId, boolean completed) {
+        return mix(key(completed ? TICKET_COMPLETED : TICKET_KEPT, 0, seat, 0) + cardId.hashCode());
+    }
+
+    /**
+     * Key for the player whose turn it is
+     */
+    public static long toMove(int seat) {
+        return key(TO_MOVE, 0, seat, 0);
+    }
+
+    /**
+     * Key change for a player's count of one color going from oldCount to newCount
+     */
+    public static long cardsChanged(int seat, int colorOrdinal, int oldCount, int newCount) {
+        return oldCount == newCount ? 0 : cards(seat, colorOrdinal, oldCount) ^ cards(seat, colorOrdinal, newCount);
+    }
+
+    /**
+     * Full hash of a position, the value incremental updates must agree with
+     * @param routeOwners Seat owning each route, -1 if unclaimed
+     * @param colorCounts Card counts per seat, indexed by Color ordinal
+     * @param trains Trains left per seat
+     * @param visible Color ordinal per visible slot, -1 if empty
+     * @param tickets XOR of the ticket keys (see tickets())
+     * @param toMove Seat whose turn it is
+     */
+    public static long hash(int[] routeOwners, int[][] colorCounts, int[] trains, int[] visible, long tickets, int toMove) {
+        long hash = tickets ^ toMove(toMove);
+        for (int edgeId = 0; edgeId < routeOwners.length; edgeId++) {
+            if (routeOwners[edgeId] >= 0) {
+                hash ^= route(edgeId, routeOwners[edgeId]);
+            }
+        }
+        for (int seat = 0; seat < colorCounts.length; seat++) {
+            for (int color = 0; color < colorCounts[seat].length; color++) {
+                hash ^= cards(seat, color, colorCounts[seat][color]);
+            }
+            hash ^= trains(seat, trains[seat]);
+        }
+        for (int slot = 0; slot < visible.length; slot++) {
+            hash ^= visible(slot, visible[slot]);
+        }
+        return hash;
+    }
+
+    /**
+     * XOR of the ticket keys of every player's kept and completed tickets
+     * @param allPlayers Players in turn order
+     */
+    public static long tickets(Player[] allPlayers) {
+        long hash = 0;
+        for (int seat = 0; seat < allPlayers.length; seat++) {
+            for (DestinationCard card : allPlayers[seat].getDestinationCards()) {
+                hash ^= ticket(seat, card.getCardId(), false);
+                if (card.isCompleted()) {
+                    hash ^= ticket(seat, card.getCardId(), true);
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long key(long feature, int index, int seat, int value) {
+        return mix(feature << 58 ^ (index & 0x3FFFFFFL) << 32 ^ (seat & 0xFFFFL) << 16 ^ (value & 0xFFFFL));
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads consecutive inputs over all 64 bits
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,144 @@
+package com.tickettoride;
+
+/**
+ * ZobristHasher - keeps the Zobrist hash (see Zobrist) of a live game up to date from its
+ * delta stream: each claim, hand change, visible-slot change, train update, ticket and turn
+ * end costs a couple of XORs. The hash equals GameState.capture(...).getHash() for the same
+ * position, so a search can look up the live position in a TranspositionTable without
+ * capturing it first. Create one with attach().
+ */
+public class ZobristHasher implements GameDeltaListener {
+
+    private static final int VISIBLE_SLOTS = 5;
+
+    private final GameMap map;
+    private final String[] playerIds;
+    private final int[] routeOwners;   // Seat per route id as hashed, -1 if unclaimed
+    private final int[][] colorCounts; // Last reported count per seat and Color ordinal
+    private final int[] trains;
+    private final int[] visible;       // Color ordinal per visible slot, -1 if empty
+    private int toMove;
+    private long hash;
+
+    private ZobristHasher(GameMap map, Player[] allPlayers) {
+        this.map = map;
+        this.playerIds = new String[allPlayers.length];
+        this.routeOwners = new int[map.getEdgeCount()];
+        this.colorCounts = new int[allPlayers.length][Color.values().length];
+        this.trains = new int[allPlayers.length];
+        this.visible = new int[VISIBLE_SLOTS];
+    }
+
+    /**
+     * Starts hashing a game from its current state
+     * @param map The game map
+     * @param allPlayers Players in turn order
+     * @param currentPlayer Index of the player whose turn it is
+     * @return The hasher
+     */
+    public static ZobristHasher attach(GameMap map, Player[] allPlayers, int currentPlayer) {
+        ZobristHasher hasher = new ZobristHasher(map, allPlayers);
+        GameDeltaStream stream = map.getDeltaStream();
+        synchronized (stream) { // No delta can slip in between the full hash and registration
+            hasher.reset(allPlayers, currentPlayer);
+            stream.addListener(hasher);
+        }
+        return hasher;
+    }
+
+    /**
+     * Stops following the game (the last hash stays readable)
+     */
+    public void detach() {
+        map.getDeltaStream().removeListener(this);
+    }
+
+    /**
+     * Hash of the game as of the last delta
+     */
+    public synchronized long getHash() {
+        return hash;
+    }
+
+    /**
+     * Hashes a live game from scratch (what the incremental hash must equal)
+     */
+    public static long computeHash(GameMap map, Player[] allPlayers, int currentPlayer) {
+        return new ZobristHasher(map, allPlayers).reset(allPlayers, currentPlayer);
+    }
+
+    private synchronized long reset(Player[] allPlayers, int currentPlayer) {
+        for (int seat = 0; seat < allPlayers.length; seat++) {
+            playerIds[seat] = allPlayers[seat].getPlayerId();
+            for (Color color : Color.values()) {
+                colorCounts[seat][color.ordinal()] = allPlayers[seat].getCardCount(color);
+            }
+            trains[seat] = allPlayers[seat].getTrainCount();
+        }
+        for (int edgeId = 0; edgeId < routeOwners.length; edgeId++) {
+            routeOwners[edgeId] = seatOf(map.getRouteOwner(edgeId));
+        }
+        Card[] visibleCards = map.getColorDeck() != null ? map.getColorDeck().getVisibleCards() : new Card[0];
+        for (int slot = 0; slot < VISIBLE_SLOTS; slot++) {
+            Card card = slot < visibleCards.length ? visibleCards[slot] : null;
+            visible[slot] = card != null ? ((ColorCard) card).getColor().ordinal() : -1;
+        }
+        toMove = currentPlayer;
+        hash = Zobrist.hash(routeOwners, colorCounts, trains, visible, Zobrist.tickets(allPlayers), toMove);
+        return hash;
+    }
+
+    @Override
+    public synchronized void onDelta(GameDelta delta) {
+        int seat = seatOf(delta.getPlayerId());
+        if (seat < 0 && delta.getType() != DeltaType.VISIBLE_SLOT) {
+            return; // Not one of the players this hasher was attached with
+        }
+        switch (delta.getType()) {
+            case ROUTE_CLAIMED:
+                // A claim is set before its delta is emitted, so reset() may already have hashed it
+                if (routeOwners[delta.getIndex()] != seat) {
+                    routeOwners[delta.getIndex()] = seat;
+                    hash ^= Zobrist.route(delta.getIndex(), seat);
+                }
+                break;
+            case HAND_SIZE:
+                hash ^= Zobrist.cardsChanged(seat, delta.getIndex(), colorCounts[seat][delta.getIndex()], delta.getValue());
+                colorCounts[seat][delta.getIndex()] = delta.getValue();
+                break;
+            case TRAINS:
+                hash ^= Zobrist.trains(seat, trains[seat]) ^ Zobrist.trains(seat, delta.getValue());
+                trains[seat] = delta.getValue();
+                break;
+            case VISIBLE_SLOT:
+                hash ^= Zobrist.visible(delta.getIndex(), visible[delta.getIndex()]) ^ Zobrist.visible(delta.getIndex(), delta.getValue());
+                visible[delta.getIndex()] = delta.getValue();
+                break;
+            case TICKET_KEPT:
+                hash ^= Zobrist.ticket(seat, delta.getCardId(), false);
+                break;
+            case TICKET_COMPLETED:
+                hash ^= Zobrist.ticket(seat, delta.getCardId(), true);
+                break;
+            case TURN_ENDED:
+                int next = (seat + 1) % playerIds.length;
+                hash ^= Zobrist.toMove(toMove) ^ Zobrist.toMove(next);
+                toMove = next;
+                break;
+            default:
+                break; // Points and tunnel draws are not part of the position
+        }
+    }
+
+    private int seatOf(String playerId) {
+        if (playerId == null) {
+            return -1;
+        }
+        for (int seat = 0; seat < playerIds.length; seat++) {
+            if (playerIds[seat].equals(playerId)) {
+                return seat;
+            }
+        }
+        return -1;
+    }
+}